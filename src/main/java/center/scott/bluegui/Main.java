@@ -17,11 +17,49 @@
 
 package center.scott.bluegui;
 
+import center.scott.bluegui.stream.ActivityDetection;
+import center.scott.bluegui.stream.ActivityStateMachine;
+import center.scott.bluegui.stream.AudiblePolicy;
+import center.scott.bluegui.stream.CatchUpQueue;
+import center.scott.bluegui.stream.ArchiveEncoding;
+import center.scott.bluegui.stream.FastStart;
 import center.scott.bluegui.stream.MediaStreamPlayer;
+import center.scott.bluegui.stream.NativeLogCapture;
+import center.scott.bluegui.stream.PcmActivityDetector;
+import center.scott.bluegui.stream.PreRollDelayLine;
+import center.scott.bluegui.stream.PresetStreamPlayer;
+import center.scott.bluegui.stream.RebroadcastServer;
+import center.scott.bluegui.stream.ReplayBuffer;
+import center.scott.bluegui.stream.SharedMediaPlayerFactory;
+import center.scott.bluegui.stream.StreamCalibrator;
+import center.scott.bluegui.stream.StreamActivityMonitor;
 import center.scott.bluegui.stream.StreamConfiguration;
+import center.scott.bluegui.stream.StreamGroup;
+import center.scott.bluegui.stream.StreamPlayer;
+import center.scott.bluegui.stream.StreamStatistics;
+import center.scott.bluegui.stream.StreamSupervisor;
+import center.scott.bluegui.stream.TransmissionArchive;
+import center.scott.bluegui.stream.audio.GainRamp;
+import center.scott.bluegui.stream.audio.dsp.DspChain;
+import center.scott.bluegui.stream.audio.dsp.DspStage;
+import center.scott.bluegui.stream.audio.dsp.DspStageType;
+import center.scott.bluegui.stream.op25.Op25StatusPoller;
 import ch.qos.logback.classic.Level;
+import uk.co.caprica.vlcj.log.LogLevel;
 
 import java.awt.EventQueue;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ThreadFactory;
 
 import org.apache.commons.cli.CommandLine;
@@ -36,14 +74,26 @@ import org.slf4j.LoggerFactory;
 import center.scott.bluegui.bluetooth.MediaBluetoothPlayer;
 import center.scott.bluegui.bluetooth.UnsupportedOperatingSystemException;
 import center.scott.bluegui.gui.MainFrame;
+import center.scott.bluegui.gui.component.SpectrumAnalyzer;
 
-public class Main implements Runnable, MediaController {
+public class Main implements Runnable, MediaController, SwitchObserver {
 	private final static org.slf4j.Logger LOGGER = LoggerFactory.getLogger(Main.class);
 	
 	private MainFrame mMainFrame;
-	private MediaStreamPlayer mMediaPlayer;
+	private StreamPlayer mMediaPlayer;
 	private MediaBluetoothPlayer mBluetoothPlayer; 
 	private MediaSwitcher mSwitcher;
+	private DspChain mDsp;
+	private PreRollDelayLine mPreRoll;
+	private GainRamp mStreamGain;
+	private SpectrumAnalyzer mSpectrum;
+	private ReplayBuffer mReplayBuffer;
+	private TransmissionArchive mArchive;
+	private CatchUpQueue mCatchUp;
+	private RebroadcastServer mRebroadcast;
+	private StreamStatistics mStatistics;
+	private Op25StatusPoller mPoller;
+	private List<StreamSupervisor> mSupervisors = new ArrayList<StreamSupervisor>();
 	private CommandLine mCmd;
 	
 	public static void main(String[] args){
@@ -69,6 +119,13 @@ public class Main implements Runnable, MediaController {
         if(mCmd.hasOption("help")) {
         	formatter.printHelp(SettingsOptions.APP_USAGE, settingsOptions);
         }
+        if(mCmd.hasOption("profiles") && new File(mCmd.getOptionValue("profiles")).exists()) {
+        	try {
+        		LOGGER.info("Loaded stream profiles {}", StreamConfiguration.loadProfiles(new File(mCmd.getOptionValue("profiles"))));
+        	} catch (IOException | IllegalArgumentException e) {
+        		LOGGER.error("Could not load the stream profiles: ", e);
+        	}
+        }
         StreamConfiguration config = null;
         if(mCmd.hasOption("config")) {
         	String configuration = mCmd.getOptionValue("config");
@@ -78,17 +135,204 @@ public class Main implements Runnable, MediaController {
         	}
         }
         
+        NativeLogCapture.install(mCmd.hasOption("capturestderr"));
+        if(mCmd.hasOption("faststart")) {
+        	// The working directory changes with how the program is launched, so keep the cache where it will be found again
+        	File directory = mCmd.hasOption("profiles") ? new File(mCmd.getOptionValue("profiles")).getAbsoluteFile().getParentFile() : new File(System.getProperty("user.home"));
+        	FastStart.install(new File(directory, SettingsOptions.FASTSTART_DEFAULT));
+        }
+        if(mCmd.hasOption("vlclog")) {
+        	try {
+        		NativeLogCapture.getInstance().setLevel(LogLevel.valueOf(mCmd.getOptionValue("vlclog").toUpperCase()));
+        	} catch (IllegalArgumentException e) {
+        		LOGGER.error("vlclog level '{}', does not exist. Logging from {}", mCmd.getOptionValue("vlclog"), NativeLogCapture.getInstance().getLevel());
+        	}
+        }
+        if(mCmd.hasOption("calibrate")) {
+        	calibrate(config);
+        }
+        
 		// Initialize
-        if(config == null) {
-        	mMediaPlayer = new MediaStreamPlayer(mCmd.getOptionValue("uri"));
-        }else {
-        	mMediaPlayer = new MediaStreamPlayer(mCmd.getOptionValue("uri"), config);
+        String[] uris = mCmd.getOptionValues("uri");
+        try {
+        	if(mCmd.hasOption("presets")) {
+        		mMediaPlayer = createPresetPlayer(uris, config);
+        	}else if(uris.length == 1) {
+        		mMediaPlayer = config == null ? new MediaStreamPlayer(uris[0]) : config.createPlayer(uris[0]);
+        	}else {
+        		mMediaPlayer = createStreamGroup(uris, config);
+        	}
+        } catch (IllegalArgumentException e) {
+        	LOGGER.error("Could not create the stream player: ", e);
+        	System.exit(1);
+        }
+        if(mCmd.hasOption("detect")) {
+        	String detection = mCmd.getOptionValue("detect");
+        	ActivityDetection activityDetection = ActivityDetection.fromString(detection);
+        	if(activityDetection == null) {
+        		LOGGER.error("Activity detection '{}', does not exist. Running with {}", detection, mMediaPlayer.getActivityDetection());
+        	}else {
+        		mMediaPlayer.setActivityDetection(activityDetection);
+        	}
+        }
+        if(mCmd.hasOption("threshold")) {
+        	String[] thresholds = mCmd.getOptionValue("threshold").split(",");
+        	try {
+        		double rms = Double.parseDouble(thresholds[0]);
+        		double peak = thresholds.length > 1 ? Double.parseDouble(thresholds[1]) : PcmActivityDetector.DEFAULT_PEAK_THRESHOLD_DBFS;
+        		if(!mMediaPlayer.setActivityThresholds(rms, peak)) {
+        			LOGGER.warn("threshold parameter is only used with energy detection");
+        		}
+        	} catch (NumberFormatException e) {
+        		LOGGER.error("threshold parameter could not be converted to a number");
+        	}
+        }
+        for(StreamActivityMonitor monitor : getActivityMonitors()) {
+        	ActivityStateMachine stateMachine = monitor.getStateMachine();
+        	if(mCmd.hasOption("minon")) {
+        		try {
+        			stateMachine.setMinOnDuration(Integer.parseInt(mCmd.getOptionValue("minon")));
+        		} catch (NumberFormatException e) {
+        			LOGGER.error("minon parameter could not be convered to an integer");
+        		}
+        	}
+        	if(mCmd.hasOption("hang")) {
+        		String[] hang = mCmd.getOptionValue("hang").split(",");
+        		try {
+        			int base = Integer.parseInt(hang[0]);
+        			int max = hang.length > 1 ? Integer.parseInt(hang[1]) : base;
+        			stateMachine.setBaseHangTime(base);
+        			stateMachine.setMaxHangTime(max);
+        			stateMachine.setAdaptive(max > base);
+        		} catch (NumberFormatException e) {
+        			LOGGER.error("hang parameter could not be converted to a number");
+        		}
+        	}
+        }
+        if(mCmd.hasOption("outputrate")) {
+        	try {
+        		if(!mMediaPlayer.setOutputRate(Integer.parseInt(mCmd.getOptionValue("outputrate")))) {
+        			LOGGER.error("Stream audio can not be resampled");
+        		}
+        	} catch (NumberFormatException e) {
+        		LOGGER.error("outputrate parameter could not be convered to an integer");
+        	}
+        }
+        if(mCmd.hasOption("dsp")) {
+        	List<DspStage> stages = new ArrayList<DspStage>();
+        	for(String stage : mCmd.getOptionValue("dsp").split(",")) {
+        		DspStageType type = DspStageType.fromString(stage);
+        		if(type == null) {
+        			LOGGER.error("DSP stage '{}', does not exist. Running without it", stage);
+        		}else {
+        			stages.add(type.create());
+        		}
+        	}
+        	// Before replay and the archive, so they keep what was heard
+        	mDsp = new DspChain(stages.toArray(new DspStage[stages.size()]));
+        	if(!mMediaPlayer.addProcessor(mDsp)) {
+        		LOGGER.error("Stream audio can not be processed");
+        		mDsp = null;
+        	}
+        }
+        if(mCmd.hasOption("spectrum")) {
+        	mSpectrum = new SpectrumAnalyzer();
+        	if(mMediaPlayer.addProcessor(mSpectrum)) {
+        		mMediaPlayer.addObserver(mSpectrum);
+        	}else {
+        		LOGGER.error("Stream audio can not be analyzed for the spectrum");
+        		mSpectrum = null;
+        	}
+        }
+        if(mCmd.hasOption("replay") || mCmd.hasOption("replayfile")) {
+        	int minutes = SettingsOptions.REPLAY_DEFAULT;
+        	if(mCmd.hasOption("replay")) {
+        		try {
+        			minutes = Integer.parseInt(mCmd.getOptionValue("replay"));
+        		} catch (NumberFormatException e) {
+        			LOGGER.error("replay parameter could not be convered to an integer");
+        		}
+        	}
+        	int sampleRate = StreamConfiguration.getSampleRate(config);
+        	int channels = StreamConfiguration.getChannels(config);
+        	int threshold = mMediaPlayer.getActivityMonitor().getInactivationThreshold();
+        	try {
+        		if(mCmd.hasOption("replayfile")) {
+        			mReplayBuffer = new ReplayBuffer(new File(mCmd.getOptionValue("replayfile")), sampleRate, channels, minutes, threshold);
+        		}else {
+        			mReplayBuffer = new ReplayBuffer(sampleRate, channels, minutes, threshold);
+        		}
+        	} catch (IOException e) {
+        		LOGGER.error("Could not map the replay file: ", e);
+        	} catch (IllegalArgumentException e) {
+        		LOGGER.error("Could not create the replay buffer: {}", e.getMessage());
+        	}
+        	if(mReplayBuffer != null) {
+        		if(mMediaPlayer.addProcessor(mReplayBuffer)) {
+        			mMediaPlayer.addObserver(mReplayBuffer);
+        		}else {
+        			LOGGER.error("Stream audio can not be captured for replay");
+        			mReplayBuffer.close();
+        			mReplayBuffer = null;
+        		}
+        	}
+        }
+        if(mCmd.hasOption("archive")) {
+        	ArchiveEncoding encoding = ArchiveEncoding.ULAW;
+        	if(mCmd.hasOption("archiveencoding")) {
+        		String archiveEncoding = mCmd.getOptionValue("archiveencoding");
+        		encoding = ArchiveEncoding.fromString(archiveEncoding);
+        		if(encoding == null) {
+        			LOGGER.error("Archive encoding '{}', does not exist. Archiving with {}", archiveEncoding, ArchiveEncoding.ULAW);
+        			encoding = ArchiveEncoding.ULAW;
+        		}
+        	}
+        	int sampleRate = StreamConfiguration.getSampleRate(config);
+        	int channels = StreamConfiguration.getChannels(config);
+        	try {
+        		mArchive = new TransmissionArchive(new File(mCmd.getOptionValue("archive")), sampleRate, channels, encoding, mMediaPlayer.getActivityMonitor().getInactivationThreshold());
+        		if(mMediaPlayer.addProcessor(mArchive)) {
+        			mMediaPlayer.addObserver(mArchive);
+        		}else {
+        			LOGGER.error("Stream audio can not be captured for the archive");
+        			mArchive.close();
+        			mArchive = null;
+        		}
+        	} catch (IOException e) {
+        		LOGGER.error("Could not open the transmission archive: ", e);
+        	}
+        }
+        if(mCmd.hasOption("catchup")) {
+        	catchUpStream(config);
+        }
+        if(mCmd.hasOption("rebroadcast")) {
+        	rebroadcastStream(config);
+        }
+        if(mCmd.hasOption("preroll")) {
+        	preRollStream(config);
         }
 		try {
 			mBluetoothPlayer = new MediaBluetoothPlayer();
 		} catch (UnsupportedOperatingSystemException e) {
 			LOGGER.error(e.toString());
 		}
+		SwitchMode switchMode = SwitchMode.PAUSE;
+		if(mCmd.hasOption("switchmode")) {
+			String mode = mCmd.getOptionValue("switchmode");
+			switchMode = SwitchMode.fromString(mode);
+			if(switchMode == null) {
+				LOGGER.error("Switch mode '{}', does not exist. Running with {}", mode, SwitchMode.PAUSE);
+				switchMode = SwitchMode.PAUSE;
+			}
+		}
+		if(switchMode == SwitchMode.DUCK && mBluetoothPlayer != null) {
+			// Added after pre-roll so held audio is faded in when it's let out
+			mStreamGain = new GainRamp(0f);
+			if(!mMediaPlayer.addProcessor(mStreamGain)) {
+				LOGGER.error("Stream audio can not be faded for ducking");
+				mStreamGain = null;
+			}
+		}
 		
 		// Create GUI
 		EventQueue.invokeLater(this);
@@ -97,10 +341,42 @@ public class Main implements Runnable, MediaController {
 		mMediaPlayer.play();
 		mMediaPlayer.setMute(false);
 		mMediaPlayer.setVolume(100);
+		superviseStreams();
+		if(mCmd.hasOption("stats")) {
+			MediaStreamPlayer statisticsPlayer = null;
+			if(mMediaPlayer instanceof MediaStreamPlayer) {
+				statisticsPlayer = (MediaStreamPlayer)mMediaPlayer;
+			}else if(mMediaPlayer instanceof StreamGroup && ((StreamGroup)mMediaPlayer).getPlayers().get(0) instanceof MediaStreamPlayer) {
+				statisticsPlayer = (MediaStreamPlayer)((StreamGroup)mMediaPlayer).getPlayers().get(0);
+			}
+			if(statisticsPlayer == null) {
+				LOGGER.warn("stats parameter is only used by vlc streams");
+			}else {
+				mStatistics = statisticsPlayer.startStatistics(StreamStatistics.DEFAULT_INTERVAL, StreamStatistics.DEFAULT_CAPACITY);
+			}
+		}
+		if(mCmd.hasOption("op25")) {
+			try {
+				mPoller = new Op25StatusPoller(new URL(mCmd.getOptionValue("op25")));
+				mMediaPlayer.addObserver(mPoller);
+				mPoller.start();
+			} catch (MalformedURLException e) {
+				LOGGER.error("op25 parameter is not a valid URL");
+			}
+		}
 		if(mBluetoothPlayer != null) {
 			mSwitcher = new MediaSwitcher(this);
+			if(mCmd.hasOption("talkgroups")) {
+				prioritizeTalkgroups();
+			}
 			mMediaPlayer.addObserver(mSwitcher);
 			mBluetoothPlayer.addObserver(mSwitcher);
+			if(mPreRoll != null || mCatchUp != null) {
+				mSwitcher.addObserver(this);
+			}
+			if(switchMode == SwitchMode.DUCK) {
+				duckStream();
+			}
 			int scanmax = SettingsOptions.SCANMAX_DEFAULT;
 			if(mCmd.hasOption("scanmax")) {
 				try {
@@ -117,6 +393,230 @@ public class Main implements Runnable, MediaController {
 		mMediaPlayer.join();
 	}
 	
+	private void calibrate(StreamConfiguration config) {
+		String[] calibrate = mCmd.getOptionValue("calibrate").split(",");
+		int seconds = StreamCalibrator.DEFAULT_CANDIDATE_SECONDS;
+		if(calibrate.length > 1) {
+			try {
+				seconds = Integer.parseInt(calibrate[1]);
+			} catch (NumberFormatException e) {
+				LOGGER.error("calibrate parameter could not be converted to a number");
+			}
+		}
+		if(config != null && !config.usesVlc()) {
+			LOGGER.error("Configuration {} isn't played by vlc, so there's nothing to calibrate", config);
+			System.exit(1);
+		}
+		File file = new File(mCmd.hasOption("profiles") ? mCmd.getOptionValue("profiles") : SettingsOptions.PROFILES_DEFAULT);
+		StreamCalibrator calibrator = new StreamCalibrator(mCmd.getOptionValues("uri")[0], config, seconds);
+		try {
+			StreamConfiguration profile = calibrator.calibrate(calibrate[0]);
+			if(profile == null) {
+				LOGGER.error("No candidate reached audio. Calibrate while the stream is transmitting");
+				System.exit(1);
+			}
+			StreamConfiguration.saveProfile(file, profile);
+			LOGGER.info("Saved profile {} to {}, run with -pf {} -c {}", profile, file, file, profile);
+		} catch (InterruptedException e) {
+			LOGGER.error("Calibration was interrupted");
+			System.exit(1);
+		} catch (IOException e) {
+			LOGGER.error("Could not save the profile: ", e);
+			System.exit(1);
+		}
+		System.exit(0);
+	}
+	
+	private StreamGroup createStreamGroup(String[] uris, StreamConfiguration config) {
+		AudiblePolicy policy = AudiblePolicy.PRIORITY;
+		if(mCmd.hasOption("policy")) {
+			String audiblePolicy = mCmd.getOptionValue("policy");
+			policy = AudiblePolicy.fromString(audiblePolicy);
+			if(policy == null) {
+				LOGGER.error("Policy '{}', does not exist. Running with {}", audiblePolicy, AudiblePolicy.PRIORITY);
+				policy = AudiblePolicy.PRIORITY;
+			}
+		}
+		StreamGroup group = new StreamGroup(policy);
+		// Every vlc stream shares one libvlc instance
+		SharedMediaPlayerFactory factory = null;
+		if(config == null) {
+			factory = new SharedMediaPlayerFactory();
+		}else if(config.usesVlc()) {
+			factory = config.createFactory();
+		}
+		for(String uri : uris) {
+			group.addPlayer(config == null ? new MediaStreamPlayer(uri, factory, null) : config.createPlayer(uri, factory));
+		}
+		LOGGER.info("Monitoring {} streams", uris.length);
+		return group;
+	}
+	
+	private PresetStreamPlayer createPresetPlayer(String[] uris, StreamConfiguration config) {
+		int standby = PresetStreamPlayer.DEFAULT_STANDBY;
+		try {
+			standby = Integer.parseInt(mCmd.getOptionValue("presets"));
+		} catch (NumberFormatException e) {
+			LOGGER.error("presets parameter could not be convered to an integer");
+		}
+		if(config != null && !config.usesVlc()) {
+			LOGGER.warn("Presets are played with vlc, running without the configuration");
+			config = null;
+		}
+		// Every preset shares one libvlc instance, so one on standby costs a media player rather than a whole instance
+		SharedMediaPlayerFactory factory = config == null ? new SharedMediaPlayerFactory() : config.createFactory();
+		PresetStreamPlayer presets = new PresetStreamPlayer(Arrays.asList(uris), factory, config, standby);
+		LOGGER.info("Playing {} presets with {} on standby", uris.length, presets.getPlayers().size() - 1);
+		return presets;
+	}
+	
+	private void duckStream() {
+		String[] duck = (mCmd.hasOption("duck") ? mCmd.getOptionValue("duck") : SettingsOptions.DUCK_DEFAULT).split(",");
+		int level = MediaSwitcher.DEFAULT_DUCK_LEVEL;
+		int rampTime = MediaSwitcher.DEFAULT_RAMP_TIME;
+		try {
+			level = Integer.parseInt(duck[0]);
+			if(duck.length > 1) {
+				rampTime = Integer.parseInt(duck[1]);
+			}
+		} catch (NumberFormatException e) {
+			LOGGER.error("duck parameter could not be converted to a number");
+		}
+		mSwitcher.setDucking(mStreamGain, level, rampTime);
+		mSwitcher.setSwitchMode(SwitchMode.DUCK);
+	}
+	
+	private void prioritizeTalkgroups() {
+		if(mPoller == null) {
+			LOGGER.warn("talkgroups parameter is only used with the op25 parameter");
+			return;
+		}
+		Set<Integer> talkgroups = new HashSet<Integer>();
+		for(String talkgroup : mCmd.getOptionValue("talkgroups").split(",")) {
+			try {
+				talkgroups.add(Integer.parseInt(talkgroup.trim()));
+			} catch (NumberFormatException e) {
+				LOGGER.error("talkgroup '{}' could not be convered to an integer", talkgroup);
+			}
+		}
+		mSwitcher.setPriorityTalkgroups(talkgroups);
+		mPoller.addObserver(mSwitcher);
+	}
+	
+	private void catchUpStream(StreamConfiguration config) {
+		String[] catchUp = mCmd.getOptionValue("catchup").split(",");
+		int minutes = CatchUpQueue.DEFAULT_MINUTES;
+		float speed = CatchUpQueue.DEFAULT_SPEED;
+		try {
+			minutes = Integer.parseInt(catchUp[0]);
+			if(catchUp.length > 1) {
+				speed = Float.parseFloat(catchUp[1]);
+			}
+		} catch (NumberFormatException e) {
+			LOGGER.error("catchup parameter could not be converted to a number");
+		}
+		int sampleRate = StreamConfiguration.getSampleRate(config);
+		int channels = StreamConfiguration.getChannels(config);
+		mCatchUp = new CatchUpQueue(sampleRate, channels, minutes, speed, mMediaPlayer.getActivityMonitor().getInactivationThreshold());
+		if(mMediaPlayer.addProcessor(mCatchUp)) {
+			mMediaPlayer.addObserver(mCatchUp);
+		}else {
+			LOGGER.error("Stream audio can not be captured for catch-up");
+			mCatchUp.close();
+			mCatchUp = null;
+		}
+	}
+	
+	private void rebroadcastStream(StreamConfiguration config) {
+		int port = RebroadcastServer.DEFAULT_PORT;
+		try {
+			port = Integer.parseInt(mCmd.getOptionValue("rebroadcast"));
+		} catch (NumberFormatException e) {
+			LOGGER.error("rebroadcast parameter could not be convered to an integer");
+		}
+		int sampleRate = StreamConfiguration.getSampleRate(config);
+		int channels = StreamConfiguration.getChannels(config);
+		try {
+			mRebroadcast = new RebroadcastServer(port, sampleRate, channels);
+		} catch (IOException e) {
+			LOGGER.error("Could not open the rebroadcast port: ", e);
+			return;
+		}
+		// Before pre-roll, so listeners hear it live
+		if(!mMediaPlayer.addProcessor(mRebroadcast)) {
+			LOGGER.error("Stream audio can not be captured for rebroadcast");
+			mRebroadcast.close();
+			mRebroadcast = null;
+		}
+	}
+	
+	private void preRollStream(StreamConfiguration config) {
+		if(mMediaPlayer instanceof PresetStreamPlayer) {
+			// The delay line follows one stream's activity, and switching presets changes the stream
+			LOGGER.warn("preroll parameter is not used with presets");
+			return;
+		}
+		if(mMediaPlayer instanceof StreamGroup) {
+			// The group's audio is whichever stream is heard, which isn't the stream of its activity monitor
+			LOGGER.warn("preroll parameter is not used when monitoring several streams");
+			return;
+		}
+		int hold = SettingsOptions.PREROLL_DEFAULT;
+		try {
+			hold = Integer.parseInt(mCmd.getOptionValue("preroll"));
+		} catch (NumberFormatException e) {
+			LOGGER.error("preroll parameter could not be convered to an integer");
+		}
+		int sampleRate = StreamConfiguration.getSampleRate(config);
+		int channels = StreamConfiguration.getChannels(config);
+		mPreRoll = new PreRollDelayLine(mMediaPlayer.getActivityMonitor(), sampleRate, channels, hold);
+		// Added last, so replay and the archive still get the audio as it arrived
+		if(!mMediaPlayer.addProcessor(mPreRoll)) {
+			LOGGER.error("Stream audio can not be held for pre-roll");
+			mPreRoll = null;
+		}
+	}
+	
+	private List<StreamActivityMonitor> getActivityMonitors() {
+		List<StreamActivityMonitor> monitors = new ArrayList<StreamActivityMonitor>();
+		if(mMediaPlayer instanceof StreamGroup) {
+			for(StreamPlayer player : ((StreamGroup)mMediaPlayer).getPlayers()) {
+				monitors.add(player.getActivityMonitor());
+			}
+		}else if(mMediaPlayer instanceof PresetStreamPlayer) {
+			for(StreamPlayer player : ((PresetStreamPlayer)mMediaPlayer).getPlayers()) {
+				monitors.add(player.getActivityMonitor());
+			}
+		}else if(mMediaPlayer != null) {
+			monitors.add(mMediaPlayer.getActivityMonitor());
+		}
+		return monitors;
+	}
+	
+	private void superviseStreams() {
+		List<String> fallbacks = Collections.emptyList();
+		if(mCmd.hasOption("fallback")) {
+			fallbacks = Arrays.asList(mCmd.getOptionValues("fallback"));
+		}
+		if(mMediaPlayer instanceof MediaStreamPlayer) {
+			mSupervisors.add(new StreamSupervisor((MediaStreamPlayer)mMediaPlayer, fallbacks));
+		}else if(mMediaPlayer instanceof StreamGroup) {
+			if(!fallbacks.isEmpty()) {
+				LOGGER.warn("fallback parameter is not used when monitoring several streams");
+			}
+			for(StreamPlayer player : ((StreamGroup)mMediaPlayer).getPlayers()) {
+				if(player instanceof MediaStreamPlayer) {
+					mSupervisors.add(new StreamSupervisor((MediaStreamPlayer)player));
+				}
+			}
+		}else if(!fallbacks.isEmpty()) {
+			LOGGER.warn("fallback parameter is only used by vlc streams");
+		}
+		for(StreamSupervisor supervisor : mSupervisors) {
+			supervisor.start();
+		}
+	}
+	
 	@Override
 	public void run() {
 		try {
@@ -127,7 +627,7 @@ public class Main implements Runnable, MediaController {
 		}
 	}
 	
-	public MediaStreamPlayer getStreamPlayer() {
+	public StreamPlayer getStreamPlayer() {
 		return mMediaPlayer;
 	}
 
@@ -135,11 +635,47 @@ public class Main implements Runnable, MediaController {
 		return mBluetoothPlayer;
 	}
 	
+	@Override
+	public ReplayBuffer getReplayBuffer() {
+		return mReplayBuffer;
+	}
+	
+	@Override
+	public CatchUpQueue getCatchUpQueue() {
+		return mCatchUp;
+	}
+	
+	@Override
+	public StreamStatistics getStreamStatistics() {
+		return mStatistics;
+	}
+	
+	@Override
+	public SpectrumAnalyzer getSpectrumAnalyzer() {
+		return mSpectrum;
+	}
+	
 	@Override
 	public MediaSwitcher getSwitcher() {
 		return mSwitcher;
 	}
 	
+	@Override
+	public void switchCompleted() {
+		PreRollDelayLine preRoll = mPreRoll;
+		if(preRoll != null) {
+			preRoll.release();
+		}
+	}
+	
+	@Override
+	public void yieldChanged(boolean shouldYield) {
+		CatchUpQueue catchUp = mCatchUp;
+		if(catchUp != null) {
+			catchUp.setCapturing(!shouldYield);
+		}
+	}
+	
 	@Override
 	public int getAmplifyVolume() {
 		int volume = 0;
@@ -152,6 +688,47 @@ public class Main implements Runnable, MediaController {
 	}
 
 	public void disposeMediaPlayers() {
+		for(StreamSupervisor supervisor : mSupervisors) {
+			supervisor.stop();
+		}
+		mSupervisors.clear();
+		if(mReplayBuffer != null) {
+			mReplayBuffer.close();
+			mReplayBuffer = null;
+		}
+		if(mArchive != null) {
+			mArchive.close();
+			mArchive = null;
+		}
+		if(mRebroadcast != null) {
+			mRebroadcast.close();
+			LOGGER.info("Rebroadcast: {}", mRebroadcast);
+			mRebroadcast = null;
+		}
+		if(mCatchUp != null) {
+			mCatchUp.close();
+			LOGGER.info("Catch-up: {}", mCatchUp);
+			mCatchUp = null;
+		}
+		for(StreamActivityMonitor monitor : getActivityMonitors()) {
+			LOGGER.info("Stream activity: {}", monitor.getStateMachine());
+		}
+		if(mPoller != null) {
+			mPoller.stop();
+			LOGGER.info("OP25: {}", mPoller);
+			mPoller = null;
+		}
+		if(mDsp != null) {
+			LOGGER.info("DSP: {}", mDsp);
+			mDsp = null;
+		}
+		if(mPreRoll != null) {
+			LOGGER.info("Pre-roll: {}", mPreRoll);
+			mPreRoll = null;
+		}
+		if(mMediaPlayer instanceof PresetStreamPlayer) {
+			LOGGER.info("Presets: {}", mMediaPlayer);
+		}
 		if(mMediaPlayer != null) {
 			//mMediaPlayer.stop();
 			mMediaPlayer.dispose();
@@ -161,6 +738,23 @@ public class Main implements Runnable, MediaController {
 			mBluetoothPlayer.dispose();
 			mBluetoothPlayer = null;
 		}
+		logProcessLoad();
+	}
+	
+	/**
+	 * Logs the cpu used by the whole process, vlc's native threads included, so options like resampling can be compared by running with and without them
+	 */
+	private static void logProcessLoad() {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if(!(os instanceof com.sun.management.OperatingSystemMXBean)) {
+			return;
+		}
+		long cpuNanos = ((com.sun.management.OperatingSystemMXBean)os).getProcessCpuTime();
+		long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+		if(cpuNanos < 0 || uptime <= 0) {
+			return;
+		}
+		LOGGER.info("Process used {}% of a core over {}s", String.format("%.1f", cpuNanos / 10000d / uptime), uptime / 1000);
 	}
 	
 }
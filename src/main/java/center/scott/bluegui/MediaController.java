@@ -17,7 +17,11 @@
 package center.scott.bluegui;
 
 import center.scott.bluegui.bluetooth.MediaBluetoothPlayer;
-import center.scott.bluegui.stream.MediaStreamPlayer;
+import center.scott.bluegui.gui.component.SpectrumAnalyzer;
+import center.scott.bluegui.stream.CatchUpQueue;
+import center.scott.bluegui.stream.ReplayBuffer;
+import center.scott.bluegui.stream.StreamPlayer;
+import center.scott.bluegui.stream.StreamStatistics;
 
 /**
  * An item that is used to control media players. More specifically, a class that has a "has-a" relationship with media players or another MediaController.
@@ -26,10 +30,10 @@ import center.scott.bluegui.stream.MediaStreamPlayer;
 public interface MediaController {
 	
 	/**
-	 * Gets the current MediaStreamPlayer
-	 * @return a {@link MediaStreamPlayer}, or null if there is none or one hasn't been instantiated
+	 * Gets the current StreamPlayer
+	 * @return a {@link StreamPlayer}, or null if there is none or one hasn't been instantiated
 	 */
-	public MediaStreamPlayer getStreamPlayer();
+	public StreamPlayer getStreamPlayer();
 	
 	/**
 	 * Gets the current MediaBluetoothPlayer
@@ -37,6 +41,30 @@ public interface MediaController {
 	 */
 	public MediaBluetoothPlayer getBluetoothPlayer();
 	
+	/**
+	 * Gets the ReplayBuffer keeping the last minutes of {@link #getStreamPlayer()}
+	 * @return a {@link ReplayBuffer}, or null if replay is not enabled
+	 */
+	public ReplayBuffer getReplayBuffer();
+	
+	/**
+	 * Gets the CatchUpQueue keeping transmissions missed while {@link #getSwitcher()} wasn't yielding
+	 * @return a {@link CatchUpQueue}, or null if catch-up is not enabled
+	 */
+	public CatchUpQueue getCatchUpQueue();
+	
+	/**
+	 * Gets the sampled vlc statistics of {@link #getStreamPlayer()}
+	 * @return the {@link StreamStatistics}, or null if statistics aren't being sampled
+	 */
+	public StreamStatistics getStreamStatistics();
+	
+	/**
+	 * Gets the SpectrumAnalyzer of {@link #getStreamPlayer()}'s audio
+	 * @return a {@link SpectrumAnalyzer}, or null if the spectrum isn't shown
+	 */
+	public SpectrumAnalyzer getSpectrumAnalyzer();
+	
 	/**
 	 * Gets the MediaSwitcher responsible for switching the media players
 	 * @return the current {@link MediaSwitcher}, or null if there is none or one hasn't been instantiated
@@ -16,25 +16,66 @@
 */
 package center.scott.bluegui;
 
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import center.scott.bluegui.bluetooth.BluetoothActivityObserver;
+import center.scott.bluegui.bluetooth.MediaBluetoothPlayer;
 import center.scott.bluegui.bluetooth.Status;
 import center.scott.bluegui.bluetooth.Track;
 import center.scott.bluegui.bluetooth.Volume;
 import center.scott.bluegui.stream.StreamActivityObserver;
+import center.scott.bluegui.stream.StreamScheduler;
+import center.scott.bluegui.stream.audio.GainRamp;
+import center.scott.bluegui.stream.op25.CallMetadata;
+import center.scott.bluegui.stream.op25.CallMetadataObserver;
 
 /**
  * Switcher that yields a bluetooth player to {@link StreamActivityObserver#streamActivated()} and {@link StreamActivityObserver#streamInactivated()}
  * @author Scott Maday
  */
-public class MediaSwitcher implements StreamActivityObserver, BluetoothActivityObserver {
+public class MediaSwitcher implements StreamActivityObserver, BluetoothActivityObserver, CallMetadataObserver {
 	private final static Logger LOGGER = LoggerFactory.getLogger(MediaSwitcher.class);
+	public final static int DEFAULT_DUCK_LEVEL = 20;
+	public final static int DEFAULT_RAMP_TIME = 150;
+	/**
+	 * Longest the switch waits for the talkgroup of a transmission before yielding to it, in miliseconds
+	 */
+	public final static int TALKGROUP_WAIT = 500;
+	private final static String THREAD_NAME = "Bluetooth control";
 	
 	private MediaController mController;
-	private boolean mShouldYield;
+	private volatile boolean mShouldYield;
+	private volatile boolean mActive;
 	private Volume mVolume;
+	private volatile SwitchMode mSwitchMode = SwitchMode.PAUSE;
+	private GainRamp mStreamGain;
+	private int mDuckLevel = DEFAULT_DUCK_LEVEL;
+	private int mRampTime = DEFAULT_RAMP_TIME;
+	private boolean mDucked;
+	private Set<Integer> mPriorityTalkgroups;
+	private CallMetadata mCall;
+	private boolean mCallKnown;
+	private boolean mDecided;
+	private boolean mYielding;
+	private final List<SwitchObserver> mObservers = new CopyOnWriteArrayList<SwitchObserver>();
+	private ScheduledThreadPoolExecutor mBluetoothExecutor;
+	private ScheduledFuture<?> mVolumeFuture;
+	private ScheduledFuture<?> mTalkgroupFuture;
+	private final Runnable mTalkgroupTimeout = new Runnable() {
+		@Override
+		public void run() {
+			talkgroupTimedOut();
+		}
+	};
 	
 	/**
 	 * Creates a media switcher
@@ -59,6 +100,12 @@ public class MediaSwitcher implements StreamActivityObserver, BluetoothActivityO
 	 */
 	public void setShouldYield(boolean shouldYield) {
 		mShouldYield = shouldYield;
+		if(mSwitchMode == SwitchMode.DUCK) {
+			updateDucking();
+		}
+		for(SwitchObserver observer : mObservers) {
+			observer.yieldChanged(shouldYield);
+		}
 	}
 	/**
 	 * Gets if the bluetooth player is yielding to {@link StreamActivityObserver}
@@ -68,21 +115,98 @@ public class MediaSwitcher implements StreamActivityObserver, BluetoothActivityO
 		return mShouldYield;
 	}
 	
+	/**
+	 * Sets what's done to the bluetooth player while a stream is active. This takes effect from the next switch
+	 * @param switchMode to use
+	 * @see #setDucking(GainRamp, int, int)
+	 */
+	public void setSwitchMode(SwitchMode switchMode) {
+		mSwitchMode = switchMode;
+	}
+	/**
+	 * @return what's done to the bluetooth player while a stream is active
+	 */
+	public SwitchMode getSwitchMode() {
+		return mSwitchMode;
+	}
+	
+	/**
+	 * Configures {@link SwitchMode#DUCK}. Switching only ramps the stream's gain, and the bluetooth volume is turned down over D-Bus on a thread of its own once the ramp is done,
+	 * so a slow phone never holds up the switch
+	 * @param streamGain ramp on the stream's audio, faded in while the stream is active and out while it's not. May be null to leave the stream alone
+	 * @param duckLevel percent of the bluetooth volume kept while ducked
+	 * @param rampTime how long the stream's fades take in miliseconds
+	 */
+	public synchronized void setDucking(GainRamp streamGain, int duckLevel, int rampTime) {
+		mStreamGain = streamGain;
+		mDuckLevel = duckLevel;
+		mRampTime = rampTime;
+	}
+	
+	/**
+	 * Only yields to transmissions on the given talkgroups. The talkgroup of each transmission comes from {@link #callUpdated(CallMetadata)},
+	 * and the switch waits up to {@link #TALKGROUP_WAIT} for it once the stream activates. Transmissions are yielded to when the talkgroup can't be fetched in time
+	 * @param priorityTalkgroups to yield to, or null to yield to every transmission
+	 */
+	public synchronized void setPriorityTalkgroups(Set<Integer> priorityTalkgroups) {
+		mPriorityTalkgroups = priorityTalkgroups;
+	}
+	/**
+	 * @return the talkgroups yielded to, or null if every transmission is yielded to
+	 */
+	public synchronized Set<Integer> getPriorityTalkgroups() {
+		return mPriorityTalkgroups;
+	}
+	
+	/**
+	 * Adds the switch observer that will be receiving notifications
+	 * @param observer to be added
+	 * @see SwitchObserver
+	 */
+	public void addObserver(SwitchObserver observer) {
+		mObservers.add(observer);
+	}
+	
+	/**
+	 * Removes the switch observer from receiving notifications
+	 * @param observer to be removed
+	 * @return <code>true</code> if the observer was removed successfully
+	 * @see SwitchObserver
+	 */
+	public boolean removeObserver(SwitchObserver observer) {
+		return mObservers.remove(observer);
+	}
+	
 	@Override
-	public void streamActivated() {
-		if(mShouldYield && mController != null && mController.getStreamPlayer() != null && mController.getBluetoothPlayer() != null) {
-			mController.getBluetoothPlayer().pause();
-			int ampVolume = mController.getAmplifyVolume();
-			if(mVolume != null && ampVolume > 0) {
-				new Volume(ampVolume).setMasterOutputVolume();
-			}
+	public synchronized void streamActivated() {
+		mActive = true;
+		mDecided = false;
+		if(mPriorityTalkgroups == null || mCallKnown) {
+			decide();
+			return;
+		}
+		if(mSwitchMode == SwitchMode.DUCK) {
+			updateDucking();
 		}
+		cancelTalkgroupWait();
+		mTalkgroupFuture = StreamScheduler.getScheduler().schedule(mTalkgroupTimeout, TALKGROUP_WAIT, TimeUnit.MILLISECONDS);
 	}
 
 	@Override
-	public void streamInactivated() {
-		if(mShouldYield && mController != null && mController.getStreamPlayer() != null && mController.getBluetoothPlayer() != null) {
-			mController.getBluetoothPlayer().play();
+	public synchronized void streamInactivated() {
+		mActive = false;
+		mCallKnown = false;
+		mDecided = false;
+		cancelTalkgroupWait();
+		boolean yielding = mYielding;
+		mYielding = false;
+		if(mSwitchMode == SwitchMode.DUCK) {
+			updateDucking();
+		}
+		if(yielding && mShouldYield && mController != null && mController.getStreamPlayer() != null && mController.getBluetoothPlayer() != null) {
+			if(mSwitchMode == SwitchMode.PAUSE) {
+				getBluetoothExecutor().execute(new PlaybackTask(true));
+			}
 			if(mVolume != null && mController.getAmplifyVolume() > 0) {
 				mVolume.setMasterOutputVolume();
 			}
@@ -90,8 +214,21 @@ public class MediaSwitcher implements StreamActivityObserver, BluetoothActivityO
 	}
 	
 	@Override
-	public void volumeChanged(Volume volume) {
-		mVolume = volume;
+	public synchronized void callUpdated(CallMetadata metadata) {
+		mCall = metadata;
+		mCallKnown = true;
+		// A priority call taking over the stream is yielded to, but yielding isn't taken back mid transmission
+		if(mActive && (!mDecided || (!mYielding && isPriority(metadata)))) {
+			decide();
+		}
+	}
+	
+	@Override
+	public synchronized void volumeChanged(Volume volume) {
+		// While ducked, the volume reported back is the ducked one
+		if(!mDucked) {
+			mVolume = volume;
+		}
 	}
 	
 	@Override
@@ -100,4 +237,140 @@ public class MediaSwitcher implements StreamActivityObserver, BluetoothActivityO
 	@Override
 	public void statusChanged(Status status) {
 	}
+	
+	private synchronized void talkgroupTimedOut() {
+		mTalkgroupFuture = null;
+		if(mActive && !mDecided) {
+			LOGGER.warn("Talkgroup wasn't known after {}ms, yielding", TALKGROUP_WAIT);
+			mCall = null;
+			decide();
+		}
+	}
+	
+	private void cancelTalkgroupWait() {
+		if(mTalkgroupFuture != null) {
+			mTalkgroupFuture.cancel(false);
+			mTalkgroupFuture = null;
+		}
+	}
+	
+	private void decide() {
+		mDecided = true;
+		cancelTalkgroupWait();
+		mYielding = isPriority(mCall);
+		if(!mYielding) {
+			LOGGER.info("Not yielding to {}", mCall);
+		}
+		if(mSwitchMode == SwitchMode.DUCK) {
+			updateDucking();
+		}
+		if(mYielding && mShouldYield && mController != null && mController.getStreamPlayer() != null && mController.getBluetoothPlayer() != null) {
+			if(mSwitchMode == SwitchMode.PAUSE) {
+				getBluetoothExecutor().execute(new PlaybackTask(false));
+			}
+			int ampVolume = mController.getAmplifyVolume();
+			if(mVolume != null && ampVolume > 0) {
+				new Volume(ampVolume).setMasterOutputVolume();
+			}
+		}
+		for(SwitchObserver observer : mObservers) {
+			observer.switchCompleted();
+		}
+	}
+	
+	private boolean isPriority(CallMetadata metadata) {
+		return mPriorityTalkgroups == null || metadata == null || mPriorityTalkgroups.contains(metadata.getTalkgroup());
+	}
+	
+	private synchronized void updateDucking() {
+		boolean ducked = mShouldYield && mYielding;
+		if(mStreamGain != null) {
+			// The stream is only heard over the bluetooth player while it's being yielded to.
+			// It's heard while the talkgroup is still being looked up too, so the start of a transmission isn't faded out
+			boolean heard = !mShouldYield || mYielding || (mActive && !mDecided);
+			mStreamGain.rampTo(heard ? 1f : 0f, mRampTime);
+		}
+		if(ducked == mDucked || mController == null || mController.getBluetoothPlayer() == null || mVolume == null) {
+			return;
+		}
+		mDucked = ducked;
+		if(mVolumeFuture != null) {
+			mVolumeFuture.cancel(false);
+		}
+		int volume = ducked ? mVolume.asInt() * mDuckLevel / 100 : mVolume.asInt();
+		mVolumeFuture = getBluetoothExecutor().schedule(new VolumeTask(new Volume(volume), ducked), mRampTime, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Gets the thread bluetooth is controlled on. D-Bus calls block until the phone answers, so they're kept off the {@link StreamScheduler} that notifies the switcher,
+	 * where a slow phone would hold up every stream. The single thread keeps pauses, plays and volume changes in the order they were made
+	 * @return the executor
+	 */
+	private synchronized ScheduledThreadPoolExecutor getBluetoothExecutor() {
+		if(mBluetoothExecutor == null) {
+			mBluetoothExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, THREAD_NAME);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			mBluetoothExecutor.setRemoveOnCancelPolicy(true);
+		}
+		return mBluetoothExecutor;
+	}
+	
+	
+	/**
+	 * Pauses or plays the bluetooth player off the switching path
+	 */
+	private class PlaybackTask implements Runnable {
+		private final boolean mPlay;
+		
+		public PlaybackTask(boolean play) {
+			mPlay = play;
+		}
+		
+		@Override
+		public void run() {
+			MediaBluetoothPlayer bluetoothPlayer = mController.getBluetoothPlayer();
+			if(bluetoothPlayer == null) {
+				return;
+			}
+			if(mPlay) {
+				bluetoothPlayer.play();
+			}else {
+				bluetoothPlayer.pause();
+			}
+		}
+	}
+	
+	/**
+	 * Sets the bluetooth volume off the switching path, since D-Bus calls block until the phone answers
+	 */
+	private class VolumeTask implements Runnable {
+		private final Volume mTarget;
+		private final boolean mDucking;
+		
+		public VolumeTask(Volume target, boolean ducking) {
+			mTarget = target;
+			mDucking = ducking;
+		}
+		
+		@Override
+		public void run() {
+			MediaBluetoothPlayer bluetoothPlayer = mController.getBluetoothPlayer();
+			if(bluetoothPlayer != null && bluetoothPlayer.setVolume(mTarget)) {
+				return;
+			}
+			LOGGER.warn("Could not {} the bluetooth player", mDucking ? "duck" : "restore");
+			synchronized(MediaSwitcher.this) {
+				// Tried again on the next switch
+				if(mDucked == mDucking) {
+					mDucked = !mDucking;
+				}
+			}
+		}
+	}
 }
@@ -19,6 +19,12 @@ package center.scott.bluegui;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 
+import center.scott.bluegui.stream.CatchUpQueue;
+import center.scott.bluegui.stream.FastStart;
+import center.scott.bluegui.stream.PresetStreamPlayer;
+import center.scott.bluegui.stream.RebroadcastServer;
+import center.scott.bluegui.stream.StreamCalibrator;
+
 /**
  * 
  * @author Scott Maday
@@ -28,15 +34,51 @@ public class SettingsOptions extends Options {
 	
 	public static final String APP_USAGE = "-uri <uri> [-param1 <arg1> ...]";
 	public static final int SCANMAX_DEFAULT = 10000;
+	public static final String THRESHOLD_DEFAULT = "-45,-20";
+	public static final int REPLAY_DEFAULT = 5;
+	public static final String HANG_DEFAULT = "2000,6000";
+	public static final int PREROLL_DEFAULT = 600;
+	public static final String DSP_DEFAULT = "highpass,agc,limiter";
+	public static final String CATCHUP_DEFAULT = CatchUpQueue.DEFAULT_MINUTES + "," + CatchUpQueue.DEFAULT_SPEED;
+	public static final String FASTSTART_DEFAULT = FastStart.DEFAULT_CACHE;
+	public static final String PROFILES_DEFAULT = "profiles.properties";
+	public static final String DUCK_DEFAULT = MediaSwitcher.DEFAULT_DUCK_LEVEL + "," + MediaSwitcher.DEFAULT_RAMP_TIME;
 	
 	public SettingsOptions() {
 		addOption("h",		"help",			false,	"Prints help");
 		addOption("f",		"fullscreen", 	false,	"Sets the main window to fullscreen mode");
 		
-		addOption("uri",					true,	"The uri to listen to on the media stream.", true);
-		addOption("c",		"config", 		true,	"Configures vlc with premade configuarion parameters");
+		addOption("uri",					true,	"The uri to listen to on the media stream. Give it more than once to monitor several streams, highest priority first", true);
+		addOption("c",		"config", 		true,	"Configures vlc with premade configuarion parameters, or a profile from the profiles file");
+		addOption("pf",		"profiles", 	true,	"A properties file of stream profiles usable as configurations, and where calibrated profiles are saved. The default for calibration is " + PROFILES_DEFAULT);
+		addOption("cal",	"calibrate", 	true,	"Tries vlc caching, clock jitter and audio output settings against the live uri and saves the best as a profile, as <name>[,<seconds per candidate>]. The default is " + StreamCalibrator.DEFAULT_CANDIDATE_SECONDS + " seconds per candidate");
+		addOption("fs",		"faststart", 	false,	"Starts libvlc faster by caching where it was found in " + FASTSTART_DEFAULT + ", next to the profiles or in the home directory, and turning off features streams don't use");
+		addOption("vl",		"vlclog", 		true,	"The lowest level of libvlc messages to log, debug, notice, warning or error. The default is warning");
+		addOption("ce",		"capturestderr",	false,	"Captures the error stream into the log with libvlc's messages, at a limited rate, instead of printing it");
 		addOption("s",		"scanmax", 		true,	"The maximum amount of time in miliseconds for the default bluetooth dongle to initally scan for devices. The default is " + SCANMAX_DEFAULT);
 		addOption("a",		"amplify", 		true,	"Optionally amplifies the stream to the specified volume, 0-100");
+		addOption("fb",		"fallback", 	true,	"A uri to switch to when the stream fails. Give it more than once for several fallbacks, tried in order");
+		addOption("ps",		"presets", 		true,	"Treats the uris as station presets switched from the window, keeping the specified number of neighbouring presets buffered for instant switching. Try " + PresetStreamPlayer.DEFAULT_STANDBY);
+		addOption("p",		"policy", 		true,	"Which stream is heard when several are active, priority, firstactive or mix. The default is priority");
+		addOption("d",		"detect", 		true,	"How stream activity is detected, timechanged or energy. The default is timechanged");
+		addOption("mo",		"minon", 		true,	"How long in miliseconds a stream must keep being active before it's switched to. The default is 0");
+		addOption("hg",		"hang", 		true,	"How long in miliseconds a stream stays active after it goes quiet, as <base>[,<max>]. It stretches up to max while transmissions go back and forth. The default is " + HANG_DEFAULT);
+		addOption("t",		"threshold", 	true,	"The rms and peak level in dBFS that counts as activity for energy detection, as <rms>[,<peak>]. The default is " + THRESHOLD_DEFAULT);
+		addOption("sm",		"switchmode", 	true,	"What's done to the bluetooth player while a stream is active, pause or duck. The default is pause");
+		addOption("dk",		"duck", 		true,	"How far the bluetooth player is ducked and how long the stream fades take, as <percent>[,<ms>]. The default is " + DUCK_DEFAULT);
+		addOption("pr",		"preroll", 		true,	"Holds the start of each transmission for up to the specified number of miliseconds until the bluetooth player has paused, then catches up through silence. Try " + PREROLL_DEFAULT);
+		addOption("or",		"outputrate", 	true,	"Resamples the stream audio to the specified rate in hertz, like 48000, instead of leaving it to vlc or the sound system. The audio is played through java");
+		addOption("dsp",	"dsp", 			true,	"Processes the stream audio with the listed stages, from highpass, deemphasis, agc and limiter. Try " + DSP_DEFAULT);
+		addOption("r",		"replay", 		true,	"Keeps the specified number of minutes of the stream for instant replay. The default is " + REPLAY_DEFAULT + " when a replay file is given");
+		addOption("rf",		"replayfile", 	true,	"Keeps the replay audio in the specified file so it survives restarts");
+		addOption("op",		"op25", 		true,	"URL of OP25's HTTP interface, like http://127.0.0.1:8080/, to label transmissions with their talkgroup and radio");
+		addOption("tg",		"talkgroups", 	true,	"Only pauses the bluetooth player for transmissions on these talkgroups, as <id>[,<id>...]. Needs op25");
+		addOption("st",		"stats", 		false,	"Samples vlc's stream statistics. Tapping the track title shows them");
+		addOption("sp",		"spectrum", 	false,	"Shows a spectrum and VU meter of the stream audio while it's active");
+		addOption("cu",		"catchup", 		true,	"Keeps transmissions missed while the bluetooth player isn't yielding, as <minutes>[,<speed>] with a speed from 1 to 2. The default is " + CATCHUP_DEFAULT);
+		addOption("rb",		"rebroadcast", 	true,	"Serves the stream audio to other devices as HTTP audio/L16 on the specified port. Try " + RebroadcastServer.DEFAULT_PORT);
+		addOption("ar",		"archive", 		true,	"Archives every transmission to the specified directory");
+		addOption("ae",		"archiveencoding",	true,	"How archived audio is stored, pcm or ulaw. The default is ulaw");
 	}
 	
 	/**
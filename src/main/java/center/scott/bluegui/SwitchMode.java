@@ -0,0 +1,47 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui;
+
+/**
+ * What a {@link MediaSwitcher} does to the bluetooth player while a stream is active
+ * @author Scott Maday
+ */
+public enum SwitchMode {
+	/**
+	 * Pauses the bluetooth player and plays it again afterwards
+	 */
+	PAUSE,
+	/**
+	 * Keeps the bluetooth player playing with its volume turned down, and fades the stream in and out over it
+	 */
+	DUCK;
+	
+	/**
+	 * Attempts to get the SwitchMode from a string
+	 * @param mode case insensitive string to get the SwitchMode
+	 * @return {@link SwitchMode} if the mode is valid, null otherwise
+	 */
+	public static SwitchMode fromString(String mode) {
+		String modeUpper = mode.toUpperCase();
+		for(SwitchMode value : SwitchMode.values()) {
+			if(value.name().equals(modeUpper)) {
+				return value;
+			}
+		}
+		return null;
+	}
+}
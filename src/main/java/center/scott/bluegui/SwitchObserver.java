@@ -0,0 +1,36 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui;
+
+/**
+ * Interface for receiving notifications from a {@link MediaSwitcher}
+ * @author Scott Maday
+ */
+public interface SwitchObserver {
+	
+	/**
+	 * Notification for when the switcher has finished handing the audio over to an activated stream, whether or not it had to yield anything
+	 */
+	public void switchCompleted();
+	
+	/**
+	 * Notification for when the switcher starts or stops yielding to streams
+	 * @param shouldYield <code>true</code> if the switcher yields to streams
+	 * @see MediaSwitcher#setShouldYield(boolean)
+	 */
+	public void yieldChanged(boolean shouldYield);
+}
@@ -33,6 +33,7 @@ import org.freedesktop.dbus.connections.impl.DBusConnection;
 import org.freedesktop.dbus.connections.impl.DBusConnection.DBusBusType;
 import org.freedesktop.dbus.exceptions.DBusException;
 import org.freedesktop.dbus.handlers.AbstractPropertiesChangedHandler;
+import org.freedesktop.dbus.interfaces.Properties;
 import org.freedesktop.dbus.interfaces.Properties.PropertiesChanged;
 import org.freedesktop.dbus.types.Variant;
 import org.slf4j.Logger;
@@ -57,6 +58,7 @@ public class MediaBluetoothPlayer {
 	private Track mTrack = null;
 	protected DeviceManager mDeviceManager = null;
 	private boolean mPlaying = false;
+	private volatile String mTransportPath = null;
 	private List<BluetoothActivityObserver> mObservers = new ArrayList<BluetoothActivityObserver>();
 	
 	/**
@@ -300,6 +302,28 @@ public class MediaBluetoothPlayer {
 		}
 	}
 	
+	/**
+	 * Sets the volume of the bluetooth audio itself, which the device is told about as well.
+	 * The audio transport is only known after the device has reported its volume at least once
+	 * @param volume to set
+	 * @return <code>true</code> if the volume was set, <code>false</code> otherwise
+	 */
+	public boolean setVolume(Volume volume) {
+		DBusConnection connection = getConnection();
+		String transportPath = mTransportPath;
+		if(connection == null || transportPath == null) {
+			return false;
+		}
+		try {
+			Properties properties = connection.getRemoteObject("org.bluez", transportPath, Properties.class);
+			properties.Set("org.bluez.MediaTransport1", "Volume", volume.asUInt16());
+			return true;
+		} catch (Exception e) {
+			LOGGER.error("Could not set volume: ", e);
+		}
+		return false;
+	}
+	
 	/**
 	 * Gets if there's media playing.
 	 * @return <code>true</code> if it's certain that there's media playing
@@ -381,6 +405,7 @@ public class MediaBluetoothPlayer {
 						}
 						break;
 					case "Volume":
+						mTransportPath = changed.getPath();
 						try {
 							Volume volume = new Volume(value);
 							while(observerIterator.hasNext()) {
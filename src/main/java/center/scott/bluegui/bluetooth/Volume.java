@@ -76,6 +76,13 @@ public class Volume implements Runnable {
 	public float asFloat() {
 		return (float)mVolume / 100f;
 	}
+	/**
+	 * Represents the volume as a bluetooth property value
+	 * @return UInt16 from 0 to 0x7f
+	 */
+	public UInt16 asUInt16() {
+		return new UInt16(Math.max(0, Math.min(100, mVolume)) * 0x7f / 100);
+	}
 	
 	/**
 	 * Lists this volume to be set as the master output volume.
@@ -34,7 +34,13 @@ import center.scott.bluegui.bluetooth.Volume;
 import center.scott.bluegui.gui.component.ColorMode;
 import center.scott.bluegui.gui.component.ImageResource;
 import center.scott.bluegui.gui.component.JButtonColorable;
+import center.scott.bluegui.gui.component.SpectrumMeter;
+import center.scott.bluegui.gui.component.StatisticsOverlay;
+import center.scott.bluegui.stream.CatchUpQueue;
+import center.scott.bluegui.stream.PresetStreamPlayer;
+import center.scott.bluegui.stream.ReplayBuffer;
 import center.scott.bluegui.stream.StreamActivityObserver;
+import center.scott.bluegui.stream.StreamStatistics;
 
 import java.awt.GridBagLayout;
 import javax.swing.JProgressBar;
@@ -48,6 +54,8 @@ import java.awt.Font;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 
@@ -89,6 +97,14 @@ public class MainFrame extends JFrame implements StreamActivityObserver, Bluetoo
 	private JProgressBar mVolumeBar;
 	private JButtonColorable mColorModeButton;
 	private JButtonColorable mBluetoothConfigButton;
+	private JButtonColorable mReplayButton;
+	private JButtonColorable mCatchUpButton;
+	private StatisticsOverlay mStatisticsOverlay;
+	private SpectrumMeter mSpectrumMeter;
+	private JPanel stationPanel;
+	private JButtonColorable mPrevStationButton;
+	private JLabel mStationLabel;
+	private JButtonColorable mNextStationButton;
 	private JButtonColorable mCloseButton;
 
 	/**
@@ -127,9 +143,11 @@ public class MainFrame extends JFrame implements StreamActivityObserver, Bluetoo
 		setContentPane(contentPane);
 		GridBagLayout gbl_contentPane = new GridBagLayout();
 		gbl_contentPane.columnWidths = new int[]{0, 0};
-		gbl_contentPane.rowHeights = new int[]{40, 0, 0, 0, 50, 50, 40, 0};
+		boolean spectrum = mController != null && mController.getSpectrumAnalyzer() != null;
+		boolean presets = mController != null && mController.getStreamPlayer() instanceof PresetStreamPlayer;
+		gbl_contentPane.rowHeights = new int[]{40, 0, 0, 0, spectrum ? 30 : 0, presets ? 40 : 0, 50, 50, 40, 0};
 		gbl_contentPane.columnWeights = new double[]{1.0, Double.MIN_VALUE};
-		gbl_contentPane.rowWeights = new double[]{0.0, 0.0, 0.0, 0.0, 1.0, 0.0, 0.0, Double.MIN_VALUE};
+		gbl_contentPane.rowWeights = new double[]{0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 1.0, 0.0, 0.0, Double.MIN_VALUE};
 		contentPane.setLayout(gbl_contentPane);
 		addWindowListener(new WindowAdapter() {
 			@Override
@@ -187,6 +205,16 @@ public class MainFrame extends JFrame implements StreamActivityObserver, Bluetoo
 		gbc_mTitleLabel.gridx = 0;
 		gbc_mTitleLabel.gridy = 1;
 		contentPane.add(mTitleLabel, gbc_mTitleLabel);
+		if(mController != null && mController.getStreamStatistics() != null) {
+			mStatisticsOverlay = new StatisticsOverlay(mController.getStreamStatistics(), StreamStatistics.DEFAULT_INTERVAL);
+			setGlassPane(mStatisticsOverlay);
+			mTitleLabel.addMouseListener(new MouseAdapter() {
+				@Override
+				public void mouseClicked(MouseEvent e) {
+					mStatisticsOverlay.setVisible(!mStatisticsOverlay.isVisible());
+				}
+			});
+		}
 		
 		mArtistLabel = new JLabel("No Album");
 		mArtistLabel.setHorizontalAlignment(SwingConstants.CENTER);
@@ -206,12 +234,61 @@ public class MainFrame extends JFrame implements StreamActivityObserver, Bluetoo
 		gbc_mAlbumLabel.gridy = 3;
 		contentPane.add(mAlbumLabel, gbc_mAlbumLabel);
 		
+		if(spectrum) {
+			mSpectrumMeter = new SpectrumMeter(mController.getSpectrumAnalyzer());
+			GridBagConstraints gbc_mSpectrumMeter = new GridBagConstraints();
+			gbc_mSpectrumMeter.insets = new Insets(0, 0, 5, 0);
+			gbc_mSpectrumMeter.fill = GridBagConstraints.BOTH;
+			gbc_mSpectrumMeter.gridx = 0;
+			gbc_mSpectrumMeter.gridy = 4;
+			contentPane.add(mSpectrumMeter, gbc_mSpectrumMeter);
+		}
+		
+		if(presets) {
+			stationPanel = new JPanel();
+			GridBagConstraints gbc_stationPanel = new GridBagConstraints();
+			gbc_stationPanel.insets = new Insets(0, 0, 5, 0);
+			gbc_stationPanel.fill = GridBagConstraints.BOTH;
+			gbc_stationPanel.gridx = 0;
+			gbc_stationPanel.gridy = 5;
+			contentPane.add(stationPanel, gbc_stationPanel);
+			stationPanel.setLayout(new GridLayout(1, 0, 0, 0));
+			
+			mPrevStationButton = new JButtonColorable("<");
+			mPrevStationButton.addActionListener(new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					PresetStreamPlayer presetPlayer = (PresetStreamPlayer)mController.getStreamPlayer();
+					presetPlayer.previous();
+					updateStationLabel();
+				}
+			});
+			stationPanel.add(mPrevStationButton);
+			
+			mStationLabel = new JLabel();
+			mStationLabel.setHorizontalAlignment(SwingConstants.CENTER);
+			mStationLabel.setFont(new Font("Dialog", Font.BOLD, 12));
+			stationPanel.add(mStationLabel);
+			updateStationLabel();
+			
+			mNextStationButton = new JButtonColorable(">");
+			mNextStationButton.addActionListener(new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					PresetStreamPlayer presetPlayer = (PresetStreamPlayer)mController.getStreamPlayer();
+					presetPlayer.next();
+					updateStationLabel();
+				}
+			});
+			stationPanel.add(mNextStationButton);
+		}
+		
 		mediaPanel = new JPanel();
 		GridBagConstraints gbc_mediaPanel = new GridBagConstraints();
 		gbc_mediaPanel.insets = new Insets(0, 0, 5, 0);
 		gbc_mediaPanel.fill = GridBagConstraints.BOTH;
 		gbc_mediaPanel.gridx = 0;
-		gbc_mediaPanel.gridy = 4;
+		gbc_mediaPanel.gridy = 6;
 		contentPane.add(mediaPanel, gbc_mediaPanel);
 		mediaPanel.setLayout(new GridLayout(1, 0, 0, 0));
 		
@@ -257,7 +334,7 @@ public class MainFrame extends JFrame implements StreamActivityObserver, Bluetoo
 		gbc_sourcePanel.insets = new Insets(0, 0, 5, 0);
 		gbc_sourcePanel.fill = GridBagConstraints.BOTH;
 		gbc_sourcePanel.gridx = 0;
-		gbc_sourcePanel.gridy = 5;
+		gbc_sourcePanel.gridy = 7;
 		contentPane.add(sourcePanel, gbc_sourcePanel);
 		sourcePanel.setLayout(new GridLayout(1, 0, 0, 0));
 		
@@ -324,7 +401,7 @@ public class MainFrame extends JFrame implements StreamActivityObserver, Bluetoo
 		GridBagConstraints gbc_configurationPanel = new GridBagConstraints();
 		gbc_configurationPanel.fill = GridBagConstraints.BOTH;
 		gbc_configurationPanel.gridx = 0;
-		gbc_configurationPanel.gridy = 6;
+		gbc_configurationPanel.gridy = 8;
 		contentPane.add(configurationPanel, gbc_configurationPanel);
 		configurationPanel.setLayout(new GridLayout(1, 0, 0, 0));
 		
@@ -356,6 +433,45 @@ public class MainFrame extends JFrame implements StreamActivityObserver, Bluetoo
 		});
 		configurationPanel.add(mBluetoothConfigButton);
 		
+		if(mController != null && mController.getReplayBuffer() != null) {
+			mReplayButton = new JButtonColorable("Replay");
+			mReplayButton.addActionListener(new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					ReplayBuffer replayBuffer = mController.getReplayBuffer();
+					if(replayBuffer == null) {
+						return;
+					}
+					if(replayBuffer.isReplaying()) {
+						replayBuffer.stopReplay();
+					}else if(!replayBuffer.replayLastTransmission()) {
+						replayBuffer.replayLast(ReplayBuffer.DEFAULT_REPLAY_SECONDS);
+					}
+				}
+			});
+			configurationPanel.add(mReplayButton);
+		}
+		
+		if(mController != null && mController.getCatchUpQueue() != null) {
+			mCatchUpButton = new JButtonColorable("Catch Up");
+			mCatchUpButton.addActionListener(new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					CatchUpQueue catchUpQueue = mController.getCatchUpQueue();
+					if(catchUpQueue == null) {
+						return;
+					}
+					if(catchUpQueue.isPlaying()) {
+						catchUpQueue.stop();
+					}else {
+						catchUpQueue.play();
+					}
+					updateCatchUpButton();
+				}
+			});
+			configurationPanel.add(mCatchUpButton);
+		}
+		
 		mCloseButton = new JButtonColorable(new ImageResource("close.png"), "Close");
 		mCloseButton.addActionListener(new ActionListener() {
 			@Override
@@ -381,6 +497,29 @@ public class MainFrame extends JFrame implements StreamActivityObserver, Bluetoo
 		return mColorMode;
 	}
 	
+	/**
+	 * Shows how many transmissions are waiting to be caught up on
+	 */
+	private void updateCatchUpButton() {
+		if(mCatchUpButton == null || mController.getCatchUpQueue() == null) {
+			return;
+		}
+		int count = mController.getCatchUpQueue().getCount();
+		mCatchUpButton.setText(count > 0 ? "Catch Up (" + count + ")" : "Catch Up");
+	}
+	
+	/**
+	 * Shows which preset is playing
+	 */
+	private void updateStationLabel() {
+		if(mStationLabel == null) {
+			return;
+		}
+		PresetStreamPlayer presetPlayer = (PresetStreamPlayer)mController.getStreamPlayer();
+		int preset = presetPlayer.getPreset();
+		mStationLabel.setText((preset + 1) + ". " + presetPlayer.getPresetName(preset));
+	}
+	
 	/**
 	 * Recolors this MainFrame with the current color mode
 	 * @see ColorMode#recolorComponent(Container)
@@ -415,6 +554,7 @@ public class MainFrame extends JFrame implements StreamActivityObserver, Bluetoo
 		}
 		mMediaButton.setTransparency(0.5f);
 		mMediaButton.setIcon();
+		updateCatchUpButton();
 	}
 	
 	/*
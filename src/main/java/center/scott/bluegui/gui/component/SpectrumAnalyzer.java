@@ -0,0 +1,323 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.gui.component;
+
+import java.awt.EventQueue;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.math3.transform.DftNormalization;
+import org.apache.commons.math3.transform.FastFourierTransformer;
+import org.apache.commons.math3.transform.TransformType;
+
+import center.scott.bluegui.stream.StreamActivityObserver;
+import center.scott.bluegui.stream.StreamScheduler;
+import center.scott.bluegui.stream.audio.PcmLevel;
+import center.scott.bluegui.stream.audio.PcmProcessor;
+
+/**
+ * Computes a spectrum and VU levels of stream audio for {@link SpectrumObserver}s.
+ * The audio thread only copies samples into a ring, and only while frames are wanted. Frames are computed on the {@link StreamScheduler} at a capped rate
+ * into arrays allocated once, and handed to the event dispatch thread at most one at a time.
+ * Nothing is computed while no observer is showing or the stream is inactive.
+ * @author Scott Maday
+ */
+public class SpectrumAnalyzer implements PcmProcessor, StreamActivityObserver {
+	public final static int DEFAULT_FRAME_RATE = 15;
+	public final static int DEFAULT_BANDS = 16;
+	public final static double FLOOR_DBFS = -72d;
+	
+	private final static int FFT_SIZE = 512;
+	private final static double LOWEST_FREQUENCY = 100d;
+	/**
+	 * Fraction of a level kept each frame as it falls, so bars drop smoothly instead of flickering
+	 */
+	private final static float FALL = 0.7f;
+	
+	private final ScheduledExecutorService mScheduler;
+	private final List<SpectrumObserver> mObservers = new CopyOnWriteArrayList<SpectrumObserver>();
+	private final int mFrameRate;
+	private final short[] mRing = new short[FFT_SIZE];
+	private final double[] mWindow = new double[FFT_SIZE];
+	private final double[][] mData = new double[2][FFT_SIZE];
+	private final int[] mBandEdges;
+	private final float[] mLevels;
+	private final float[] mPublished;
+	private final Runnable mFrameTask = new FrameTask();
+	private final Runnable mPublishTask = new PublishTask();
+	private final Runnable mRepublishTask = new RepublishTask();
+	private final AtomicBoolean mPublishing = new AtomicBoolean(false);
+	
+	private volatile boolean mRunning;
+	private volatile boolean mMissed;
+	private volatile int mSampleRate = 8000;
+	private volatile int mChannels = 1;
+	private int mRingPosition;
+	private boolean mShowing;
+	private boolean mActive;
+	private float mRms;
+	private float mPeak;
+	private float mPublishedRms;
+	private float mPublishedPeak;
+	private ScheduledFuture<?> mFrames;
+	
+	/**
+	 * Creates an analyzer with {@link #DEFAULT_BANDS} bands at {@link #DEFAULT_FRAME_RATE} on the shared {@link StreamScheduler}
+	 */
+	public SpectrumAnalyzer() {
+		this(DEFAULT_BANDS, DEFAULT_FRAME_RATE, StreamScheduler.getScheduler());
+	}
+	/**
+	 * Creates an analyzer
+	 * @param bands number of logarithmically spaced bands
+	 * @param frameRate most frames computed a second
+	 * @param scheduler to compute frames on
+	 */
+	public SpectrumAnalyzer(int bands, int frameRate, ScheduledExecutorService scheduler) {
+		mScheduler = scheduler;
+		mFrameRate = Math.max(1, frameRate);
+		mBandEdges = new int[bands + 1];
+		mLevels = new float[bands];
+		mPublished = new float[bands];
+		for(int i = 0; i < FFT_SIZE; i++) {
+			mWindow[i] = 0.5d - 0.5d * Math.cos(2d * Math.PI * i / (FFT_SIZE - 1));
+		}
+		updateBandEdges();
+	}
+	
+	/**
+	 * Sets if an observer is showing. Frames are only computed while one is
+	 * @param showing <code>true</code> if frames are wanted
+	 */
+	public synchronized void setShowing(boolean showing) {
+		mShowing = showing;
+		updateRunning();
+	}
+	
+	/**
+	 * @return the number of bands
+	 */
+	public int getBandCount() {
+		return mLevels.length;
+	}
+	
+	/**
+	 * Copies the latest published band levels. Only call this from {@link SpectrumObserver#spectrumUpdated(SpectrumAnalyzer)}
+	 * @param levels to copy into, from 0 to 1 of the range above {@link #FLOOR_DBFS}
+	 */
+	public void getBands(float[] levels) {
+		System.arraycopy(mPublished, 0, levels, 0, Math.min(levels.length, mPublished.length));
+	}
+	/**
+	 * Only call this from {@link SpectrumObserver#spectrumUpdated(SpectrumAnalyzer)}
+	 * @return latest published rms level, from 0 to 1 of the range above {@link #FLOOR_DBFS}
+	 */
+	public float getRms() {
+		return mPublishedRms;
+	}
+	/**
+	 * Only call this from {@link SpectrumObserver#spectrumUpdated(SpectrumAnalyzer)}
+	 * @return latest published peak level, from 0 to 1 of the range above {@link #FLOOR_DBFS}
+	 */
+	public float getPeak() {
+		return mPublishedPeak;
+	}
+	
+	/**
+	 * Adds the observer that will be receiving frames
+	 * @param observer to be added
+	 * @see SpectrumObserver
+	 */
+	public void addObserver(SpectrumObserver observer) {
+		mObservers.add(observer);
+	}
+	
+	/**
+	 * Removes the observer from receiving frames
+	 * @param observer to be removed
+	 * @return <code>true</code> if the observer was removed successfully
+	 * @see SpectrumObserver
+	 */
+	public boolean removeObserver(SpectrumObserver observer) {
+		return mObservers.remove(observer);
+	}
+	
+	@Override
+	public void formatChanged(int sampleRate, int channels) {
+		mSampleRate = sampleRate;
+		mChannels = channels;
+		synchronized (this) {
+			updateBandEdges();
+		}
+	}
+	
+	@Override
+	public int process(short[] samples, int length) {
+		if(!mRunning) {
+			return length;
+		}
+		int channels = mChannels;
+		int position = mRingPosition;
+		for(int i = 0; i + channels <= length; i += channels) {
+			int sum = 0;
+			for(int channel = 0; channel < channels; channel++) {
+				sum += samples[i + channel];
+			}
+			mRing[position] = (short)(sum / channels);
+			position = (position + 1) % FFT_SIZE;
+		}
+		mRingPosition = position;
+		return length;
+	}
+	
+	@Override
+	public synchronized void streamActivated() {
+		mActive = true;
+		updateRunning();
+	}
+	
+	@Override
+	public synchronized void streamInactivated() {
+		mActive = false;
+		updateRunning();
+	}
+	
+	private void updateRunning() {
+		boolean running = mShowing && mActive;
+		if(running == mRunning) {
+			return;
+		}
+		mRunning = running;
+		if(running) {
+			long period = 1000L / mFrameRate;
+			mFrames = mScheduler.scheduleAtFixedRate(mFrameTask, period, period, TimeUnit.MILLISECONDS);
+		}else {
+			if(mFrames != null) {
+				mFrames.cancel(false);
+				mFrames = null;
+			}
+			// Leave the meter empty rather than frozen on the last frame
+			Arrays.fill(mLevels, 0f);
+			mRms = 0;
+			mPeak = 0;
+			publish();
+		}
+	}
+	
+	private void updateBandEdges() {
+		// Bins are spaced logarithmically from the lowest frequency to nyquist, each band at least a bin wide
+		double binWidth = (double)mSampleRate / FFT_SIZE;
+		int lowest = Math.max(1, (int)(LOWEST_FREQUENCY / binWidth));
+		int highest = FFT_SIZE / 2;
+		int bands = mLevels.length;
+		mBandEdges[0] = lowest;
+		for(int band = 1; band <= bands; band++) {
+			int edge = (int)Math.round(lowest * Math.pow((double)highest / lowest, (double)band / bands));
+			mBandEdges[band] = Math.min(highest, Math.max(mBandEdges[band - 1] + 1, edge));
+		}
+	}
+	
+	private synchronized void computeFrame() {
+		if(!mRunning) {
+			return;
+		}
+		// The ring is written by the audio thread without a lock. A torn frame only shows for a frame
+		double[] real = mData[0];
+		double[] imaginary = mData[1];
+		int start = mRingPosition;
+		double sumOfSquares = 0;
+		int peak = 0;
+		for(int i = 0; i < FFT_SIZE; i++) {
+			short sample = mRing[(start + i) % FFT_SIZE];
+			sumOfSquares += (double)sample * sample;
+			peak = Math.max(peak, Math.abs(sample));
+			real[i] = sample * mWindow[i];
+			imaginary[i] = 0;
+		}
+		FastFourierTransformer.transformInPlace(mData, DftNormalization.STANDARD, TransformType.FORWARD);
+		// A full scale sine through the hann window peaks at a quarter of the transform size
+		double fullScale = PcmLevel.FULL_SCALE * FFT_SIZE / 4d;
+		for(int band = 0; band < mLevels.length; band++) {
+			double max = 0;
+			for(int bin = mBandEdges[band]; bin < mBandEdges[band + 1]; bin++) {
+				max = Math.max(max, real[bin] * real[bin] + imaginary[bin] * imaginary[bin]);
+			}
+			mLevels[band] = fall(mLevels[band], scale(Math.sqrt(max) / fullScale));
+		}
+		mRms = fall(mRms, scale(Math.sqrt(sumOfSquares / FFT_SIZE) / PcmLevel.FULL_SCALE));
+		mPeak = fall(mPeak, scale(peak / PcmLevel.FULL_SCALE));
+		publish();
+	}
+	
+	private void publish() {
+		// Frames computed while the last one is still waiting on the event dispatch thread are dropped
+		if(!mPublishing.compareAndSet(false, true)) {
+			mMissed = true;
+			return;
+		}
+		mMissed = false;
+		System.arraycopy(mLevels, 0, mPublished, 0, mLevels.length);
+		mPublishedRms = mRms;
+		mPublishedPeak = mPeak;
+		EventQueue.invokeLater(mPublishTask);
+	}
+	
+	private static float fall(float previous, float level) {
+		return Math.max(level, previous * FALL);
+	}
+	
+	private static float scale(double level) {
+		double dbfs = PcmLevel.toDbfs(level);
+		return (float)Math.max(0d, Math.min(1d, 1d - dbfs / FLOOR_DBFS));
+	}
+	
+	
+	private class FrameTask implements Runnable {
+		@Override
+		public void run() {
+			computeFrame();
+		}
+	}
+	
+	private class PublishTask implements Runnable {
+		@Override
+		public void run() {
+			for(SpectrumObserver observer : mObservers) {
+				observer.spectrumUpdated(SpectrumAnalyzer.this);
+			}
+			mPublishing.set(false);
+			if(mMissed && !mRunning) {
+				// The frame clearing the meter was dropped
+				mScheduler.execute(mRepublishTask);
+			}
+		}
+	}
+	
+	private class RepublishTask implements Runnable {
+		@Override
+		public void run() {
+			synchronized (SpectrumAnalyzer.this) {
+				publish();
+			}
+		}
+	}
+}
@@ -0,0 +1,132 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.gui.component;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Window;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+
+/**
+ * Bars of a {@link SpectrumAnalyzer}'s bands with a VU meter beside them, to show the stream is alive.
+ * The analyzer is told to stop whenever this isn't showing or its window is minimized, and painting only copies the levels published to it.
+ * @author Scott Maday
+ */
+public class SpectrumMeter extends JComponent implements Colorable, SpectrumObserver {
+	private static final long serialVersionUID = 1L;
+	private final static int GAP = 2;
+	private final static int VU_WIDTH = 8;
+	
+	private final SpectrumAnalyzer mAnalyzer;
+	private final float[] mBands;
+	private float mRms;
+	private float mPeak;
+	private Window mWindow;
+	private boolean mIconified;
+	private final WindowAdapter mWindowListener = new WindowAdapter() {
+		@Override
+		public void windowIconified(WindowEvent e) {
+			mIconified = true;
+			updateShowing();
+		}
+		@Override
+		public void windowDeiconified(WindowEvent e) {
+			mIconified = false;
+			updateShowing();
+		}
+	};
+	
+	/**
+	 * Creates a meter
+	 * @param analyzer to draw
+	 */
+	public SpectrumMeter(SpectrumAnalyzer analyzer) {
+		mAnalyzer = analyzer;
+		mBands = new float[analyzer.getBandCount()];
+		mAnalyzer.addObserver(this);
+		setPreferredSize(new Dimension(0, 30));
+		addHierarchyListener(new HierarchyListener() {
+			@Override
+			public void hierarchyChanged(HierarchyEvent e) {
+				if((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0) {
+					updateShowing();
+				}
+			}
+		});
+	}
+	
+	@Override
+	public void addNotify() {
+		super.addNotify();
+		mWindow = SwingUtilities.getWindowAncestor(this);
+		if(mWindow != null) {
+			mWindow.addWindowListener(mWindowListener);
+		}
+	}
+	
+	@Override
+	public void removeNotify() {
+		if(mWindow != null) {
+			mWindow.removeWindowListener(mWindowListener);
+			mWindow = null;
+		}
+		super.removeNotify();
+		mAnalyzer.setShowing(false);
+	}
+	
+	@Override
+	public void spectrumUpdated(SpectrumAnalyzer analyzer) {
+		analyzer.getBands(mBands);
+		mRms = analyzer.getRms();
+		mPeak = analyzer.getPeak();
+		repaint();
+	}
+	
+	@Override
+	public boolean canColor(ColorMode colorMode) {
+		return true;
+	}
+	
+	@Override
+	protected void paintComponent(Graphics g) {
+		int width = getWidth();
+		int height = getHeight();
+		g.setColor(getForeground());
+		int bandsWidth = width - VU_WIDTH - GAP * 2;
+		int barWidth = Math.max(1, bandsWidth / mBands.length - GAP);
+		for(int band = 0; band < mBands.length; band++) {
+			int barHeight = (int)(mBands[band] * height);
+			g.fillRect(band * bandsWidth / mBands.length, height - barHeight, barWidth, barHeight);
+		}
+		int vuX = width - VU_WIDTH;
+		int rmsHeight = (int)(mRms * height);
+		g.fillRect(vuX, height - rmsHeight, VU_WIDTH, rmsHeight);
+		// The peak is a line above the rms
+		int peakY = height - 1 - (int)(mPeak * (height - 1));
+		g.drawLine(vuX, peakY, width - 1, peakY);
+	}
+	
+	private void updateShowing() {
+		mAnalyzer.setShowing(isShowing() && !mIconified);
+	}
+}
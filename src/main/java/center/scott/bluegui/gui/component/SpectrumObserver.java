@@ -0,0 +1,30 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.gui.component;
+
+/**
+ * Interface for anything that draws a {@link SpectrumAnalyzer}
+ * @author Scott Maday
+ */
+public interface SpectrumObserver {
+	
+	/**
+	 * Notification that the analyzer has a new frame. This is called on the event dispatch thread, no faster than the analyzer's frame rate
+	 * @param analyzer that was updated
+	 */
+	public void spectrumUpdated(SpectrumAnalyzer analyzer);
+}
@@ -0,0 +1,121 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.gui.component;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.JComponent;
+import javax.swing.Timer;
+
+import center.scott.bluegui.stream.StreamStatistic;
+import center.scott.bluegui.stream.StreamStatistics;
+
+/**
+ * Debug overlay drawing every {@link StreamStatistic} of a stream as its latest value, its total and a sparkline of recent samples.
+ * It only repaints while it's showing, and the series are copied into buffers allocated once.
+ * @author Scott Maday
+ */
+public class StatisticsOverlay extends JComponent implements Colorable {
+	private static final long serialVersionUID = 1L;
+	private final static int BACKGROUND_ALPHA = 200;
+	private final static int PADDING = 4;
+	
+	private final StreamStatistics mStatistics;
+	private final double[] mValues;
+	private final Timer mTimer;
+	
+	/**
+	 * Creates an overlay
+	 * @param statistics to draw
+	 * @param interval between repaints in miliseconds
+	 */
+	public StatisticsOverlay(StreamStatistics statistics, int interval) {
+		mStatistics = statistics;
+		mValues = new double[statistics.getCapacity()];
+		mTimer = new Timer(interval, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				repaint();
+			}
+		});
+		setOpaque(false);
+		setFont(new Font("Monospaced", Font.PLAIN, 10));
+	}
+	
+	@Override
+	public void setVisible(boolean visible) {
+		super.setVisible(visible);
+		if(visible) {
+			mTimer.start();
+		}else {
+			mTimer.stop();
+		}
+	}
+	
+	@Override
+	public boolean canColor(ColorMode colorMode) {
+		return true;
+	}
+	
+	@Override
+	protected void paintComponent(Graphics g) {
+		Color background = getBackground();
+		g.setColor(new Color(background.getRed(), background.getGreen(), background.getBlue(), BACKGROUND_ALPHA));
+		g.fillRect(0, 0, getWidth(), getHeight());
+		g.setColor(getForeground());
+		g.setFont(getFont());
+		FontMetrics metrics = g.getFontMetrics();
+		
+		StreamStatistic[] statistics = StreamStatistic.values();
+		int rowHeight = Math.max(metrics.getHeight(), (getHeight() - PADDING * 2) / statistics.length);
+		int textWidth = metrics.stringWidth("discontinuities 00000.0 000000000");
+		int graphX = PADDING * 2 + textWidth;
+		int graphWidth = getWidth() - graphX - PADDING;
+		for(int row = 0; row < statistics.length; row++) {
+			StreamStatistic statistic = statistics[row];
+			int top = PADDING + row * rowHeight;
+			int count = mStatistics.copy(statistic, mValues);
+			double latest = count > 0 ? mValues[count - 1] : 0;
+			g.drawString(String.format("%-15s %7.1f %9d", statistic.getLabel(), latest, mStatistics.getTotal(statistic)), PADDING, top + metrics.getAscent());
+			if(count < 2 || graphWidth <= 0) {
+				continue;
+			}
+			double max = 0;
+			for(int i = 0; i < count; i++) {
+				max = Math.max(max, mValues[i]);
+			}
+			if(max <= 0) {
+				max = 1;
+			}
+			int graphHeight = rowHeight - PADDING;
+			int lastX = graphX;
+			int lastY = top + graphHeight - (int)(mValues[0] / max * graphHeight);
+			for(int i = 1; i < count; i++) {
+				int x = graphX + i * graphWidth / (count - 1);
+				int y = top + graphHeight - (int)(mValues[i] / max * graphHeight);
+				g.drawLine(lastX, lastY, x, y);
+				lastX = x;
+				lastY = y;
+			}
+		}
+	}
+}
@@ -0,0 +1,47 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+/**
+ * How a {@link MediaStreamPlayer} decides that its stream is active
+ * @author Scott Maday
+ */
+public enum ActivityDetection {
+	/**
+	 * Active while vlc keeps reporting time changes. This also fires for silence and padding
+	 */
+	TIME_CHANGED,
+	/**
+	 * Active while the decoded audio has signal energy. Audio is taken through vlc's callback audio and played by java
+	 */
+	ENERGY;
+	
+	/**
+	 * Attempts to get the ActivityDetection from a string
+	 * @param detection case insensitive string to get the ActivityDetection
+	 * @return {@link ActivityDetection} if the detection is valid, null otherwise
+	 */
+	public static ActivityDetection fromString(String detection) {
+		String detectionUpper = detection.toUpperCase().replace('-', '_');
+		for(ActivityDetection value : ActivityDetection.values()) {
+			if(value.name().equals(detectionUpper) || value.name().replace("_", "").equals(detectionUpper)) {
+				return value;
+			}
+		}
+		return null;
+	}
+}
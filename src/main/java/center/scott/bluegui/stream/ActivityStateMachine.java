@@ -0,0 +1,303 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when a stream activates and how long it hangs on after its signals stop.
+ * Signals must keep arriving for a minimum on duration before the stream activates, so short bursts of noise don't switch anything.
+ * The hang time adapts to the gaps between recent transmissions: while traffic goes back and forth with short gaps, the hang time stretches to bridge them,
+ * and it falls back to the base hang time once traffic thins out. Transition counts and dwell time histograms are kept for tuning.
+ * @author Scott Maday
+ */
+public class ActivityStateMachine {
+	public final static int DEFAULT_MIN_ON_DURATION = 0;
+	public final static int DEFAULT_MAX_HANG_TIME = 6000;
+	/**
+	 * Silence between signals longer than this ends a burst of signals
+	 */
+	public final static int DEFAULT_CONTINUITY = 500;
+	/**
+	 * Upper bounds in miliseconds of the dwell time histogram buckets. The last bucket has no bound
+	 */
+	public final static int[] DWELL_BUCKETS = {500, 1000, 2000, 5000, 10000, 30000, 60000, 300000};
+	
+	private final static int GAP_HISTORY = 16;
+	private final static long GAP_EXPIRY = TimeUnit.MINUTES.toNanos(10);
+	private final static int HANG_MARGIN = 250;
+	
+	private final long[] mGaps = new long[GAP_HISTORY];
+	private final long[] mGapTimes = new long[GAP_HISTORY];
+	private final long[] mSortedGaps = new long[GAP_HISTORY];
+	private final long[] mActiveDwell = new long[DWELL_BUCKETS.length + 1];
+	private final long[] mIdleDwell = new long[DWELL_BUCKETS.length + 1];
+	private final long mCreated = System.nanoTime();
+	
+	private volatile int mMinOnDuration = DEFAULT_MIN_ON_DURATION;
+	private volatile int mBaseHangTime = StreamActivityMonitor.DEFAULT_INACTIVATION_THRESHOLD;
+	private volatile int mMaxHangTime = DEFAULT_MAX_HANG_TIME;
+	private volatile int mContinuity = DEFAULT_CONTINUITY;
+	private volatile boolean mAdaptive = true;
+	private volatile int mHangTime = StreamActivityMonitor.DEFAULT_INACTIVATION_THRESHOLD;
+	
+	private int mGapCount = 0;
+	private long mPendingStart = 0;
+	private long mLastTransition = System.nanoTime();
+	private long mActivations = 0;
+	private long mRejected = 0;
+	private long mBridged = 0;
+	
+	/**
+	 * Handles a signal while the stream is inactive
+	 * @param now time of the signal from {@link System#nanoTime()}
+	 * @param previous time of the signal before it, or 0 if there was none
+	 * @return <code>true</code> if signals have arrived for the minimum on duration and the stream should activate
+	 */
+	public synchronized boolean pending(long now, long previous) {
+		long gap = previous == 0 ? Long.MAX_VALUE : now - previous;
+		if(mPendingStart == 0 || gap > TimeUnit.MILLISECONDS.toNanos(mContinuity)) {
+			if(mPendingStart != 0) {
+				mRejected++;
+			}
+			if(previous != 0) {
+				recordGap(now, gap);
+			}
+			mPendingStart = now;
+		}
+		return now - mPendingStart >= TimeUnit.MILLISECONDS.toNanos(mMinOnDuration);
+	}
+	
+	/**
+	 * Handles a signal while the stream is active. This only takes the lock when the signal ends a gap
+	 * @param now time of the signal from {@link System#nanoTime()}
+	 * @param previous time of the signal before it
+	 */
+	public void signal(long now, long previous) {
+		long gap = now - previous;
+		if(gap > TimeUnit.MILLISECONDS.toNanos(mContinuity)) {
+			synchronized (this) {
+				mBridged++;
+				recordGap(now, gap);
+			}
+		}
+	}
+	
+	/**
+	 * Records that the stream activated
+	 * @param now time from {@link System#nanoTime()}
+	 */
+	public synchronized void activated(long now) {
+		mActivations++;
+		mPendingStart = 0;
+		addDwell(mIdleDwell, now - mLastTransition);
+		mLastTransition = now;
+	}
+	
+	/**
+	 * Records that the stream inactivated
+	 * @param now time from {@link System#nanoTime()}
+	 */
+	public synchronized void inactivated(long now) {
+		addDwell(mActiveDwell, now - mLastTransition);
+		mLastTransition = now;
+	}
+	
+	/**
+	 * Gets the state of the stream
+	 * @param active if the stream is active
+	 * @param lastSignal time of the last signal from {@link System#nanoTime()}
+	 * @return the {@link ActivityState}
+	 */
+	public synchronized ActivityState getState(boolean active, long lastSignal) {
+		boolean signalling = lastSignal != 0 && System.nanoTime() - lastSignal <= TimeUnit.MILLISECONDS.toNanos(mContinuity);
+		if(active) {
+			return signalling ? ActivityState.ACTIVE : ActivityState.HANGING;
+		}
+		return signalling && mPendingStart != 0 ? ActivityState.PENDING : ActivityState.IDLE;
+	}
+	
+	/**
+	 * @return how long the stream stays active after its last signal, in miliseconds
+	 */
+	public int getHangTime() {
+		return mHangTime;
+	}
+	
+	/**
+	 * Sets the hang time used when traffic isn't going back and forth. The adaptive hang time never goes below it
+	 * @param baseHangTime in miliseconds
+	 */
+	public synchronized void setBaseHangTime(int baseHangTime) {
+		mBaseHangTime = baseHangTime;
+		updateHangTime(System.nanoTime());
+	}
+	/**
+	 * @return the hang time used when traffic isn't going back and forth, in miliseconds
+	 */
+	public int getBaseHangTime() {
+		return mBaseHangTime;
+	}
+	
+	/**
+	 * Sets the longest the hang time may stretch to bridge gaps between transmissions
+	 * @param maxHangTime in miliseconds
+	 */
+	public synchronized void setMaxHangTime(int maxHangTime) {
+		mMaxHangTime = maxHangTime;
+		updateHangTime(System.nanoTime());
+	}
+	/**
+	 * @return the longest the hang time may stretch, in miliseconds
+	 */
+	public int getMaxHangTime() {
+		return mMaxHangTime;
+	}
+	
+	/**
+	 * Sets if the hang time adapts to recent gaps. When not, the base hang time is always used
+	 * @param adaptive <code>true</code> to adapt
+	 */
+	public synchronized void setAdaptive(boolean adaptive) {
+		mAdaptive = adaptive;
+		updateHangTime(System.nanoTime());
+	}
+	/**
+	 * @return <code>true</code> if the hang time adapts to recent gaps
+	 */
+	public boolean isAdaptive() {
+		return mAdaptive;
+	}
+	
+	/**
+	 * Sets how long signals must keep arriving before the stream activates
+	 * @param minOnDuration in miliseconds, 0 to activate on the first signal
+	 */
+	public void setMinOnDuration(int minOnDuration) {
+		mMinOnDuration = minOnDuration;
+	}
+	/**
+	 * @return how long signals must keep arriving before the stream activates, in miliseconds
+	 */
+	public int getMinOnDuration() {
+		return mMinOnDuration;
+	}
+	
+	/**
+	 * Sets the longest silence between signals that still counts as one burst
+	 * @param continuity in miliseconds
+	 */
+	public void setContinuity(int continuity) {
+		mContinuity = continuity;
+	}
+	/**
+	 * @return the longest silence between signals that still counts as one burst, in miliseconds
+	 */
+	public int getContinuity() {
+		return mContinuity;
+	}
+	
+	/**
+	 * @return number of times the stream activated
+	 */
+	public synchronized long getActivationCount() {
+		return mActivations;
+	}
+	/**
+	 * @return number of bursts of signals that ended before the minimum on duration
+	 */
+	public synchronized long getRejectedCount() {
+		return mRejected;
+	}
+	/**
+	 * @return number of gaps bridged by the hang time without inactivating
+	 */
+	public synchronized long getBridgedCount() {
+		return mBridged;
+	}
+	/**
+	 * @return activations per hour since this state machine was created
+	 */
+	public synchronized double getActivationsPerHour() {
+		double hours = (System.nanoTime() - mCreated) / (double)TimeUnit.HOURS.toNanos(1);
+		return hours > 0 ? mActivations / hours : 0;
+	}
+	
+	/**
+	 * Gets how long the stream stayed active, bucketed by {@link #DWELL_BUCKETS}
+	 * @return a copy of the counts per bucket
+	 */
+	public synchronized long[] getActiveDwellHistogram() {
+		return mActiveDwell.clone();
+	}
+	/**
+	 * Gets how long the stream stayed inactive, bucketed by {@link #DWELL_BUCKETS}
+	 * @return a copy of the counts per bucket
+	 */
+	public synchronized long[] getIdleDwellHistogram() {
+		return mIdleDwell.clone();
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return String.format("%d activations (%.1f/h), %d rejected, %d bridged, hang %dms, active dwell %s, idle dwell %s",
+				mActivations, getActivationsPerHour(), mRejected, mBridged, mHangTime, Arrays.toString(mActiveDwell), Arrays.toString(mIdleDwell));
+	}
+	
+	private void recordGap(long now, long gap) {
+		int slot = mGapCount % GAP_HISTORY;
+		mGaps[slot] = gap;
+		mGapTimes[slot] = now;
+		mGapCount++;
+		updateHangTime(now);
+	}
+	
+	private void updateHangTime(long now) {
+		int hangTime = mBaseHangTime;
+		if(mAdaptive && mMaxHangTime > mBaseHangTime) {
+			long maxHang = TimeUnit.MILLISECONDS.toNanos(mMaxHangTime);
+			int recent = 0;
+			int bridgeable = 0;
+			for(int i = 0; i < Math.min(mGapCount, GAP_HISTORY); i++) {
+				if(now - mGapTimes[i] > GAP_EXPIRY) {
+					continue;
+				}
+				recent++;
+				if(mGaps[i] <= maxHang) {
+					mSortedGaps[bridgeable++] = mGaps[i];
+				}
+			}
+			// Stretch only while most recent gaps are short enough to be back and forth traffic
+			if(bridgeable > 0 && bridgeable * 2 >= recent) {
+				Arrays.sort(mSortedGaps, 0, bridgeable);
+				long gap = mSortedGaps[(bridgeable * 3 - 1) / 4];
+				hangTime = (int)Math.max(mBaseHangTime, Math.min(mMaxHangTime, TimeUnit.NANOSECONDS.toMillis(gap) + HANG_MARGIN));
+			}
+		}
+		mHangTime = hangTime;
+	}
+	
+	private static void addDwell(long[] histogram, long dwell) {
+		long millis = TimeUnit.NANOSECONDS.toMillis(dwell);
+		int bucket = 0;
+		while(bucket < DWELL_BUCKETS.length && millis >= DWELL_BUCKETS[bucket]) {
+			bucket++;
+		}
+		histogram[bucket]++;
+	}
+}
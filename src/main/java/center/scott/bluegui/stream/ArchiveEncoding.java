@@ -0,0 +1,143 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * How a {@link TransmissionArchive} stores audio
+ * @author Scott Maday
+ */
+public enum ArchiveEncoding {
+	/**
+	 * Raw 16 bit PCM, in the byte order of the buffer
+	 */
+	PCM(2) {
+		@Override
+		public void encode(short[] samples, int offset, int length, ByteBuffer out) {
+			int end = offset + length;
+			for(int i = offset; i < end; i++) {
+				out.putShort(samples[i]);
+			}
+		}
+		
+		@Override
+		public void decode(ByteBuffer in, short[] samples, int offset, int length) {
+			int end = offset + length;
+			for(int i = offset; i < end; i++) {
+				samples[i] = in.getShort();
+			}
+		}
+	},
+	/**
+	 * G.711 mu-law, half the size of PCM and plenty for voice
+	 */
+	ULAW(1) {
+		@Override
+		public void encode(short[] samples, int offset, int length, ByteBuffer out) {
+			int end = offset + length;
+			for(int i = offset; i < end; i++) {
+				out.put(toUlaw(samples[i]));
+			}
+		}
+		
+		@Override
+		public void decode(ByteBuffer in, short[] samples, int offset, int length) {
+			int end = offset + length;
+			for(int i = offset; i < end; i++) {
+				samples[i] = ULAW_TABLE[in.get() & 0xFF];
+			}
+		}
+	};
+	
+	private final static int ULAW_BIAS = 0x84;
+	private final static int ULAW_CLIP = 32635;
+	private final static short[] ULAW_TABLE = new short[256];
+	
+	static {
+		for(int i = 0; i < ULAW_TABLE.length; i++) {
+			int ulaw = ~i & 0xFF;
+			int exponent = (ulaw >> 4) & 0x07;
+			int sample = ((((ulaw & 0x0F) << 3) + ULAW_BIAS) << exponent) - ULAW_BIAS;
+			ULAW_TABLE[i] = (short)((ulaw & 0x80) != 0 ? -sample : sample);
+		}
+	}
+	
+	private final int mBytesPerSample;
+	
+	private ArchiveEncoding(int bytesPerSample) {
+		mBytesPerSample = bytesPerSample;
+	}
+	
+	/**
+	 * @return number of bytes each sample takes once encoded
+	 */
+	public int getBytesPerSample() {
+		return mBytesPerSample;
+	}
+	
+	/**
+	 * Encodes samples into a buffer
+	 * @param samples to encode
+	 * @param offset of the first sample
+	 * @param length number of samples
+	 * @param out buffer with at least <code>length * {@link #getBytesPerSample()}</code> bytes remaining
+	 */
+	public abstract void encode(short[] samples, int offset, int length, ByteBuffer out);
+	
+	/**
+	 * Decodes samples from a buffer
+	 * @param in buffer with at least <code>length * {@link #getBytesPerSample()}</code> bytes remaining
+	 * @param samples to decode into
+	 * @param offset of the first sample
+	 * @param length number of samples
+	 */
+	public abstract void decode(ByteBuffer in, short[] samples, int offset, int length);
+	
+	/**
+	 * Attempts to get the ArchiveEncoding from a string
+	 * @param encoding case insensitive string to get the ArchiveEncoding
+	 * @return {@link ArchiveEncoding} if the encoding is valid, null otherwise
+	 */
+	public static ArchiveEncoding fromString(String encoding) {
+		String encodingUpper = encoding.toUpperCase();
+		for(ArchiveEncoding value : ArchiveEncoding.values()) {
+			if(value.name().equals(encodingUpper)) {
+				return value;
+			}
+		}
+		return null;
+	}
+	
+	private static byte toUlaw(short pcm) {
+		int sample = pcm;
+		int sign = (sample >> 8) & 0x80;
+		if(sign != 0) {
+			sample = -sample;
+		}
+		if(sample > ULAW_CLIP) {
+			sample = ULAW_CLIP;
+		}
+		sample += ULAW_BIAS;
+		int exponent = 7;
+		for(int mask = 0x4000; (sample & mask) == 0 && exponent > 0; mask >>= 1) {
+			exponent--;
+		}
+		int mantissa = (sample >> (exponent + 3)) & 0x0F;
+		return (byte)~(sign | (exponent << 4) | mantissa);
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+/**
+ * One transmission kept by a {@link TransmissionArchive}
+ * @author Scott Maday
+ */
+public class ArchivedTransmission {
+	private final int mIndex;
+	private final long mStartTime;
+	private final int mDuration;
+	private final long mOffset;
+	private final int mLength;
+	private final int mPeak;
+	
+	/**
+	 * Creates a transmission from its index entry
+	 * @param index of the entry in the archive
+	 * @param startTime in miliseconds since the epoch
+	 * @param duration in miliseconds
+	 * @param offset of the audio in bytes from the start of the data file
+	 * @param length of the audio in bytes
+	 * @param peak absolute sample peak
+	 */
+	public ArchivedTransmission(int index, long startTime, int duration, long offset, int length, int peak) {
+		mIndex = index;
+		mStartTime = startTime;
+		mDuration = duration;
+		mOffset = offset;
+		mLength = length;
+		mPeak = peak;
+	}
+	
+	/**
+	 * @return index of the entry in the archive
+	 */
+	public int getIndex() {
+		return mIndex;
+	}
+	/**
+	 * @return start time in miliseconds since the epoch
+	 */
+	public long getStartTime() {
+		return mStartTime;
+	}
+	/**
+	 * @return duration in miliseconds
+	 */
+	public int getDuration() {
+		return mDuration;
+	}
+	/**
+	 * @return offset of the audio in bytes from the start of the data file
+	 */
+	public long getOffset() {
+		return mOffset;
+	}
+	/**
+	 * @return length of the audio in bytes
+	 */
+	public int getLength() {
+		return mLength;
+	}
+	/**
+	 * @return absolute sample peak, from 0 to 32768
+	 */
+	public int getPeak() {
+		return mPeak;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("Transmission %d at %tF %<tT for %dms, peak %d", mIndex, mStartTime, mDuration, mPeak);
+	}
+}
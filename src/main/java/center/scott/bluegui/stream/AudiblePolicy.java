@@ -0,0 +1,52 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+/**
+ * Which stream of a {@link StreamGroup} is heard when several are active at once.
+ * While no stream is active, every stream is left audible so the start of a transmission isn't cut off
+ * @author Scott Maday
+ */
+public enum AudiblePolicy {
+	/**
+	 * The active stream that was added to the group first is heard, cutting in over lower priority streams
+	 */
+	PRIORITY,
+	/**
+	 * The stream that became active first is heard until it goes inactive
+	 */
+	FIRST_ACTIVE,
+	/**
+	 * Every active stream is heard
+	 */
+	MIX;
+	
+	/**
+	 * Attempts to get the AudiblePolicy from a string
+	 * @param policy case insensitive string to get the AudiblePolicy
+	 * @return {@link AudiblePolicy} if the policy is valid, null otherwise
+	 */
+	public static AudiblePolicy fromString(String policy) {
+		String policyUpper = policy.toUpperCase().replace('-', '_');
+		for(AudiblePolicy value : AudiblePolicy.values()) {
+			if(value.name().equals(policyUpper) || value.name().replace("_", "").equals(policyUpper)) {
+				return value;
+			}
+		}
+		return null;
+	}
+}
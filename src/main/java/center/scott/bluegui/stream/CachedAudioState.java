@@ -0,0 +1,194 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import uk.co.caprica.vlcj.player.base.MediaPlayer;
+import uk.co.caprica.vlcj.player.base.MediaPlayerEventAdapter;
+
+/**
+ * Caches the mute, volume and playing state of a vlc media player so reads never cross into libvlc.
+ * The known state is kept up to date from vlcj events, and writes only go to libvlc when the desired state differs from the known state.
+ * Counters show how many native calls were made and how many were saved.
+ * @author Scott Maday
+ */
+public class CachedAudioState extends MediaPlayerEventAdapter {
+	private final static int UNKNOWN = -1;
+	
+	private final MediaPlayer mMediaPlayer;
+	private final AtomicLong mNativeCalls = new AtomicLong();
+	private final AtomicLong mSavedCalls = new AtomicLong();
+	
+	private volatile boolean mMute = false;
+	private volatile int mVolume = 50;
+	private volatile int mKnownMute = UNKNOWN;
+	private volatile int mKnownVolume = UNKNOWN;
+	private volatile boolean mPlaying = false;
+	
+	/**
+	 * Creates the cache and starts listening to the media player's events
+	 * @param mediaPlayer to cache the state of
+	 */
+	public CachedAudioState(MediaPlayer mediaPlayer) {
+		mMediaPlayer = mediaPlayer;
+		mediaPlayer.events().addMediaPlayerEventListener(this);
+	}
+	
+	/**
+	 * Sets the desired mute, writing it to vlc only if vlc's known mute is different
+	 * @param mute <code>true</code> to mute, <code>false</code> to unmute
+	 */
+	public void setMute(boolean mute) {
+		mMute = mute;
+		applyMute();
+	}
+	/**
+	 * @return the desired mute
+	 */
+	public boolean isMute() {
+		return mMute;
+	}
+	
+	/**
+	 * Sets the desired volume, writing it to vlc only if vlc's known volume is different
+	 * @param volume percentage between 0 and 200
+	 * @return <code>true</code> if vlc has the volume, <code>false</code> if writing it failed
+	 */
+	public boolean setVolume(int volume) {
+		mVolume = volume;
+		return applyVolume();
+	}
+	/**
+	 * @return the desired volume
+	 */
+	public int getVolume() {
+		return mVolume;
+	}
+	
+	/**
+	 * Writes the desired mute and volume to vlc where they differ from what vlc is known to have, such as after vlc recreated its audio output
+	 */
+	public void reconcile() {
+		applyMute();
+		if(mVolume >= 0) {
+			applyVolume();
+		}
+	}
+	
+	/**
+	 * @return <code>true</code> if vlc last reported the media as playing, or it was just asked to play
+	 */
+	public boolean isPlaying() {
+		return mPlaying;
+	}
+	/**
+	 * Sets the playing state ahead of vlc's event, for when the media was just asked to play or stop
+	 * @param playing expected state
+	 */
+	public void setPlaying(boolean playing) {
+		mPlaying = playing;
+	}
+	/**
+	 * Asks vlc whether the media is playing and caches the answer
+	 * @return <code>true</code> if the media is playing
+	 * @see uk.co.caprica.vlcj.player.base.StatusApi#isPlaying()
+	 */
+	public boolean queryPlaying() {
+		mNativeCalls.incrementAndGet();
+		mPlaying = mMediaPlayer.status().isPlaying();
+		return mPlaying;
+	}
+	
+	/**
+	 * @return number of calls made into libvlc through this cache
+	 */
+	public long getNativeCallCount() {
+		return mNativeCalls.get();
+	}
+	/**
+	 * @return number of calls into libvlc that were skipped because vlc already had the state
+	 */
+	public long getSavedCallCount() {
+		return mSavedCalls.get();
+	}
+	
+	@Override
+	public void opening(MediaPlayer mediaPlayer) {
+		// New media gets a new audio output, so nothing is known about it yet
+		mKnownMute = UNKNOWN;
+		mKnownVolume = UNKNOWN;
+	}
+	
+	@Override
+	public void playing(MediaPlayer mediaPlayer) {
+		mPlaying = true;
+	}
+	
+	@Override
+	public void paused(MediaPlayer mediaPlayer) {
+		mPlaying = false;
+	}
+	
+	@Override
+	public void stopped(MediaPlayer mediaPlayer) {
+		mPlaying = false;
+	}
+	
+	@Override
+	public void finished(MediaPlayer mediaPlayer) {
+		mPlaying = false;
+	}
+	
+	@Override
+	public void error(MediaPlayer mediaPlayer) {
+		mPlaying = false;
+	}
+	
+	@Override
+	public void muted(MediaPlayer mediaPlayer, boolean muted) {
+		mKnownMute = muted ? 1 : 0;
+	}
+	
+	@Override
+	public void volumeChanged(MediaPlayer mediaPlayer, float volume) {
+		mKnownVolume = volume < 0 ? UNKNOWN : Math.round(volume * 100);
+	}
+	
+	private void applyMute() {
+		int mute = mMute ? 1 : 0;
+		if(mKnownMute == mute) {
+			mSavedCalls.incrementAndGet();
+			return;
+		}
+		mNativeCalls.incrementAndGet();
+		mMediaPlayer.audio().setMute(mMute);
+		mKnownMute = mute;
+	}
+	
+	private boolean applyVolume() {
+		int volume = mVolume;
+		if(mKnownVolume == volume) {
+			mSavedCalls.incrementAndGet();
+			return true;
+		}
+		mNativeCalls.incrementAndGet();
+		boolean result = mMediaPlayer.audio().setVolume(volume);
+		mKnownVolume = result ? volume : UNKNOWN;
+		return result;
+	}
+}
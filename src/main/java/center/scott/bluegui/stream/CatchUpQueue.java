@@ -0,0 +1,370 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import center.scott.bluegui.stream.audio.PcmLevel;
+import center.scott.bluegui.stream.audio.PcmOutput;
+import center.scott.bluegui.stream.audio.PcmProcessor;
+import center.scott.bluegui.stream.audio.TimeCompressor;
+
+/**
+ * Keeps the transmissions that were missed while the bluetooth player wasn't yielding, so they can be caught up on later.
+ * Audio is captured into a fixed size ring while capturing is on, and each transmission is queued, up to {@link #MAX_TRANSMISSIONS}.
+ * Catching up plays the queue back to back on its own {@link PcmOutput}, with long pauses cut short and optionally sped up by a {@link TimeCompressor}.
+ * Every buffer is allocated when the queue is created.
+ * @author Scott Maday
+ */
+public class CatchUpQueue implements PcmProcessor, StreamActivityObserver {
+	private final static Logger LOGGER = LoggerFactory.getLogger(CatchUpQueue.class);
+	public final static int DEFAULT_MINUTES = 5;
+	public final static float DEFAULT_SPEED = 1f;
+	public final static int MAX_TRANSMISSIONS = 64;
+	/**
+	 * Audio kept before a transmission was detected, since detection always lags the start slightly
+	 */
+	private final static int PRE_ROLL_MILLIS = 250;
+	private final static int BLOCK_MILLIS = 10;
+	/**
+	 * Silence within a transmission longer than this is cut
+	 */
+	private final static int MAX_PAUSE_MILLIS = 300;
+	/**
+	 * Silence played between transmissions
+	 */
+	private final static int GAP_MILLIS = 400;
+	private final static double SILENCE_DBFS = -50d;
+	
+	private final int mSampleRate;
+	private final int mChannels;
+	private final int mCapacity;
+	private final int mTailTrim;
+	private final short[] mRing;
+	private final long[] mStarts = new long[MAX_TRANSMISSIONS];
+	private final long[] mEnds = new long[MAX_TRANSMISSIONS];
+	private final PcmOutput mOutput;
+	private final TimeCompressor mCompressor;
+	private final short[] mBlock;
+	private final short[] mGap;
+	
+	private volatile boolean mCapturing;
+	private volatile long mWritten;
+	private boolean mActive;
+	private int mHead;
+	private int mCount;
+	private long mQueued;
+	private long mPlayed;
+	private long mDropped;
+	private long mCutMillis;
+	private Thread mPlayThread;
+	private volatile boolean mCancelled;
+	
+	/**
+	 * Creates a catch-up queue. It doesn't capture until {@link #setCapturing(boolean)}
+	 * @param sampleRate of the stream in hertz
+	 * @param channels of the stream
+	 * @param minutes of audio to keep
+	 * @param speed transmissions are played at, from 1 to {@link TimeCompressor#MAX_SPEED}
+	 * @param inactivationThreshold of the stream in miliseconds, trimmed from the end of each transmission
+	 */
+	public CatchUpQueue(int sampleRate, int channels, int minutes, float speed, int inactivationThreshold) {
+		mSampleRate = sampleRate;
+		mChannels = channels;
+		mCapacity = sampleRate * channels * 60 * minutes;
+		mTailTrim = toSamples(inactivationThreshold);
+		mRing = new short[mCapacity];
+		mOutput = new PcmOutput(sampleRate, channels);
+		mBlock = new short[toSamples(BLOCK_MILLIS)];
+		mGap = new short[toSamples(GAP_MILLIS)];
+		mCompressor = speed > 1f ? new TimeCompressor(sampleRate, channels, mBlock.length, speed) : null;
+	}
+	
+	/**
+	 * Sets if transmissions are captured. A transmission in progress is queued from when capturing starts until it stops
+	 * @param capturing <code>true</code> while the bluetooth player isn't yielding
+	 */
+	public synchronized void setCapturing(boolean capturing) {
+		if(capturing == mCapturing) {
+			return;
+		}
+		mCapturing = capturing;
+		if(mActive) {
+			if(capturing) {
+				open(mWritten);
+			}else {
+				close(mWritten);
+			}
+		}
+	}
+	/**
+	 * @return <code>true</code> if transmissions are being captured
+	 */
+	public boolean isCapturing() {
+		return mCapturing;
+	}
+	
+	/**
+	 * @return number of finished transmissions waiting to be caught up on
+	 */
+	public synchronized int getCount() {
+		expire();
+		int count = mCount;
+		if(count > 0 && mEnds[(mHead + count - 1) % MAX_TRANSMISSIONS] < 0) {
+			count--;
+		}
+		return count;
+	}
+	
+	/**
+	 * Plays every finished transmission in the queue, oldest first. Each is removed once it has played
+	 * @return <code>true</code> if there was anything to play
+	 */
+	public synchronized boolean play() {
+		if(isPlaying() || getCount() == 0) {
+			return false;
+		}
+		mCancelled = false;
+		mPlayThread = new Thread(new PlayTask(), "CatchUpQueue");
+		mPlayThread.setDaemon(true);
+		mPlayThread.start();
+		return true;
+	}
+	
+	/**
+	 * Stops playing. The transmission that was playing stays queued from where it stopped
+	 */
+	public void stop() {
+		Thread thread;
+		synchronized (this) {
+			thread = mPlayThread;
+			mPlayThread = null;
+			mCancelled = true;
+		}
+		if(thread != null) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				LOGGER.error("Interrupted waiting for catch-up to stop: ", e);
+			}
+		}
+		mOutput.flush();
+	}
+	
+	/**
+	 * @return <code>true</code> if the queue is being played
+	 */
+	public synchronized boolean isPlaying() {
+		return mPlayThread != null && mPlayThread.isAlive();
+	}
+	
+	/**
+	 * Stops playing and closes the output
+	 */
+	public void close() {
+		stop();
+		mOutput.close();
+	}
+	
+	@Override
+	public void formatChanged(int sampleRate, int channels) {
+		if(sampleRate != mSampleRate || channels != mChannels) {
+			LOGGER.warn("Catch-up queue is {}Hz {}ch but the stream is {}Hz {}ch", mSampleRate, mChannels, sampleRate, channels);
+		}
+	}
+	
+	@Override
+	public int process(short[] samples, int length) {
+		if(!mCapturing) {
+			return length;
+		}
+		int offset = 0;
+		int count = length;
+		if(count > mCapacity) {
+			offset = count - mCapacity;
+			count = mCapacity;
+		}
+		int index = (int)(mWritten % mCapacity);
+		int first = Math.min(count, mCapacity - index);
+		System.arraycopy(samples, offset, mRing, index, first);
+		if(first < count) {
+			System.arraycopy(samples, offset + first, mRing, 0, count - first);
+		}
+		mWritten += length;
+		return length;
+	}
+	
+	@Override
+	public synchronized void streamActivated() {
+		mActive = true;
+		if(mCapturing) {
+			open(mWritten - toSamples(PRE_ROLL_MILLIS));
+		}
+	}
+	
+	@Override
+	public synchronized void streamInactivated() {
+		mActive = false;
+		if(mCapturing) {
+			close(mWritten - mTailTrim);
+		}
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return String.format("%d transmissions queued, %d played, %d dropped, %.1fs of silence cut", mQueued, mPlayed, mDropped, mCutMillis / 1000d);
+	}
+	
+	private void open(long start) {
+		if(mCount == MAX_TRANSMISSIONS) {
+			// Full, so the oldest is given up on
+			mHead = (mHead + 1) % MAX_TRANSMISSIONS;
+			mCount--;
+			mDropped++;
+		}
+		int slot = (mHead + mCount) % MAX_TRANSMISSIONS;
+		mStarts[slot] = Math.max(0, start);
+		mEnds[slot] = -1;
+		mCount++;
+	}
+	
+	private void close(long end) {
+		if(mCount == 0) {
+			return;
+		}
+		int slot = (mHead + mCount - 1) % MAX_TRANSMISSIONS;
+		if(mEnds[slot] >= 0) {
+			return;
+		}
+		if(end <= mStarts[slot]) {
+			// Nothing left once the tail was trimmed
+			mCount--;
+			return;
+		}
+		mEnds[slot] = end;
+		mQueued++;
+	}
+	
+	/**
+	 * Drops transmissions whose audio has been written over since they were queued
+	 */
+	private void expire() {
+		long oldest = mWritten - mCapacity + mBlock.length;
+		while(mCount > 0 && mEnds[mHead] >= 0 && mEnds[mHead] <= oldest) {
+			mHead = (mHead + 1) % MAX_TRANSMISSIONS;
+			mCount--;
+			mDropped++;
+		}
+	}
+	
+	private int toSamples(int millis) {
+		return (int)((long)millis * mSampleRate * mChannels / 1000);
+	}
+	
+	
+	private class PlayTask implements Runnable {
+		@Override
+		public void run() {
+			while(!mCancelled) {
+				long start;
+				long end;
+				synchronized (CatchUpQueue.this) {
+					expire();
+					if(mCount == 0 || mEnds[mHead] < 0) {
+						break;
+					}
+					start = mStarts[mHead];
+					end = mEnds[mHead];
+				}
+				long position = play(start, end);
+				synchronized (CatchUpQueue.this) {
+					if(mCount == 0 || mStarts[mHead] != start) {
+						// Dropped while it played
+						continue;
+					}
+					if(position < end) {
+						mStarts[mHead] = position;
+						break;
+					}
+					mHead = (mHead + 1) % MAX_TRANSMISSIONS;
+					mCount--;
+					mPlayed++;
+				}
+				if(!write(mGap, mGap.length)) {
+					break;
+				}
+			}
+			if(!mCancelled) {
+				mOutput.drain();
+			}
+		}
+		
+		/**
+		 * @return where playing stopped
+		 */
+		private long play(long start, long end) {
+			long position = start - start % mChannels;
+			int silence = 0;
+			while(position < end && !mCancelled) {
+				// Skip ahead of the capture if it has written over the audio
+				position = Math.max(position, mWritten - mCapacity + mBlock.length);
+				position -= position % mChannels;
+				int length = (int)Math.min(mBlock.length, end - position);
+				if(length <= 0) {
+					break;
+				}
+				int index = (int)(position % mCapacity);
+				int first = Math.min(length, mCapacity - index);
+				System.arraycopy(mRing, index, mBlock, 0, first);
+				if(first < length) {
+					System.arraycopy(mRing, 0, mBlock, first, length - first);
+				}
+				position += length;
+				if(PcmLevel.toDbfs(PcmLevel.rms(mBlock, 0, length)) < SILENCE_DBFS) {
+					silence += BLOCK_MILLIS;
+					if(silence > MAX_PAUSE_MILLIS) {
+						synchronized (CatchUpQueue.this) {
+							mCutMillis += BLOCK_MILLIS;
+						}
+						continue;
+					}
+				}else {
+					silence = 0;
+				}
+				if(!write(mBlock, length)) {
+					return position;
+				}
+			}
+			if(mCompressor != null) {
+				// Starts the next transmission fresh, even when this one was stopped part way
+				int length = mCompressor.flush();
+				if(!mCancelled) {
+					mOutput.write(mCompressor.getOutput(), length);
+				}
+			}
+			return position;
+		}
+		
+		private boolean write(short[] samples, int length) {
+			if(mCompressor == null || samples == mGap) {
+				return mOutput.write(samples, length);
+			}
+			return mOutput.write(mCompressor.getOutput(), mCompressor.process(samples, length));
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.caprica.vlcj.factory.discovery.NativeDiscovery;
+import uk.co.caprica.vlcj.factory.discovery.strategy.LinuxNativeDiscoveryStrategy;
+import uk.co.caprica.vlcj.factory.discovery.strategy.NativeDiscoveryStrategy;
+import uk.co.caprica.vlcj.factory.discovery.strategy.OsxNativeDiscoveryStrategy;
+import uk.co.caprica.vlcj.factory.discovery.strategy.WindowsNativeDiscoveryStrategy;
+
+/**
+ * Shortens libvlc's cold start by not searching for libvlc.
+ * The directory libvlc was found in is kept in a file and tried before searching again, and every {@link SharedMediaPlayerFactory} shares one discovery
+ * instead of searching for each libvlc instance. Factories are also given {@link #OPTIONS}, which turn off features a stream never uses.
+ * They don't change which plugins vlc loads, that's up to vlc's plugin cache, which vlc-cache-gen rebuilds.
+ * Once installed, it's used by every {@link SharedMediaPlayerFactory} created afterwards.
+ * @author Scott Maday
+ */
+public class FastStart {
+	private final static Logger LOGGER = LoggerFactory.getLogger(FastStart.class);
+	public final static String DEFAULT_CACHE = "libvlc.path";
+	/**
+	 * Options that skip vlc's configuration file and turn off video, subtitles, lua extensions and the media library
+	 */
+	public final static String[] OPTIONS = {"--ignore-config", "--no-video", "--no-spu", "--no-osd", "--no-xlib", "--no-lua", "--no-sub-autodetect-file", "--no-media-library", "--no-metadata-network-access"};
+	
+	private static FastStart sInstance;
+	
+	private final File mCache;
+	private final NativeDiscovery mDiscovery;
+	private final NativeDiscoveryStrategy mPlatform;
+	
+	private FastStart(File cache) {
+		mCache = cache;
+		NativeDiscoveryStrategy[] platforms = {new LinuxNativeDiscoveryStrategy(), new OsxNativeDiscoveryStrategy(), new WindowsNativeDiscoveryStrategy()};
+		NativeDiscoveryStrategy platform = platforms[0];
+		for(NativeDiscoveryStrategy strategy : platforms) {
+			if(strategy.supported()) {
+				platform = strategy;
+				break;
+			}
+		}
+		mPlatform = platform;
+		mDiscovery = new CachedDiscovery(new CachedStrategy(), platforms[0], platforms[1], platforms[2]);
+	}
+	
+	/**
+	 * Installs fast start, if it isn't already
+	 * @param cache file keeping the directory libvlc was found in
+	 * @return the installed {@link FastStart}
+	 */
+	public static synchronized FastStart install(File cache) {
+		if(sInstance == null) {
+			sInstance = new FastStart(cache);
+		}
+		return sInstance;
+	}
+	
+	/**
+	 * @return the installed {@link FastStart}, or null if {@link #install(File)} hasn't been called
+	 */
+	public static synchronized FastStart getInstance() {
+		return sInstance;
+	}
+	
+	/**
+	 * @return the discovery every factory shares
+	 */
+	public NativeDiscovery getDiscovery() {
+		return mDiscovery;
+	}
+	
+	/**
+	 * Adds {@link #OPTIONS} to a factory's options, leaving out any the options already set either way.
+	 * Streams demuxed with rawaud are also pinned to the raw audio decoder so vlc doesn't probe the others
+	 * @param options of the factory
+	 * @return the options to create the factory with
+	 */
+	public String[] apply(String[] options) {
+		List<String> result = new ArrayList<String>();
+		boolean rawaud = false;
+		boolean codec = false;
+		for(String option : options) {
+			result.add(option);
+			rawaud |= option.equals("--demux=rawaud");
+			codec |= option.startsWith("--codec");
+		}
+		for(String option : OPTIONS) {
+			if(!isSet(options, option)) {
+				result.add(option);
+			}
+		}
+		if(rawaud && !codec) {
+			result.add("--codec=araw");
+		}
+		return result.toArray(new String[result.size()]);
+	}
+	
+	private static boolean isSet(String[] options, String option) {
+		String name = option.startsWith("--no-") ? option.substring(5) : option.substring(2);
+		for(String set : options) {
+			if(set.equals("--" + name) || set.equals("--no-" + name) || set.startsWith("--" + name + "=")) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	
+	/**
+	 * Tries the directory in the cache file
+	 */
+	private class CachedStrategy implements NativeDiscoveryStrategy {
+		
+		@Override
+		public boolean supported() {
+			return mCache.isFile();
+		}
+		
+		@Override
+		public String discover() {
+			try {
+				String path = new String(Files.readAllBytes(mCache.toPath()), StandardCharsets.UTF_8).trim();
+				String[] files = new File(path).list();
+				if(files != null) {
+					for(String file : files) {
+						if(file.startsWith("libvlc.") || file.equals("libvlc.dll")) {
+							return path;
+						}
+					}
+				}
+				LOGGER.info("Cached libvlc directory {} no longer has libvlc", path);
+			} catch (IOException e) {
+				LOGGER.warn("Could not read the cached libvlc directory: ", e);
+			}
+			return null;
+		}
+		
+		@Override
+		public boolean onFound(String path) {
+			return true;
+		}
+		
+		@Override
+		public boolean onSetPluginPath(String pluginPath) {
+			return mPlatform.onSetPluginPath(pluginPath);
+		}
+	}
+	
+	/**
+	 * Writes the directory libvlc was found in to the cache file when it wasn't found there
+	 */
+	private class CachedDiscovery extends NativeDiscovery {
+		
+		public CachedDiscovery(NativeDiscoveryStrategy... discoveryStrategies) {
+			super(discoveryStrategies);
+		}
+		
+		@Override
+		protected void onFound(String path, NativeDiscoveryStrategy strategy) {
+			if(strategy instanceof CachedStrategy) {
+				LOGGER.debug("Found libvlc in cached directory {}", path);
+				return;
+			}
+			try {
+				Files.write(mCache.toPath(), path.getBytes(StandardCharsets.UTF_8));
+				LOGGER.info("Found libvlc in {}, cached for the next start", path);
+			} catch (IOException e) {
+				LOGGER.warn("Could not cache the libvlc directory: ", e);
+			}
+		}
+		
+		@Override
+		protected void onNotFound() {
+			LOGGER.error("Could not find libvlc");
+		}
+	}
+}
@@ -16,16 +16,17 @@
 */
 package center.scott.bluegui.stream;
 
-import uk.co.caprica.vlcj.factory.MediaPlayerFactory;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import center.scott.bluegui.stream.audio.PcmProcessor;
+import uk.co.caprica.vlcj.media.InfoApi;
+import uk.co.caprica.vlcj.media.MediaStatistics;
 import uk.co.caprica.vlcj.player.base.MediaPlayer;
 import uk.co.caprica.vlcj.player.base.MediaPlayerEventAdapter;
+import uk.co.caprica.vlcj.player.base.MediaPlayerEventListener;
 import uk.co.caprica.vlcj.player.component.AudioPlayerComponent;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,20 +36,25 @@ import org.slf4j.LoggerFactory;
  * This follows whats similar in <a href="http://capricasoftware.co.uk/projects/vlcj-4/tutorials/basic-audio-player">http://capricasoftware.co.uk/projects/vlcj-4/tutorials/basic-audio-player</a>
  * @author Scott Maday
  */
-public class MediaStreamPlayer {
+public class MediaStreamPlayer implements StreamPlayer {
 	private final static Logger LOGGER = LoggerFactory.getLogger(MediaStreamPlayer.class);
-	private final static int STREAM_INACTIVATION_REFRESH_INTERVAL = 100;
 	
-	private final String mUri;
+	private final SharedMediaPlayerFactory mFactory;
 	private final AudioPlayerComponent mAudioPlayerComponent;
+	private final CachedAudioState mAudioState;
+	private final StreamActivityMonitor mActivityMonitor = new StreamActivityMonitor();
+	private final int mSampleRate;
+	private final int mChannels;
 	
+	private volatile String mUri;
+	private volatile boolean mStopRequested = false;
 	private Thread mThread;
 	private boolean mReleased = false;
-	private boolean mMuted = false;
-	private int mVolume = 50;
-	private int mStreamInactivationThreshold = 2000;
-	private AtomicBoolean mStreamActive = new AtomicBoolean(false);
-	private List<StreamActivityObserver> mObservers = new ArrayList<StreamActivityObserver>();
+	private ActivityDetection mActivityDetection = ActivityDetection.TIME_CHANGED;
+	private StreamAudioCallback mAudioCallback;
+	private PcmActivityDetector mActivityDetector;
+	private StreamStatistics mStatistics;
+	private ScheduledFuture<?> mStatisticsFuture;
 	
 	/**
 	 * Creates a new media stream with no options
@@ -57,10 +63,7 @@ public class MediaStreamPlayer {
 	 * @see uk.co.caprica.vlcj.player.component.AudioPlayerComponent
 	 */
 	public MediaStreamPlayer(String uri) {
-		mUri = uri;
-		MediaPlayerFactory mediaPlayerFactory = new MediaPlayerFactory();
-		mAudioPlayerComponent = new AudioPlayerComponent(mediaPlayerFactory);
-		init();
+		this(uri, new SharedMediaPlayerFactory(), null);
 	}
 	/**
 	 * Creates a new media stream with options from a predefined {@link StreamConfiguration}
@@ -70,10 +73,7 @@ public class MediaStreamPlayer {
 	 * @see uk.co.caprica.vlcj.player.component.AudioPlayerComponent
 	 */
 	public MediaStreamPlayer(String uri, StreamConfiguration configuration) {
-		mUri = uri;
-		MediaPlayerFactory mediaPlayerFactory = new MediaPlayerFactory(configuration.getOptions());
-		mAudioPlayerComponent = new AudioPlayerComponent(mediaPlayerFactory);
-		init();
+		this(uri, configuration.createFactory(), configuration);
 	}
 	/**
 	 * Creates a new media stream with options
@@ -83,9 +83,22 @@ public class MediaStreamPlayer {
 	 * @see uk.co.caprica.vlcj.player.component.AudioPlayerComponent
 	 */
 	public MediaStreamPlayer(String uri, String[] options) {
+		this(uri, new SharedMediaPlayerFactory(options), null);
+	}
+	/**
+	 * Creates a new media stream on a factory shared with other streams. The factory's options apply to every stream using it
+	 * @param uri the mrl
+	 * @param factory a {@link SharedMediaPlayerFactory}, released along with the last stream using it
+	 * @param configuration a {@link StreamConfiguration} giving the stream format, or null for the defaults
+	 * @see uk.co.caprica.vlcj.player.component.AudioPlayerComponent
+	 */
+	public MediaStreamPlayer(String uri, SharedMediaPlayerFactory factory, StreamConfiguration configuration) {
 		mUri = uri;
-		MediaPlayerFactory mediaPlayerFactory = new MediaPlayerFactory(options);
-		mAudioPlayerComponent = new AudioPlayerComponent(mediaPlayerFactory);
+		mSampleRate = StreamConfiguration.getSampleRate(configuration);
+		mChannels = StreamConfiguration.getChannels(configuration);
+		mFactory = factory;
+		mAudioPlayerComponent = new AudioPlayerComponent(factory.acquire());
+		mAudioState = new CachedAudioState(mAudioPlayerComponent.mediaPlayer());
 		init();
 	}
 	
@@ -101,12 +114,15 @@ public class MediaStreamPlayer {
 	 * @see #isPlaying()
 	 * @see uk.co.caprica.vlcj.player.base.MediaApi#play(String mrl, String... options)
 	 */
+	@Override
 	public boolean play() {
 		if(isReleased() || isPlaying()) {
 			return false;
 		}
+		mStopRequested = false;
 		mThread = new Thread();
 		boolean result = mAudioPlayerComponent.mediaPlayer().media().play(mUri);
+		mAudioState.setPlaying(result);
 		try {
 			mThread.join();
 		} catch (InterruptedException e) {
@@ -122,6 +138,7 @@ public class MediaStreamPlayer {
 	 * @see java.lang.Thread#currentThread()
 	 * @see java.lang.Thread#join()
 	 */
+	@Override
 	public boolean join() {
 		try {
 			Thread.currentThread().join();
@@ -136,75 +153,151 @@ public class MediaStreamPlayer {
 	 * Stops the listening outputting of the stream
 	 * @see uk.co.caprica.vlcj.player.base.MediaApi#stop()
 	 */
+	@Override
 	public void stop() {
 		if(isReleased()) {
 			return;
 		}
+		mStopRequested = true;
 		mAudioPlayerComponent.mediaPlayer().controls().stop();
+		mAudioState.setPlaying(false);
+	}
+	
+	/**
+	 * Plays a different mrl on the existing media player, keeping the factory, audio callback and activity tracking
+	 * @param uri the mrl to play
+	 * @return <code>true</code> on successfully playing the stream, else <code>false</code> if there was an error or the stream {@link #isReleased()}
+	 * @see uk.co.caprica.vlcj.player.base.MediaApi#play(String mrl, String... options)
+	 */
+	public boolean open(String uri) {
+		if(isReleased()) {
+			return false;
+		}
+		mUri = uri;
+		mStopRequested = false;
+		boolean result = mAudioPlayerComponent.mediaPlayer().media().play(uri);
+		mAudioState.setPlaying(result);
+		return result;
+	}
+	
+	/**
+	 * @return the mrl being played
+	 */
+	public String getUri() {
+		return mUri;
+	}
+	
+	/**
+	 * @return <code>true</code> if {@link #stop()} was called since the stream was last played
+	 */
+	public boolean isStopRequested() {
+		return mStopRequested;
+	}
+	
+	/**
+	 * Adds a listener to the vlc events of this stream. Listeners are called on vlc's event thread, so they must not call back into the media player
+	 * @param listener to add
+	 * @see uk.co.caprica.vlcj.player.base.EventApi#addMediaPlayerEventListener(MediaPlayerEventListener)
+	 */
+	public void addMediaPlayerEventListener(MediaPlayerEventListener listener) {
+		mAudioPlayerComponent.mediaPlayer().events().addMediaPlayerEventListener(listener);
+	}
+	/**
+	 * Removes a listener from the vlc events of this stream
+	 * @param listener to remove
+	 * @see uk.co.caprica.vlcj.player.base.EventApi#removeMediaPlayerEventListener(MediaPlayerEventListener)
+	 */
+	public void removeMediaPlayerEventListener(MediaPlayerEventListener listener) {
+		mAudioPlayerComponent.mediaPlayer().events().removeMediaPlayerEventListener(listener);
 	}
 	
 	/**
 	 * @return <code>true</code> if the stream is playing, else <code>false</code> if not or the stream {@link #isReleased()}
 	 * @see #play()
-	 * @see uk.co.caprica.vlcj.player.base.StatusApi#isPlaying()
+	 * @see CachedAudioState#isPlaying()
 	 */
+	@Override
 	public boolean isPlaying() {
 		if(isReleased()) {
 			return false;
 		}
-		return mAudioPlayerComponent.mediaPlayer().status().isPlaying();
+		return mAudioState.isPlaying();
+	}
+	/**
+	 * Asks vlc whether the stream is playing instead of using the state cached from its events
+	 * @return <code>true</code> if the stream is playing, else <code>false</code> if not or the stream {@link #isReleased()}
+	 * @see uk.co.caprica.vlcj.player.base.StatusApi#isPlaying()
+	 */
+	public boolean queryPlaying() {
+		if(isReleased()) {
+			return false;
+		}
+		return mAudioState.queryPlaying();
 	}
 	
 	/**
 	 * Sets the mute of the stream output
 	 * @param mute <code>true</code> to mute, <code>false</code> to unmute
-	 * @see uk.co.caprica.vlcj.player.base.AudioApi#setMute(boolean)
+	 * @see CachedAudioState#setMute(boolean)
 	 */
+	@Override
 	public void setMute(boolean mute) {
-		mMuted = mute;
-		mAudioPlayerComponent.mediaPlayer().audio().setMute(mute);
+		if(isReleased()) {
+			return;
+		}
+		mAudioState.setMute(mute);
 	}
 	/**
 	 * @return <code>true</code> If the stream is muted, <code>false</code> otherwise
 	 */
+	@Override
 	public boolean isMute() {
-		return mMuted;
+		return mAudioState.isMute();
 	}
 	
 	/**
 	 * Sets the stream volume
 	 * @param volume percentage between 0 and 100, anything past 100 may cause distortion.
 	 * @return <code>true</code> if the stream is successful, else <code>false</code> if not or the stream {@link #isReleased()}
-	 * @see uk.co.caprica.vlcj.player.base.AudioApi#setVolume(int)
+	 * @see CachedAudioState#setVolume(int)
 	 */
+	@Override
 	public boolean setVolume(int volume) {
-		mVolume = volume;
 		if(isReleased()) {
 			return false;
 		}
-		return mAudioPlayerComponent.mediaPlayer().audio().setVolume(volume);
+		return mAudioState.setVolume(volume);
 	}
 	/**
 	 * Gets the stream volume
 	 * @return volume percentage between 0 and 200, or -1 if the stream {@link #isReleased()}
 	 */
+	@Override
 	public int getVolume() {
 		if(isReleased()) {
 			return -1;
 		}
-		return mVolume;
+		return mAudioState.getVolume();
 	}
 	
 	/**
-	 * Releases media components
+	 * Releases media components, and the factory if no other stream is using it
 	 * @see uk.co.caprica.vlcj.player.component.AudioPlayerComponent#release()
 	 */
+	@Override
 	public void dispose() {
 		mReleased = true;
+		mActivityMonitor.cancel();
+		stopStatistics();
+		LOGGER.debug("Saved {} of {} native audio calls for {}", mAudioState.getSavedCallCount(), mAudioState.getSavedCallCount() + mAudioState.getNativeCallCount(), mUri);
 		mAudioPlayerComponent.mediaPlayer().submit(new Runnable() {
             @Override
             public void run() {
-            	mAudioPlayerComponent.mediaPlayer().release();
+            	mAudioPlayerComponent.release();
+            	mFactory.release();
+            	if(mAudioCallback != null) {
+            		mAudioCallback.close();
+            	}
             }
         });
 	}
@@ -214,6 +307,7 @@ public class MediaStreamPlayer {
 	 * @return <code>true</code> if the stream has been released
 	 * @see #dispose()
 	 */
+	@Override
 	public boolean isReleased() {
 		return mReleased;
 	}
@@ -222,8 +316,156 @@ public class MediaStreamPlayer {
 	 * Sets the threshold where the stream is deemed inactive
 	 * @param streamInactivationThreshold the threshold in miliseconds
 	 */
+	@Override
 	public void setStreamInactivationThreshold(int streamInactivationThreshold) {
-		mStreamInactivationThreshold = streamInactivationThreshold;
+		mActivityMonitor.setInactivationThreshold(streamInactivationThreshold);
+	}
+	
+	/**
+	 * Sets how this stream decides that it's active. This must be set before {@link #play()}.
+	 * {@link ActivityDetection#ENERGY} takes the decoded audio through a {@link StreamAudioCallback} and plays it from java instead of vlc.
+	 * @param activityDetection to use
+	 * @return <code>true</code> if the detection was set, else <code>false</code> if the stream {@link #isReleased()} or {@link #isPlaying()}
+	 */
+	@Override
+	public boolean setActivityDetection(ActivityDetection activityDetection) {
+		if(isReleased() || isPlaying()) {
+			return false;
+		}
+		mActivityDetection = activityDetection;
+		if(activityDetection == ActivityDetection.ENERGY && mActivityDetector == null) {
+			mActivityDetector = new PcmActivityDetector(mActivityMonitor);
+			installAudioCallback().addProcessor(mActivityDetector);
+		}
+		return true;
+	}
+	/**
+	 * @return how this stream decides that it's active
+	 */
+	@Override
+	public ActivityDetection getActivityDetection() {
+		return mActivityDetection;
+	}
+	
+	/**
+	 * Sets the signal thresholds used by {@link ActivityDetection#ENERGY}. A block of audio counts as activity if it reaches either threshold
+	 * @param rmsDbfs rms threshold in dBFS
+	 * @param peakDbfs peak threshold in dBFS
+	 * @return <code>true</code> if set, else <code>false</code> if the stream isn't using {@link ActivityDetection#ENERGY}
+	 */
+	@Override
+	public boolean setActivityThresholds(double rmsDbfs, double peakDbfs) {
+		if(mActivityDetector == null) {
+			return false;
+		}
+		mActivityDetector.setThresholds(rmsDbfs, peakDbfs);
+		return true;
+	}
+	
+	/**
+	 * Adds a processor to the decoded audio. The first processor takes the audio through a {@link StreamAudioCallback}, so it must be added before {@link #play()}
+	 * @param processor to add
+	 * @return <code>true</code> if added, else <code>false</code> if the stream {@link #isReleased()} or vlc is already outputting the audio itself
+	 */
+	@Override
+	public boolean addProcessor(PcmProcessor processor) {
+		if(isReleased() || (mAudioCallback == null && isPlaying())) {
+			return false;
+		}
+		installAudioCallback().addProcessor(processor);
+		return true;
+	}
+	
+	@Override
+	public boolean removeProcessor(PcmProcessor processor) {
+		return mAudioCallback != null && mAudioCallback.removeProcessor(processor);
+	}
+	
+	@Override
+	public boolean setOutputRate(int outputRate) {
+		if(isReleased() || (mAudioCallback == null && isPlaying())) {
+			return false;
+		}
+		installAudioCallback().getOutput().setOutputRate(outputRate);
+		return true;
+	}
+	
+	private StreamAudioCallback installAudioCallback() {
+		if(mAudioCallback == null) {
+			mAudioCallback = new StreamAudioCallback(mSampleRate, mChannels);
+			mAudioCallback.install(mAudioPlayerComponent.mediaPlayer());
+		}
+		return mAudioCallback;
+	}
+	
+	/**
+	 * Gets the callback that decoded audio flows through
+	 * @return the {@link StreamAudioCallback}, or null if vlc is outputting the audio itself
+	 * @see #setActivityDetection(ActivityDetection)
+	 */
+	public StreamAudioCallback getAudioCallback() {
+		return mAudioCallback;
+	}
+	
+	/**
+	 * Starts sampling vlc's media statistics on the {@link StreamScheduler}
+	 * @param interval between samples in miliseconds
+	 * @param capacity number of samples to keep
+	 * @return the {@link StreamStatistics} being sampled into, or the existing one if sampling already started
+	 */
+	public synchronized StreamStatistics startStatistics(int interval, int capacity) {
+		if(mStatistics != null) {
+			return mStatistics;
+		}
+		final StreamStatistics statistics = new StreamStatistics(capacity);
+		final MediaStatistics mediaStatistics = new MediaStatistics();
+		mStatistics = statistics;
+		mStatisticsFuture = StreamScheduler.getScheduler().scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				if(isReleased() || !isPlaying()) {
+					return;
+				}
+				InfoApi info = mAudioPlayerComponent.mediaPlayer().media().info();
+				if(info != null && info.statistics(mediaStatistics)) {
+					statistics.record(mediaStatistics, System.currentTimeMillis());
+				}
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+		return statistics;
+	}
+	/**
+	 * Stops sampling media statistics. Samples already taken are kept
+	 */
+	public synchronized void stopStatistics() {
+		if(mStatisticsFuture != null) {
+			mStatisticsFuture.cancel(false);
+			mStatisticsFuture = null;
+		}
+	}
+	/**
+	 * Gets the sampled media statistics
+	 * @return the {@link StreamStatistics} of this stream, or null if {@link #startStatistics(int, int)} hasn't been called
+	 */
+	public synchronized StreamStatistics getStatistics() {
+		return mStatistics;
+	}
+	
+	/**
+	 * Gets the cached audio state of this stream, which counts the native calls it saved
+	 * @return the {@link CachedAudioState} of this stream
+	 */
+	public CachedAudioState getAudioState() {
+		return mAudioState;
+	}
+	
+	/**
+	 * Gets the monitor deciding when this stream is active
+	 * @return the {@link StreamActivityMonitor} of this stream
+	 */
+	@Override
+	public StreamActivityMonitor getActivityMonitor() {
+		return mActivityMonitor;
 	}
 	
 	/**
@@ -233,8 +475,9 @@ public class MediaStreamPlayer {
 	 * @see StreamActivityObserver
 	 * @see java.util.List#add(Object)
 	 */
+	@Override
 	public void addObserver(StreamActivityObserver observer) {
-		mObservers.add(observer);
+		mActivityMonitor.addObserver(observer);
 	}
 	
 	/**
@@ -244,68 +487,22 @@ public class MediaStreamPlayer {
 	 * @see StreamActivityObserver
 	 * @see java.util.List#remove(Object)
 	 */
+	@Override
 	public boolean removeObserver(StreamActivityObserver observer) {
-		return mObservers.remove(observer);
+		return mActivityMonitor.removeObserver(observer);
 	}
 	
 	
-	private class MediaStreamEventAdapter extends MediaPlayerEventAdapter implements Runnable {
-		private long lastSignalTime;
-		
+	private class MediaStreamEventAdapter extends MediaPlayerEventAdapter {
 		@Override
 		public void timeChanged(MediaPlayer mediaPlayer, long newTime) {
-			lastSignalTime = System.currentTimeMillis();
-			if(mStreamActive.get() == false) {
-				mStreamActive.set(true);
-				
-				if(mAudioPlayerComponent.mediaPlayer().audio().isMute() != mMuted) {
-					mAudioPlayerComponent.mediaPlayer().audio().setMute(mMuted);
-				}
-				if(mVolume >= 0 && mAudioPlayerComponent.mediaPlayer().audio().volume() != mVolume) {
-					mAudioPlayerComponent.mediaPlayer().audio().setVolume(mVolume);
-				}
-				
-				new Thread(this).start();
-				new MediaStreamTimeChangedEventThread().start();
-			}
-		}
-		@Override
-		public void run() {
-			Iterator<StreamActivityObserver> observersIterator = mObservers.iterator();
-			while(observersIterator.hasNext()) {
-				observersIterator.next().streamActivated();
+			if(mActivityDetection != ActivityDetection.TIME_CHANGED) {
+				return;
 			}
-		}
-		
-		
-		private class MediaStreamTimeChangedEventThread extends Thread {
-			@Override
-			public void run() {
-				LOGGER.debug("Beginning {} from MediaStreamEventAdapter", getName());
-				while(mStreamActive.get()) {
-					try {
-						Thread.sleep(STREAM_INACTIVATION_REFRESH_INTERVAL);
-					} catch (InterruptedException e) {
-						LOGGER.error("Error in MediaStreamTimeChangedEventThread worker suspending the thread: {}", e);
-						break;
-					}
-					
-					if(mStreamActive.get() == false) {
-						break;
-					}
-					long currentTime = System.currentTimeMillis();
-					mStreamActive.set(currentTime - lastSignalTime <= mStreamInactivationThreshold && mStreamActive.get());
-				}
-				
-				Iterator<StreamActivityObserver> observersIterator = mObservers.iterator();
-				while(observersIterator.hasNext()) {
-					observersIterator.next().streamInactivated();
-				}
-				
+			if(mActivityMonitor.signal()) {
+				mAudioState.reconcile();
 			}
 		}
-		
-		
 	}
 	
 }
@@ -0,0 +1,306 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.caprica.vlcj.factory.MediaPlayerFactory;
+import uk.co.caprica.vlcj.log.LogEventListener;
+import uk.co.caprica.vlcj.log.LogLevel;
+import uk.co.caprica.vlcj.log.NativeLog;
+
+/**
+ * Captures libvlc's native log, and optionally the system error stream, into a fixed size ring of recent entries.
+ * Entries are routed to slf4j on the {@link StreamScheduler} with a rate limit, so a chatty libvlc can't flood the log, and the ring can be dumped at any time.
+ * Memory stays flat however long the program runs, unlike the {@link NullErrorStream} this replaces.
+ * @author Scott Maday
+ */
+public class NativeLogCapture implements LogEventListener {
+	private final static Logger LOGGER = LoggerFactory.getLogger(NativeLogCapture.class);
+	private final static Logger VLC_LOGGER = LoggerFactory.getLogger("libvlc");
+	private final static Logger STDERR_LOGGER = LoggerFactory.getLogger("stderr");
+	public final static int DEFAULT_CAPACITY = 512;
+	public final static int MAX_MESSAGE_LENGTH = 512;
+	/**
+	 * Entries routed to slf4j per second, with bursts of up to twice as many
+	 */
+	public final static int DEFAULT_RATE_LIMIT = 20;
+	private final static int ROUTE_INTERVAL = 250;
+	private final static String STDERR_SOURCE = "stderr";
+	
+	private static NativeLogCapture sInstance;
+	
+	private final long[] mTimes;
+	private final LogLevel[] mLevels;
+	private final String[] mSources;
+	private final boolean[] mFromErr;
+	private final String[] mMessages;
+	private final ScheduledFuture<?> mRouteFuture;
+	private final PrintStream mStdErr;
+	private final PrintStream mCaptureErr;
+	
+	private LogLevel mLevel = LogLevel.WARNING;
+	private int mRateLimit = DEFAULT_RATE_LIMIT;
+	private long mWritten = 0;
+	private long mRouted = 0;
+	private double mTokens;
+	private long mLastRoute;
+	private long mSuppressed = 0;
+	private long mOverwritten = 0;
+	
+	private NativeLogCapture(int capacity) {
+		mTimes = new long[capacity];
+		mLevels = new LogLevel[capacity];
+		mSources = new String[capacity];
+		mFromErr = new boolean[capacity];
+		mMessages = new String[capacity];
+		mTokens = mRateLimit * 2;
+		mLastRoute = System.nanoTime();
+		mStdErr = System.err;
+		mCaptureErr = new PrintStream(new LineCaptureStream(), true);
+		mRouteFuture = StreamScheduler.getScheduler().scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				route();
+			}
+		}, ROUTE_INTERVAL, ROUTE_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Starts capturing the native log of every {@link SharedMediaPlayerFactory} created afterwards
+	 * @param capacity number of recent entries to keep
+	 * @param captureErr <code>true</code> to also replace the system error stream with the capture, <code>false</code> to leave it printing as usual
+	 * @return <code>true</code> if the capture was installed, or <code>false</code> if it {@link #isInstalled()}
+	 */
+	public static synchronized boolean install(int capacity, boolean captureErr) {
+		if(sInstance != null) {
+			return false;
+		}
+		sInstance = new NativeLogCapture(capacity);
+		if(captureErr) {
+			System.setErr(sInstance.mCaptureErr);
+		}
+		return true;
+	}
+	/**
+	 * Same as {@link #install(int, boolean)} with {@link #DEFAULT_CAPACITY}
+	 * @param captureErr <code>true</code> to also replace the system error stream with the capture, <code>false</code> to leave it printing as usual
+	 * @return <code>true</code> if the capture was installed, or <code>false</code> if it {@link #isInstalled()}
+	 */
+	public static boolean install(boolean captureErr) {
+		return install(DEFAULT_CAPACITY, captureErr);
+	}
+	
+	/**
+	 * Routes any remaining entries and gives the system error stream back if it was captured
+	 * @return <code>true</code> if the capture was uninstalled, or <code>false</code> if it wasn't installed
+	 */
+	public static synchronized boolean uninstall() {
+		if(sInstance == null) {
+			return false;
+		}
+		sInstance.mRouteFuture.cancel(false);
+		sInstance.route();
+		if(System.err == sInstance.mCaptureErr) {
+			System.setErr(sInstance.mStdErr);
+		}
+		sInstance = null;
+		return true;
+	}
+	
+	/**
+	 * @return <code>true</code> if the capture is installed
+	 */
+	public static synchronized boolean isInstalled() {
+		return sInstance != null;
+	}
+	
+	/**
+	 * @return the installed capture, or null if there is none
+	 */
+	public static synchronized NativeLogCapture getInstance() {
+		return sInstance;
+	}
+	
+	/**
+	 * Attaches the capture to a factory's native log. The returned log must be released before the factory
+	 * @param factory to capture the log of
+	 * @return the {@link NativeLog} of the factory
+	 * @see uk.co.caprica.vlcj.factory.ApplicationApi#newLog()
+	 */
+	public NativeLog attach(MediaPlayerFactory factory) {
+		NativeLog log = factory.application().newLog();
+		log.setLevel(getLevel());
+		log.addLogListener(this);
+		return log;
+	}
+	
+	/**
+	 * Sets the lowest level of libvlc messages captured by logs attached afterwards
+	 * @param level to capture from
+	 */
+	public synchronized void setLevel(LogLevel level) {
+		mLevel = level;
+	}
+	/**
+	 * @return the lowest level of libvlc messages captured
+	 */
+	public synchronized LogLevel getLevel() {
+		return mLevel;
+	}
+	
+	/**
+	 * Sets how many entries are routed to slf4j per second. Entries past the limit are only kept in the ring
+	 * @param rateLimit entries per second
+	 */
+	public synchronized void setRateLimit(int rateLimit) {
+		mRateLimit = rateLimit;
+	}
+	
+	/**
+	 * @return number of entries not routed to slf4j because of the rate limit
+	 */
+	public synchronized long getSuppressedCount() {
+		return mSuppressed;
+	}
+	/**
+	 * @return number of entries overwritten before they could be routed to slf4j
+	 */
+	public synchronized long getOverwrittenCount() {
+		return mOverwritten;
+	}
+	
+	/**
+	 * Gets the most recent entries
+	 * @param count maximum number of entries
+	 * @return formatted entries from oldest to newest
+	 */
+	public synchronized List<String> dump(int count) {
+		int available = (int)Math.min(Math.min(count, mWritten), mTimes.length);
+		List<String> entries = new ArrayList<String>(available);
+		for(long i = mWritten - available; i < mWritten; i++) {
+			int slot = (int)(i % mTimes.length);
+			entries.add(String.format("%tT.%<tL %s %s: %s", mTimes[slot], mLevels[slot], mSources[slot], mMessages[slot]));
+		}
+		return entries;
+	}
+	/**
+	 * Gets every entry in the ring
+	 * @return formatted entries from oldest to newest
+	 */
+	public List<String> dump() {
+		return dump(mTimes.length);
+	}
+	
+	@Override
+	public void log(LogLevel level, String module, String file, Integer line, String name, String header, Integer id, String message) {
+		add(level, module, message, false);
+	}
+	
+	private synchronized void add(LogLevel level, String source, String message, boolean fromErr) {
+		int slot = (int)(mWritten % mTimes.length);
+		mTimes[slot] = System.currentTimeMillis();
+		mLevels[slot] = level;
+		mSources[slot] = source;
+		mFromErr[slot] = fromErr;
+		mMessages[slot] = message != null && message.length() > MAX_MESSAGE_LENGTH ? message.substring(0, MAX_MESSAGE_LENGTH) : message;
+		mWritten++;
+	}
+	
+	private void route() {
+		List<Integer> levels = new ArrayList<Integer>();
+		List<Logger> loggers = new ArrayList<Logger>();
+		List<String> messages = new ArrayList<String>();
+		long suppressed = 0;
+		long suppressedTotal;
+		// Entries are copied out so nothing is logged while holding the lock, in case the log itself goes to the error stream
+		synchronized (this) {
+			long now = System.nanoTime();
+			mTokens = Math.min(mRateLimit * 2, mTokens + (now - mLastRoute) / 1e9d * mRateLimit);
+			mLastRoute = now;
+			if(mWritten - mRouted > mTimes.length) {
+				mOverwritten += mWritten - mRouted - mTimes.length;
+				mRouted = mWritten - mTimes.length;
+			}
+			for(; mRouted < mWritten; mRouted++) {
+				if(mTokens < 1) {
+					suppressed++;
+					continue;
+				}
+				mTokens--;
+				int slot = (int)(mRouted % mTimes.length);
+				levels.add(mLevels[slot].intValue());
+				if(mFromErr[slot]) {
+					loggers.add(STDERR_LOGGER);
+					messages.add(mMessages[slot]);
+				}else {
+					loggers.add(VLC_LOGGER);
+					messages.add(mSources[slot] + ": " + mMessages[slot]);
+				}
+			}
+			mSuppressed += suppressed;
+			suppressedTotal = mSuppressed;
+		}
+		for(int i = 0; i < messages.size(); i++) {
+			LogLevel level = LogLevel.level(levels.get(i));
+			Logger logger = loggers.get(i);
+			if(level == LogLevel.ERROR) {
+				logger.error(messages.get(i));
+			}else if(level == LogLevel.WARNING) {
+				logger.warn(messages.get(i));
+			}else if(level == LogLevel.NOTICE) {
+				logger.info(messages.get(i));
+			}else {
+				logger.debug(messages.get(i));
+			}
+		}
+		if(suppressed > 0) {
+			LOGGER.warn("Suppressed {} native log messages, {} in total", suppressed, suppressedTotal);
+		}
+	}
+	
+	
+	/**
+	 * Splits what's written to the system error stream into entries, truncating long lines
+	 */
+	private class LineCaptureStream extends OutputStream {
+		private final byte[] mLine = new byte[MAX_MESSAGE_LENGTH];
+		private int mLength = 0;
+		
+		@Override
+		public synchronized void write(int b) {
+			if(b == '\n') {
+				flushLine();
+			}else if(b != '\r' && mLength < mLine.length) {
+				mLine[mLength++] = (byte)b;
+			}
+		}
+		
+		private void flushLine() {
+			add(LogLevel.WARNING, STDERR_SOURCE, new String(mLine, 0, mLength), true);
+			mLength = 0;
+		}
+	}
+}
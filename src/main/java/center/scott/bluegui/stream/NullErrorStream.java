@@ -16,7 +16,7 @@
 */
 package center.scott.bluegui.stream;
 
-import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 
 import org.slf4j.Logger;
@@ -26,7 +26,9 @@ import org.slf4j.LoggerFactory;
  * Class dedicated to throwing away error spam from {@link uk.co.caprica.vlcj.factory.MediaPlayerFactory}
  * @author Scott Maday
  * @see uk.co.caprica.vlcj.factory.MediaPlayerFactory
+ * @deprecated {@link NativeLogCapture} keeps recent errors in bounded memory instead of throwing them away
  */
+@Deprecated
 public class NullErrorStream {
 	private final static Logger LOGGER = LoggerFactory.getLogger(NullErrorStream.class);
 	
@@ -34,7 +36,14 @@ public class NullErrorStream {
 	private static PrintStream mTmpErr;
 	
 	static {
-		mTmpErr = new PrintStream(new ByteArrayOutputStream());
+		mTmpErr = new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		});
 	}
 	
 	/**
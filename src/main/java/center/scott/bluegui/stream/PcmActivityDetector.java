@@ -0,0 +1,95 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+import center.scott.bluegui.stream.audio.PcmLevel;
+import center.scott.bluegui.stream.audio.PcmProcessor;
+
+/**
+ * Signals a {@link StreamActivityMonitor} only for blocks that carry real signal energy, so silence and noise padding don't count as activity
+ * @author Scott Maday
+ */
+public class PcmActivityDetector implements PcmProcessor {
+	public final static double DEFAULT_RMS_THRESHOLD_DBFS = -45d;
+	public final static double DEFAULT_PEAK_THRESHOLD_DBFS = -20d;
+	
+	private final StreamActivityMonitor mMonitor;
+	
+	private volatile double mRmsThreshold = PcmLevel.fromDbfs(DEFAULT_RMS_THRESHOLD_DBFS);
+	private volatile double mPeakThreshold = PcmLevel.fromDbfs(DEFAULT_PEAK_THRESHOLD_DBFS);
+	private volatile double mLastRms;
+	private volatile double mLastPeak;
+	
+	/**
+	 * Creates a detector
+	 * @param monitor to signal when a block is above either threshold
+	 */
+	public PcmActivityDetector(StreamActivityMonitor monitor) {
+		mMonitor = monitor;
+	}
+	
+	/**
+	 * Sets the thresholds that count a block as active. A block is active if it reaches either threshold
+	 * @param rmsDbfs rms threshold in dBFS
+	 * @param peakDbfs peak threshold in dBFS
+	 */
+	public void setThresholds(double rmsDbfs, double peakDbfs) {
+		mRmsThreshold = PcmLevel.fromDbfs(rmsDbfs);
+		mPeakThreshold = PcmLevel.fromDbfs(peakDbfs);
+	}
+	/**
+	 * @return rms threshold in dBFS
+	 */
+	public double getRmsThreshold() {
+		return PcmLevel.toDbfs(mRmsThreshold);
+	}
+	/**
+	 * @return peak threshold in dBFS
+	 */
+	public double getPeakThreshold() {
+		return PcmLevel.toDbfs(mPeakThreshold);
+	}
+	
+	/**
+	 * @return rms of the last block, from 0 to 1
+	 */
+	public double getLastRms() {
+		return mLastRms;
+	}
+	/**
+	 * @return peak of the last block, from 0 to 1
+	 */
+	public double getLastPeak() {
+		return mLastPeak;
+	}
+	
+	@Override
+	public void formatChanged(int sampleRate, int channels) {
+	}
+	
+	@Override
+	public int process(short[] samples, int length) {
+		double rms = PcmLevel.rms(samples, 0, length);
+		double peak = PcmLevel.peak(samples, 0, length);
+		mLastRms = rms;
+		mLastPeak = peak;
+		if(rms >= mRmsThreshold || peak >= mPeakThreshold) {
+			mMonitor.signal();
+		}
+		return length;
+	}
+}
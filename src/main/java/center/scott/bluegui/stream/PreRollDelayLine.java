@@ -0,0 +1,254 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import center.scott.bluegui.stream.audio.PcmLevel;
+import center.scott.bluegui.stream.audio.PcmProcessor;
+
+/**
+ * Holds the start of every transmission back until whatever is switching to the stream has finished, so the first words aren't lost under the previous audio.
+ * Holding starts on the audio thread as soon as the {@link StreamActivityMonitor} leaves {@link ActivityState#IDLE} and ends on {@link #release()}, once the hold time has been buffered,
+ * or when the monitor falls back to {@link ActivityState#IDLE} without activating.
+ * The held audio is then played behind the live stream, dropping silent frames until it has caught up, so there's no latency once the line is empty.
+ * The delay line is a fixed size array, so it does not allocate after it's created. It must come after the activity detector in the chain.
+ * @author Scott Maday
+ */
+public class PreRollDelayLine implements PcmProcessor {
+	private final static Logger LOGGER = LoggerFactory.getLogger(PreRollDelayLine.class);
+	public final static int DEFAULT_HOLD_MILLIS = 600;
+	public final static double DEFAULT_SILENCE_DBFS = -50d;
+	/**
+	 * Room for a block arriving on top of a full hold
+	 */
+	private final static int MARGIN_MILLIS = 1000;
+	private final static int FRAME_MILLIS = 10;
+	
+	private final StreamActivityMonitor mMonitor;
+	private final int mSampleRate;
+	private final int mChannels;
+	private final int mHoldLength;
+	private final int mFrameLength;
+	private final short[] mRing;
+	
+	private volatile double mSilenceThreshold = PcmLevel.fromDbfs(DEFAULT_SILENCE_DBFS);
+	private volatile long mReleaseTime;
+	private volatile int mCount;
+	private volatile long mHolds;
+	private volatile long mTimeouts;
+	private volatile long mTrimmed;
+	private volatile long mDropped;
+	
+	// Only touched by the audio thread
+	private int mRead;
+	private boolean mHolding;
+	private boolean mIdle = true;
+	private long mIdleTime;
+	
+	/**
+	 * Creates a delay line with the default hold time
+	 * @param monitor of the stream the audio comes from
+	 * @param sampleRate in hertz
+	 * @param channels interleaved in each block
+	 */
+	public PreRollDelayLine(StreamActivityMonitor monitor, int sampleRate, int channels) {
+		this(monitor, sampleRate, channels, DEFAULT_HOLD_MILLIS);
+	}
+	/**
+	 * Creates a delay line
+	 * @param monitor of the stream the audio comes from
+	 * @param sampleRate in hertz
+	 * @param channels interleaved in each block
+	 * @param holdMillis most audio to hold while waiting for {@link #release()}, in miliseconds
+	 */
+	public PreRollDelayLine(StreamActivityMonitor monitor, int sampleRate, int channels, int holdMillis) {
+		mMonitor = monitor;
+		mSampleRate = sampleRate;
+		mChannels = channels;
+		mHoldLength = toSamples(holdMillis);
+		mFrameLength = Math.max(channels, toSamples(FRAME_MILLIS));
+		mRing = new short[toSamples(holdMillis + MARGIN_MILLIS)];
+		mIdleTime = System.nanoTime();
+	}
+	
+	/**
+	 * Releases the audio being held for the current transmission. Call this once the switch to the stream has completed.
+	 * A release before the transmission started is remembered until the stream goes idle again.
+	 */
+	public void release() {
+		mReleaseTime = System.nanoTime();
+	}
+	
+	/**
+	 * Sets the level under which a frame of delayed audio is dropped to catch up
+	 * @param silenceDbfs rms level in dBFS
+	 */
+	public void setSilenceThreshold(double silenceDbfs) {
+		mSilenceThreshold = PcmLevel.fromDbfs(silenceDbfs);
+	}
+	/**
+	 * @return rms level in dBFS under which delayed audio is dropped
+	 */
+	public double getSilenceThreshold() {
+		return PcmLevel.toDbfs(mSilenceThreshold);
+	}
+	
+	/**
+	 * @return the most audio held while waiting for {@link #release()}, in miliseconds
+	 */
+	public int getHoldTime() {
+		return toMillis(mHoldLength);
+	}
+	
+	/**
+	 * @return how far behind the stream the audio currently is, in miliseconds
+	 */
+	public int getDelay() {
+		return toMillis(mCount);
+	}
+	
+	/**
+	 * @return number of transmissions that were held
+	 */
+	public long getHoldCount() {
+		return mHolds;
+	}
+	/**
+	 * @return number of holds that ended because the hold time ran out instead of a {@link #release()}
+	 */
+	public long getTimeoutCount() {
+		return mTimeouts;
+	}
+	/**
+	 * @return silence dropped to catch up, in miliseconds
+	 */
+	public long getTrimmedTime() {
+		return mTrimmed * 1000L / ((long)mSampleRate * mChannels);
+	}
+	/**
+	 * @return delayed audio that had to be thrown away because a block didn't fit, in miliseconds
+	 */
+	public long getDroppedTime() {
+		return mDropped * 1000L / ((long)mSampleRate * mChannels);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%d holds, %d timed out, %dms of silence trimmed, %dms dropped", mHolds, mTimeouts, getTrimmedTime(), getDroppedTime());
+	}
+	
+	@Override
+	public void formatChanged(int sampleRate, int channels) {
+		if(sampleRate != mSampleRate || channels != mChannels) {
+			LOGGER.warn("Pre-roll is {}Hz {}ch but the stream is {}Hz {}ch", mSampleRate, mChannels, sampleRate, channels);
+		}
+	}
+	
+	@Override
+	public int process(short[] samples, int length) {
+		long now = System.nanoTime();
+		if(mMonitor.getState() == ActivityState.IDLE) {
+			mIdle = true;
+			mIdleTime = now;
+			// A burst too short to activate the stream won't be released, so play out what was held of it
+			mHolding = false;
+		}else if(mIdle) {
+			mIdle = false;
+			mHolding = true;
+			mHolds++;
+		}
+		if(!mHolding && mCount == 0) {
+			return length;
+		}
+		if(length > mRing.length - mCount) {
+			// Giving up the delay is better than losing live audio
+			mDropped += mCount;
+			mCount = 0;
+			mHolding = false;
+			return length;
+		}
+		write(samples, length);
+		if(mHolding) {
+			if(mReleaseTime - mIdleTime > 0) {
+				mHolding = false;
+			}else if(mCount >= mHoldLength) {
+				mHolding = false;
+				mTimeouts++;
+			}else {
+				return 0;
+			}
+		}
+		return read(samples, length);
+	}
+	
+	private void write(short[] samples, int length) {
+		int index = (mRead + mCount) % mRing.length;
+		int first = Math.min(length, mRing.length - index);
+		System.arraycopy(samples, 0, mRing, index, first);
+		System.arraycopy(samples, first, mRing, 0, length - first);
+		mCount += length;
+	}
+	
+	private int read(short[] samples, int length) {
+		int out = 0;
+		while(out < length && mCount > 0) {
+			// Only audio beyond what fills this block can be dropped
+			int excess = mCount - (length - out);
+			if(excess > 0) {
+				int frame = Math.min(mFrameLength, excess);
+				if(isSilent(frame)) {
+					skip(frame);
+					mTrimmed += frame;
+					continue;
+				}
+			}
+			int frame = Math.min(mFrameLength, Math.min(mCount, length - out));
+			int first = Math.min(frame, mRing.length - mRead);
+			System.arraycopy(mRing, mRead, samples, out, first);
+			System.arraycopy(mRing, 0, samples, out + first, frame - first);
+			skip(frame);
+			out += frame;
+		}
+		return out;
+	}
+	
+	private void skip(int length) {
+		mRead = (mRead + length) % mRing.length;
+		mCount -= length;
+	}
+	
+	private boolean isSilent(int length) {
+		int first = Math.min(length, mRing.length - mRead);
+		double rms = PcmLevel.rms(mRing, mRead, first);
+		double energy = rms * rms * first;
+		if(first < length) {
+			rms = PcmLevel.rms(mRing, 0, length - first);
+			energy += rms * rms * (length - first);
+		}
+		return Math.sqrt(energy / length) < mSilenceThreshold;
+	}
+	
+	private int toSamples(int millis) {
+		return (int)((long)mSampleRate * millis / 1000) * mChannels;
+	}
+	
+	private int toMillis(int samples) {
+		return (int)(samples * 1000L / ((long)mSampleRate * mChannels));
+	}
+}
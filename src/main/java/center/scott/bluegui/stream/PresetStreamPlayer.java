@@ -0,0 +1,487 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import center.scott.bluegui.stream.audio.PcmChain;
+import center.scott.bluegui.stream.audio.PcmProcessor;
+
+/**
+ * Plays one of a list of station presets as a {@link StreamPlayer}, keeping the neighbouring presets buffered so switching to them is instant.
+ * A fixed pool of vlc players share one factory. One plays the current preset and the rest play the next and previous presets muted,
+ * so switching only swaps which player is heard. Players that fall out of the neighbourhood are reopened on the new neighbours.
+ * Only the current preset reports activity and reaches the processors.
+ * @author Scott Maday
+ */
+public class PresetStreamPlayer implements StreamPlayer {
+	private final static Logger LOGGER = LoggerFactory.getLogger(PresetStreamPlayer.class);
+	public final static int DEFAULT_STANDBY = 2;
+	
+	private final List<String> mUris;
+	private final MediaStreamPlayer[] mPool;
+	private final int[] mAssigned;
+	private final PcmChain mChain;
+	private final List<StreamActivityObserver> mObservers = new CopyOnWriteArrayList<StreamActivityObserver>();
+	
+	private volatile MediaStreamPlayer mCurrent;
+	private int mIndex = 0;
+	private boolean mTapped = false;
+	private boolean mReleased = false;
+	private boolean mMuted = false;
+	private int mVolume = 50;
+	private int mHotSwitches = 0;
+	private int mColdSwitches = 0;
+	private long mHotSwitchNanos = 0;
+	
+	/**
+	 * Creates the players for the first preset and its neighbours
+	 * @param uris of the presets, in the order they're switched through
+	 * @param factory shared by every player
+	 * @param configuration of every preset, may be null
+	 * @param standby how many neighbouring presets are kept buffered
+	 */
+	public PresetStreamPlayer(List<String> uris, SharedMediaPlayerFactory factory, StreamConfiguration configuration, int standby) {
+		if(uris.isEmpty()) {
+			throw new IllegalArgumentException("There must be at least one preset");
+		}
+		mUris = Collections.unmodifiableList(uris);
+		int[] window = getWindow(0, 1 + Math.max(0, Math.min(standby, uris.size() - 1)));
+		mPool = new MediaStreamPlayer[window.length];
+		mAssigned = window;
+		for(int i = 0; i < mPool.length; i++) {
+			mPool[i] = new MediaStreamPlayer(uris.get(window[i]), factory, configuration);
+			mPool[i].addObserver(new MemberObserver(mPool[i]));
+		}
+		mCurrent = mPool[0];
+		mChain = new PcmChain(StreamConfiguration.getSampleRate(configuration), StreamConfiguration.getChannels(configuration));
+	}
+	
+	/**
+	 * @return the uris of the presets
+	 */
+	public List<String> getPresets() {
+		return mUris;
+	}
+	
+	/**
+	 * Gets a short name for a preset, the last part of its uri's path or its host
+	 * @param index of the preset
+	 * @return the name
+	 */
+	public String getPresetName(int index) {
+		String name = mUris.get(index);
+		int scheme = name.indexOf("://");
+		if(scheme >= 0) {
+			name = name.substring(scheme + 3);
+		}
+		int query = name.indexOf('?');
+		if(query >= 0) {
+			name = name.substring(0, query);
+		}
+		while(name.endsWith("/")) {
+			name = name.substring(0, name.length() - 1);
+		}
+		return name.substring(name.lastIndexOf('/') + 1);
+	}
+	
+	/**
+	 * Gets the players of the pool, the current one and those on standby. The pool doesn't change, only the presets its players are on
+	 * @return the players
+	 */
+	public List<MediaStreamPlayer> getPlayers() {
+		return Collections.unmodifiableList(Arrays.asList(mPool));
+	}
+	
+	/**
+	 * @return the index of the preset being heard
+	 */
+	public synchronized int getPreset() {
+		return mIndex;
+	}
+	
+	/**
+	 * Switches to a preset. A preset on standby is heard straight away, anything else has to buffer first
+	 * @param index of the preset
+	 * @return <code>true</code> if switched, else <code>false</code> if there's no such preset or the player {@link #isReleased()}
+	 */
+	public synchronized boolean setPreset(int index) {
+		if(mReleased || index < 0 || index >= mUris.size()) {
+			return false;
+		}
+		if(index == mIndex) {
+			return true;
+		}
+		long start = System.nanoTime();
+		int[] window = getWindow(index, mPool.length);
+		int slot = getSlot(index);
+		boolean hot = slot >= 0;
+		if(!hot) {
+			slot = getFreeSlot(window);
+			reopen(slot, index);
+		}
+		MediaStreamPlayer previous = mCurrent;
+		boolean wasActive = previous.getActivityMonitor().isActive();
+		mCurrent = mPool[slot];
+		mIndex = index;
+		// Unmuted first, so there's no gap between the stations
+		mCurrent.setMute(mMuted);
+		previous.setMute(true);
+		long elapsed = System.nanoTime() - start;
+		
+		for(int i = 1; i < window.length; i++) {
+			if(getSlot(window[i]) < 0) {
+				reopen(getFreeSlot(window), window[i]);
+			}
+		}
+		if(hot) {
+			mHotSwitches++;
+			mHotSwitchNanos += elapsed;
+			LOGGER.info("Switched to preset {} from standby in {}ms", getPresetName(index), elapsed / 1000000);
+		}else {
+			mColdSwitches++;
+			LOGGER.info("Switched to preset {}, which wasn't on standby", getPresetName(index));
+		}
+		
+		boolean active = mCurrent.getActivityMonitor().isActive();
+		if(active && !wasActive) {
+			for(StreamActivityObserver observer : mObservers) {
+				observer.streamActivated();
+			}
+		}else if(!active && wasActive) {
+			for(StreamActivityObserver observer : mObservers) {
+				observer.streamInactivated();
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Switches to the next preset, wrapping around to the first
+	 * @return <code>true</code> if switched
+	 */
+	public synchronized boolean next() {
+		return setPreset((mIndex + 1) % mUris.size());
+	}
+	/**
+	 * Switches to the previous preset, wrapping around to the last
+	 * @return <code>true</code> if switched
+	 */
+	public synchronized boolean previous() {
+		return setPreset((mIndex + mUris.size() - 1) % mUris.size());
+	}
+	
+	@Override
+	public synchronized boolean play() {
+		if(mReleased) {
+			return false;
+		}
+		boolean result = true;
+		for(MediaStreamPlayer player : mPool) {
+			player.setMute(mMuted || player != mCurrent);
+			result &= player.play();
+		}
+		return result;
+	}
+	
+	@Override
+	public void stop() {
+		for(MediaStreamPlayer player : mPool) {
+			player.stop();
+		}
+	}
+	
+	/**
+	 * @return <code>true</code> if the current preset is playing
+	 */
+	@Override
+	public boolean isPlaying() {
+		return mCurrent.isPlaying();
+	}
+	
+	@Override
+	public boolean join() {
+		try {
+			Thread.currentThread().join();
+			return true;
+		} catch (InterruptedException e) {
+			LOGGER.error("Could not join current thread to PresetStreamPlayer: ", e);
+		}
+		return false;
+	}
+	
+	/**
+	 * Mutes the current preset. Presets on standby stay muted
+	 * @param mute <code>true</code> to mute, <code>false</code> to unmute
+	 */
+	@Override
+	public synchronized void setMute(boolean mute) {
+		mMuted = mute;
+		mCurrent.setMute(mute);
+	}
+	@Override
+	public synchronized boolean isMute() {
+		return mMuted;
+	}
+	
+	@Override
+	public boolean setVolume(int volume) {
+		mVolume = volume;
+		boolean result = true;
+		for(MediaStreamPlayer player : mPool) {
+			result &= player.setVolume(volume);
+		}
+		return result;
+	}
+	@Override
+	public int getVolume() {
+		if(isReleased()) {
+			return -1;
+		}
+		return mVolume;
+	}
+	
+	@Override
+	public synchronized void dispose() {
+		mReleased = true;
+		for(MediaStreamPlayer player : mPool) {
+			player.dispose();
+		}
+	}
+	@Override
+	public synchronized boolean isReleased() {
+		return mReleased;
+	}
+	
+	@Override
+	public boolean setActivityDetection(ActivityDetection activityDetection) {
+		boolean result = true;
+		for(MediaStreamPlayer player : mPool) {
+			result &= player.setActivityDetection(activityDetection);
+		}
+		return result;
+	}
+	@Override
+	public ActivityDetection getActivityDetection() {
+		return mPool[0].getActivityDetection();
+	}
+	
+	@Override
+	public boolean setActivityThresholds(double rmsDbfs, double peakDbfs) {
+		boolean result = true;
+		for(MediaStreamPlayer player : mPool) {
+			result &= player.setActivityThresholds(rmsDbfs, peakDbfs);
+		}
+		return result;
+	}
+	
+	@Override
+	public void setStreamInactivationThreshold(int streamInactivationThreshold) {
+		for(MediaStreamPlayer player : mPool) {
+			player.setStreamInactivationThreshold(streamInactivationThreshold);
+		}
+	}
+	
+	/**
+	 * Gets the monitor of the current preset, which changes with it. Observers of whichever preset is current are added with {@link #addObserver(StreamActivityObserver)}
+	 * @return the {@link StreamActivityMonitor} of the current preset
+	 */
+	@Override
+	public StreamActivityMonitor getActivityMonitor() {
+		return mCurrent.getActivityMonitor();
+	}
+	
+	/**
+	 * Adds a processor to the decoded audio of whichever preset is current. The first processor takes every player's audio through a {@link StreamAudioCallback},
+	 * so it must be added before {@link #play()}
+	 * @param processor to add
+	 * @return <code>true</code> if added
+	 * @see StreamPlayer#addProcessor(PcmProcessor)
+	 */
+	@Override
+	public synchronized boolean addProcessor(PcmProcessor processor) {
+		if(mReleased) {
+			return false;
+		}
+		if(!mTapped) {
+			for(MediaStreamPlayer player : mPool) {
+				if(!player.addProcessor(new Tap(player))) {
+					return false;
+				}
+			}
+			mTapped = true;
+		}
+		mChain.addProcessor(processor);
+		return true;
+	}
+	@Override
+	public boolean removeProcessor(PcmProcessor processor) {
+		return mChain.removeProcessor(processor);
+	}
+	
+	@Override
+	public boolean setOutputRate(int outputRate) {
+		boolean result = true;
+		for(MediaStreamPlayer player : mPool) {
+			result &= player.setOutputRate(outputRate);
+		}
+		return result;
+	}
+	
+	/**
+	 * Adds an observer notified when the current preset goes active and inactive, including when switching changes which preset that is
+	 * @param observer to be added
+	 */
+	@Override
+	public void addObserver(StreamActivityObserver observer) {
+		mObservers.add(observer);
+	}
+	@Override
+	public boolean removeObserver(StreamActivityObserver observer) {
+		return mObservers.remove(observer);
+	}
+	
+	@Override
+	public synchronized String toString() {
+		long average = mHotSwitches == 0 ? 0 : mHotSwitchNanos / mHotSwitches / 1000000;
+		return String.format("%d presets with %d on standby, %d switches from standby averaging %dms, %d cold switches", mUris.size(), mPool.length - 1, mHotSwitches, average, mColdSwitches);
+	}
+	
+	/**
+	 * Orders the presets by how soon they're likely to be switched to, the given one, then alternately the next and previous ones further out
+	 */
+	private int[] getWindow(int index, int size) {
+		int count = mUris.size();
+		int[] window = new int[size];
+		window[0] = index;
+		int filled = 1;
+		for(int distance = 1; filled < size; distance++) {
+			int next = (index + distance) % count;
+			if(!contains(window, filled, next)) {
+				window[filled++] = next;
+			}
+			int previous = ((index - distance) % count + count) % count;
+			if(filled < size && !contains(window, filled, previous)) {
+				window[filled++] = previous;
+			}
+		}
+		return window;
+	}
+	
+	private int getSlot(int index) {
+		for(int i = 0; i < mAssigned.length; i++) {
+			if(mAssigned[i] == index) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * @return a slot whose preset isn't in the window. There's always one while a preset of the window has no slot
+	 */
+	private int getFreeSlot(int[] window) {
+		for(int i = 0; i < mAssigned.length; i++) {
+			if(!contains(window, window.length, mAssigned[i])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	private void reopen(int slot, int index) {
+		mAssigned[slot] = index;
+		MediaStreamPlayer player = mPool[slot];
+		player.setMute(true);
+		if(!player.open(mUris.get(index))) {
+			LOGGER.warn("Could not buffer preset {}", getPresetName(index));
+		}
+	}
+	
+	private static boolean contains(int[] values, int length, int value) {
+		for(int i = 0; i < length; i++) {
+			if(values[i] == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private synchronized void memberChanged(MediaStreamPlayer player, boolean active) {
+		if(player != mCurrent) {
+			return;
+		}
+		for(StreamActivityObserver observer : mObservers) {
+			if(active) {
+				observer.streamActivated();
+			}else {
+				observer.streamInactivated();
+			}
+		}
+	}
+	
+	
+	/**
+	 * Passes a player's audio on to the processors while it's the current preset
+	 */
+	private class Tap implements PcmProcessor {
+		private final MediaStreamPlayer mPlayer;
+		
+		public Tap(MediaStreamPlayer player) {
+			mPlayer = player;
+		}
+		
+		@Override
+		public void formatChanged(int sampleRate, int channels) {
+			if(mPlayer == mCurrent) {
+				mChain.formatChanged(sampleRate, channels);
+			}
+		}
+		
+		@Override
+		public int process(short[] samples, int length) {
+			if(mPlayer != mCurrent) {
+				return length;
+			}
+			return mChain.process(samples, length);
+		}
+	}
+	
+	private class MemberObserver implements StreamActivityObserver {
+		private final MediaStreamPlayer mPlayer;
+		
+		public MemberObserver(MediaStreamPlayer player) {
+			mPlayer = player;
+		}
+		
+		@Override
+		public void streamActivated() {
+			memberChanged(mPlayer, true);
+		}
+		
+		@Override
+		public void streamInactivated() {
+			memberChanged(mPlayer, false);
+		}
+	}
+}
@@ -0,0 +1,427 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import center.scott.bluegui.stream.audio.PcmProcessor;
+
+/**
+ * Serves the decoded stream on the local network as HTTP chunked <code>audio/L16</code>, which players like vlc and ffplay can open from <code>http://host:port/</code>.
+ * The audio thread writes each block once into a shared ring of big endian samples. Every client reads the ring through its own duplicate of it,
+ * so sending to a client is a gathering write straight out of the ring and nothing is copied per client.
+ * One selector thread serves every client without blocking. A client that falls too far behind is dropped instead of holding up the stream.
+ * @author Scott Maday
+ */
+public class RebroadcastServer implements PcmProcessor {
+	private final static Logger LOGGER = LoggerFactory.getLogger(RebroadcastServer.class);
+	public final static int DEFAULT_PORT = 8090;
+	/**
+	 * Miliseconds of audio in the shared ring
+	 */
+	private final static int RING_MILLIS = 4000;
+	/**
+	 * Miliseconds a client may fall behind before it's dropped
+	 */
+	private final static int MAX_LAG_MILLIS = 2000;
+	private final static int MAX_CHUNK = 8192;
+	private final static int MAX_REQUEST = 4096;
+	private final static int MAX_CLIENTS = 16;
+	/**
+	 * Miliseconds a client has to send its whole request before it's dropped, so a client that never does can't keep a slot
+	 */
+	private final static int REQUEST_TIMEOUT_MILLIS = 5000;
+	/**
+	 * Longest the selector waits, so unfinished requests time out while the stream is quiet
+	 */
+	private final static int SELECT_TIMEOUT_MILLIS = 1000;
+	private final static byte[] CHUNK_END = "\r\n".getBytes(StandardCharsets.US_ASCII);
+	
+	private final ServerSocketChannel mServerChannel;
+	private final Selector mSelector;
+	private final Thread mThread;
+	private final List<Client> mClients = new ArrayList<Client>();
+	
+	private volatile ByteBuffer mRing;
+	private volatile int mSampleRate;
+	private volatile int mChannels;
+	private volatile long mWritten;
+	private volatile boolean mRunning = true;
+	private volatile int mClientCount;
+	private long mConnections;
+	private long mDropped;
+	private long mBytesOut;
+	
+	/**
+	 * Starts serving
+	 * @param port to listen on
+	 * @param sampleRate of the stream in hertz, until the stream reports its own
+	 * @param channels of the stream, until the stream reports its own
+	 * @throws IOException if the port could not be opened
+	 */
+	public RebroadcastServer(int port, int sampleRate, int channels) throws IOException {
+		formatChanged(sampleRate, channels);
+		mSelector = Selector.open();
+		mServerChannel = ServerSocketChannel.open();
+		try {
+			mServerChannel.bind(new InetSocketAddress(port));
+			mServerChannel.configureBlocking(false);
+			mServerChannel.register(mSelector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			mServerChannel.close();
+			mSelector.close();
+			throw e;
+		}
+		mThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				serve();
+			}
+		}, "RebroadcastServer");
+		mThread.setDaemon(true);
+		mThread.start();
+		LOGGER.info("Rebroadcasting the stream on port {}", port);
+	}
+	
+	/**
+	 * @return the address the server is listening on
+	 * @throws IOException if the server is closed
+	 */
+	public SocketAddress getAddress() throws IOException {
+		return mServerChannel.getLocalAddress();
+	}
+	
+	/**
+	 * @return number of clients listening now
+	 */
+	public int getClientCount() {
+		return mClientCount;
+	}
+	
+	/**
+	 * Describes every client listening now
+	 * @return the address, seconds connected and bytes sent of each client
+	 */
+	public synchronized List<String> getClients() {
+		List<String> clients = new ArrayList<String>();
+		for(Client client : mClients) {
+			clients.add(client.toString());
+		}
+		return clients;
+	}
+	
+	/**
+	 * Disconnects every client and stops serving
+	 */
+	public void close() {
+		mRunning = false;
+		mSelector.wakeup();
+		try {
+			mThread.join(TimeUnit.SECONDS.toMillis(1));
+		} catch (InterruptedException e) {
+			LOGGER.error("Interrupted waiting for the rebroadcast server to stop: ", e);
+		}
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return String.format("%d connections, %d listening, %d dropped for falling behind, %d bytes sent", mConnections, mClients.size(), mDropped, mBytesOut);
+	}
+	
+	@Override
+	public void formatChanged(int sampleRate, int channels) {
+		if(sampleRate == mSampleRate && channels == mChannels) {
+			return;
+		}
+		if(mClientCount > 0) {
+			LOGGER.warn("Stream format changed to {}Hz {}ch while clients were listening", sampleRate, channels);
+		}
+		// Clients keep reading whatever ring they started on, which stops moving, so they fall behind and are dropped
+		mRing = ByteBuffer.allocateDirect(sampleRate * channels * 2 * RING_MILLIS / 1000).order(ByteOrder.BIG_ENDIAN);
+		mSampleRate = sampleRate;
+		mChannels = channels;
+		mWritten = 0;
+	}
+	
+	@Override
+	public int process(short[] samples, int length) {
+		if(mClientCount == 0) {
+			return length;
+		}
+		ByteBuffer ring = mRing;
+		int capacity = ring.capacity();
+		long written = mWritten;
+		int index = (int)(written % capacity);
+		for(int i = 0; i < length; i++) {
+			ring.putShort(index, samples[i]);
+			index += 2;
+			if(index == capacity) {
+				index = 0;
+			}
+		}
+		mWritten = written + length * 2;
+		mSelector.wakeup();
+		return length;
+	}
+	
+	private void serve() {
+		try {
+			while(mRunning) {
+				mSelector.select(SELECT_TIMEOUT_MILLIS);
+				Iterator<SelectionKey> keys = mSelector.selectedKeys().iterator();
+				while(keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if(!key.isValid()) {
+						continue;
+					}
+					if(key.isAcceptable()) {
+						accept();
+					}else if(key.isReadable()) {
+						read((Client)key.attachment());
+					}
+				}
+				sendAll();
+				dropUnfinishedRequests();
+			}
+		} catch (IOException | ClosedSelectorException e) {
+			LOGGER.error("Rebroadcast server stopped: ", e);
+		} finally {
+			synchronized (this) {
+				for(Client client : new ArrayList<Client>(mClients)) {
+					disconnect(client, "the server closed");
+				}
+			}
+			try {
+				mServerChannel.close();
+				mSelector.close();
+			} catch (IOException e) {
+				LOGGER.error("Could not close the rebroadcast server: ", e);
+			}
+		}
+	}
+	
+	private void accept() throws IOException {
+		SocketChannel channel = mServerChannel.accept();
+		if(channel == null) {
+			return;
+		}
+		synchronized (this) {
+			if(mClients.size() >= MAX_CLIENTS) {
+				LOGGER.warn("Turned away {}, already serving {} clients", channel.getRemoteAddress(), MAX_CLIENTS);
+				channel.close();
+				return;
+			}
+		}
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		Client client = new Client(channel);
+		client.mKey = channel.register(mSelector, SelectionKey.OP_READ, client);
+		synchronized (this) {
+			mClients.add(client);
+			mConnections++;
+			mClientCount = mClients.size();
+		}
+	}
+	
+	private void read(Client client) {
+		try {
+			ByteBuffer request = client.mRequest;
+			if(request == null) {
+				// Anything sent once the audio has started is ignored, but reading it notices when the client hangs up
+				client.mDiscard.clear();
+				if(client.mChannel.read(client.mDiscard) < 0) {
+					disconnect(client, "it hung up");
+				}
+				return;
+			}
+			if(client.mChannel.read(request) < 0) {
+				disconnect(client, "it hung up");
+				return;
+			}
+			String text = new String(request.array(), 0, request.position(), StandardCharsets.US_ASCII);
+			if(!text.contains("\r\n\r\n")) {
+				if(!request.hasRemaining()) {
+					disconnect(client, "its request was too long");
+				}
+				return;
+			}
+			client.mRequest = null;
+			if(!text.startsWith("GET ")) {
+				client.mChannel.write(ByteBuffer.wrap("HTTP/1.1 405 Method Not Allowed\r\nConnection: close\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.US_ASCII)));
+				disconnect(client, "it didn't ask for audio");
+				return;
+			}
+			String header = "HTTP/1.1 200 OK\r\n"
+					+ "Content-Type: audio/L16;rate=" + mSampleRate + ";channels=" + mChannels + "\r\n"
+					+ "Transfer-Encoding: chunked\r\n"
+					+ "Cache-Control: no-cache\r\n"
+					+ "Connection: close\r\n\r\n";
+			client.queue(ByteBuffer.wrap(header.getBytes(StandardCharsets.US_ASCII)), client.mEmpty, client.mEmpty);
+			// Listening starts live, on a whole sample frame
+			client.mSource = mRing;
+			client.mRing = client.mSource.duplicate();
+			long written = mWritten;
+			client.mPosition = written - written % (mChannels * 2);
+			LOGGER.info("{} started listening", client.mAddress);
+		} catch (IOException e) {
+			disconnect(client, e.toString());
+		}
+	}
+	
+	private synchronized void dropUnfinishedRequests() {
+		long now = System.nanoTime();
+		// Backwards, since disconnecting removes the client
+		for(int i = mClients.size() - 1; i >= 0; i--) {
+			Client client = mClients.get(i);
+			if(client.mRequest != null && now - client.mConnected > REQUEST_TIMEOUT_MILLIS * 1000000L) {
+				disconnect(client, "its request wasn't finished in time");
+			}
+		}
+	}
+	
+	private void sendAll() {
+		Client[] clients;
+		synchronized (this) {
+			clients = mClients.toArray(new Client[mClients.size()]);
+		}
+		for(Client client : clients) {
+			if(client.mRing != null) {
+				send(client);
+			}
+		}
+	}
+	
+	private void send(Client client) {
+		try {
+			while(true) {
+				// Checked before anything else, so a client that stopped reading altogether is dropped too
+				long written = mWritten;
+				if(client.mSource != mRing || written - client.mPosition > (long)mSampleRate * mChannels * 2 * MAX_LAG_MILLIS / 1000) {
+					synchronized (this) {
+						mDropped++;
+					}
+					disconnect(client, "it fell behind");
+					return;
+				}
+				if(client.isQueued()) {
+					// Finish the response header or chunk that's already out before starting another
+					addBytes(client, client.mChannel.write(client.mParts));
+					if(client.isQueued()) {
+						client.mKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+						return;
+					}
+					client.mKey.interestOps(SelectionKey.OP_READ);
+				}
+				if(written <= client.mPosition) {
+					return;
+				}
+				int capacity = client.mRing.capacity();
+				int index = (int)(client.mPosition % capacity);
+				int length = (int)Math.min(MAX_CHUNK, Math.min(written - client.mPosition, capacity - index));
+				client.mRing.limit(index + length);
+				client.mRing.position(index);
+				client.mPosition += length;
+				client.mHeader.clear();
+				for(int shift = Integer.SIZE - 4; shift >= 0; shift -= 4) {
+					int digit = (length >>> shift) & 0xF;
+					if(digit != 0 || client.mHeader.position() > 0 || shift == 0) {
+						client.mHeader.put((byte)Character.forDigit(digit, 16));
+					}
+				}
+				client.mHeader.put(CHUNK_END).flip();
+				client.mTrailer.rewind();
+				client.queue(client.mHeader, client.mRing, client.mTrailer);
+			}
+		} catch (IOException e) {
+			disconnect(client, e.toString());
+		}
+	}
+	
+	private synchronized void addBytes(Client client, long sent) {
+		client.mBytes += sent;
+		mBytesOut += sent;
+	}
+	
+	private synchronized void disconnect(Client client, String reason) {
+		if(!mClients.remove(client)) {
+			return;
+		}
+		mClientCount = mClients.size();
+		try {
+			client.mChannel.close();
+		} catch (IOException e) {
+			LOGGER.debug("Could not close {}: ", client.mAddress, e);
+		}
+		LOGGER.info("{} disconnected because {}. {}", client.mAddress, reason, client);
+	}
+	
+	
+	private static class Client {
+		private final SocketChannel mChannel;
+		private final String mAddress;
+		private final long mConnected = System.nanoTime();
+		private final ByteBuffer mHeader = ByteBuffer.allocate(16);
+		private final ByteBuffer mTrailer = ByteBuffer.wrap(CHUNK_END).asReadOnlyBuffer();
+		private final ByteBuffer mEmpty = ByteBuffer.allocate(0);
+		private final ByteBuffer mDiscard = ByteBuffer.allocate(256);
+		private final ByteBuffer[] mParts = {mEmpty, mEmpty, mEmpty};
+		private SelectionKey mKey;
+		private ByteBuffer mRequest = ByteBuffer.allocate(MAX_REQUEST);
+		private ByteBuffer mSource;
+		private ByteBuffer mRing;
+		private long mPosition;
+		private long mBytes;
+		
+		public Client(SocketChannel channel) throws IOException {
+			mChannel = channel;
+			mAddress = String.valueOf(channel.getRemoteAddress());
+		}
+		
+		private void queue(ByteBuffer first, ByteBuffer second, ByteBuffer third) {
+			mParts[0] = first;
+			mParts[1] = second;
+			mParts[2] = third;
+		}
+		
+		private boolean isQueued() {
+			return mParts[0].hasRemaining() || mParts[1].hasRemaining() || mParts[2].hasRemaining();
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("%s connected %ds, %d bytes sent", mAddress, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - mConnected), mBytes);
+		}
+	}
+}
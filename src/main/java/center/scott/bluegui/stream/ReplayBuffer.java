@@ -0,0 +1,352 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import center.scott.bluegui.stream.audio.PcmOutput;
+import center.scott.bluegui.stream.audio.PcmProcessor;
+
+/**
+ * Instant replay of the last minutes of decoded stream audio.
+ * Audio is kept in a fixed size off-heap ring, optionally backed by a memory-mapped file so it survives restarts, along with where the last transmissions started and ended.
+ * Capturing only copies into the ring, so it does not allocate. Replays are played on their own {@link PcmOutput}.
+ * @author Scott Maday
+ */
+public class ReplayBuffer implements PcmProcessor, StreamActivityObserver {
+	private final static Logger LOGGER = LoggerFactory.getLogger(ReplayBuffer.class);
+	public final static int DEFAULT_MINUTES = 5;
+	public final static int DEFAULT_REPLAY_SECONDS = 30;
+	/**
+	 * Audio kept before a transmission was detected, since detection always lags the start slightly
+	 */
+	private final static int PRE_ROLL_MILLIS = 250;
+	private final static int REPLAY_BLOCK_MILLIS = 50;
+	private final static int MARKS = 32;
+	
+	private final static int MAGIC = 0x42475242;
+	private final static int VERSION = 1;
+	private final static int MAGIC_OFFSET = 0;
+	private final static int VERSION_OFFSET = 4;
+	private final static int SAMPLE_RATE_OFFSET = 8;
+	private final static int CHANNELS_OFFSET = 12;
+	private final static int CAPACITY_OFFSET = 16;
+	private final static int WRITTEN_OFFSET = 24;
+	private final static int MARK_COUNT_OFFSET = 32;
+	private final static int MARKS_OFFSET = 40;
+	private final static int HEADER_SIZE = 1024;
+	
+	private final int mSampleRate;
+	private final int mChannels;
+	private final int mCapacity;
+	private final int mTailTrim;
+	private final ByteBuffer mBuffer;
+	private final ShortBuffer mWriteView;
+	private final ShortBuffer mReadView;
+	private final PcmOutput mReplayOutput;
+	private final short[] mReplaySamples;
+	
+	private volatile long mWritten;
+	private int mMarkCount;
+	private Thread mReplayThread;
+	private volatile boolean mReplayCancelled = false;
+	
+	/**
+	 * Creates a replay buffer in direct memory
+	 * @param sampleRate of the stream in hertz
+	 * @param channels of the stream
+	 * @param minutes of audio to keep
+	 * @param inactivationThreshold of the stream in miliseconds, trimmed from the end of each transmission
+	 * @throws IllegalArgumentException if minutes isn't between 1 and {@link #getMaxMinutes(int, int)}
+	 */
+	public ReplayBuffer(int sampleRate, int channels, int minutes, int inactivationThreshold) {
+		mSampleRate = sampleRate;
+		mChannels = channels;
+		mCapacity = toCapacity(sampleRate, channels, minutes);
+		mTailTrim = toSamples(inactivationThreshold);
+		mBuffer = ByteBuffer.allocateDirect(HEADER_SIZE + mCapacity * 2).order(ByteOrder.nativeOrder());
+		initHeader();
+		mWriteView = dataView();
+		mReadView = dataView();
+		mReplayOutput = new PcmOutput(sampleRate, channels);
+		mReplaySamples = new short[toSamples(REPLAY_BLOCK_MILLIS)];
+	}
+	/**
+	 * Creates a replay buffer backed by a memory-mapped file. If the file holds a buffer of the same format, its audio and transmissions are kept
+	 * @param file to map
+	 * @param sampleRate of the stream in hertz
+	 * @param channels of the stream
+	 * @param minutes of audio to keep
+	 * @param inactivationThreshold of the stream in miliseconds, trimmed from the end of each transmission
+	 * @throws IOException if the file could not be mapped
+	 * @throws IllegalArgumentException if minutes isn't between 1 and {@link #getMaxMinutes(int, int)}
+	 */
+	public ReplayBuffer(File file, int sampleRate, int channels, int minutes, int inactivationThreshold) throws IOException {
+		mSampleRate = sampleRate;
+		mChannels = channels;
+		mCapacity = toCapacity(sampleRate, channels, minutes);
+		mTailTrim = toSamples(inactivationThreshold);
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long)mCapacity * 2);
+			mBuffer = mapped.order(ByteOrder.nativeOrder());
+		}
+		if(isHeaderCompatible()) {
+			mWritten = mBuffer.getLong(WRITTEN_OFFSET);
+			mMarkCount = mBuffer.getInt(MARK_COUNT_OFFSET);
+			LOGGER.info("Restored {} seconds of replay audio from {}", Math.min(mWritten, mCapacity) / (sampleRate * channels), file);
+		}else {
+			initHeader();
+		}
+		mWriteView = dataView();
+		mReadView = dataView();
+		mReplayOutput = new PcmOutput(sampleRate, channels);
+		mReplaySamples = new short[toSamples(REPLAY_BLOCK_MILLIS)];
+	}
+	
+	@Override
+	public void formatChanged(int sampleRate, int channels) {
+		if(sampleRate != mSampleRate || channels != mChannels) {
+			LOGGER.warn("Replay buffer is {}Hz {}ch but the stream is {}Hz {}ch", mSampleRate, mChannels, sampleRate, channels);
+		}
+	}
+	
+	@Override
+	public int process(short[] samples, int length) {
+		int offset = 0;
+		int count = length;
+		if(count > mCapacity) {
+			offset = count - mCapacity;
+			count = mCapacity;
+		}
+		int index = (int)(mWritten % mCapacity);
+		int first = Math.min(count, mCapacity - index);
+		mWriteView.position(index);
+		mWriteView.put(samples, offset, first);
+		if(first < count) {
+			mWriteView.position(0);
+			mWriteView.put(samples, offset + first, count - first);
+		}
+		mWritten += length;
+		mBuffer.putLong(WRITTEN_OFFSET, mWritten);
+		return length;
+	}
+	
+	@Override
+	public synchronized void streamActivated() {
+		int mark = MARKS_OFFSET + (mMarkCount % MARKS) * 16;
+		mBuffer.putLong(mark, Math.max(0, mWritten - toSamples(PRE_ROLL_MILLIS)));
+		mBuffer.putLong(mark + 8, -1);
+		mMarkCount++;
+		mBuffer.putInt(MARK_COUNT_OFFSET, mMarkCount);
+	}
+	
+	@Override
+	public synchronized void streamInactivated() {
+		if(mMarkCount == 0) {
+			return;
+		}
+		int mark = MARKS_OFFSET + ((mMarkCount - 1) % MARKS) * 16;
+		long start = mBuffer.getLong(mark);
+		mBuffer.putLong(mark + 8, Math.max(start, mWritten - mTailTrim));
+	}
+	
+	/**
+	 * Replays the last finished transmission
+	 * @return <code>true</code> if a transmission was found and is replaying
+	 */
+	public synchronized boolean replayLastTransmission() {
+		int marks = Math.min(mMarkCount, MARKS);
+		for(int i = 1; i <= marks; i++) {
+			int mark = MARKS_OFFSET + ((mMarkCount - i) % MARKS) * 16;
+			long end = mBuffer.getLong(mark + 8);
+			if(end >= 0) {
+				return replay(mBuffer.getLong(mark), end);
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Replays the last seconds of the stream
+	 * @param seconds to go back
+	 * @return <code>true</code> if there is audio to replay
+	 */
+	public synchronized boolean replayLast(int seconds) {
+		long end = mWritten;
+		return replay(end - (long)seconds * mSampleRate * mChannels, end);
+	}
+	
+	/**
+	 * Stops any replay in progress
+	 */
+	public void stopReplay() {
+		Thread thread;
+		synchronized (this) {
+			thread = mReplayThread;
+			mReplayThread = null;
+			mReplayCancelled = true;
+		}
+		if(thread != null) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				LOGGER.error("Interrupted waiting for replay to stop: ", e);
+			}
+		}
+		mReplayOutput.flush();
+	}
+	
+	/**
+	 * @return <code>true</code> if a replay is playing
+	 */
+	public synchronized boolean isReplaying() {
+		return mReplayThread != null && mReplayThread.isAlive();
+	}
+	
+	/**
+	 * @return number of seconds of audio the buffer holds
+	 */
+	public int getCapacitySeconds() {
+		return mCapacity / (mSampleRate * mChannels);
+	}
+	
+	/**
+	 * @return number of transmissions marked since the buffer was created
+	 */
+	public synchronized int getTransmissionCount() {
+		return mMarkCount;
+	}
+	
+	/**
+	 * Stops replaying and closes the replay output. A mapped buffer is flushed to its file
+	 */
+	public void close() {
+		stopReplay();
+		mReplayOutput.close();
+		if(mBuffer instanceof MappedByteBuffer) {
+			((MappedByteBuffer)mBuffer).force();
+		}
+	}
+	
+	private boolean replay(long start, long end) {
+		long oldest = Math.max(0, mWritten - mCapacity + toSamples(REPLAY_BLOCK_MILLIS));
+		start = Math.max(start, oldest);
+		start -= start % mChannels;
+		if(end <= start) {
+			return false;
+		}
+		stopReplay();
+		mReplayCancelled = false;
+		mReplayThread = new Thread(new ReplayTask(start, end), "ReplayBuffer");
+		mReplayThread.setDaemon(true);
+		mReplayThread.start();
+		return true;
+	}
+	
+	private ShortBuffer dataView() {
+		ByteBuffer data = mBuffer.duplicate().order(mBuffer.order());
+		data.position(HEADER_SIZE);
+		return data.slice().order(mBuffer.order()).asShortBuffer();
+	}
+	
+	private void initHeader() {
+		mBuffer.putInt(MAGIC_OFFSET, MAGIC);
+		mBuffer.putInt(VERSION_OFFSET, VERSION);
+		mBuffer.putInt(SAMPLE_RATE_OFFSET, mSampleRate);
+		mBuffer.putInt(CHANNELS_OFFSET, mChannels);
+		mBuffer.putInt(CAPACITY_OFFSET, mCapacity);
+		mBuffer.putLong(WRITTEN_OFFSET, 0);
+		mBuffer.putInt(MARK_COUNT_OFFSET, 0);
+		mWritten = 0;
+		mMarkCount = 0;
+	}
+	
+	private boolean isHeaderCompatible() {
+		return mBuffer.getInt(MAGIC_OFFSET) == MAGIC
+				&& mBuffer.getInt(VERSION_OFFSET) == VERSION
+				&& mBuffer.getInt(SAMPLE_RATE_OFFSET) == mSampleRate
+				&& mBuffer.getInt(CHANNELS_OFFSET) == mChannels
+				&& mBuffer.getInt(CAPACITY_OFFSET) == mCapacity;
+	}
+	
+	/**
+	 * Gets the most audio a buffer can keep, which is limited by the largest buffer java can address
+	 * @param sampleRate of the stream in hertz
+	 * @param channels of the stream
+	 * @return the most minutes of audio
+	 */
+	public static int getMaxMinutes(int sampleRate, int channels) {
+		return (int)(((long)Integer.MAX_VALUE - HEADER_SIZE) / 2 / ((long)sampleRate * channels * 60));
+	}
+	
+	private static int toCapacity(int sampleRate, int channels, int minutes) {
+		int maxMinutes = getMaxMinutes(sampleRate, channels);
+		if(minutes < 1 || minutes > maxMinutes) {
+			throw new IllegalArgumentException(String.format("Replay buffer of %d minutes must be between 1 and %d minutes at %dHz %dch", minutes, maxMinutes, sampleRate, channels));
+		}
+		return (int)((long)sampleRate * channels * 60 * minutes);
+	}
+	
+	private int toSamples(int millis) {
+		return (int)((long)millis * mSampleRate * mChannels / 1000);
+	}
+	
+	
+	private class ReplayTask implements Runnable {
+		private final long mStart;
+		private final long mEnd;
+		
+		public ReplayTask(long start, long end) {
+			mStart = start;
+			mEnd = end;
+		}
+		
+		@Override
+		public void run() {
+			LOGGER.debug("Replaying {} seconds", (mEnd - mStart) / (mSampleRate * mChannels));
+			long position = mStart;
+			while(position < mEnd && !mReplayCancelled) {
+				int length = (int)Math.min(mReplaySamples.length, mEnd - position);
+				int index = (int)(position % mCapacity);
+				int first = Math.min(length, mCapacity - index);
+				mReadView.position(index);
+				mReadView.get(mReplaySamples, 0, first);
+				if(first < length) {
+					mReadView.position(0);
+					mReadView.get(mReplaySamples, first, length - first);
+				}
+				if(!mReplayOutput.write(mReplaySamples, length)) {
+					break;
+				}
+				position += length;
+			}
+			if(!mReplayCancelled) {
+				mReplayOutput.drain();
+			}
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.caprica.vlcj.factory.MediaPlayerFactory;
+import uk.co.caprica.vlcj.log.NativeLog;
+
+/**
+ * A {@link MediaPlayerFactory} shared by several {@link MediaStreamPlayer}s.
+ * Each factory is a separate native libvlc instance, so sharing one keeps native memory growing with players instead of factories.
+ * The factory is released once the last player using it is released.
+ * @author Scott Maday
+ */
+public class SharedMediaPlayerFactory {
+	private final static Logger LOGGER = LoggerFactory.getLogger(SharedMediaPlayerFactory.class);
+	
+	private final MediaPlayerFactory mFactory;
+	private final NativeLog mLog;
+	
+	private int mReferences = 0;
+	private boolean mReleased = false;
+	
+	/**
+	 * Creates a factory. Its native log is captured if a {@link NativeLogCapture} is installed, and it starts faster if {@link FastStart} is installed
+	 * @param options Options that will be used by {@link uk.co.caprica.vlcj.factory.MediaPlayerFactory#MediaPlayerFactory(String... libvlcArgs)}
+	 */
+	public SharedMediaPlayerFactory(String... options) {
+		long start = System.nanoTime();
+		FastStart fastStart = FastStart.getInstance();
+		if(fastStart == null) {
+			mFactory = new MediaPlayerFactory(options);
+		}else {
+			mFactory = new MediaPlayerFactory(fastStart.getDiscovery(), fastStart.apply(options));
+		}
+		LOGGER.info("Created libvlc instance in {}ms{}", (System.nanoTime() - start) / 1000000, fastStart == null ? "" : " with fast start");
+		NativeLogCapture capture = NativeLogCapture.getInstance();
+		mLog = capture == null ? null : capture.attach(mFactory);
+	}
+	
+	/**
+	 * Takes a reference to the factory. Every call must be matched with {@link #release()}
+	 * @return the {@link MediaPlayerFactory}
+	 * @throws IllegalStateException if the factory has already been released
+	 */
+	public synchronized MediaPlayerFactory acquire() {
+		if(mReleased) {
+			throw new IllegalStateException("Media player factory has been released");
+		}
+		mReferences++;
+		return mFactory;
+	}
+	
+	/**
+	 * Gives up a reference to the factory, releasing it if this was the last one
+	 * @see uk.co.caprica.vlcj.factory.MediaPlayerFactory#release()
+	 */
+	public synchronized void release() {
+		if(mReleased || mReferences == 0) {
+			return;
+		}
+		mReferences--;
+		if(mReferences == 0) {
+			mReleased = true;
+			if(mLog != null) {
+				mLog.release();
+			}
+			mFactory.release();
+		}
+	}
+	
+	/**
+	 * @return number of players using the factory
+	 */
+	public synchronized int getReferenceCount() {
+		return mReferences;
+	}
+	
+	/**
+	 * @return <code>true</code> if the factory has been released
+	 */
+	public synchronized boolean isReleased() {
+		return mReleased;
+	}
+}
@@ -0,0 +1,209 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tracks whether a stream is active from the signals it receives and notifies {@link StreamActivityObserver}s.
+ * A single inactivity deadline is kept on the {@link StreamScheduler}; signals only push the deadline forward, so no threads are created and nothing polls.
+ * When the stream activates and how long it hangs on is decided by an {@link ActivityStateMachine}.
+ * @author Scott Maday
+ */
+public class StreamActivityMonitor {
+	public final static int DEFAULT_INACTIVATION_THRESHOLD = 2000;
+	
+	private final ScheduledExecutorService mScheduler;
+	private final AtomicBoolean mActive = new AtomicBoolean(false);
+	private final List<StreamActivityObserver> mObservers = new CopyOnWriteArrayList<StreamActivityObserver>();
+	private final Runnable mActivatedTask = new ActivatedTask();
+	private final Runnable mInactivatedTask = new InactivatedTask();
+	private final Runnable mDeadlineTask = new DeadlineTask();
+	private final ActivityStateMachine mStateMachine = new ActivityStateMachine();
+	
+	private volatile long mLastSignalTime;
+	private ScheduledFuture<?> mDeadline;
+	
+	/**
+	 * Creates an activity monitor on the shared {@link StreamScheduler}
+	 */
+	public StreamActivityMonitor() {
+		this(StreamScheduler.getScheduler());
+	}
+	/**
+	 * Creates an activity monitor
+	 * @param scheduler that owns the inactivity deadline and delivers notifications
+	 */
+	public StreamActivityMonitor(ScheduledExecutorService scheduler) {
+		mScheduler = scheduler;
+	}
+	
+	/**
+	 * Signals that the stream is receiving data. This is cheap enough to be called for every event or buffer.
+	 * @return <code>true</code> if this signal activated the stream, <code>false</code> if it was already active
+	 */
+	public boolean signal() {
+		long now = System.nanoTime();
+		long previous = mLastSignalTime;
+		mLastSignalTime = now;
+		if(mActive.get()) {
+			mStateMachine.signal(now, previous);
+			return false;
+		}
+		if(!mStateMachine.pending(now, previous) || !mActive.compareAndSet(false, true)) {
+			return false;
+		}
+		mStateMachine.activated(now);
+		mScheduler.execute(mActivatedTask);
+		scheduleDeadline(mStateMachine.getHangTime());
+		return true;
+	}
+	
+	/**
+	 * Forces the stream inactive now if it's active, notifying observers
+	 * @return <code>true</code> if the stream was active
+	 */
+	public boolean inactivate() {
+		if(!mActive.compareAndSet(true, false)) {
+			return false;
+		}
+		mStateMachine.inactivated(System.nanoTime());
+		cancelDeadline();
+		mScheduler.execute(mInactivatedTask);
+		return true;
+	}
+	
+	/**
+	 * Cancels the pending deadline without notifying observers. Used when the stream is being released.
+	 */
+	public void cancel() {
+		mActive.set(false);
+		cancelDeadline();
+	}
+	
+	/**
+	 * @return <code>true</code> if the stream is currently considered active
+	 */
+	public boolean isActive() {
+		return mActive.get();
+	}
+	
+	/**
+	 * @return the {@link ActivityState} of the stream
+	 */
+	public ActivityState getState() {
+		return mStateMachine.getState(mActive.get(), mLastSignalTime);
+	}
+	
+	/**
+	 * Sets the threshold where the stream is deemed inactive. The adaptive hang time never goes below it
+	 * @param inactivationThreshold the threshold in miliseconds
+	 * @see ActivityStateMachine#setBaseHangTime(int)
+	 */
+	public void setInactivationThreshold(int inactivationThreshold) {
+		mStateMachine.setBaseHangTime(inactivationThreshold);
+	}
+	/**
+	 * Gets the threshold where the stream is deemed inactive when traffic isn't going back and forth
+	 * @return the threshold in miliseconds
+	 * @see ActivityStateMachine#getBaseHangTime()
+	 */
+	public int getInactivationThreshold() {
+		return mStateMachine.getBaseHangTime();
+	}
+	
+	/**
+	 * Gets the state machine deciding when the stream activates and inactivates, for tuning and its statistics
+	 * @return the {@link ActivityStateMachine} of this monitor
+	 */
+	public ActivityStateMachine getStateMachine() {
+		return mStateMachine;
+	}
+	
+	/**
+	 * Adds the stream observer that will be receiving notifications
+	 * @param observer to be added
+	 * @see StreamActivityObserver
+	 */
+	public void addObserver(StreamActivityObserver observer) {
+		mObservers.add(observer);
+	}
+	
+	/**
+	 * Removes the stream observer from receiving notifications
+	 * @param observer to be removed
+	 * @return <code>true</code> if the observer was removed successfully
+	 * @see StreamActivityObserver
+	 */
+	public boolean removeObserver(StreamActivityObserver observer) {
+		return mObservers.remove(observer);
+	}
+	
+	private synchronized void scheduleDeadline(long delay) {
+		mDeadline = mScheduler.schedule(mDeadlineTask, delay, TimeUnit.MILLISECONDS);
+	}
+	
+	private synchronized void cancelDeadline() {
+		if(mDeadline != null) {
+			mDeadline.cancel(false);
+			mDeadline = null;
+		}
+	}
+	
+	
+	private class ActivatedTask implements Runnable {
+		@Override
+		public void run() {
+			for(StreamActivityObserver observer : mObservers) {
+				observer.streamActivated();
+			}
+		}
+	}
+	
+	private class InactivatedTask implements Runnable {
+		@Override
+		public void run() {
+			for(StreamActivityObserver observer : mObservers) {
+				observer.streamInactivated();
+			}
+		}
+	}
+	
+	private class DeadlineTask implements Runnable {
+		@Override
+		public void run() {
+			if(!mActive.get()) {
+				return;
+			}
+			long now = System.nanoTime();
+			long idle = TimeUnit.NANOSECONDS.toMillis(now - mLastSignalTime);
+			long remaining = mStateMachine.getHangTime() - idle;
+			if(remaining > 0) {
+				// Signals arrived since this deadline was set, or the hang time stretched, so push it forward
+				scheduleDeadline(remaining);
+			}else if(mActive.compareAndSet(true, false)) {
+				mStateMachine.inactivated(now);
+				mInactivatedTask.run();
+			}
+		}
+	}
+}
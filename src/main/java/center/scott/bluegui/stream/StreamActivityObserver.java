@@ -17,7 +17,8 @@
 package center.scott.bluegui.stream;
 
 /**
- * Interface for receiving notifications based on whether a stream has been activated or not
+ * Interface for receiving notifications based on whether a stream has been activated or not.
+ * Notifications are sent on the single {@link StreamScheduler} thread, so they must return quickly and hand anything that blocks to another thread
  * @author Scott Maday
  */
 public interface StreamActivityObserver {
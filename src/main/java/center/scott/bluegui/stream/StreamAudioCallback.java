@@ -0,0 +1,157 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+import com.sun.jna.Pointer;
+
+import center.scott.bluegui.stream.audio.PcmChain;
+import center.scott.bluegui.stream.audio.PcmOutput;
+import center.scott.bluegui.stream.audio.PcmProcessor;
+import uk.co.caprica.vlcj.player.base.MediaPlayer;
+import uk.co.caprica.vlcj.player.base.callback.AudioCallbackAdapter;
+
+/**
+ * Takes decoded stream audio from vlc's callback audio, runs it through a {@link PcmChain} and plays it on a {@link PcmOutput}.
+ * Once installed, vlc no longer outputs the audio itself. Buffers are reused between blocks, so steady state playback does not allocate.
+ * @author Scott Maday
+ * @see uk.co.caprica.vlcj.player.base.AudioApi#callback(String, int, int, uk.co.caprica.vlcj.player.base.callback.AudioCallback, boolean)
+ */
+public class StreamAudioCallback extends AudioCallbackAdapter {
+	public final static String FORMAT = "S16N";
+	public final static int DEFAULT_SAMPLE_RATE = 44100;
+	public final static int DEFAULT_CHANNELS = 2;
+	
+	private final int mSampleRate;
+	private final int mChannels;
+	private final PcmChain mChain;
+	private final PcmOutput mOutput;
+	
+	private short[] mSamples = new short[0];
+	
+	/**
+	 * Creates a callback for the given format
+	 * @param sampleRate vlc will resample to
+	 * @param channels vlc will mix to
+	 */
+	public StreamAudioCallback(int sampleRate, int channels) {
+		mSampleRate = sampleRate;
+		mChannels = channels;
+		mChain = new PcmChain(sampleRate, channels);
+		mOutput = new PcmOutput(sampleRate, channels);
+	}
+	
+	/**
+	 * Installs this callback on a media player. This must be done before the media is played
+	 * @param mediaPlayer to take audio from
+	 */
+	public void install(MediaPlayer mediaPlayer) {
+		mediaPlayer.audio().callback(FORMAT, mSampleRate, mChannels, this, true);
+	}
+	
+	/**
+	 * @return sample rate in hertz
+	 */
+	public int getSampleRate() {
+		return mSampleRate;
+	}
+	/**
+	 * @return number of interleaved channels
+	 */
+	public int getChannels() {
+		return mChannels;
+	}
+	
+	/**
+	 * Gets the chain every block is processed by before output
+	 * @return the {@link PcmChain}
+	 */
+	public PcmChain getChain() {
+		return mChain;
+	}
+	
+	/**
+	 * Gets the output the processed audio is played on
+	 * @return the {@link PcmOutput}
+	 */
+	public PcmOutput getOutput() {
+		return mOutput;
+	}
+	
+	/**
+	 * Adds a processor to the end of the chain
+	 * @param processor to add
+	 * @see PcmChain#addProcessor(PcmProcessor)
+	 */
+	public void addProcessor(PcmProcessor processor) {
+		mChain.addProcessor(processor);
+	}
+	
+	/**
+	 * Removes a processor from the chain
+	 * @param processor to remove
+	 * @return <code>true</code> if the processor was removed
+	 * @see PcmChain#removeProcessor(PcmProcessor)
+	 */
+	public boolean removeProcessor(PcmProcessor processor) {
+		return mChain.removeProcessor(processor);
+	}
+	
+	/**
+	 * Closes the output line
+	 */
+	public void close() {
+		mOutput.close();
+	}
+	
+	@Override
+	public void play(MediaPlayer mediaPlayer, Pointer samples, int sampleCount, long pts) {
+		int length = sampleCount * mChannels;
+		if(mSamples.length < length) {
+			// Only grows when vlc hands over a bigger block than it has before
+			mSamples = new short[length];
+		}
+		samples.read(0, mSamples, 0, length);
+		length = mChain.process(mSamples, length);
+		mOutput.write(mSamples, length);
+	}
+	
+	@Override
+	public void pause(MediaPlayer mediaPlayer, long pts) {
+		mOutput.stop();
+	}
+	
+	@Override
+	public void resume(MediaPlayer mediaPlayer, long pts) {
+		mOutput.start();
+	}
+	
+	@Override
+	public void flush(MediaPlayer mediaPlayer, long pts) {
+		mOutput.flush();
+	}
+	
+	@Override
+	public void drain(MediaPlayer mediaPlayer) {
+		mOutput.drain();
+	}
+	
+	@Override
+	public void setVolume(float volume, boolean mute) {
+		mOutput.setVolume(volume);
+		mOutput.setMute(mute);
+	}
+}
@@ -0,0 +1,226 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the vlc buffering that suits a live source on this board.
+ * Each candidate combination of network caching, clock jitter and audio output plays the source for a while on its own libvlc instance,
+ * and is measured by how many audio buffers vlc lost to underruns and how long it took to reach audio.
+ * vlc holds every block of a live source for as long as it held the first, so the time to audio tracks the delay of the whole stream.
+ * The source must be transmitting while it's calibrated.
+ * @author Scott Maday
+ */
+public class StreamCalibrator {
+	private final static Logger LOGGER = LoggerFactory.getLogger(StreamCalibrator.class);
+	public final static int DEFAULT_CANDIDATE_SECONDS = 8;
+	public final static int[] NETWORK_CACHING = {0, 100, 300, 1000};
+	public final static int[] CLOCK_JITTER = {0, 500};
+	public final static String[] AUDIO_OUTPUTS = {null, "alsa"};
+	
+	private final static String[] CALIBRATED_OPTIONS = {"--network-caching", "--clock-jitter", "--aout"};
+	private final static int SAMPLE_INTERVAL = 50;
+	private final static int SETTLE_MILLIS = 1000;
+	
+	private final String mUri;
+	private final StreamConfiguration mBase;
+	private final int mCandidateMillis;
+	private final List<Candidate> mCandidates = new ArrayList<Candidate>();
+	
+	/**
+	 * Creates a calibrator trying every combination of {@link #NETWORK_CACHING}, {@link #CLOCK_JITTER} and {@link #AUDIO_OUTPUTS}
+	 * @param uri of the live source
+	 * @param base configuration whose other options every candidate keeps, may be null
+	 * @param candidateSeconds how long each candidate plays the source
+	 */
+	public StreamCalibrator(String uri, StreamConfiguration base, int candidateSeconds) {
+		mUri = uri;
+		mBase = base;
+		mCandidateMillis = candidateSeconds * 1000;
+		List<String> baseOptions = new ArrayList<String>();
+		if(base != null) {
+			String[] options = base.getOptions();
+			for(int i = 0; i < options.length; i++) {
+				if(isCalibrated(options[i])) {
+					// The value may be the next option rather than after an =
+					if(!options[i].contains("=")) {
+						i++;
+					}
+					continue;
+				}
+				baseOptions.add(options[i]);
+			}
+		}
+		for(String audioOutput : AUDIO_OUTPUTS) {
+			for(int clockJitter : CLOCK_JITTER) {
+				for(int networkCaching : NETWORK_CACHING) {
+					mCandidates.add(new Candidate(baseOptions, networkCaching, clockJitter, audioOutput));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return the candidates, measured once {@link #calibrate(String)} has returned
+	 */
+	public List<Candidate> getCandidates() {
+		return Collections.unmodifiableList(mCandidates);
+	}
+	
+	/**
+	 * Measures every candidate in turn, blocking until they're done. The one with the fewest lost buffers is best, and the quickest to audio among those
+	 * @param name of the profile made from the best candidate
+	 * @return the profile, or null if no candidate reached audio
+	 * @throws InterruptedException if interrupted while measuring
+	 */
+	public StreamConfiguration calibrate(String name) throws InterruptedException {
+		LOGGER.info("Calibrating {} candidates for {}s each, which takes about {} minutes", mCandidates.size(), mCandidateMillis / 1000,
+				(mCandidates.size() * (mCandidateMillis + SETTLE_MILLIS) + 59999) / 60000);
+		Candidate best = null;
+		for(int i = 0; i < mCandidates.size(); i++) {
+			Candidate candidate = mCandidates.get(i);
+			measure(candidate);
+			LOGGER.info("Candidate {} of {}: {}", i + 1, mCandidates.size(), candidate);
+			if(candidate.isBetterThan(best)) {
+				best = candidate;
+			}
+		}
+		if(best == null) {
+			return null;
+		}
+		LOGGER.info("Best candidate: {}", best);
+		int sampleRate = StreamConfiguration.getSampleRate(mBase);
+		int channels = StreamConfiguration.getChannels(mBase);
+		return new StreamConfiguration(name, String.join(" ", best.getOptions()), sampleRate, channels);
+	}
+	
+	private void measure(Candidate candidate) throws InterruptedException {
+		MediaStreamPlayer player = new MediaStreamPlayer(mUri, new SharedMediaPlayerFactory(candidate.getOptions()), mBase);
+		StreamStatistics statistics = player.startStatistics(SAMPLE_INTERVAL, mCandidateMillis / SAMPLE_INTERVAL + 1);
+		long start = System.currentTimeMillis();
+		try {
+			player.play();
+			player.setMute(false);
+			Thread.sleep(mCandidateMillis);
+		} finally {
+			player.dispose();
+		}
+		for(int age = statistics.getCount() - 1; age >= 0; age--) {
+			if(statistics.get(StreamStatistic.AUDIO_BUFFERS_PLAYED, age) > 0) {
+				candidate.mLatency = statistics.getTime(age) - start;
+				break;
+			}
+		}
+		candidate.mPlayed = statistics.getTotal(StreamStatistic.AUDIO_BUFFERS_PLAYED);
+		candidate.mLost = statistics.getTotal(StreamStatistic.AUDIO_BUFFERS_LOST);
+		// The player is released on vlc's own thread, and the next one may need the same port
+		Thread.sleep(SETTLE_MILLIS);
+	}
+	
+	private static boolean isCalibrated(String option) {
+		for(String calibrated : CALIBRATED_OPTIONS) {
+			if(option.equals(calibrated) || option.startsWith(calibrated + "=")) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	
+	/**
+	 * A combination of vlc options tried by the calibrator, and how it did
+	 */
+	public static class Candidate {
+		private final String[] mOptions;
+		private final int mNetworkCaching;
+		private final int mClockJitter;
+		private final String mAudioOutput;
+		private long mLatency = -1;
+		private long mPlayed = 0;
+		private long mLost = 0;
+		
+		private Candidate(List<String> baseOptions, int networkCaching, int clockJitter, String audioOutput) {
+			List<String> options = new ArrayList<String>(baseOptions);
+			options.add("--network-caching=" + networkCaching);
+			options.add("--clock-jitter=" + clockJitter);
+			if(audioOutput != null) {
+				options.add("--aout=" + audioOutput);
+			}
+			mOptions = options.toArray(new String[options.size()]);
+			mNetworkCaching = networkCaching;
+			mClockJitter = clockJitter;
+			mAudioOutput = audioOutput;
+		}
+		
+		/**
+		 * @return the vlc options of this candidate
+		 */
+		public String[] getOptions() {
+			return mOptions;
+		}
+		
+		/**
+		 * @return miliseconds from playing to the first audio, or -1 if there was none
+		 */
+		public long getLatency() {
+			return mLatency;
+		}
+		
+		/**
+		 * @return audio buffers lost to underruns
+		 */
+		public long getLost() {
+			return mLost;
+		}
+		
+		/**
+		 * @return audio buffers played
+		 */
+		public long getPlayed() {
+			return mPlayed;
+		}
+		
+		/**
+		 * @param other candidate, may be null
+		 * @return <code>true</code> if this candidate reached audio and lost fewer buffers than the other, or as many but reached audio sooner
+		 */
+		public boolean isBetterThan(Candidate other) {
+			if(mLatency < 0 || mPlayed == 0) {
+				return false;
+			}
+			if(other == null || mLost != other.mLost) {
+				return other == null || mLost < other.mLost;
+			}
+			return mLatency < other.mLatency;
+		}
+		
+		@Override
+		public String toString() {
+			String settings = String.format("caching %dms, jitter %dms, %s output", mNetworkCaching, mClockJitter, mAudioOutput == null ? "default" : mAudioOutput);
+			if(mLatency < 0) {
+				return settings + ", no audio";
+			}
+			return String.format("%s, %dms to audio, %d of %d buffers lost", settings, mLatency, mLost, mPlayed + mLost);
+		}
+	}
+}
@@ -16,35 +16,235 @@
 */
 package center.scott.bluegui.stream;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 /**
- * Premade enumeration of options 
+ * Options and format of a stream, either premade or a profile loaded from a file with {@link #loadProfiles(File)}.
+ * Configurations without vlc options are played by the pure java {@link UdpStreamPlayer} instead of vlc
  * @author Scott Maday
  */
-public enum StreamConfiguration {
-	OP25("--clock-jitter=500 --network-caching=0 --demux=rawaud --rawaud-channels 1 --rawaud-samplerate 8000");
+public class StreamConfiguration {
+	public final static StreamConfiguration OP25 = new StreamConfiguration("OP25", "--clock-jitter=500 --network-caching=0 --demux=rawaud --rawaud-channels 1 --rawaud-samplerate 8000", 8000, 1);
+	public final static StreamConfiguration OP25_JAVA = new StreamConfiguration("OP25_JAVA", null, 8000, 1);
+	
+	private final static StreamConfiguration[] PREMADE = {OP25, OP25_JAVA};
+	private final static String[] NO_OPTIONS = new String[0];
+	private final static List<StreamConfiguration> PROFILES = new CopyOnWriteArrayList<StreamConfiguration>();
 	
-	private final String mOptions;
+	private final String mName;
+	private final String[] mOptions;
+	private final int mSampleRate;
+	private final int mChannels;
 	
-	private StreamConfiguration(String options) {
-		mOptions = options;
+	/**
+	 * Creates a configuration. The options are split once here rather than every time they're used
+	 * @param name to find it by with {@link #fromString(String)}
+	 * @param options vlc options separated by spaces, or null to play the stream with {@link UdpStreamPlayer}
+	 * @param sampleRate of the stream in hertz
+	 * @param channels of the stream
+	 */
+	public StreamConfiguration(String name, String options, int sampleRate, int channels) {
+		mName = name;
+		if(options == null) {
+			mOptions = null;
+		}else if(options.trim().isEmpty()) {
+			mOptions = NO_OPTIONS;
+		}else {
+			mOptions = options.trim().split("\\s+");
+		}
+		mSampleRate = sampleRate;
+		mChannels = channels;
+	}
+	
+	/**
+	 * Gets every configuration, the loaded profiles followed by the premade ones
+	 * @return the configurations
+	 */
+	public static StreamConfiguration[] values() {
+		List<StreamConfiguration> configurations = new ArrayList<StreamConfiguration>(PROFILES);
+		for(StreamConfiguration config : PREMADE) {
+			configurations.add(config);
+		}
+		return configurations.toArray(new StreamConfiguration[configurations.size()]);
 	}
 	
 	/**
-	 * Attempts to get the StreamConfiguration from a string
+	 * Attempts to get the StreamConfiguration from a string. A loaded profile is found before a premade configuration with the same name
 	 * @param configuration case insensitive string to get the StreamConfiguration
 	 * @return {@link StreamConfiguration} if the configuration is valid, null otherwise
 	 */
 	public static StreamConfiguration fromString(String configuration) {
-		String configUpper = configuration.toUpperCase();
+		String configUpper = configuration.toUpperCase().replace('-', '_');
 		for(StreamConfiguration config : StreamConfiguration.values()) {
-			if(config.name().toUpperCase().equals(configUpper)) {
+			if(config.mName.toUpperCase().replace('-', '_').equals(configUpper)) {
 				return config;
 			}
 		}
 		return null;
 	}
 	
+	/**
+	 * Loads the profiles of a properties file, keyed <code>&lt;name&gt;.options</code>, <code>&lt;name&gt;.samplerate</code> and <code>&lt;name&gt;.channels</code>.
+	 * A profile without options is played with {@link UdpStreamPlayer}. Profiles replace any loaded before with the same name
+	 * @param file to load
+	 * @return the profiles loaded
+	 * @throws IOException if the file can't be read
+	 * @throws IllegalArgumentException if a sample rate or channel count isn't a number
+	 */
+	public static List<StreamConfiguration> loadProfiles(File file) throws IOException {
+		Properties properties = new Properties();
+		try(InputStream in = new FileInputStream(file)) {
+			properties.load(in);
+		}
+		List<StreamConfiguration> profiles = new ArrayList<StreamConfiguration>();
+		for(String key : properties.stringPropertyNames()) {
+			if(!key.endsWith(".samplerate")) {
+				continue;
+			}
+			String name = key.substring(0, key.length() - ".samplerate".length());
+			int sampleRate = Integer.parseInt(properties.getProperty(key).trim());
+			int channels = Integer.parseInt(properties.getProperty(name + ".channels", "1").trim());
+			StreamConfiguration profile = new StreamConfiguration(name, properties.getProperty(name + ".options"), sampleRate, channels);
+			addProfile(profile);
+			profiles.add(profile);
+		}
+		return profiles;
+	}
+	
+	/**
+	 * Writes a profile to a properties file, keeping the other profiles in it, and makes it available to {@link #fromString(String)}
+	 * @param file to write, created if it doesn't exist
+	 * @param profile to write
+	 * @throws IOException if the file can't be read or written
+	 */
+	public static void saveProfile(File file, StreamConfiguration profile) throws IOException {
+		Properties properties = new Properties();
+		if(file.exists()) {
+			try(InputStream in = new FileInputStream(file)) {
+				properties.load(in);
+			}
+		}
+		if(profile.mOptions == null) {
+			properties.remove(profile.mName + ".options");
+		}else {
+			properties.setProperty(profile.mName + ".options", String.join(" ", profile.mOptions));
+		}
+		properties.setProperty(profile.mName + ".samplerate", Integer.toString(profile.mSampleRate));
+		properties.setProperty(profile.mName + ".channels", Integer.toString(profile.mChannels));
+		try(OutputStream out = new FileOutputStream(file)) {
+			properties.store(out, "BlueGUI stream profiles");
+		}
+		addProfile(profile);
+	}
+	
+	private static void addProfile(StreamConfiguration profile) {
+		for(StreamConfiguration existing : PROFILES) {
+			if(existing.mName.equalsIgnoreCase(profile.mName)) {
+				PROFILES.remove(existing);
+			}
+		}
+		PROFILES.add(profile);
+	}
+	
+	/**
+	 * @return the name of this configuration
+	 */
+	public String getName() {
+		return mName;
+	}
+	
+	/**
+	 * Gets the vlc options. The array is shared, so it must not be modified
+	 * @return the options, empty if this configuration doesn't use vlc
+	 */
 	public String[] getOptions() {
-		return mOptions.split(" ");
+		return mOptions == null ? NO_OPTIONS : mOptions;
+	}
+	
+	/**
+	 * Creates a factory with this configuration's vlc options that several streams can share
+	 * @return a new {@link SharedMediaPlayerFactory}
+	 */
+	public SharedMediaPlayerFactory createFactory() {
+		return new SharedMediaPlayerFactory(getOptions());
+	}
+	
+	/**
+	 * @return <code>true</code> if streams with this configuration are played by vlc, <code>false</code> if they're played by {@link UdpStreamPlayer}
+	 */
+	public boolean usesVlc() {
+		return mOptions != null;
+	}
+	
+	/**
+	 * Creates the player for a stream with this configuration
+	 * @param uri the mrl
+	 * @return a {@link MediaStreamPlayer} or {@link UdpStreamPlayer}
+	 */
+	public StreamPlayer createPlayer(String uri) {
+		if(usesVlc()) {
+			return new MediaStreamPlayer(uri, this);
+		}
+		return new UdpStreamPlayer(uri, this);
+	}
+	/**
+	 * Creates the player for a stream with this configuration on a shared factory
+	 * @param uri the mrl
+	 * @param factory from {@link #createFactory()}, only used if this configuration {@link #usesVlc()}
+	 * @return a {@link MediaStreamPlayer} or {@link UdpStreamPlayer}
+	 */
+	public StreamPlayer createPlayer(String uri, SharedMediaPlayerFactory factory) {
+		if(usesVlc()) {
+			return new MediaStreamPlayer(uri, factory, this);
+		}
+		return new UdpStreamPlayer(uri, this);
+	}
+	
+	/**
+	 * Gets the native sample rate of streams using this configuration
+	 * @return sample rate in hertz
+	 */
+	public int getSampleRate() {
+		return mSampleRate;
+	}
+	
+	/**
+	 * Gets the number of channels of streams using this configuration
+	 * @return number of channels
+	 */
+	public int getChannels() {
+		return mChannels;
+	}
+	
+	/**
+	 * Gets the native sample rate of streams using a configuration
+	 * @param configuration of the streams, may be null
+	 * @return sample rate in hertz, or {@link StreamAudioCallback#DEFAULT_SAMPLE_RATE} without a configuration
+	 */
+	public static int getSampleRate(StreamConfiguration configuration) {
+		return configuration == null ? StreamAudioCallback.DEFAULT_SAMPLE_RATE : configuration.getSampleRate();
+	}
+	
+	/**
+	 * Gets the number of channels of streams using a configuration
+	 * @param configuration of the streams, may be null
+	 * @return number of channels, or {@link StreamAudioCallback#DEFAULT_CHANNELS} without a configuration
+	 */
+	public static int getChannels(StreamConfiguration configuration) {
+		return configuration == null ? StreamAudioCallback.DEFAULT_CHANNELS : configuration.getChannels();
+	}
+	
+	@Override
+	public String toString() {
+		return mName;
 	}
 }
@@ -0,0 +1,400 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import center.scott.bluegui.stream.audio.PcmChain;
+import center.scott.bluegui.stream.audio.PcmProcessor;
+
+/**
+ * Monitors several streams as one {@link StreamPlayer}.
+ * Streams are kept in priority order, the first added being the highest, and each keeps its own activity tracking.
+ * The group is active while any of its streams are, and an {@link AudiblePolicy} decides which of the active streams is heard.
+ * @author Scott Maday
+ */
+public class StreamGroup implements StreamPlayer {
+	private final static Logger LOGGER = LoggerFactory.getLogger(StreamGroup.class);
+	
+	private final List<StreamPlayer> mPlayers = new CopyOnWriteArrayList<StreamPlayer>();
+	private final List<StreamActivityObserver> mObservers = new CopyOnWriteArrayList<StreamActivityObserver>();
+	private final List<StreamPlayer> mActive = new ArrayList<StreamPlayer>();
+	private final PcmChain mChain = new PcmChain(StreamAudioCallback.DEFAULT_SAMPLE_RATE, StreamAudioCallback.DEFAULT_CHANNELS);
+	
+	private AudiblePolicy mPolicy;
+	private StreamPlayer mAudible;
+	private volatile StreamPlayer mHeard;
+	private boolean mTapped = false;
+	private boolean mReleased = false;
+	private boolean mMuted = false;
+	private int mVolume = 50;
+	
+	/**
+	 * Creates an empty group
+	 * @param policy deciding which active stream is heard
+	 */
+	public StreamGroup(AudiblePolicy policy) {
+		mPolicy = policy;
+	}
+	
+	/**
+	 * Adds a stream with a lower priority than every stream already in the group
+	 * @param player to add
+	 */
+	public synchronized void addPlayer(StreamPlayer player) {
+		mPlayers.add(player);
+		player.addObserver(new MemberObserver(player));
+		updateAudible();
+		if(mTapped && !player.addProcessor(new Tap(player))) {
+			LOGGER.error("Could not process the audio of stream {}", mPlayers.size() - 1);
+		}
+	}
+	
+	/**
+	 * @return the streams in priority order
+	 */
+	public List<StreamPlayer> getPlayers() {
+		return mPlayers;
+	}
+	
+	/**
+	 * Sets which active stream is heard
+	 * @param policy to use
+	 */
+	public synchronized void setPolicy(AudiblePolicy policy) {
+		mPolicy = policy;
+		updateAudible();
+	}
+	/**
+	 * @return which active stream is heard
+	 */
+	public synchronized AudiblePolicy getPolicy() {
+		return mPolicy;
+	}
+	
+	/**
+	 * Gets the stream that's currently heard
+	 * @return the heard {@link StreamPlayer}, or null if no stream is active or every active stream is heard
+	 */
+	public synchronized StreamPlayer getAudible() {
+		return mAudible;
+	}
+	
+	/**
+	 * @return <code>true</code> if any stream of the group is active
+	 */
+	public synchronized boolean isActive() {
+		return !mActive.isEmpty();
+	}
+	
+	@Override
+	public boolean play() {
+		if(isReleased() || mPlayers.isEmpty()) {
+			return false;
+		}
+		boolean result = true;
+		for(StreamPlayer player : mPlayers) {
+			result &= player.play();
+		}
+		return result;
+	}
+	
+	@Override
+	public void stop() {
+		for(StreamPlayer player : mPlayers) {
+			player.stop();
+		}
+	}
+	
+	/**
+	 * @return <code>true</code> if any stream of the group is playing
+	 */
+	@Override
+	public boolean isPlaying() {
+		for(StreamPlayer player : mPlayers) {
+			if(player.isPlaying()) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	@Override
+	public boolean join() {
+		try {
+			Thread.currentThread().join();
+			return true;
+		} catch (InterruptedException e) {
+			LOGGER.error("Could not join current thread to StreamGroup: ", e);
+		}
+		return false;
+	}
+	
+	/**
+	 * Mutes every stream of the group. Unmuting leaves the streams muted that the {@link AudiblePolicy} silences
+	 * @param mute <code>true</code> to mute, <code>false</code> to unmute
+	 */
+	@Override
+	public synchronized void setMute(boolean mute) {
+		mMuted = mute;
+		applyMute();
+	}
+	@Override
+	public synchronized boolean isMute() {
+		return mMuted;
+	}
+	
+	@Override
+	public boolean setVolume(int volume) {
+		mVolume = volume;
+		boolean result = !mPlayers.isEmpty();
+		for(StreamPlayer player : mPlayers) {
+			result &= player.setVolume(volume);
+		}
+		return result;
+	}
+	@Override
+	public int getVolume() {
+		if(isReleased()) {
+			return -1;
+		}
+		return mVolume;
+	}
+	
+	@Override
+	public void dispose() {
+		mReleased = true;
+		for(StreamPlayer player : mPlayers) {
+			player.dispose();
+		}
+	}
+	@Override
+	public boolean isReleased() {
+		return mReleased;
+	}
+	
+	@Override
+	public boolean setActivityDetection(ActivityDetection activityDetection) {
+		boolean result = !mPlayers.isEmpty();
+		for(StreamPlayer player : mPlayers) {
+			result &= player.setActivityDetection(activityDetection);
+		}
+		return result;
+	}
+	/**
+	 * @return how the highest priority stream decides that it's active
+	 */
+	@Override
+	public ActivityDetection getActivityDetection() {
+		return mPlayers.isEmpty() ? ActivityDetection.TIME_CHANGED : mPlayers.get(0).getActivityDetection();
+	}
+	
+	@Override
+	public boolean setActivityThresholds(double rmsDbfs, double peakDbfs) {
+		boolean result = !mPlayers.isEmpty();
+		for(StreamPlayer player : mPlayers) {
+			result &= player.setActivityThresholds(rmsDbfs, peakDbfs);
+		}
+		return result;
+	}
+	
+	@Override
+	public void setStreamInactivationThreshold(int streamInactivationThreshold) {
+		for(StreamPlayer player : mPlayers) {
+			player.setStreamInactivationThreshold(streamInactivationThreshold);
+		}
+	}
+	
+	/**
+	 * Gets the monitor of the highest priority stream. Observers of the whole group are added with {@link #addObserver(StreamActivityObserver)}
+	 * @return the {@link StreamActivityMonitor} of the highest priority stream, or null if the group is empty
+	 */
+	@Override
+	public StreamActivityMonitor getActivityMonitor() {
+		return mPlayers.isEmpty() ? null : mPlayers.get(0).getActivityMonitor();
+	}
+	
+	/**
+	 * Adds a processor to the decoded audio of whichever stream is heard. When every active stream is heard, that's the highest priority one.
+	 * The first processor takes every stream's audio through a {@link StreamAudioCallback}, so it must be added before {@link #play()}
+	 * @param processor to add
+	 * @return <code>true</code> if added
+	 * @see StreamPlayer#addProcessor(PcmProcessor)
+	 */
+	@Override
+	public synchronized boolean addProcessor(PcmProcessor processor) {
+		if(mReleased || mPlayers.isEmpty()) {
+			return false;
+		}
+		if(!mTapped) {
+			for(StreamPlayer player : mPlayers) {
+				if(!player.addProcessor(new Tap(player))) {
+					return false;
+				}
+			}
+			mTapped = true;
+		}
+		mChain.addProcessor(processor);
+		return true;
+	}
+	@Override
+	public boolean removeProcessor(PcmProcessor processor) {
+		return mChain.removeProcessor(processor);
+	}
+	
+	@Override
+	public boolean setOutputRate(int outputRate) {
+		boolean result = !mPlayers.isEmpty();
+		for(StreamPlayer player : mPlayers) {
+			result &= player.setOutputRate(outputRate);
+		}
+		return result;
+	}
+	
+	/**
+	 * Adds an observer notified when the first stream of the group goes active and when the last goes inactive
+	 * @param observer to be added
+	 */
+	@Override
+	public void addObserver(StreamActivityObserver observer) {
+		mObservers.add(observer);
+	}
+	@Override
+	public boolean removeObserver(StreamActivityObserver observer) {
+		return mObservers.remove(observer);
+	}
+	
+	private synchronized void memberActivated(StreamPlayer player) {
+		if(mActive.contains(player)) {
+			return;
+		}
+		mActive.add(player);
+		updateAudible();
+		if(mActive.size() == 1) {
+			for(StreamActivityObserver observer : mObservers) {
+				observer.streamActivated();
+			}
+		}
+	}
+	
+	private synchronized void memberInactivated(StreamPlayer player) {
+		if(!mActive.remove(player)) {
+			return;
+		}
+		updateAudible();
+		if(mActive.isEmpty()) {
+			for(StreamActivityObserver observer : mObservers) {
+				observer.streamInactivated();
+			}
+		}
+	}
+	
+	private void updateAudible() {
+		StreamPlayer audible = null;
+		if(!mActive.isEmpty()) {
+			switch(mPolicy) {
+			case PRIORITY:
+				for(StreamPlayer player : mPlayers) {
+					if(mActive.contains(player)) {
+						audible = player;
+						break;
+					}
+				}
+				break;
+			case FIRST_ACTIVE:
+				audible = mActive.get(0);
+				break;
+			case MIX:
+				break;
+			}
+		}
+		if(audible != mAudible) {
+			LOGGER.debug("Audible stream is now {}", audible == null ? "every stream" : "stream " + mPlayers.indexOf(audible));
+		}
+		mAudible = audible;
+		StreamPlayer heard = audible;
+		for(int i = 0; heard == null && i < mPlayers.size(); i++) {
+			if(mActive.contains(mPlayers.get(i))) {
+				heard = mPlayers.get(i);
+			}
+		}
+		if(heard == null && !mPlayers.isEmpty()) {
+			heard = mPlayers.get(0);
+		}
+		mHeard = heard;
+		applyMute();
+	}
+	
+	private void applyMute() {
+		for(StreamPlayer player : mPlayers) {
+			boolean mute = mMuted || (mAudible != null && player != mAudible);
+			if(player.isMute() != mute) {
+				player.setMute(mute);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Passes a member's audio on to the group's processors while it's the stream being heard
+	 */
+	private class Tap implements PcmProcessor {
+		private final StreamPlayer mPlayer;
+		
+		public Tap(StreamPlayer player) {
+			mPlayer = player;
+		}
+		
+		@Override
+		public void formatChanged(int sampleRate, int channels) {
+			if(mPlayer == mHeard) {
+				mChain.formatChanged(sampleRate, channels);
+			}
+		}
+		
+		@Override
+		public int process(short[] samples, int length) {
+			if(mPlayer != mHeard) {
+				return length;
+			}
+			return mChain.process(samples, length);
+		}
+	}
+	
+	private class MemberObserver implements StreamActivityObserver {
+		private final StreamPlayer mPlayer;
+		
+		public MemberObserver(StreamPlayer player) {
+			mPlayer = player;
+		}
+		
+		@Override
+		public void streamActivated() {
+			memberActivated(mPlayer);
+		}
+		
+		@Override
+		public void streamInactivated() {
+			memberInactivated(mPlayer);
+		}
+	}
+}
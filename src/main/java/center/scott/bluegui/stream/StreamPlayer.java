@@ -0,0 +1,147 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+import center.scott.bluegui.stream.audio.PcmProcessor;
+
+/**
+ * A player that listens to an audio stream and reports when the stream is active.
+ * Implemented by {@link MediaStreamPlayer} for anything vlc can open and {@link UdpStreamPlayer} for raw PCM over UDP.
+ * @author Scott Maday
+ */
+public interface StreamPlayer {
+	
+	/**
+	 * Begins listening and outputting the stream
+	 * @return <code>true</code> on successfully playing the stream, else <code>false</code> if there was an error, if the steam {@link #isReleased()}, or if the stream {@link #isPlaying()}
+	 */
+	public boolean play();
+	
+	/**
+	 * Stops the listening outputting of the stream
+	 */
+	public void stop();
+	
+	/**
+	 * @return <code>true</code> if the stream is playing, else <code>false</code> if not or the stream {@link #isReleased()}
+	 */
+	public boolean isPlaying();
+	
+	/**
+	 * Joins the current thread calling this method to the thread that this player is using
+	 * @return <code>true</code> if successfully joined or <code>false</code> otherwise
+	 */
+	public boolean join();
+	
+	/**
+	 * Sets the mute of the stream output
+	 * @param mute <code>true</code> to mute, <code>false</code> to unmute
+	 */
+	public void setMute(boolean mute);
+	/**
+	 * @return <code>true</code> If the stream is muted, <code>false</code> otherwise
+	 */
+	public boolean isMute();
+	
+	/**
+	 * Sets the stream volume
+	 * @param volume percentage between 0 and 100, anything past 100 may cause distortion.
+	 * @return <code>true</code> if the stream is successful, else <code>false</code> if not or the stream {@link #isReleased()}
+	 */
+	public boolean setVolume(int volume);
+	/**
+	 * Gets the stream volume
+	 * @return volume percentage between 0 and 200, or -1 if the stream {@link #isReleased()}
+	 */
+	public int getVolume();
+	
+	/**
+	 * Releases the resources of this player
+	 */
+	public void dispose();
+	/**
+	 * This method will only return <code>true</code> if {@link #dispose()} has been called prior
+	 * @return <code>true</code> if the stream has been released
+	 */
+	public boolean isReleased();
+	
+	/**
+	 * Sets how this stream decides that it's active. This must be set before {@link #play()}
+	 * @param activityDetection to use
+	 * @return <code>true</code> if the detection was set, else <code>false</code> if the stream {@link #isReleased()} or {@link #isPlaying()}
+	 */
+	public boolean setActivityDetection(ActivityDetection activityDetection);
+	/**
+	 * @return how this stream decides that it's active
+	 */
+	public ActivityDetection getActivityDetection();
+	
+	/**
+	 * Sets the signal thresholds used by {@link ActivityDetection#ENERGY}. A block of audio counts as activity if it reaches either threshold
+	 * @param rmsDbfs rms threshold in dBFS
+	 * @param peakDbfs peak threshold in dBFS
+	 * @return <code>true</code> if set, else <code>false</code> if the stream isn't using {@link ActivityDetection#ENERGY}
+	 */
+	public boolean setActivityThresholds(double rmsDbfs, double peakDbfs);
+	
+	/**
+	 * Sets the threshold where the stream is deemed inactive
+	 * @param streamInactivationThreshold the threshold in miliseconds
+	 */
+	public void setStreamInactivationThreshold(int streamInactivationThreshold);
+	
+	/**
+	 * Gets the monitor deciding when this stream is active
+	 * @return the {@link StreamActivityMonitor} of this stream
+	 */
+	public StreamActivityMonitor getActivityMonitor();
+	
+	/**
+	 * Adds a processor that every block of decoded audio passes through before output
+	 * @param processor to add
+	 * @return <code>true</code> if added, else <code>false</code> if decoded audio can't be reached anymore
+	 */
+	public boolean addProcessor(PcmProcessor processor);
+	/**
+	 * Removes a processor added by {@link #addProcessor(PcmProcessor)}
+	 * @param processor to remove
+	 * @return <code>true</code> if the processor was removed
+	 */
+	public boolean removeProcessor(PcmProcessor processor);
+	
+	/**
+	 * Resamples decoded audio to the given rate before output, instead of leaving it to vlc or the sound system
+	 * @param outputRate in hertz
+	 * @return <code>true</code> if the audio will be resampled, else <code>false</code> if decoded audio can't be reached anymore
+	 * @see center.scott.bluegui.stream.audio.PcmOutput#setOutputRate(int)
+	 */
+	public boolean setOutputRate(int outputRate);
+	
+	/**
+	 * Adds the stream observer that will be receiving notifications
+	 * @param observer to be added
+	 * @see StreamActivityObserver
+	 */
+	public void addObserver(StreamActivityObserver observer);
+	/**
+	 * Removes the stream observer from receiving notifications
+	 * @param observer to be removed
+	 * @return <code>true</code> if the observer was removed successfully
+	 * @see StreamActivityObserver
+	 */
+	public boolean removeObserver(StreamActivityObserver observer);
+}
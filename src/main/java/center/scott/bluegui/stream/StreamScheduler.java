@@ -0,0 +1,120 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single long-lived scheduler shared by every stream. Inactivity deadlines and observer notifications run here instead of on short-lived threads.
+ * Tasks submitted to this scheduler should be short, since they all share one daemon thread.
+ * That includes every {@link StreamActivityObserver}, so an observer that blocks would hold up the deadlines and notifications of every stream.
+ * Observers hand blocking work, like D-Bus calls to a slow phone, to a thread of their own.
+ * Anything a task throws is logged, and a periodic task keeps running after it throws rather than being silently cancelled.
+ * @author Scott Maday
+ */
+public class StreamScheduler {
+	private final static Logger LOGGER = LoggerFactory.getLogger(StreamScheduler.class);
+	private final static String THREAD_NAME = "StreamScheduler";
+	
+	private static ScheduledThreadPoolExecutor mScheduler;
+	
+	private StreamScheduler() {
+	}
+	
+	/**
+	 * Gets the shared scheduler, creating it on first use
+	 * @return the shared {@link java.util.concurrent.ScheduledExecutorService}
+	 */
+	public static synchronized ScheduledExecutorService getScheduler() {
+		if(mScheduler == null || mScheduler.isShutdown()) {
+			mScheduler = new LoggingScheduler(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, THREAD_NAME);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			// Deadlines are cancelled often, so don't let them pile up in the queue
+			mScheduler.setRemoveOnCancelPolicy(true);
+		}
+		return mScheduler;
+	}
+	
+	/**
+	 * Stops the shared scheduler. Any pending tasks are discarded
+	 */
+	public static synchronized void shutdown() {
+		if(mScheduler != null) {
+			mScheduler.shutdownNow();
+			mScheduler = null;
+		}
+	}
+	
+	
+	/**
+	 * Logs what tasks throw. The executor keeps exceptions in each task's future, where nobody looks for them, and cancels a periodic task on its first throw
+	 */
+	private static class LoggingScheduler extends ScheduledThreadPoolExecutor {
+		
+		public LoggingScheduler(ThreadFactory threadFactory) {
+			super(1, threadFactory);
+		}
+		
+		/**
+		 * Also used by {@link #execute(Runnable)} and {@link #submit(Runnable)}
+		 */
+		@Override
+		public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+			return super.schedule(new LoggingTask(command), delay, unit);
+		}
+		
+		@Override
+		public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+			return super.scheduleAtFixedRate(new LoggingTask(command), initialDelay, period, unit);
+		}
+		
+		@Override
+		public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+			return super.scheduleWithFixedDelay(new LoggingTask(command), initialDelay, delay, unit);
+		}
+	}
+	
+	private static class LoggingTask implements Runnable {
+		private final Runnable mTask;
+		
+		public LoggingTask(Runnable task) {
+			mTask = task;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				mTask.run();
+			} catch (RuntimeException | Error e) {
+				LOGGER.error("Uncaught exception in {} task {}: ", THREAD_NAME, mTask, e);
+			}
+		}
+	}
+}
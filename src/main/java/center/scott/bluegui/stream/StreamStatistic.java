@@ -0,0 +1,97 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+import uk.co.caprica.vlcj.media.MediaStatistics;
+
+/**
+ * A series kept by {@link StreamStatistics}. Rates are in kilobits per second, counts are per sample
+ * @author Scott Maday
+ */
+public enum StreamStatistic {
+	INPUT_BITRATE("input kbps", true) {
+		@Override
+		public int read(MediaStatistics statistics) {
+			return statistics.inputBytesRead();
+		}
+	},
+	DEMUX_BITRATE("demux kbps", true) {
+		@Override
+		public int read(MediaStatistics statistics) {
+			return statistics.demuxBytesRead();
+		}
+	},
+	DEMUX_CORRUPTED("corrupted", false) {
+		@Override
+		public int read(MediaStatistics statistics) {
+			return statistics.demuxCorrupted();
+		}
+	},
+	DEMUX_DISCONTINUITY("discontinuities", false) {
+		@Override
+		public int read(MediaStatistics statistics) {
+			return statistics.demuxDiscontinuity();
+		}
+	},
+	DECODED_AUDIO("decoded blocks", false) {
+		@Override
+		public int read(MediaStatistics statistics) {
+			return statistics.decodedAudio();
+		}
+	},
+	AUDIO_BUFFERS_PLAYED("played buffers", false) {
+		@Override
+		public int read(MediaStatistics statistics) {
+			return statistics.audioBuffersPlayed();
+		}
+	},
+	AUDIO_BUFFERS_LOST("lost buffers", false) {
+		@Override
+		public int read(MediaStatistics statistics) {
+			return statistics.audioBuffersLost();
+		}
+	};
+	
+	private final String mLabel;
+	private final boolean mRate;
+	
+	private StreamStatistic(String label, boolean rate) {
+		mLabel = label;
+		mRate = rate;
+	}
+	
+	/**
+	 * Reads the cumulative counter behind this series
+	 * @param statistics to read from
+	 * @return the counter since the media was opened
+	 */
+	public abstract int read(MediaStatistics statistics);
+	
+	/**
+	 * @return <code>true</code> if the series is a rate in kilobits per second, <code>false</code> if it's a count per sample
+	 */
+	public boolean isRate() {
+		return mRate;
+	}
+	
+	/**
+	 * @return short label for displaying the series
+	 */
+	public String getLabel() {
+		return mLabel;
+	}
+}
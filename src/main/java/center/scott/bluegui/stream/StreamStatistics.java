@@ -0,0 +1,165 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+import uk.co.caprica.vlcj.media.MediaStatistics;
+
+/**
+ * A time series of vlc media statistics, such as bitrate and lost audio buffers, kept in preallocated rings.
+ * Each sample holds what changed since the sample before it, so dropouts can be lined up against network and decoder load.
+ * @author Scott Maday
+ * @see StreamStatistic
+ */
+public class StreamStatistics {
+	public final static int DEFAULT_CAPACITY = 300;
+	public final static int DEFAULT_INTERVAL = 1000;
+	
+	private final static StreamStatistic[] STATISTICS = StreamStatistic.values();
+	
+	private final long[] mTimes;
+	private final double[][] mSeries;
+	private final long[] mTotals = new long[STATISTICS.length];
+	private final int[] mLast = new int[STATISTICS.length];
+	
+	private int mCount = 0;
+	private int mNext = 0;
+	private long mLastTime = -1;
+	
+	/**
+	 * Creates statistics holding {@link #DEFAULT_CAPACITY} samples
+	 */
+	public StreamStatistics() {
+		this(DEFAULT_CAPACITY);
+	}
+	/**
+	 * Creates statistics
+	 * @param capacity number of samples to keep
+	 */
+	public StreamStatistics(int capacity) {
+		mTimes = new long[capacity];
+		mSeries = new double[STATISTICS.length][capacity];
+	}
+	
+	/**
+	 * Records a sample
+	 * @param statistics read from vlc
+	 * @param time of the sample in miliseconds since the epoch
+	 */
+	public synchronized void record(MediaStatistics statistics, long time) {
+		long elapsed = time - mLastTime;
+		boolean first = mLastTime < 0 || elapsed <= 0;
+		for(int i = 0; i < STATISTICS.length; i++) {
+			int value = STATISTICS[i].read(statistics);
+			// Counters start over when the media is reopened
+			int delta = value >= mLast[i] ? value - mLast[i] : value;
+			mLast[i] = value;
+			if(first) {
+				continue;
+			}
+			mTotals[i] += delta;
+			mSeries[i][mNext] = STATISTICS[i].isRate() ? delta * 8d / elapsed : delta;
+		}
+		mLastTime = time;
+		if(first) {
+			return;
+		}
+		mTimes[mNext] = time;
+		mNext = (mNext + 1) % mTimes.length;
+		if(mCount < mTimes.length) {
+			mCount++;
+		}
+	}
+	
+	/**
+	 * Forgets every sample
+	 */
+	public synchronized void reset() {
+		mCount = 0;
+		mNext = 0;
+		mLastTime = -1;
+		for(int i = 0; i < STATISTICS.length; i++) {
+			mTotals[i] = 0;
+			mLast[i] = 0;
+		}
+	}
+	
+	/**
+	 * @return number of samples kept
+	 */
+	public synchronized int getCount() {
+		return mCount;
+	}
+	/**
+	 * @return maximum number of samples kept
+	 */
+	public int getCapacity() {
+		return mTimes.length;
+	}
+	
+	/**
+	 * Gets the time of a sample
+	 * @param age of the sample, 0 being the newest
+	 * @return time in miliseconds since the epoch
+	 * @throws IndexOutOfBoundsException if age is not less than {@link #getCount()}
+	 */
+	public synchronized long getTime(int age) {
+		return mTimes[slot(age)];
+	}
+	
+	/**
+	 * Gets a value of a series
+	 * @param statistic series to get
+	 * @param age of the sample, 0 being the newest
+	 * @return kilobits per second for rates, or the count during the sample
+	 * @throws IndexOutOfBoundsException if age is not less than {@link #getCount()}
+	 */
+	public synchronized double get(StreamStatistic statistic, int age) {
+		return mSeries[statistic.ordinal()][slot(age)];
+	}
+	
+	/**
+	 * Copies a series without allocating
+	 * @param statistic series to copy
+	 * @param values to copy into, oldest first
+	 * @return number of values copied
+	 */
+	public synchronized int copy(StreamStatistic statistic, double[] values) {
+		int count = Math.min(values.length, mCount);
+		double[] series = mSeries[statistic.ordinal()];
+		for(int i = 0; i < count; i++) {
+			values[i] = series[slot(count - 1 - i)];
+		}
+		return count;
+	}
+	
+	/**
+	 * Gets the total of a series since the statistics were created or {@link #reset()}
+	 * @param statistic series to total
+	 * @return total kilobits for rates, or the total count
+	 */
+	public synchronized long getTotal(StreamStatistic statistic) {
+		long total = mTotals[statistic.ordinal()];
+		return statistic.isRate() ? total * 8 / 1000 : total;
+	}
+	
+	private int slot(int age) {
+		if(age < 0 || age >= mCount) {
+			throw new IndexOutOfBoundsException("Sample " + age + " of " + mCount);
+		}
+		return (mNext - 1 - age + mTimes.length) % mTimes.length;
+	}
+}
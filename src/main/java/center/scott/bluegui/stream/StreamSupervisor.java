@@ -0,0 +1,187 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.caprica.vlcj.player.base.MediaPlayer;
+import uk.co.caprica.vlcj.player.base.MediaPlayerEventAdapter;
+
+/**
+ * Keeps a {@link MediaStreamPlayer} playing. When vlc reports an error, or the stream stops or finishes without being asked to,
+ * the media is reopened on the existing media player after an exponential backoff, so no factory or JVM restart is needed.
+ * The first reconnect after a failure retries the primary uri, and each further failure moves on to the next uri of an ordered list of fallbacks.
+ * The backoff only grows once every uri has failed, and once any of them plays again the next failure starts over from the primary uri.
+ * @author Scott Maday
+ */
+public class StreamSupervisor extends MediaPlayerEventAdapter {
+	private final static Logger LOGGER = LoggerFactory.getLogger(StreamSupervisor.class);
+	public final static int INITIAL_BACKOFF = 250;
+	public final static int MAX_BACKOFF = 10000;
+	private final static int ERROR_LOG_ENTRIES = 10;
+	
+	private final MediaStreamPlayer mPlayer;
+	private final List<String> mUris;
+	private final Runnable mReopenTask = new Runnable() {
+		@Override
+		public void run() {
+			reopen();
+		}
+	};
+	
+	private int mUriIndex = 0;
+	private volatile int mFailures = 0;
+	private int mReconnects = 0;
+	private ScheduledFuture<?> mPending;
+	private boolean mStarted = false;
+	
+	/**
+	 * Creates a supervisor
+	 * @param player to keep playing
+	 * @param fallbackUris mrls to try in order when the stream fails, after the player's own uri
+	 */
+	public StreamSupervisor(MediaStreamPlayer player, List<String> fallbackUris) {
+		mPlayer = player;
+		List<String> uris = new ArrayList<String>();
+		uris.add(player.getUri());
+		uris.addAll(fallbackUris);
+		mUris = Collections.unmodifiableList(uris);
+	}
+	/**
+	 * Creates a supervisor that reopens the player's own uri
+	 * @param player to keep playing
+	 */
+	public StreamSupervisor(MediaStreamPlayer player) {
+		this(player, Collections.<String>emptyList());
+	}
+	
+	/**
+	 * Starts watching the player
+	 */
+	public synchronized void start() {
+		if(!mStarted) {
+			mStarted = true;
+			mPlayer.addMediaPlayerEventListener(this);
+		}
+	}
+	
+	/**
+	 * Stops watching the player and cancels any pending reconnect
+	 */
+	public synchronized void stop() {
+		if(mStarted) {
+			mStarted = false;
+			mPlayer.removeMediaPlayerEventListener(this);
+		}
+		if(mPending != null) {
+			mPending.cancel(false);
+			mPending = null;
+		}
+	}
+	
+	/**
+	 * @return the mrls tried in order, starting with the player's own uri
+	 */
+	public List<String> getUris() {
+		return mUris;
+	}
+	
+	/**
+	 * @return number of times the media has been reopened
+	 */
+	public synchronized int getReconnectCount() {
+		return mReconnects;
+	}
+	
+	/**
+	 * @return number of failures since the stream last played
+	 */
+	public int getFailureCount() {
+		return mFailures;
+	}
+	
+	@Override
+	public void error(MediaPlayer mediaPlayer) {
+		NativeLogCapture capture = NativeLogCapture.getInstance();
+		if(capture != null) {
+			LOGGER.warn("Recent native log of {}:\n{}", mPlayer.getUri(), String.join("\n", capture.dump(ERROR_LOG_ENTRIES)));
+		}
+		failed("error");
+	}
+	
+	@Override
+	public void stopped(MediaPlayer mediaPlayer) {
+		failed("stopped");
+	}
+	
+	@Override
+	public void finished(MediaPlayer mediaPlayer) {
+		failed("finished");
+	}
+	
+	@Override
+	public void timeChanged(MediaPlayer mediaPlayer, long newTime) {
+		if(mFailures != 0) {
+			synchronized (this) {
+				LOGGER.info("Stream {} recovered", mPlayer.getUri());
+				mFailures = 0;
+				mUriIndex = 0;
+			}
+		}
+	}
+	
+	private synchronized void failed(String reason) {
+		if(!mStarted || mPending != null || mPlayer.isReleased() || mPlayer.isStopRequested()) {
+			return;
+		}
+		int rounds = mFailures / mUris.size();
+		long delay = Math.min(MAX_BACKOFF, (long)INITIAL_BACKOFF << Math.min(rounds, 16));
+		mUriIndex = mFailures % mUris.size();
+		mFailures++;
+		LOGGER.warn("Stream {} {}, reopening {} in {}ms", mPlayer.getUri(), reason, mUris.get(mUriIndex), delay);
+		mPending = StreamScheduler.getScheduler().schedule(mReopenTask, delay, TimeUnit.MILLISECONDS);
+	}
+	
+	private void reopen() {
+		String uri;
+		synchronized (this) {
+			mPending = null;
+			if(!mStarted || mPlayer.isReleased() || mPlayer.isStopRequested()) {
+				return;
+			}
+			uri = mUris.get(mUriIndex);
+		}
+		// Events for the old media may arrive after a new one already started
+		if(mPlayer.queryPlaying() && uri.equals(mPlayer.getUri())) {
+			return;
+		}
+		if(mPlayer.open(uri)) {
+			synchronized (this) {
+				mReconnects++;
+			}
+		}else {
+			failed("could not be opened");
+		}
+	}
+}
@@ -0,0 +1,267 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends synthetic OP25 traffic to a UDP port, raw 8kHz 16 bit little endian mono PCM in 20ms datagrams, to exercise the stream players and the switcher without a radio.
+ * Transmissions are voice-like tone bursts with nothing sent between them, like OP25 between calls.
+ * Burst and gap lengths are drawn from ranges, datagrams can be delayed by random jitter and dropped at random, and the same seed gives the same traffic.
+ * The start of every burst is logged, and written as CSV to a file if given, to line up against when the switcher reacted.
+ * @author Scott Maday
+ */
+public class TrafficGenerator implements Runnable {
+	private final static Logger LOGGER = LoggerFactory.getLogger(TrafficGenerator.class);
+	public final static int SAMPLE_RATE = 8000;
+	public final static int PACKET_SAMPLES = 160;
+	public final static int DEFAULT_PORT = 56112;
+	public final static String DEFAULT_SPURT = "1000,4000";
+	public final static String DEFAULT_GAP = "500,5000";
+	private final static long PACKET_NANOS = PACKET_SAMPLES * 1000000000L / SAMPLE_RATE;
+	private final static double AMPLITUDE = 8000d;
+	
+	private final InetSocketAddress mTarget;
+	private final Random mRandom;
+	private final ByteBuffer mPacket = ByteBuffer.allocate(PACKET_SAMPLES * 2).order(ByteOrder.LITTLE_ENDIAN);
+	
+	private int mMinSpurt = 1000;
+	private int mMaxSpurt = 4000;
+	private int mMinGap = 500;
+	private int mMaxGap = 5000;
+	private int mJitter = 0;
+	private double mLoss = 0;
+	private int mBursts = 0;
+	private PrintStream mRecord;
+	private volatile boolean mRunning = false;
+	private long mSample = 0;
+	private long mSent = 0;
+	private long mLost = 0;
+	
+	/**
+	 * Creates a generator
+	 * @param target to send to
+	 * @param seed of the random bursts, jitter and loss
+	 */
+	public TrafficGenerator(InetSocketAddress target, long seed) {
+		mTarget = target;
+		mRandom = new Random(seed);
+	}
+	
+	/**
+	 * Sets the range of burst lengths
+	 * @param min length in miliseconds
+	 * @param max length in miliseconds
+	 */
+	public void setSpurt(int min, int max) {
+		mMinSpurt = min;
+		mMaxSpurt = Math.max(min, max);
+	}
+	
+	/**
+	 * Sets the range of gaps between bursts
+	 * @param min length in miliseconds
+	 * @param max length in miliseconds
+	 */
+	public void setGap(int min, int max) {
+		mMinGap = min;
+		mMaxGap = Math.max(min, max);
+	}
+	
+	/**
+	 * Sets how late a datagram can be sent. Datagrams stay in order, so a late one holds up the next
+	 * @param jitter up to this many miliseconds
+	 */
+	public void setJitter(int jitter) {
+		mJitter = jitter;
+	}
+	
+	/**
+	 * Sets the share of datagrams dropped
+	 * @param loss from 0 to 1
+	 */
+	public void setLoss(double loss) {
+		mLoss = loss;
+	}
+	
+	/**
+	 * Sets how many bursts are sent before {@link #run()} returns
+	 * @param bursts to send, or 0 to send until {@link #stop()}
+	 */
+	public void setBursts(int bursts) {
+		mBursts = bursts;
+	}
+	
+	/**
+	 * Writes a line per burst to the given stream, as <code>burst,start,spurt,sent,lost</code> with the start being when the first datagram was sent,
+	 * in miliseconds since the epoch, or 0 if every datagram of the burst was dropped
+	 * @param record stream, or null to only log bursts
+	 */
+	public void setRecord(PrintStream record) {
+		mRecord = record;
+		if(record != null) {
+			record.println("burst,start,spurt,sent,lost");
+		}
+	}
+	
+	/**
+	 * Sends bursts until the burst count is reached or {@link #stop()} is called
+	 */
+	@Override
+	public void run() {
+		mRunning = true;
+		try(DatagramChannel channel = DatagramChannel.open()) {
+			channel.connect(mTarget);
+			LOGGER.info("Sending bursts of {}-{}ms every {}-{}ms to {} with {}ms jitter and {}% loss", mMinSpurt, mMaxSpurt, mMinGap, mMaxGap, mTarget, mJitter, mLoss * 100);
+			long next = System.nanoTime();
+			for(int burst = 1; mRunning && (mBursts == 0 || burst <= mBursts); burst++) {
+				int spurt = between(mMinSpurt, mMaxSpurt);
+				int packets = (int)(spurt * 1000000L / PACKET_NANOS);
+				long sent = mSent;
+				long lost = mLost;
+				long start = 0;
+				for(int i = 0; i < packets && mRunning; i++) {
+					next += PACKET_NANOS;
+					fill();
+					if(mRandom.nextDouble() < mLoss) {
+						mLost++;
+						continue;
+					}
+					long late = mJitter > 0 ? (long)(mRandom.nextDouble() * mJitter * 1000000L) : 0;
+					LockSupport.parkNanos(next + late - System.nanoTime());
+					mPacket.clear();
+					channel.write(mPacket);
+					mSent++;
+					if(start == 0) {
+						// Taken once the first datagram is actually out, after any pacing, jitter or dropped datagrams
+						start = System.currentTimeMillis();
+						LOGGER.info("Burst {} started, {}ms", burst, spurt);
+					}
+				}
+				if(start == 0) {
+					LOGGER.info("Burst {} was dropped entirely", burst);
+				}
+				if(mRecord != null) {
+					mRecord.println(String.format("%d,%d,%d,%d,%d", burst, start, spurt, mSent - sent, mLost - lost));
+					mRecord.flush();
+				}
+				// The gap starts once the last datagram is due rather than when it was sent, so jitter doesn't stretch it
+				next += between(mMinGap, mMaxGap) * 1000000L;
+				LockSupport.parkNanos(next - System.nanoTime());
+			}
+		} catch (IOException e) {
+			LOGGER.error("Could not send to {}: ", mTarget, e);
+		}
+		mRunning = false;
+		LOGGER.info("Sent {} datagrams, dropped {}", mSent, mLost);
+	}
+	
+	/**
+	 * Stops sending after the current datagram
+	 */
+	public void stop() {
+		mRunning = false;
+	}
+	
+	private int between(int min, int max) {
+		return min + mRandom.nextInt(max - min + 1);
+	}
+	
+	/**
+	 * Fills the next datagram with two tones under a syllable rate envelope, so energy detection sees speech-like levels
+	 */
+	private void fill() {
+		mPacket.clear();
+		for(int i = 0; i < PACKET_SAMPLES; i++, mSample++) {
+			double time = (double)mSample / SAMPLE_RATE;
+			double envelope = 0.6d + 0.4d * Math.sin(2d * Math.PI * 4d * time);
+			double tone = 0.6d * Math.sin(2d * Math.PI * 600d * time) + 0.4d * Math.sin(2d * Math.PI * 1200d * time);
+			mPacket.putShort((short)Math.round(AMPLITUDE * envelope * tone));
+		}
+	}
+	
+	public static void main(String[] args) {
+		Options options = new Options();
+		options.addOption("h",		"host", 	true,	"Host to send to. The default is 127.0.0.1");
+		options.addOption("p",		"port", 	true,	"Port to send to. The default is " + DEFAULT_PORT);
+		options.addOption("s",		"spurt", 	true,	"Burst length range in miliseconds, as <min>[,<max>]. The default is " + DEFAULT_SPURT);
+		options.addOption("g",		"gap", 		true,	"Range of gaps between bursts in miliseconds, as <min>[,<max>]. The default is " + DEFAULT_GAP);
+		options.addOption("j",		"jitter", 	true,	"Delays each datagram by up to the specified number of miliseconds. The default is 0");
+		options.addOption("l",		"loss", 	true,	"Percent of datagrams dropped. The default is 0");
+		options.addOption("n",		"bursts", 	true,	"Number of bursts to send. The default is to send until stopped");
+		options.addOption("r",		"seed", 	true,	"Seed of the random traffic, the same seed sends the same traffic. The default is 1");
+		options.addOption("o",		"record", 	true,	"Writes the start of every burst to the specified CSV file");
+		CommandLine cmd;
+		try {
+			cmd = new DefaultParser().parse(options, args);
+		} catch (ParseException e) {
+			LOGGER.error("Could not parse cli arguments: ", e);
+			new HelpFormatter().printHelp("TrafficGenerator [-param1 <arg1> ...]", options);
+			System.exit(1);
+			return;
+		}
+		PrintStream record = null;
+		try {
+			InetSocketAddress target = new InetSocketAddress(cmd.getOptionValue("host", "127.0.0.1"), Integer.parseInt(cmd.getOptionValue("port", Integer.toString(DEFAULT_PORT))));
+			TrafficGenerator generator = new TrafficGenerator(target, Long.parseLong(cmd.getOptionValue("seed", "1")));
+			int[] spurt = parseRange(cmd.getOptionValue("spurt", DEFAULT_SPURT));
+			generator.setSpurt(spurt[0], spurt[1]);
+			int[] gap = parseRange(cmd.getOptionValue("gap", DEFAULT_GAP));
+			generator.setGap(gap[0], gap[1]);
+			generator.setJitter(Integer.parseInt(cmd.getOptionValue("jitter", "0")));
+			generator.setLoss(Double.parseDouble(cmd.getOptionValue("loss", "0")) / 100d);
+			generator.setBursts(Integer.parseInt(cmd.getOptionValue("bursts", "0")));
+			if(cmd.hasOption("record")) {
+				record = new PrintStream(new FileOutputStream(cmd.getOptionValue("record")));
+				generator.setRecord(record);
+			}
+			generator.run();
+		} catch (NumberFormatException e) {
+			LOGGER.error("A parameter could not be converted to a number: ", e);
+			System.exit(1);
+		} catch (IOException e) {
+			LOGGER.error("Could not open the record file: ", e);
+			System.exit(1);
+		} finally {
+			if(record != null) {
+				record.close();
+			}
+		}
+	}
+	
+	private static int[] parseRange(String range) {
+		String[] values = range.split(",");
+		int min = Integer.parseInt(values[0]);
+		return new int[]{min, values.length > 1 ? Integer.parseInt(values[1]) : min};
+	}
+}
@@ -0,0 +1,503 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import center.scott.bluegui.stream.audio.PcmLevel;
+import center.scott.bluegui.stream.audio.PcmProcessor;
+
+/**
+ * Archives every transmission of a stream to disk.
+ * Audio is appended to a data file, and each transmission gets a fixed width entry in a memory-mapped index holding its start time, duration, byte offset and peak level.
+ * Entries are in start time order, so range lookups are a binary search over the index instead of a scan of the audio.
+ * Each transmission starts a little before it was detected, since detection always lags.
+ * Audio is staged in direct memory and written in batches to keep SD cards from wearing out.
+ * Batches are written on a thread of the archive's own, so a slow card can't hold up the {@link StreamScheduler}.
+ * @author Scott Maday
+ */
+public class TransmissionArchive implements PcmProcessor, StreamActivityObserver {
+	private final static Logger LOGGER = LoggerFactory.getLogger(TransmissionArchive.class);
+	public final static String DATA_FILE = "transmissions.dat";
+	public final static String INDEX_FILE = "transmissions.idx";
+	/**
+	 * Seconds between writes to disk
+	 */
+	public final static int FLUSH_SECONDS = 30;
+	private final static String THREAD_NAME = "TransmissionArchive";
+	/**
+	 * Audio kept before a transmission was detected, since detection always lags the start slightly
+	 */
+	private final static int PRE_ROLL_MILLIS = 250;
+	
+	private final static int MAGIC = 0x42475441;
+	private final static int VERSION = 1;
+	private final static int MAGIC_OFFSET = 0;
+	private final static int VERSION_OFFSET = 4;
+	private final static int SAMPLE_RATE_OFFSET = 8;
+	private final static int CHANNELS_OFFSET = 12;
+	private final static int ENCODING_OFFSET = 16;
+	private final static int COUNT_OFFSET = 20;
+	private final static int HEADER_SIZE = 64;
+	private final static int ENTRY_SIZE = 32;
+	private final static int ENTRY_START = 0;
+	private final static int ENTRY_DURATION = 8;
+	private final static int ENTRY_PEAK = 12;
+	private final static int ENTRY_OFFSET = 16;
+	private final static int ENTRY_LENGTH = 24;
+	/**
+	 * Entries the index grows by when it runs out of room
+	 */
+	private final static int INDEX_GROWTH = 4096;
+	
+	private final int mSampleRate;
+	private final int mChannels;
+	private final ArchiveEncoding mEncoding;
+	private final int mTailTrim;
+	private final FileChannel mDataChannel;
+	private final FileChannel mIndexChannel;
+	private final Object mStagingLock = new Object();
+	private final ScheduledThreadPoolExecutor mWriter;
+	private final short[] mPreRoll;
+	private final ScheduledFuture<?> mFlushFuture;
+	private final Runnable mFlushTask = new Runnable() {
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+	
+	private MappedByteBuffer mIndex;
+	private int mCount;
+	private int mPending;
+	private ByteBuffer mStaging;
+	private ByteBuffer mSpare;
+	private boolean mFlushRequested = false;
+	private volatile boolean mRecording = false;
+	private volatile boolean mStarting = false;
+	private volatile long mWrittenBytes;
+	private volatile int mSegmentPeak;
+	private volatile long mSegmentStartTime;
+	private volatile long mSegmentOffset;
+	// Only touched by the audio thread
+	private int mPreRollIndex = 0;
+	private int mPreRollCount = 0;
+	private long mDroppedBytes = 0;
+	private long mFilePosition;
+	private long mLostStart = 0;
+	private long mLostEnd = 0;
+	private boolean mClosed = false;
+	
+	/**
+	 * Opens or creates an archive
+	 * @param directory to keep the archive in
+	 * @param sampleRate of the stream in hertz
+	 * @param channels of the stream
+	 * @param encoding to store new audio with. An existing archive must have been written with the same format
+	 * @param inactivationThreshold of the stream in miliseconds, trimmed from the end of each transmission
+	 * @throws IOException if the archive could not be opened, or it was written with a different format
+	 */
+	public TransmissionArchive(File directory, int sampleRate, int channels, ArchiveEncoding encoding, int inactivationThreshold) throws IOException {
+		mSampleRate = sampleRate;
+		mChannels = channels;
+		mEncoding = encoding;
+		mTailTrim = (int)((long)inactivationThreshold * sampleRate * channels / 1000) * encoding.getBytesPerSample();
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create archive directory " + directory);
+		}
+		mIndexChannel = FileChannel.open(new File(directory, INDEX_FILE).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		boolean existing = mIndexChannel.size() >= HEADER_SIZE;
+		mapIndex(Math.max(mIndexChannel.size(), HEADER_SIZE + (long)INDEX_GROWTH * ENTRY_SIZE));
+		if(existing) {
+			if(mIndex.getInt(MAGIC_OFFSET) != MAGIC || mIndex.getInt(VERSION_OFFSET) != VERSION) {
+				mIndexChannel.close();
+				throw new IOException(INDEX_FILE + " is not a transmission index");
+			}
+			if(mIndex.getInt(SAMPLE_RATE_OFFSET) != sampleRate || mIndex.getInt(CHANNELS_OFFSET) != channels || mIndex.getInt(ENCODING_OFFSET) != encoding.ordinal()) {
+				mIndexChannel.close();
+				throw new IOException("Archive was written as " + mIndex.getInt(SAMPLE_RATE_OFFSET) + "Hz " + mIndex.getInt(CHANNELS_OFFSET) + "ch "
+						+ ArchiveEncoding.values()[mIndex.getInt(ENCODING_OFFSET)]);
+			}
+			mCount = mIndex.getInt(COUNT_OFFSET);
+		}else {
+			mIndex.putInt(MAGIC_OFFSET, MAGIC);
+			mIndex.putInt(VERSION_OFFSET, VERSION);
+			mIndex.putInt(SAMPLE_RATE_OFFSET, sampleRate);
+			mIndex.putInt(CHANNELS_OFFSET, channels);
+			mIndex.putInt(ENCODING_OFFSET, encoding.ordinal());
+			mIndex.putInt(COUNT_OFFSET, 0);
+		}
+		mDataChannel = FileChannel.open(new File(directory, DATA_FILE).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		mWrittenBytes = mDataChannel.size();
+		mFilePosition = mWrittenBytes;
+		mDataChannel.position(mWrittenBytes);
+		
+		int stagingSize = sampleRate * channels * encoding.getBytesPerSample() * FLUSH_SECONDS;
+		mStaging = ByteBuffer.allocateDirect(stagingSize).order(ByteOrder.LITTLE_ENDIAN);
+		mSpare = ByteBuffer.allocateDirect(stagingSize).order(ByteOrder.LITTLE_ENDIAN);
+		mPreRoll = new short[(int)((long)PRE_ROLL_MILLIS * sampleRate * channels / 1000)];
+		mWriter = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, THREAD_NAME);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		mWriter.setRemoveOnCancelPolicy(true);
+		mFlushFuture = mWriter.scheduleWithFixedDelay(mFlushTask, FLUSH_SECONDS, FLUSH_SECONDS, TimeUnit.SECONDS);
+		LOGGER.info("Archiving transmissions to {}, {} already archived", directory, mCount);
+	}
+	
+	@Override
+	public void formatChanged(int sampleRate, int channels) {
+		if(sampleRate != mSampleRate || channels != mChannels) {
+			LOGGER.warn("Archive is {}Hz {}ch but the stream is {}Hz {}ch", mSampleRate, mChannels, sampleRate, channels);
+		}
+	}
+	
+	@Override
+	public int process(short[] samples, int length) {
+		if(!mRecording) {
+			keepPreRoll(samples, length);
+			return length;
+		}
+		if(mStarting) {
+			startSegment();
+		}
+		stage(samples, 0, length);
+		return length;
+	}
+	
+	/**
+	 * Starts the segment with the audio kept from just before the transmission was detected
+	 */
+	private void startSegment() {
+		mSegmentOffset = mWrittenBytes;
+		mSegmentStartTime = System.currentTimeMillis() - (long)mPreRollCount * 1000 / (mSampleRate * mChannels);
+		mSegmentPeak = 0;
+		int start = (mPreRollIndex - mPreRollCount + mPreRoll.length) % mPreRoll.length;
+		int first = Math.min(mPreRollCount, mPreRoll.length - start);
+		stage(mPreRoll, start, first);
+		stage(mPreRoll, 0, mPreRollCount - first);
+		mPreRollCount = 0;
+		mStarting = false;
+	}
+	
+	private void keepPreRoll(short[] samples, int length) {
+		if(mPreRoll.length == 0) {
+			return;
+		}
+		int offset = Math.max(0, length - mPreRoll.length);
+		for(int i = offset; i < length; i++) {
+			mPreRoll[mPreRollIndex] = samples[i];
+			mPreRollIndex = (mPreRollIndex + 1) % mPreRoll.length;
+		}
+		mPreRollCount = Math.min(mPreRoll.length, mPreRollCount + length - offset);
+	}
+	
+	private void stage(short[] samples, int offset, int length) {
+		if(length <= 0) {
+			return;
+		}
+		int peak = (int)(PcmLevel.peak(samples, offset, length) * PcmLevel.FULL_SCALE);
+		if(peak > mSegmentPeak) {
+			mSegmentPeak = peak;
+		}
+		int bytes = length * mEncoding.getBytesPerSample();
+		boolean requestFlush = false;
+		synchronized (mStagingLock) {
+			if(mStaging.remaining() < bytes) {
+				mDroppedBytes += bytes;
+				return;
+			}
+			mEncoding.encode(samples, offset, length, mStaging);
+			if(!mFlushRequested && mStaging.position() > mStaging.capacity() / 2) {
+				mFlushRequested = true;
+				requestFlush = true;
+			}
+		}
+		mWrittenBytes += bytes;
+		if(requestFlush) {
+			try {
+				mWriter.execute(mFlushTask);
+			} catch (RejectedExecutionException e) {
+				// Closed, which flushes what's staged
+			}
+		}
+	}
+	
+	@Override
+	public void streamActivated() {
+		// The segment is started by the audio thread, which holds the pre-roll
+		mStarting = true;
+		mRecording = true;
+	}
+	
+	@Override
+	public void streamInactivated() {
+		if(!mRecording) {
+			return;
+		}
+		mRecording = false;
+		if(mStarting) {
+			// No audio arrived during the transmission
+			mStarting = false;
+			return;
+		}
+		int length = (int)Math.max(0, mWrittenBytes - mSegmentOffset - mTailTrim);
+		if(length == 0) {
+			return;
+		}
+		int duration = (int)((long)length / mEncoding.getBytesPerSample() * 1000 / (mSampleRate * mChannels));
+		synchronized (this) {
+			if(mClosed) {
+				return;
+			}
+			if(overlapsLoss(mSegmentOffset, length)) {
+				LOGGER.warn("Transmission at {} was not archived, some of its audio could not be written", mSegmentStartTime);
+				return;
+			}
+			int entry = mCount + mPending;
+			try {
+				if(HEADER_SIZE + (long)(entry + 1) * ENTRY_SIZE > mIndex.capacity()) {
+					mapIndex(mIndex.capacity() + (long)INDEX_GROWTH * ENTRY_SIZE);
+				}
+			} catch (IOException e) {
+				LOGGER.error("Could not grow the transmission index: ", e);
+				return;
+			}
+			// The entry is only counted once its audio has been written
+			int position = HEADER_SIZE + entry * ENTRY_SIZE;
+			mIndex.putLong(position + ENTRY_START, mSegmentStartTime);
+			mIndex.putInt(position + ENTRY_DURATION, duration);
+			mIndex.putInt(position + ENTRY_PEAK, mSegmentPeak);
+			mIndex.putLong(position + ENTRY_OFFSET, mSegmentOffset);
+			mIndex.putInt(position + ENTRY_LENGTH, length);
+			mPending++;
+		}
+	}
+	
+	/**
+	 * Writes staged audio and pending index entries to disk. This is done periodically on the archive's own thread
+	 */
+	public synchronized void flush() {
+		if(mClosed) {
+			return;
+		}
+		ByteBuffer batch;
+		synchronized (mStagingLock) {
+			batch = mStaging;
+			mStaging = mSpare;
+			mSpare = batch;
+			mFlushRequested = false;
+		}
+		batch.flip();
+		long start = mFilePosition;
+		mFilePosition += batch.remaining();
+		try {
+			while(batch.hasRemaining()) {
+				mDataChannel.write(batch);
+			}
+			if(mPending > 0) {
+				// The audio must be on disk before an entry pointing at it is, since a power cut is how a car unit shuts down
+				mDataChannel.force(false);
+			}
+		} catch (IOException e) {
+			LOGGER.error("Could not write to the transmission archive: ", e);
+			lost(start, mFilePosition);
+		} finally {
+			batch.clear();
+		}
+		if(mPending > 0) {
+			mCount += mPending;
+			mPending = 0;
+			mIndex.putInt(COUNT_OFFSET, mCount);
+			mIndex.force();
+		}
+	}
+	
+	/**
+	 * @return number of transmissions written to the archive
+	 */
+	public synchronized int getCount() {
+		return mCount;
+	}
+	
+	/**
+	 * @return number of bytes that could not be staged because the disk fell behind
+	 */
+	public long getDroppedBytes() {
+		synchronized (mStagingLock) {
+			return mDroppedBytes;
+		}
+	}
+	
+	/**
+	 * @return how audio is stored in this archive
+	 */
+	public ArchiveEncoding getEncoding() {
+		return mEncoding;
+	}
+	
+	/**
+	 * Gets an archived transmission
+	 * @param index of the transmission, from 0 to {@link #getCount()}
+	 * @return the {@link ArchivedTransmission}
+	 * @throws IndexOutOfBoundsException if there's no transmission at the index
+	 */
+	public synchronized ArchivedTransmission get(int index) {
+		if(index < 0 || index >= mCount) {
+			throw new IndexOutOfBoundsException("Transmission " + index + " of " + mCount);
+		}
+		int position = HEADER_SIZE + index * ENTRY_SIZE;
+		return new ArchivedTransmission(index, mIndex.getLong(position + ENTRY_START), mIndex.getInt(position + ENTRY_DURATION),
+				mIndex.getLong(position + ENTRY_OFFSET), mIndex.getInt(position + ENTRY_LENGTH), mIndex.getInt(position + ENTRY_PEAK));
+	}
+	
+	/**
+	 * Finds the first transmission that started at or after a time
+	 * @param time in miliseconds since the epoch
+	 * @return index of the transmission, or {@link #getCount()} if there's none
+	 */
+	public synchronized int search(long time) {
+		int low = 0;
+		int high = mCount;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(mIndex.getLong(HEADER_SIZE + middle * ENTRY_SIZE + ENTRY_START) < time) {
+				low = middle + 1;
+			}else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+	
+	/**
+	 * Gets the transmissions that started within a time range
+	 * @param from inclusive start in miliseconds since the epoch
+	 * @param to exclusive end in miliseconds since the epoch
+	 * @return the transmissions in start time order
+	 */
+	public synchronized List<ArchivedTransmission> range(long from, long to) {
+		List<ArchivedTransmission> transmissions = new ArrayList<ArchivedTransmission>();
+		for(int i = search(from); i < mCount; i++) {
+			ArchivedTransmission transmission = get(i);
+			if(transmission.getStartTime() >= to) {
+				break;
+			}
+			transmissions.add(transmission);
+		}
+		return transmissions;
+	}
+	
+	/**
+	 * Reads the audio of an archived transmission
+	 * @param transmission to read
+	 * @return interleaved 16 bit PCM samples
+	 * @throws IOException if the audio could not be read
+	 */
+	public short[] read(ArchivedTransmission transmission) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(transmission.getLength()).order(ByteOrder.LITTLE_ENDIAN);
+		long position = transmission.getOffset();
+		while(buffer.hasRemaining()) {
+			if(mDataChannel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Archive ends before " + transmission);
+			}
+		}
+		buffer.flip();
+		short[] samples = new short[transmission.getLength() / mEncoding.getBytesPerSample()];
+		mEncoding.decode(buffer, samples, 0, samples.length);
+		return samples;
+	}
+	
+	/**
+	 * Writes any pending audio and closes the archive
+	 */
+	public void close() {
+		mFlushFuture.cancel(false);
+		mWriter.shutdown();
+		streamInactivated();
+		flush();
+		synchronized (this) {
+			mClosed = true;
+			try {
+				mDataChannel.close();
+				mIndexChannel.close();
+			} catch (IOException e) {
+				LOGGER.error("Could not close the transmission archive: ", e);
+			}
+		}
+	}
+	
+	/**
+	 * Skips over a batch that couldn't be written so later audio still lands at the offset it was staged for, and drops the pending entries that needed it
+	 */
+	private void lost(long start, long end) {
+		mLostStart = start;
+		mLostEnd = end;
+		try {
+			mDataChannel.position(end);
+		} catch (IOException e) {
+			LOGGER.error("Could not skip the lost audio in the transmission archive: ", e);
+		}
+		int kept = 0;
+		for(int i = 0; i < mPending; i++) {
+			int position = HEADER_SIZE + (mCount + i) * ENTRY_SIZE;
+			if(overlapsLoss(mIndex.getLong(position + ENTRY_OFFSET), mIndex.getInt(position + ENTRY_LENGTH))) {
+				continue;
+			}
+			if(kept != i) {
+				int target = HEADER_SIZE + (mCount + kept) * ENTRY_SIZE;
+				for(int j = 0; j < ENTRY_SIZE; j += 8) {
+					mIndex.putLong(target + j, mIndex.getLong(position + j));
+				}
+			}
+			kept++;
+		}
+		if(kept < mPending) {
+			LOGGER.warn("Dropped {} transmissions whose audio could not be written", mPending - kept);
+		}
+		mPending = kept;
+	}
+	
+	private boolean overlapsLoss(long offset, int length) {
+		return offset < mLostEnd && offset + length > mLostStart;
+	}
+	
+	private void mapIndex(long size) throws IOException {
+		mIndex = mIndexChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		mIndex.order(ByteOrder.LITTLE_ENDIAN);
+	}
+}
@@ -0,0 +1,393 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import center.scott.bluegui.stream.audio.JitterBuffer;
+import center.scott.bluegui.stream.audio.PcmChain;
+import center.scott.bluegui.stream.audio.PcmOutput;
+import center.scott.bluegui.stream.audio.PcmProcessor;
+
+/**
+ * Pure java stream player for raw 16 bit little endian PCM sent over UDP, such as the audio OP25 sends with <code>-w</code>.
+ * Datagrams are received straight into a direct buffer, pass through an adaptive {@link JitterBuffer} and are written to a {@link PcmOutput}, so no native vlc instance is needed and nothing is allocated per packet.
+ * @author Scott Maday
+ */
+public class UdpStreamPlayer implements StreamPlayer, Runnable {
+	private final static Logger LOGGER = LoggerFactory.getLogger(UdpStreamPlayer.class);
+	public final static int MAX_DATAGRAM_SIZE = 65536;
+	private final static int RECEIVE_BUFFER_SIZE = 256 * 1024;
+	/**
+	 * OP25 sends two byte flag datagrams between transmissions, anything this small isn't audio
+	 */
+	private final static int MIN_AUDIO_DATAGRAM_SIZE = 4;
+	private final static int THREAD_JOIN_TIMEOUT = 1000;
+	private final static int PLAYOUT_FRAME_MILLIS = 20;
+	private final static int OUTPUT_BUFFER_MILLIS = 40;
+	
+	private final String mUri;
+	private final InetSocketAddress mAddress;
+	private final int mChannels;
+	private final StreamActivityMonitor mActivityMonitor = new StreamActivityMonitor();
+	private final PcmChain mChain;
+	private final PcmOutput mOutput;
+	private final JitterBuffer mJitterBuffer;
+	private final short[] mPlayoutSamples;
+	private final ByteBuffer mBuffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	private final ShortBuffer mShortBuffer = mBuffer.asShortBuffer();
+	private final short[] mSamples = new short[MAX_DATAGRAM_SIZE / 2];
+	
+	private DatagramChannel mChannel;
+	private Thread mThread;
+	private Thread mPlayoutThread;
+	private volatile boolean mReleased = false;
+	private boolean mMuted = false;
+	private int mVolume = 50;
+	private ActivityDetection mActivityDetection = ActivityDetection.TIME_CHANGED;
+	private PcmActivityDetector mActivityDetector;
+	
+	/**
+	 * Creates a new UDP stream with the format from a predefined {@link StreamConfiguration}
+	 * @param uri to listen on, in vlc's form <code>udp://@[address]:port</code>
+	 * @param configuration a {@link StreamConfiguration} 
+	 * @throws IllegalArgumentException if the uri has no port
+	 */
+	public UdpStreamPlayer(String uri, StreamConfiguration configuration) {
+		this(uri, configuration.getSampleRate(), configuration.getChannels());
+	}
+	/**
+	 * Creates a new UDP stream
+	 * @param uri to listen on, in vlc's form <code>udp://@[address]:port</code>
+	 * @param sampleRate of the incoming PCM in hertz
+	 * @param channels of the incoming PCM
+	 * @throws IllegalArgumentException if the uri has no port
+	 */
+	public UdpStreamPlayer(String uri, int sampleRate, int channels) {
+		mUri = uri;
+		mAddress = parseAddress(uri);
+		mChannels = channels;
+		mChain = new PcmChain(sampleRate, channels);
+		mOutput = new PcmOutput(sampleRate, channels, OUTPUT_BUFFER_MILLIS);
+		mJitterBuffer = new JitterBuffer(sampleRate, channels);
+		mPlayoutSamples = new short[sampleRate * channels * PLAYOUT_FRAME_MILLIS / 1000];
+	}
+	
+	/**
+	 * Parses the local address to listen on from a vlc style udp mrl
+	 * @param uri such as <code>udp://@:56112</code> or <code>udp://@127.0.0.1:56112</code>
+	 * @return address to bind to
+	 * @throws IllegalArgumentException if the uri has no port
+	 */
+	public static InetSocketAddress parseAddress(String uri) {
+		String authority = uri;
+		int schemeEnd = authority.indexOf("://");
+		if(schemeEnd >= 0) {
+			authority = authority.substring(schemeEnd + 3);
+		}
+		if(authority.startsWith("@")) {
+			authority = authority.substring(1);
+		}
+		try {
+			URI parsed = new URI("udp://" + (authority.startsWith(":") ? "0.0.0.0" + authority : authority));
+			if(parsed.getPort() < 0) {
+				throw new IllegalArgumentException("No port in stream uri " + uri);
+			}
+			if(parsed.getHost() == null) {
+				return new InetSocketAddress(parsed.getPort());
+			}
+			return new InetSocketAddress(parsed.getHost(), parsed.getPort());
+		} catch (URISyntaxException e) {
+			throw new IllegalArgumentException("Could not parse stream uri " + uri, e);
+		}
+	}
+	
+	/**
+	 * Binds to the address and begins receiving and outputting the stream on a separate thread
+	 */
+	@Override
+	public synchronized boolean play() {
+		if(isReleased() || isPlaying()) {
+			return false;
+		}
+		try {
+			mChannel = DatagramChannel.open();
+			mChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+			mChannel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_SIZE);
+			mChannel.bind(mAddress);
+		} catch (IOException e) {
+			LOGGER.error("Could not listen on {}: ", mUri, e);
+			closeChannel();
+			return false;
+		}
+		mJitterBuffer.reset();
+		mThread = new Thread(this, "UdpStreamPlayer " + mAddress.getPort());
+		mThread.setDaemon(true);
+		mThread.start();
+		mPlayoutThread = new Thread(new PlayoutTask(), "UdpStreamPlayer playout " + mAddress.getPort());
+		mPlayoutThread.setDaemon(true);
+		mPlayoutThread.start();
+		return true;
+	}
+	
+	@Override
+	public boolean join() {
+		try {
+			Thread.currentThread().join();
+			return true;
+		} catch (InterruptedException e) {
+			LOGGER.error("Could not join current thread to UdpStreamPlayer thread: ", e);
+		}
+		return false;
+	}
+	
+	@Override
+	public void stop() {
+		Thread thread;
+		Thread playoutThread;
+		synchronized (this) {
+			closeChannel();
+			mJitterBuffer.close();
+			thread = mThread;
+			playoutThread = mPlayoutThread;
+			mThread = null;
+			mPlayoutThread = null;
+		}
+		joinThread(thread);
+		joinThread(playoutThread);
+		mOutput.flush();
+		LOGGER.debug("Jitter buffer for {}: {}", mUri, mJitterBuffer);
+	}
+	
+	@Override
+	public synchronized boolean isPlaying() {
+		if(isReleased()) {
+			return false;
+		}
+		return mChannel != null && mChannel.isOpen() && mThread != null && mThread.isAlive();
+	}
+	
+	@Override
+	public void setMute(boolean mute) {
+		mMuted = mute;
+		mOutput.setMute(mute);
+	}
+	@Override
+	public boolean isMute() {
+		return mMuted;
+	}
+	
+	@Override
+	public boolean setVolume(int volume) {
+		mVolume = volume;
+		if(isReleased()) {
+			return false;
+		}
+		mOutput.setVolume(volume / 100f);
+		return true;
+	}
+	@Override
+	public int getVolume() {
+		if(isReleased()) {
+			return -1;
+		}
+		return mVolume;
+	}
+	
+	@Override
+	public void dispose() {
+		mReleased = true;
+		mActivityMonitor.cancel();
+		stop();
+		mOutput.close();
+	}
+	
+	@Override
+	public boolean isReleased() {
+		return mReleased;
+	}
+	
+	/**
+	 * Sets how this stream decides that it's active. {@link ActivityDetection#TIME_CHANGED} counts every audio datagram as activity
+	 */
+	@Override
+	public synchronized boolean setActivityDetection(ActivityDetection activityDetection) {
+		if(isReleased() || isPlaying()) {
+			return false;
+		}
+		mActivityDetection = activityDetection;
+		if(activityDetection == ActivityDetection.ENERGY && mActivityDetector == null) {
+			mActivityDetector = new PcmActivityDetector(mActivityMonitor);
+			mChain.addProcessor(mActivityDetector);
+		}
+		return true;
+	}
+	@Override
+	public ActivityDetection getActivityDetection() {
+		return mActivityDetection;
+	}
+	
+	@Override
+	public boolean setActivityThresholds(double rmsDbfs, double peakDbfs) {
+		if(mActivityDetector == null) {
+			return false;
+		}
+		mActivityDetector.setThresholds(rmsDbfs, peakDbfs);
+		return true;
+	}
+	
+	@Override
+	public void setStreamInactivationThreshold(int streamInactivationThreshold) {
+		mActivityMonitor.setInactivationThreshold(streamInactivationThreshold);
+	}
+	
+	@Override
+	public StreamActivityMonitor getActivityMonitor() {
+		return mActivityMonitor;
+	}
+	
+	/**
+	 * Gets the jitter buffer between receiving and playing the stream, for its statistics
+	 * @return the {@link JitterBuffer}
+	 */
+	public JitterBuffer getJitterBuffer() {
+		return mJitterBuffer;
+	}
+	
+	/**
+	 * Gets the output the stream is played on
+	 * @return the {@link PcmOutput}
+	 */
+	public PcmOutput getOutput() {
+		return mOutput;
+	}
+	
+	@Override
+	public boolean addProcessor(PcmProcessor processor) {
+		if(isReleased()) {
+			return false;
+		}
+		mChain.addProcessor(processor);
+		return true;
+	}
+	@Override
+	public boolean removeProcessor(PcmProcessor processor) {
+		return mChain.removeProcessor(processor);
+	}
+	
+	@Override
+	public boolean setOutputRate(int outputRate) {
+		if(isReleased()) {
+			return false;
+		}
+		mOutput.setOutputRate(outputRate);
+		return true;
+	}
+	
+	@Override
+	public void addObserver(StreamActivityObserver observer) {
+		mActivityMonitor.addObserver(observer);
+	}
+	@Override
+	public boolean removeObserver(StreamActivityObserver observer) {
+		return mActivityMonitor.removeObserver(observer);
+	}
+	
+	/**
+	 * Receives datagrams until the channel is closed by {@link #stop()}
+	 */
+	@Override
+	public void run() {
+		DatagramChannel channel;
+		synchronized (this) {
+			channel = mChannel;
+		}
+		LOGGER.info("Listening for raw audio on {}", mAddress);
+		int frameBytes = 2 * mChannels;
+		try {
+			while(channel.isOpen()) {
+				mBuffer.clear();
+				channel.receive(mBuffer);
+				int bytes = mBuffer.position();
+				if(bytes < MIN_AUDIO_DATAGRAM_SIZE) {
+					continue;
+				}
+				int length = (bytes / frameBytes) * mChannels;
+				mShortBuffer.clear();
+				mShortBuffer.get(mSamples, 0, length);
+				if(mActivityDetection == ActivityDetection.TIME_CHANGED) {
+					mActivityMonitor.signal();
+				}
+				length = mChain.process(mSamples, length);
+				mJitterBuffer.put(mSamples, length);
+			}
+		} catch (ClosedChannelException e) {
+			// Closed by stop()
+		} catch (IOException e) {
+			LOGGER.error("Error receiving from {}: ", mUri, e);
+		}
+		LOGGER.debug("Stopped listening on {}", mAddress);
+	}
+	
+	private void joinThread(Thread thread) {
+		if(thread != null && thread != Thread.currentThread()) {
+			try {
+				thread.join(THREAD_JOIN_TIMEOUT);
+			} catch (InterruptedException e) {
+				LOGGER.error("Interrupted waiting for {} to stop: ", thread.getName(), e);
+			}
+		}
+	}
+	
+	private void closeChannel() {
+		if(mChannel != null) {
+			try {
+				mChannel.close();
+			} catch (IOException e) {
+				LOGGER.error("Could not close channel for {}: ", mUri, e);
+			}
+			mChannel = null;
+		}
+	}
+	
+	
+	private class PlayoutTask implements Runnable {
+		@Override
+		public void run() {
+			try {
+				int length;
+				while((length = mJitterBuffer.take(mPlayoutSamples, mPlayoutSamples.length)) >= 0) {
+					mOutput.write(mPlayoutSamples, length);
+				}
+			} catch (InterruptedException e) {
+				LOGGER.error("UdpStreamPlayer playout interrupted: ", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream.audio;
+
+/**
+ * Applies a gain that moves to a target in a straight line over a set time. Every sample frame gets its own step, so fades don't click or zipper.
+ * Ramps are requested from any thread and picked up on the next block. The gain is fixed point, so processing is a multiply and shift per sample and does not allocate.
+ * @author Scott Maday
+ */
+public class GainRamp implements PcmProcessor {
+	private final static int GAIN_SHIFT = 16;
+	private final static int UNITY = 1 << GAIN_SHIFT;
+	
+	private volatile float mTarget;
+	private volatile int mRampMillis;
+	private volatile int mRequests;
+	private volatile int mSampleRate = 1;
+	private volatile int mChannels = 1;
+	
+	// Only touched by the audio thread
+	private int mHandled;
+	private int mGain;
+	private int mEnd;
+	private long mRampGain;
+	private long mStep;
+	private int mRemaining;
+	
+	/**
+	 * Creates a ramp at unity gain
+	 */
+	public GainRamp() {
+		this(1f);
+	}
+	/**
+	 * Creates a ramp
+	 * @param gain to start at, where 1 is unity gain
+	 */
+	public GainRamp(float gain) {
+		mTarget = gain;
+		mGain = toFixed(gain);
+		mEnd = mGain;
+	}
+	
+	/**
+	 * Starts moving the gain from wherever it is now to a new target
+	 * @param gain target where 1 is unity gain
+	 * @param rampMillis how long the ramp takes in miliseconds. 0 jumps straight to the target on the next block
+	 */
+	public synchronized void rampTo(float gain, int rampMillis) {
+		mTarget = gain;
+		mRampMillis = rampMillis;
+		mRequests++;
+	}
+	
+	/**
+	 * @return gain the ramp is moving to, or is at, where 1 is unity gain
+	 */
+	public float getTarget() {
+		return mTarget;
+	}
+	
+	@Override
+	public void formatChanged(int sampleRate, int channels) {
+		mSampleRate = sampleRate;
+		mChannels = channels;
+	}
+	
+	@Override
+	public int process(short[] samples, int length) {
+		int channels = mChannels;
+		int requests = mRequests;
+		if(requests != mHandled) {
+			mHandled = requests;
+			mEnd = toFixed(mTarget);
+			mRemaining = Math.max(1, (int)((long)mSampleRate * mRampMillis / 1000));
+			// The ramp runs with 16 more bits so rounding doesn't add up over long ramps
+			mRampGain = (long)mGain << 16;
+			mStep = (((long)mEnd << 16) - mRampGain) / mRemaining;
+		}
+		if(mRemaining == 0) {
+			if(mGain == UNITY) {
+				return length;
+			}
+			int gain = mGain;
+			for(int i = 0; i < length; i++) {
+				samples[i] = clamp((samples[i] * (long)gain) >> GAIN_SHIFT);
+			}
+			return length;
+		}
+		for(int i = 0; i < length; i += channels) {
+			if(mRemaining > 0) {
+				mRemaining--;
+				mRampGain += mStep;
+				mGain = mRemaining == 0 ? mEnd : (int)(mRampGain >> 16);
+			}
+			int gain = mGain;
+			int end = Math.min(length, i + channels);
+			for(int j = i; j < end; j++) {
+				samples[j] = clamp((samples[j] * (long)gain) >> GAIN_SHIFT);
+			}
+		}
+		return length;
+	}
+	
+	private static short clamp(long sample) {
+		if(sample > Short.MAX_VALUE) {
+			return Short.MAX_VALUE;
+		}else if(sample < Short.MIN_VALUE) {
+			return Short.MIN_VALUE;
+		}
+		return (short)sample;
+	}
+	
+	private static int toFixed(float gain) {
+		return Math.round(Math.max(0f, gain) * UNITY);
+	}
+}
@@ -0,0 +1,305 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream.audio;
+
+/**
+ * Adaptive playout buffer for PCM arriving in packets.
+ * The inter-arrival jitter is estimated like RFC 3550 and the playout delay follows it, growing on underruns and shrinking again after clean transmissions.
+ * The delay is applied at the start of each transmission, and excess depth is trimmed while playing, so latency stays as low as the network allows.
+ * Samples are kept in one preallocated ring.
+ * @author Scott Maday
+ */
+public class JitterBuffer {
+	public final static int DEFAULT_MIN_DELAY_MILLIS = 20;
+	public final static int DEFAULT_MAX_DELAY_MILLIS = 500;
+	public final static int DEFAULT_CAPACITY_MILLIS = 2000;
+	/**
+	 * Running out of samples longer than this after the last packet is the end of a transmission rather than an underrun
+	 */
+	public final static int TRANSMISSION_END_MILLIS = 250;
+	private final static int JITTER_MULTIPLIER = 4;
+	private final static int JITTER_GAIN = 16;
+	private final static int UNDERRUN_STEP_MILLIS = 20;
+	
+	private final int mSamplesPerSecond;
+	private final short[] mRing;
+	private final int mMinDelay;
+	private final int mMaxDelay;
+	
+	private int mReadIndex = 0;
+	private int mDepth = 0;
+	private int mTargetDelay;
+	private int mUnderrunFloor = 0;
+	private boolean mPlaying = false;
+	private int mConcealed = 0;
+	private boolean mClosed = false;
+	private long mLastArrival;
+	private long mLastDuration;
+	private double mJitter = 0;
+	private int mSpurtUnderruns = 0;
+	
+	private long mPackets = 0;
+	private long mUnderruns = 0;
+	private long mLatePackets = 0;
+	private long mOverflows = 0;
+	private long mTrimmed = 0;
+	
+	/**
+	 * Creates a jitter buffer with default limits
+	 * @param sampleRate in hertz
+	 * @param channels interleaved in each block
+	 */
+	public JitterBuffer(int sampleRate, int channels) {
+		this(sampleRate, channels, DEFAULT_MIN_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS, DEFAULT_CAPACITY_MILLIS);
+	}
+	/**
+	 * Creates a jitter buffer
+	 * @param sampleRate in hertz
+	 * @param channels interleaved in each block
+	 * @param minDelayMillis lowest playout delay
+	 * @param maxDelayMillis highest playout delay
+	 * @param capacityMillis amount of audio the buffer holds before the oldest samples are dropped
+	 */
+	public JitterBuffer(int sampleRate, int channels, int minDelayMillis, int maxDelayMillis, int capacityMillis) {
+		mSamplesPerSecond = sampleRate * channels;
+		mRing = new short[toSamples(capacityMillis)];
+		mMinDelay = toSamples(minDelayMillis);
+		mMaxDelay = Math.min(toSamples(maxDelayMillis), mRing.length);
+		mTargetDelay = mMinDelay;
+	}
+	
+	/**
+	 * Adds a packet of samples as it arrives
+	 * @param samples interleaved samples
+	 * @param length number of samples, counting every channel
+	 */
+	public synchronized void put(short[] samples, int length) {
+		if(mClosed || length <= 0) {
+			return;
+		}
+		long now = System.nanoTime();
+		if(mPackets > 0) {
+			long deviation = Math.abs(now - mLastArrival - mLastDuration);
+			if(deviation < TRANSMISSION_END_MILLIS * 1000000L) {
+				mJitter += (deviation - mJitter) / JITTER_GAIN;
+			}
+		}
+		mLastArrival = now;
+		mLastDuration = length * 1000000000L / mSamplesPerSecond;
+		mPackets++;
+		if(mConcealed > 0) {
+			// Audio resumed after silence was played, so those blocks were underruns rather than the end of the transmission
+			mLatePackets++;
+			mUnderruns += mConcealed;
+			mSpurtUnderruns += mConcealed;
+			mConcealed = 0;
+			mUnderrunFloor = Math.min(mMaxDelay, mUnderrunFloor + toSamples(UNDERRUN_STEP_MILLIS));
+		}
+		
+		int offset = 0;
+		if(length > mRing.length) {
+			offset = length - mRing.length;
+			length = mRing.length;
+		}
+		int overflow = mDepth + length - mRing.length;
+		if(overflow > 0) {
+			skip(overflow);
+			mOverflows++;
+		}
+		int writeIndex = (mReadIndex + mDepth) % mRing.length;
+		int first = Math.min(length, mRing.length - writeIndex);
+		System.arraycopy(samples, offset, mRing, writeIndex, first);
+		System.arraycopy(samples, offset + first, mRing, 0, length - first);
+		mDepth += length;
+		
+		updateTargetDelay();
+		if(!mPlaying && mDepth >= mTargetDelay) {
+			mPlaying = true;
+			mSpurtUnderruns = 0;
+		}
+		notifyAll();
+	}
+	
+	/**
+	 * Takes the next block for playout, waiting while the buffer is filling to the playout delay.
+	 * A transmission that ends before reaching the playout delay is played once no packet has arrived for {@link #TRANSMISSION_END_MILLIS}.
+	 * @param out array to copy the block into
+	 * @param length number of samples wanted, counting every channel
+	 * @return number of samples copied, or -1 once {@link #close()} has been called
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public synchronized int take(short[] out, int length) throws InterruptedException {
+		while(true) {
+			while(!mPlaying && !mClosed) {
+				if(mDepth == 0) {
+					wait();
+					continue;
+				}
+				long quiet = System.nanoTime() - mLastArrival;
+				if(quiet >= TRANSMISSION_END_MILLIS * 1000000L) {
+					// A transmission shorter than the playout delay ended, so play it now rather than in front of the next one
+					mPlaying = true;
+					mSpurtUnderruns = 0;
+				}else {
+					wait(Math.max(1, (TRANSMISSION_END_MILLIS * 1000000L - quiet) / 1000000L));
+				}
+			}
+			if(mClosed) {
+				return -1;
+			}
+			if(mDepth > 2 * mTargetDelay + length) {
+				int excess = mDepth - mTargetDelay;
+				skip(excess);
+				mTrimmed += excess;
+			}
+			if(mDepth >= length) {
+				copyOut(out, 0, length);
+				return length;
+			}
+			if(System.nanoTime() - mLastArrival > TRANSMISSION_END_MILLIS * 1000000L) {
+				// The transmission is over, play out what's left and wait for the next one
+				int remaining = mDepth;
+				copyOut(out, 0, remaining);
+				endTransmission();
+				if(remaining > 0) {
+					return remaining;
+				}
+				continue;
+			}
+			// Ran dry, conceal with silence until audio resumes or the transmission is over
+			int available = mDepth;
+			copyOut(out, 0, available);
+			for(int i = available; i < length; i++) {
+				out[i] = 0;
+			}
+			mConcealed++;
+			return length;
+		}
+	}
+	
+	/**
+	 * Discards buffered samples and allows {@link #take(short[], int)} again after {@link #close()}
+	 */
+	public synchronized void reset() {
+		mReadIndex = 0;
+		mDepth = 0;
+		mPlaying = false;
+		mConcealed = 0;
+		mClosed = false;
+		notifyAll();
+	}
+	
+	/**
+	 * Wakes and ends any {@link #take(short[], int)}
+	 */
+	public synchronized void close() {
+		mClosed = true;
+		notifyAll();
+	}
+	
+	/**
+	 * @return number of packets received
+	 */
+	public synchronized long getPackets() {
+		return mPackets;
+	}
+	/**
+	 * @return number of blocks of silence played because the buffer ran dry inside a transmission
+	 */
+	public synchronized long getUnderruns() {
+		return mUnderruns;
+	}
+	/**
+	 * @return number of packets that arrived after their playout time had been concealed
+	 */
+	public synchronized long getLatePackets() {
+		return mLatePackets;
+	}
+	/**
+	 * @return number of times the oldest samples were dropped because the buffer was full
+	 */
+	public synchronized long getOverflows() {
+		return mOverflows;
+	}
+	/**
+	 * @return number of samples dropped to bring the depth back down to the playout delay
+	 */
+	public synchronized long getTrimmed() {
+		return mTrimmed;
+	}
+	/**
+	 * @return current depth in miliseconds
+	 */
+	public synchronized int getDepthMillis() {
+		return toMillis(mDepth);
+	}
+	/**
+	 * @return current playout delay in miliseconds
+	 */
+	public synchronized int getTargetDelayMillis() {
+		return toMillis(mTargetDelay);
+	}
+	/**
+	 * @return estimated inter-arrival jitter in miliseconds
+	 */
+	public synchronized double getJitterMillis() {
+		return mJitter / 1000000d;
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return String.format("depth %dms, delay %dms, jitter %.1fms, packets %d, underruns %d, late %d, overflows %d, trimmed %d",
+				getDepthMillis(), getTargetDelayMillis(), getJitterMillis(), mPackets, mUnderruns, mLatePackets, mOverflows, mTrimmed);
+	}
+	
+	private void endTransmission() {
+		mPlaying = false;
+		mConcealed = 0;
+		if(mSpurtUnderruns == 0) {
+			// A clean transmission lets the delay come back down
+			mUnderrunFloor = Math.max(0, mUnderrunFloor - toSamples(UNDERRUN_STEP_MILLIS));
+			updateTargetDelay();
+		}
+	}
+	
+	private void updateTargetDelay() {
+		int jitterDelay = (int)(mJitter * JITTER_MULTIPLIER * mSamplesPerSecond / 1000000000L);
+		int frame = (int)(mLastDuration * mSamplesPerSecond / 1000000000L);
+		int target = Math.max(frame + jitterDelay, mUnderrunFloor);
+		mTargetDelay = Math.max(mMinDelay, Math.min(mMaxDelay, target));
+	}
+	
+	private void copyOut(short[] out, int offset, int length) {
+		int first = Math.min(length, mRing.length - mReadIndex);
+		System.arraycopy(mRing, mReadIndex, out, offset, first);
+		System.arraycopy(mRing, 0, out, offset + first, length - first);
+		skip(length);
+	}
+	
+	private void skip(int length) {
+		mReadIndex = (mReadIndex + length) % mRing.length;
+		mDepth -= length;
+	}
+	
+	private int toSamples(int millis) {
+		return (int)((long)millis * mSamplesPerSecond / 1000);
+	}
+	
+	private int toMillis(int samples) {
+		return (int)((long)samples * 1000 / mSamplesPerSecond);
+	}
+}
@@ -0,0 +1,145 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream.audio;
+
+import java.util.Random;
+
+/**
+ * Measures how many samples per second each of the {@link PcmKernels} get through, for the scalar kernels and the vector kernels when they're available.
+ * Run with <code>--add-modules jdk.incubator.vector</code> to include the vector kernels. The block size in samples can be given as the first argument.
+ * @author Scott Maday
+ */
+public class KernelBenchmark {
+	public final static int DEFAULT_BLOCK = 2048;
+	private final static long WARMUP_NANOS = 1000000000L;
+	private final static long RUN_NANOS = 2000000000L;
+	
+	private final int mBlock;
+	private final short[] mSamples;
+	private final short[] mOutput;
+	private final float[] mFloats;
+	/**
+	 * Results go here so the JIT can't drop the work
+	 */
+	private double mSink;
+	
+	private KernelBenchmark(int block) {
+		mBlock = block;
+		mSamples = new short[block];
+		mOutput = new short[block];
+		mFloats = new float[block];
+		Random random = new Random(1);
+		for(int i = 0; i < block; i++) {
+			mSamples[i] = (short)(random.nextGaussian() * 8000);
+		}
+	}
+	
+	public static void main(String[] args) {
+		int block = DEFAULT_BLOCK;
+		if(args.length > 0) {
+			block = Integer.parseInt(args[0]);
+		}
+		KernelBenchmark benchmark = new KernelBenchmark(block);
+		System.out.println(String.format("%s %s on %s, %d samples per block", System.getProperty("java.vm.name"), System.getProperty("java.version"), System.getProperty("os.arch"), block));
+		benchmark.run(PcmKernels.getScalar());
+		PcmKernels vector = PcmKernels.getVector();
+		if(vector == null) {
+			System.out.println("Vector kernels are not available");
+		}else {
+			benchmark.verify(vector);
+			benchmark.run(vector);
+		}
+	}
+	
+	private void run(PcmKernels kernels) {
+		System.out.println(kernels.getName() + ":");
+		for(int kernel = 0; kernel < 4; kernel++) {
+			measure(kernels, kernel, WARMUP_NANOS);
+			double rate = measure(kernels, kernel, RUN_NANOS);
+			System.out.println(String.format("  %-14s %10.1f Msamples/s", getKernelName(kernel), rate / 1000000d));
+		}
+	}
+	
+	private double measure(PcmKernels kernels, int kernel, long nanos) {
+		long blocks = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			for(int i = 0; i < 64; i++) {
+				runKernel(kernels, kernel);
+			}
+			blocks += 64;
+			elapsed = System.nanoTime() - start;
+		} while(elapsed < nanos);
+		return blocks * mBlock * 1000000000d / elapsed;
+	}
+	
+	private void runKernel(PcmKernels kernels, int kernel) {
+		switch(kernel) {
+			case 0:
+				mSink += kernels.sumOfSquares(mSamples, 0, mBlock);
+				break;
+			case 1:
+				mSink += kernels.peak(mSamples, 0, mBlock);
+				break;
+			case 2:
+				kernels.toFloat(mSamples, mFloats, mBlock, 1f / 32768f);
+				mSink += mFloats[0];
+				break;
+			default:
+				kernels.toShort(mFloats, mOutput, mBlock, 32768f);
+				mSink += mOutput[0];
+		}
+	}
+	
+	private String getKernelName(int kernel) {
+		switch(kernel) {
+			case 0:
+				return "sumOfSquares";
+			case 1:
+				return "peak";
+			case 2:
+				return "toFloat";
+			default:
+				return "toShort";
+		}
+	}
+	
+	private void verify(PcmKernels kernels) {
+		PcmKernels scalar = PcmKernels.getScalar();
+		double expected = scalar.sumOfSquares(mSamples, 0, mBlock);
+		double actual = kernels.sumOfSquares(mSamples, 0, mBlock);
+		if(Math.abs(actual - expected) > expected * 1e-5) {
+			System.out.println("sumOfSquares differs: " + actual + " instead of " + expected);
+		}
+		if(kernels.peak(mSamples, 0, mBlock) != scalar.peak(mSamples, 0, mBlock)) {
+			System.out.println("peak differs");
+		}
+		float[] floats = new float[mBlock];
+		short[] shorts = new short[mBlock];
+		scalar.toFloat(mSamples, floats, mBlock, 1.37f);
+		kernels.toFloat(mSamples, mFloats, mBlock, 1.37f);
+		scalar.toShort(floats, shorts, mBlock, 1f);
+		kernels.toShort(mFloats, mOutput, mBlock, 1f);
+		for(int i = 0; i < mBlock; i++) {
+			if(floats[i] != mFloats[i] || shorts[i] != mOutput[i]) {
+				System.out.println("Conversion differs at " + i);
+				break;
+			}
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream.audio;
+
+/**
+ * Ordered chain of {@link PcmProcessor}s. Processors can be added and removed from any thread while the audio thread keeps processing without locking or allocating.
+ * @author Scott Maday
+ */
+public class PcmChain implements PcmProcessor {
+	private final static PcmProcessor[] EMPTY = new PcmProcessor[0];
+	
+	private volatile PcmProcessor[] mProcessors = EMPTY;
+	private int mSampleRate;
+	private int mChannels;
+	
+	/**
+	 * Creates a chain for the given format
+	 * @param sampleRate in hertz
+	 * @param channels interleaved in each block
+	 */
+	public PcmChain(int sampleRate, int channels) {
+		mSampleRate = sampleRate;
+		mChannels = channels;
+	}
+	
+	/**
+	 * Adds a processor to the end of the chain
+	 * @param processor to add
+	 */
+	public synchronized void addProcessor(PcmProcessor processor) {
+		processor.formatChanged(mSampleRate, mChannels);
+		PcmProcessor[] processors = new PcmProcessor[mProcessors.length + 1];
+		System.arraycopy(mProcessors, 0, processors, 0, mProcessors.length);
+		processors[mProcessors.length] = processor;
+		mProcessors = processors;
+	}
+	
+	/**
+	 * Removes a processor from the chain
+	 * @param processor to remove
+	 * @return <code>true</code> if the processor was removed
+	 */
+	public synchronized boolean removeProcessor(PcmProcessor processor) {
+		for(int i = 0; i < mProcessors.length; i++) {
+			if(mProcessors[i] == processor) {
+				PcmProcessor[] processors = new PcmProcessor[mProcessors.length - 1];
+				System.arraycopy(mProcessors, 0, processors, 0, i);
+				System.arraycopy(mProcessors, i + 1, processors, i, mProcessors.length - i - 1);
+				mProcessors = processors;
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return <code>true</code> if there are no processors in the chain
+	 */
+	public boolean isEmpty() {
+		return mProcessors.length == 0;
+	}
+	
+	/**
+	 * @return sample rate in hertz
+	 */
+	public int getSampleRate() {
+		return mSampleRate;
+	}
+	/**
+	 * @return number of interleaved channels
+	 */
+	public int getChannels() {
+		return mChannels;
+	}
+	
+	@Override
+	public synchronized void formatChanged(int sampleRate, int channels) {
+		mSampleRate = sampleRate;
+		mChannels = channels;
+		for(PcmProcessor processor : mProcessors) {
+			processor.formatChanged(sampleRate, channels);
+		}
+	}
+	
+	@Override
+	public int process(short[] samples, int length) {
+		PcmProcessor[] processors = mProcessors;
+		for(int i = 0; i < processors.length && length > 0; i++) {
+			length = processors[i].process(samples, length);
+		}
+		return length;
+	}
+}
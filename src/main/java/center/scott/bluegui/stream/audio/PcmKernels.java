@@ -0,0 +1,122 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream.audio;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The per-sample loops behind stream audio metering and processing.
+ * A JDK Vector API implementation is loaded when it was built and the <code>jdk.incubator.vector</code> module is present, otherwise a scalar implementation is used.
+ * Setting the <code>bluegui.vector</code> system property to <code>false</code> forces the scalar implementation.
+ * @author Scott Maday
+ */
+public abstract class PcmKernels {
+	private final static Logger LOGGER = LoggerFactory.getLogger(PcmKernels.class);
+	public final static String VECTOR_PROPERTY = "bluegui.vector";
+	private final static String VECTOR_API_CLASS = "jdk.incubator.vector.FloatVector";
+	private final static String VECTOR_CLASS = "center.scott.bluegui.stream.audio.VectorPcmKernels";
+	private final static PcmKernels SCALAR = new ScalarPcmKernels();
+	
+	private static PcmKernels sVector;
+	private static boolean sVectorLoaded;
+	private static PcmKernels sInstance;
+	
+	/**
+	 * Gets the kernels audio processing uses, which are the vector kernels if they're available
+	 * @return the {@link PcmKernels}
+	 */
+	public static synchronized PcmKernels get() {
+		if(sInstance == null) {
+			PcmKernels vector = Boolean.parseBoolean(System.getProperty(VECTOR_PROPERTY, "true")) ? getVector() : null;
+			sInstance = vector != null ? vector : SCALAR;
+			LOGGER.info("Using {} audio kernels", sInstance.getName());
+		}
+		return sInstance;
+	}
+	
+	/**
+	 * @return the plain java {@link PcmKernels}, which are always available
+	 */
+	public static PcmKernels getScalar() {
+		return SCALAR;
+	}
+	
+	/**
+	 * Loads the vector kernels. They are only there when built with JDK 16 or newer, and only run when started with <code>--add-modules jdk.incubator.vector</code>
+	 * @return the vector {@link PcmKernels}, or null if they're not available
+	 */
+	public static synchronized PcmKernels getVector() {
+		if(!sVectorLoaded) {
+			sVectorLoaded = true;
+			try {
+				// Only found when the module was added, and never before Java 16
+				Class.forName(VECTOR_API_CLASS);
+			} catch (ClassNotFoundException | LinkageError e) {
+				LOGGER.debug("The Vector API is not loaded");
+				return null;
+			}
+			try {
+				sVector = (PcmKernels)Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				LOGGER.warn("Vector audio kernels are not available: {}", e.toString());
+			}
+		}
+		return sVector;
+	}
+	
+	/**
+	 * @return short name of the implementation
+	 */
+	public abstract String getName();
+	
+	/**
+	 * Sums the squares of a block of samples
+	 * @param samples to sum
+	 * @param offset of the first sample
+	 * @param length number of samples
+	 * @return sum of every sample squared, in 16 bit units
+	 */
+	public abstract double sumOfSquares(short[] samples, int offset, int length);
+	
+	/**
+	 * Gets the absolute peak of a block of samples
+	 * @param samples to measure
+	 * @param offset of the first sample
+	 * @param length number of samples
+	 * @return peak from 0 to 32768
+	 */
+	public abstract int peak(short[] samples, int offset, int length);
+	
+	/**
+	 * Converts 16 bit samples to floats
+	 * @param source samples to convert
+	 * @param destination for the floats, at least <code>length</code> long
+	 * @param length number of samples
+	 * @param scale every sample is multiplied by
+	 */
+	public abstract void toFloat(short[] source, float[] destination, int length, float scale);
+	
+	/**
+	 * Converts floats to 16 bit samples, rounding half away from zero and clamping to the 16 bit range
+	 * @param source floats to convert
+	 * @param destination for the samples, at least <code>length</code> long
+	 * @param length number of samples
+	 * @param scale every float is multiplied by before it's converted
+	 */
+	public abstract void toShort(float[] source, short[] destination, int length, float scale);
+}
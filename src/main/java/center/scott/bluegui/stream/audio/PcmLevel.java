@@ -0,0 +1,76 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream.audio;
+
+/**
+ * Level metering for 16 bit PCM. The loops are run by {@link PcmKernels#get()} and allocate nothing.
+ * @author Scott Maday
+ */
+public class PcmLevel {
+	public final static double FULL_SCALE = 32768d;
+	public final static double SILENCE_DBFS = -96d;
+	private final static PcmKernels KERNELS = PcmKernels.get();
+	
+	private PcmLevel() {
+	}
+	
+	/**
+	 * Gets the root mean square of a block
+	 * @param samples to measure
+	 * @param offset of the first sample
+	 * @param length number of samples
+	 * @return rms from 0 to 1 of full scale
+	 */
+	public static double rms(short[] samples, int offset, int length) {
+		if(length <= 0) {
+			return 0;
+		}
+		return Math.sqrt(KERNELS.sumOfSquares(samples, offset, length) / length) / FULL_SCALE;
+	}
+	
+	/**
+	 * Gets the absolute peak of a block
+	 * @param samples to measure
+	 * @param offset of the first sample
+	 * @param length number of samples
+	 * @return peak from 0 to 1 of full scale
+	 */
+	public static double peak(short[] samples, int offset, int length) {
+		return KERNELS.peak(samples, offset, length) / FULL_SCALE;
+	}
+	
+	/**
+	 * Converts a linear level to decibels relative to full scale
+	 * @param level from 0 to 1
+	 * @return level in dBFS, no lower than {@link #SILENCE_DBFS}
+	 */
+	public static double toDbfs(double level) {
+		if(level <= 0) {
+			return SILENCE_DBFS;
+		}
+		return Math.max(SILENCE_DBFS, 20d * Math.log10(level));
+	}
+	
+	/**
+	 * Converts decibels relative to full scale to a linear level
+	 * @param dbfs level in decibels
+	 * @return level from 0 to 1
+	 */
+	public static double fromDbfs(double dbfs) {
+		return Math.pow(10d, dbfs / 20d);
+	}
+}
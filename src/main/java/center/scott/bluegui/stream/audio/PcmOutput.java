@@ -0,0 +1,258 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream.audio;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Plays 16 bit PCM on a {@link javax.sound.sampled.SourceDataLine} with a software volume and mute.
+ * The line is opened on the first write and the conversion buffer is reused, so steady state writes do not allocate.
+ * Audio can be resampled to another rate by a {@link PolyphaseResampler} before it reaches the line.
+ * @author Scott Maday
+ */
+public class PcmOutput {
+	private final static Logger LOGGER = LoggerFactory.getLogger(PcmOutput.class);
+	public final static int DEFAULT_BUFFER_MILLIS = 100;
+	private final static int GAIN_SHIFT = 12;
+	
+	private final int mSampleRate;
+	private final int mChannels;
+	private final int mBufferMillis;
+	
+	private volatile float mVolume = 1f;
+	private volatile boolean mMute = false;
+	private PolyphaseResampler mResampler;
+	private volatile int mOutputRate;
+	private volatile boolean mRateChanged = false;
+	private byte[] mBytes = new byte[0];
+	private SourceDataLine mLine;
+	private boolean mLineFailed = false;
+	
+	/**
+	 * Creates an output with a {@link #DEFAULT_BUFFER_MILLIS} line buffer
+	 * @param sampleRate in hertz
+	 * @param channels interleaved in each block
+	 */
+	public PcmOutput(int sampleRate, int channels) {
+		this(sampleRate, channels, DEFAULT_BUFFER_MILLIS);
+	}
+	/**
+	 * Creates an output
+	 * @param sampleRate in hertz
+	 * @param channels interleaved in each block
+	 * @param bufferMillis size of the line buffer in miliseconds
+	 */
+	public PcmOutput(int sampleRate, int channels, int bufferMillis) {
+		mSampleRate = sampleRate;
+		mChannels = channels;
+		mBufferMillis = bufferMillis;
+		mOutputRate = sampleRate;
+	}
+	
+	/**
+	 * @return sample rate in hertz
+	 */
+	public int getSampleRate() {
+		return mSampleRate;
+	}
+	/**
+	 * @return number of interleaved channels
+	 */
+	public int getChannels() {
+		return mChannels;
+	}
+	
+	/**
+	 * Sets the rate the line is opened at. Samples are resampled to it when it's not the sample rate, otherwise the sound system does any conversion.
+	 * The change is made by the next write, which closes an open line and reopens it at the new rate, so a write in progress keeps its resampler and line
+	 * @param outputRate in hertz
+	 */
+	public synchronized void setOutputRate(int outputRate) {
+		if(outputRate == mOutputRate) {
+			return;
+		}
+		mOutputRate = outputRate;
+		mRateChanged = true;
+	}
+	/**
+	 * @return rate the line is opened at in hertz
+	 */
+	public synchronized int getOutputRate() {
+		return mOutputRate;
+	}
+	
+	/**
+	 * Sets the software volume
+	 * @param volume where 1 is unity gain
+	 */
+	public void setVolume(float volume) {
+		mVolume = volume;
+	}
+	/**
+	 * @return volume where 1 is unity gain
+	 */
+	public float getVolume() {
+		return mVolume;
+	}
+	
+	/**
+	 * Sets the software mute
+	 * @param mute <code>true</code> to mute, <code>false</code> to unmute
+	 */
+	public void setMute(boolean mute) {
+		mMute = mute;
+	}
+	/**
+	 * @return <code>true</code> if muted
+	 */
+	public boolean isMute() {
+		return mMute;
+	}
+	
+	/**
+	 * Writes samples to the line, blocking until the line has room for them
+	 * @param samples interleaved samples
+	 * @param length number of samples to write, counting every channel
+	 * @return <code>true</code> if the samples were written, <code>false</code> if the line could not be opened
+	 */
+	public boolean write(short[] samples, int length) {
+		if(mRateChanged) {
+			applyOutputRate();
+		}
+		SourceDataLine line = openLine();
+		if(line == null) {
+			return false;
+		}
+		if(length <= 0) {
+			return true;
+		}
+		PolyphaseResampler resampler = mResampler;
+		if(resampler != null) {
+			length = resampler.process(samples, length);
+			samples = resampler.getOutput();
+		}
+		if(mBytes.length < length * 2) {
+			mBytes = new byte[length * 2];
+		}
+		int gain = mMute ? 0 : Math.round(mVolume * (1 << GAIN_SHIFT));
+		byte[] bytes = mBytes;
+		for(int i = 0, j = 0; i < length; i++, j += 2) {
+			int sample = (samples[i] * gain) >> GAIN_SHIFT;
+			if(sample > Short.MAX_VALUE) {
+				sample = Short.MAX_VALUE;
+			}else if(sample < Short.MIN_VALUE) {
+				sample = Short.MIN_VALUE;
+			}
+			bytes[j] = (byte)sample;
+			bytes[j + 1] = (byte)(sample >> 8);
+		}
+		line.write(bytes, 0, length * 2);
+		return true;
+	}
+	
+	/**
+	 * @return number of samples at the sample rate, counting every channel, queued in the line and not yet played
+	 */
+	public int getQueued() {
+		SourceDataLine line = mLine;
+		if(line == null) {
+			return 0;
+		}
+		return (int)((long)(line.getBufferSize() - line.available()) / 2 * mSampleRate / mOutputRate);
+	}
+	
+	/**
+	 * Stops the line, keeping queued samples
+	 */
+	public void stop() {
+		SourceDataLine line = mLine;
+		if(line != null) {
+			line.stop();
+		}
+	}
+	
+	/**
+	 * Starts the line after {@link #stop()}
+	 */
+	public void start() {
+		SourceDataLine line = mLine;
+		if(line != null) {
+			line.start();
+		}
+	}
+	
+	/**
+	 * Discards queued samples
+	 */
+	public void flush() {
+		SourceDataLine line = mLine;
+		if(line != null) {
+			line.flush();
+		}
+	}
+	
+	/**
+	 * Blocks until queued samples are played
+	 */
+	public void drain() {
+		SourceDataLine line = mLine;
+		if(line != null) {
+			line.drain();
+		}
+	}
+	
+	/**
+	 * Closes the line. It will be reopened on the next write
+	 */
+	public synchronized void close() {
+		if(mLine != null) {
+			mLine.close();
+			mLine = null;
+		}
+		mLineFailed = false;
+	}
+	
+	private synchronized void applyOutputRate() {
+		mRateChanged = false;
+		mResampler = mOutputRate == mSampleRate ? null : new PolyphaseResampler(mSampleRate, mOutputRate, mChannels);
+		close();
+		LOGGER.info("Resampling stream audio from {}Hz to {}Hz{}", mSampleRate, mOutputRate, mResampler != null && mResampler.isIntegerRatio() ? " by a whole ratio" : "");
+	}
+	
+	private synchronized SourceDataLine openLine() {
+		if(mLine != null || mLineFailed) {
+			return mLine;
+		}
+		AudioFormat format = new AudioFormat(mOutputRate, 16, mChannels, true, false);
+		try {
+			mLine = AudioSystem.getSourceDataLine(format);
+			mLine.open(format, (int)(format.getFrameRate() * format.getFrameSize() * mBufferMillis / 1000));
+			mLine.start();
+		} catch (LineUnavailableException | IllegalArgumentException e) {
+			LOGGER.error("Could not open an output line for the stream: ", e);
+			mLine = null;
+			mLineFailed = true;
+		}
+		return mLine;
+	}
+}
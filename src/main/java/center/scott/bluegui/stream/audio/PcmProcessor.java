@@ -0,0 +1,40 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream.audio;
+
+/**
+ * Interface for anything that works on decoded stream audio.
+ * Samples are interleaved signed 16 bit PCM. Implementations are called on the audio thread for every block, so they must not block or allocate.
+ * @author Scott Maday
+ */
+public interface PcmProcessor {
+	
+	/**
+	 * Notification of the sample format, sent before any samples and whenever it changes
+	 * @param sampleRate in hertz
+	 * @param channels interleaved in each block
+	 */
+	public void formatChanged(int sampleRate, int channels);
+	
+	/**
+	 * Processes a block of samples in place
+	 * @param samples interleaved samples, which may be modified
+	 * @param length number of valid samples in the array, counting every channel
+	 * @return number of valid samples after processing. Most processors return <code>length</code>
+	 */
+	public int process(short[] samples, int length);
+}
@@ -0,0 +1,250 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream.audio;
+
+/**
+ * Changes the sample rate of 16 bit PCM by a rational factor with a polyphase FIR filter.
+ * The windowed sinc filter is computed once and split into one short filter per output phase, so only the taps that line up with real input samples are multiplied.
+ * Integer upsampling ratios, like 8000 to 48000 hertz, take a fast path without any phase bookkeeping. Buffers are reused between blocks, so steady state resampling does not allocate.
+ * @author Scott Maday
+ */
+public class PolyphaseResampler {
+	public final static int DEFAULT_TAPS = 24;
+	/**
+	 * Fraction of the lower of the two nyquist frequencies that's passed
+	 */
+	public final static double PASSBAND = 0.9d;
+	/**
+	 * Kaiser window shape, good for about 80dB of stopband rejection
+	 */
+	private final static double KAISER_BETA = 8d;
+	
+	private final PcmKernels mKernels = PcmKernels.get();
+	private final int mInputRate;
+	private final int mOutputRate;
+	private final int mChannels;
+	private final int mInterpolation;
+	private final int mDecimation;
+	private final int mTaps;
+	private final int mHistory;
+	/**
+	 * {@link #mTaps} coefficients for each of the {@link #mInterpolation} phases, reversed so each dot product walks forward through the input
+	 */
+	private final float[] mFilter;
+	
+	private float[] mInput;
+	private float[] mOutputFloats = new float[0];
+	private short[] mOutput = new short[0];
+	private int mPhase;
+	
+	/**
+	 * Creates a resampler with {@link #DEFAULT_TAPS} taps per phase
+	 * @param inputRate in hertz
+	 * @param outputRate in hertz
+	 * @param channels interleaved in each block
+	 */
+	public PolyphaseResampler(int inputRate, int outputRate, int channels) {
+		this(inputRate, outputRate, channels, DEFAULT_TAPS);
+	}
+	/**
+	 * Creates a resampler
+	 * @param inputRate in hertz
+	 * @param outputRate in hertz
+	 * @param channels interleaved in each block
+	 * @param taps per phase. More taps give a sharper filter for more work per sample
+	 */
+	public PolyphaseResampler(int inputRate, int outputRate, int channels, int taps) {
+		int divisor = gcd(inputRate, outputRate);
+		mInputRate = inputRate;
+		mOutputRate = outputRate;
+		mChannels = channels;
+		mInterpolation = outputRate / divisor;
+		mDecimation = inputRate / divisor;
+		mTaps = taps;
+		mHistory = (taps - 1) * channels;
+		mFilter = createFilter(mInterpolation, mDecimation, taps);
+		mInput = new float[mHistory];
+	}
+	
+	/**
+	 * @return input sample rate in hertz
+	 */
+	public int getInputRate() {
+		return mInputRate;
+	}
+	/**
+	 * @return output sample rate in hertz
+	 */
+	public int getOutputRate() {
+		return mOutputRate;
+	}
+	
+	/**
+	 * @return <code>true</code> if the output rate is a whole multiple of the input rate, which takes the fast path
+	 */
+	public boolean isIntegerRatio() {
+		return mDecimation == 1;
+	}
+	
+	/**
+	 * Gets the delay the filter adds
+	 * @return delay in output samples per channel
+	 */
+	public double getDelay() {
+		return (mInterpolation * mTaps - 1) / 2d / mDecimation;
+	}
+	
+	/**
+	 * Gets the most samples a block can resample to
+	 * @param length number of input samples, counting every channel
+	 * @return number of output samples, counting every channel
+	 */
+	public int getMaxOutputLength(int length) {
+		return (int)(((long)length / mChannels * mInterpolation + mDecimation - 1) / mDecimation + 1) * mChannels;
+	}
+	
+	/**
+	 * Resamples a block. The output is in {@link #getOutput()} until the next block
+	 * @param samples interleaved input samples
+	 * @param length number of input samples, counting every channel
+	 * @return number of output samples, counting every channel
+	 */
+	public int process(short[] samples, int length) {
+		int channels = mChannels;
+		length -= length % channels;
+		if(mInput.length < mHistory + length) {
+			// Only grows when a bigger block comes through than has before
+			float[] input = new float[mHistory + length];
+			System.arraycopy(mInput, 0, input, 0, mHistory);
+			mInput = input;
+		}
+		int maxOutput = getMaxOutputLength(length);
+		if(mOutputFloats.length < maxOutput) {
+			mOutputFloats = new float[maxOutput];
+			mOutput = new short[maxOutput];
+		}
+		float[] input = mInput;
+		for(int i = 0; i < length; i++) {
+			input[mHistory + i] = samples[i];
+		}
+		int out = isIntegerRatio() ? interpolate(length) : resample(length);
+		// The end of this block is the history of the next
+		System.arraycopy(input, length, input, 0, mHistory);
+		mKernels.toShort(mOutputFloats, mOutput, out, 1f);
+		return out;
+	}
+	
+	/**
+	 * @return the samples from the last {@link #process(short[], int)}
+	 */
+	public short[] getOutput() {
+		return mOutput;
+	}
+	
+	private int interpolate(int length) {
+		int channels = mChannels;
+		int taps = mTaps;
+		int phases = mInterpolation;
+		float[] input = mInput;
+		float[] filter = mFilter;
+		float[] output = mOutputFloats;
+		int frames = length / channels;
+		int out = 0;
+		for(int frame = 0; frame < frames; frame++) {
+			int start = frame * channels;
+			for(int phase = 0, coefficients = 0; phase < phases; phase++, coefficients += taps) {
+				for(int channel = 0; channel < channels; channel++) {
+					float sum = 0;
+					for(int tap = 0, i = start + channel; tap < taps; tap++, i += channels) {
+						sum += filter[coefficients + tap] * input[i];
+					}
+					output[out++] = sum;
+				}
+			}
+		}
+		return out;
+	}
+	
+	private int resample(int length) {
+		int channels = mChannels;
+		int taps = mTaps;
+		float[] input = mInput;
+		float[] filter = mFilter;
+		float[] output = mOutputFloats;
+		int frames = length / channels;
+		int phase = mPhase;
+		int out = 0;
+		for(int frame = 0; frame < frames; frame++) {
+			int start = frame * channels;
+			for(; phase < mInterpolation; phase += mDecimation) {
+				int coefficients = phase * taps;
+				for(int channel = 0; channel < channels; channel++) {
+					float sum = 0;
+					for(int tap = 0, i = start + channel; tap < taps; tap++, i += channels) {
+						sum += filter[coefficients + tap] * input[i];
+					}
+					output[out++] = sum;
+				}
+			}
+			phase -= mInterpolation;
+		}
+		mPhase = phase;
+		return out;
+	}
+	
+	private static float[] createFilter(int interpolation, int decimation, int taps) {
+		int length = interpolation * taps;
+		double cutoff = PASSBAND * 0.5d / Math.max(interpolation, decimation);
+		double center = (length - 1) / 2d;
+		double window = bessel(KAISER_BETA);
+		float[] filter = new float[length];
+		for(int phase = 0; phase < interpolation; phase++) {
+			for(int tap = 0; tap < taps; tap++) {
+				int n = phase + (taps - 1 - tap) * interpolation;
+				double x = n - center;
+				double sinc = x == 0 ? 1d : Math.sin(2d * Math.PI * cutoff * x) / (2d * Math.PI * cutoff * x);
+				double ratio = x / center;
+				double kaiser = bessel(KAISER_BETA * Math.sqrt(Math.max(0d, 1d - ratio * ratio))) / window;
+				// Each phase only sees one input sample in interpolation, so the gain is brought back up
+				filter[phase * taps + tap] = (float)(2d * cutoff * sinc * kaiser * interpolation);
+			}
+		}
+		return filter;
+	}
+	
+	/**
+	 * Zeroth order modified bessel function of the first kind, for the kaiser window
+	 */
+	private static double bessel(double x) {
+		double sum = 1d;
+		double term = 1d;
+		for(int k = 1; k < 32; k++) {
+			term *= (x / (2d * k)) * (x / (2d * k));
+			sum += term;
+		}
+		return sum;
+	}
+	
+	private static int gcd(int a, int b) {
+		while(b != 0) {
+			int remainder = a % b;
+			a = b;
+			b = remainder;
+		}
+		return a;
+	}
+}
@@ -0,0 +1,233 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream.audio;
+
+/**
+ * Compares the {@link PolyphaseResampler} with linear interpolation, which is what ALSA's plug layer does by default, and with the same filter run directly on zero stuffed input.
+ * Each prints the real time load of resampling a stream and the signal to noise ratio of a resampled 1kHz tone.
+ * Only the resampling is measured. Resampling a stream also takes its audio through java instead of vlc's own output, which costs more than the filter does.
+ * @author Scott Maday
+ */
+public class ResamplerBenchmark {
+	private final static int BLOCK = 160;
+	private final static int TONE = 1000;
+	private final static double AMPLITUDE = 16000d;
+	private final static long RUN_NANOS = 2000000000L;
+	
+	public static void main(String[] args) {
+		System.out.println(String.format("%s %s on %s", System.getProperty("java.vm.name"), System.getProperty("java.version"), System.getProperty("os.arch")));
+		int[][] rates = {{8000, 48000}, {8000, 44100}, {44100, 48000}};
+		for(int[] rate : rates) {
+			System.out.println(String.format("%dHz to %dHz mono:", rate[0], rate[1]));
+			for(int method = 0; method < 3; method++) {
+				run(method, rate[0], rate[1]);
+			}
+		}
+	}
+	
+	private static void run(int method, int inputRate, int outputRate) {
+		short[] input = new short[BLOCK];
+		Converter converter = createConverter(method, inputRate, outputRate);
+		// Quality from a tone after the filter has settled
+		int blocks = inputRate / BLOCK;
+		double signal = 0;
+		double noise = 0;
+		long produced = 0;
+		for(int block = 0; block < blocks; block++) {
+			for(int i = 0; i < BLOCK; i++) {
+				input[i] = (short)Math.round(AMPLITUDE * Math.sin(2d * Math.PI * TONE * (block * BLOCK + i) / inputRate));
+			}
+			int length = converter.process(input, BLOCK);
+			short[] output = converter.getOutput();
+			for(int i = 0; i < length; i++, produced++) {
+				if(block < blocks / 4) {
+					continue;
+				}
+				double time = (produced - converter.getDelay()) / outputRate;
+				double expected = AMPLITUDE * Math.sin(2d * Math.PI * TONE * time);
+				signal += expected * expected;
+				noise += (output[i] - expected) * (output[i] - expected);
+			}
+		}
+		// Cost from streaming blocks through it for a while
+		long samples = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			for(int i = 0; i < 100; i++) {
+				converter.process(input, BLOCK);
+			}
+			samples += 100 * BLOCK;
+			elapsed = System.nanoTime() - start;
+		} while(elapsed < RUN_NANOS);
+		double load = elapsed / (samples * 1000000000d / inputRate);
+		System.out.println(String.format("  %-10s %7.3f%% of real time  %6.1fdB SNR", converter.getName(), load * 100d, 10d * Math.log10(signal / noise)));
+	}
+	
+	private static Converter createConverter(int method, int inputRate, int outputRate) {
+		switch(method) {
+			case 0:
+				return new LinearConverter(inputRate, outputRate);
+			case 1:
+				return new DirectConverter(inputRate, outputRate);
+			default:
+				return new PolyphaseConverter(inputRate, outputRate);
+		}
+	}
+	
+	
+	private interface Converter {
+		public String getName();
+		public int process(short[] samples, int length);
+		public short[] getOutput();
+		public double getDelay();
+	}
+	
+	private static class PolyphaseConverter implements Converter {
+		private final PolyphaseResampler mResampler;
+		
+		public PolyphaseConverter(int inputRate, int outputRate) {
+			mResampler = new PolyphaseResampler(inputRate, outputRate, 1);
+		}
+		@Override
+		public String getName() {
+			return "polyphase";
+		}
+		@Override
+		public int process(short[] samples, int length) {
+			return mResampler.process(samples, length);
+		}
+		@Override
+		public short[] getOutput() {
+			return mResampler.getOutput();
+		}
+		@Override
+		public double getDelay() {
+			return mResampler.getDelay();
+		}
+	}
+	
+	/**
+	 * The polyphase filter's taps run at the upsampled rate over every zero, which is what a plain FIR resampler costs
+	 */
+	private static class DirectConverter implements Converter {
+		private final PolyphaseResampler mReference;
+		private final int mInterpolation;
+		private final int mDecimation;
+		private final float[] mFilter;
+		private final float[] mHistory;
+		private final short[] mOutput = new short[BLOCK * 16];
+		private int mIndex;
+		private long mUpsampled;
+		
+		public DirectConverter(int inputRate, int outputRate) {
+			mReference = new PolyphaseResampler(inputRate, outputRate, 1);
+			int divisor = gcd(inputRate, outputRate);
+			mInterpolation = outputRate / divisor;
+			mDecimation = inputRate / divisor;
+			int length = mInterpolation * PolyphaseResampler.DEFAULT_TAPS;
+			mFilter = new float[length];
+			// An impulse through the reference gives back the prototype filter a phase at a time
+			PolyphaseResampler impulse = new PolyphaseResampler(inputRate, inputRate * mInterpolation, 1);
+			short[] unit = new short[PolyphaseResampler.DEFAULT_TAPS];
+			unit[0] = Short.MAX_VALUE;
+			int produced = impulse.process(unit, unit.length);
+			for(int i = 0; i < Math.min(length, produced); i++) {
+				mFilter[i] = impulse.getOutput()[i] / (float)Short.MAX_VALUE;
+			}
+			mHistory = new float[length];
+		}
+		@Override
+		public String getName() {
+			return "direct";
+		}
+		@Override
+		public int process(short[] samples, int length) {
+			int out = 0;
+			for(int i = 0; i < length; i++) {
+				for(int phase = 0; phase < mInterpolation; phase++) {
+					mIndex = (mIndex + 1) % mHistory.length;
+					mHistory[mIndex] = phase == 0 ? samples[i] : 0;
+					if(mUpsampled++ % mDecimation == 0) {
+						float sum = 0;
+						for(int tap = 0, j = mIndex; tap < mFilter.length; tap++, j = j == 0 ? mHistory.length - 1 : j - 1) {
+							sum += mFilter[tap] * mHistory[j];
+						}
+						mOutput[out++] = (short)Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(sum)));
+					}
+				}
+			}
+			return out;
+		}
+		@Override
+		public short[] getOutput() {
+			return mOutput;
+		}
+		@Override
+		public double getDelay() {
+			return mReference.getDelay();
+		}
+	}
+	
+	private static class LinearConverter implements Converter {
+		private final double mStep;
+		private final short[] mOutput = new short[BLOCK * 16];
+		private double mPosition;
+		private short mPrevious;
+		
+		public LinearConverter(int inputRate, int outputRate) {
+			mStep = (double)inputRate / outputRate;
+		}
+		@Override
+		public String getName() {
+			return "linear";
+		}
+		@Override
+		public int process(short[] samples, int length) {
+			int out = 0;
+			// Position is relative to the previous block's last sample
+			while(mPosition < length) {
+				int index = (int)mPosition;
+				double fraction = mPosition - index;
+				double from = index == 0 ? mPrevious : samples[index - 1];
+				mOutput[out++] = (short)Math.round(from + (samples[index] - from) * fraction);
+				mPosition += mStep;
+			}
+			mPosition -= length;
+			mPrevious = samples[length - 1];
+			return out;
+		}
+		@Override
+		public short[] getOutput() {
+			return mOutput;
+		}
+		@Override
+		public double getDelay() {
+			// Output trails the input by a sample
+			return 1d / mStep;
+		}
+	}
+	
+	private static int gcd(int a, int b) {
+		while(b != 0) {
+			int remainder = a % b;
+			a = b;
+			b = remainder;
+		}
+		return a;
+	}
+}
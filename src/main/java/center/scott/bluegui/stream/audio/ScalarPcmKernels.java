@@ -0,0 +1,77 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream.audio;
+
+/**
+ * {@link PcmKernels} as plain loops, for any JVM
+ * @author Scott Maday
+ */
+public class ScalarPcmKernels extends PcmKernels {
+	
+	@Override
+	public String getName() {
+		return "scalar";
+	}
+	
+	@Override
+	public double sumOfSquares(short[] samples, int offset, int length) {
+		long sum = 0;
+		int end = offset + length;
+		for(int i = offset; i < end; i++) {
+			int sample = samples[i];
+			sum += sample * sample;
+		}
+		return sum;
+	}
+	
+	@Override
+	public int peak(short[] samples, int offset, int length) {
+		int peak = 0;
+		int end = offset + length;
+		for(int i = offset; i < end; i++) {
+			int sample = samples[i];
+			if(sample < 0) {
+				sample = -sample;
+			}
+			if(sample > peak) {
+				peak = sample;
+			}
+		}
+		return peak;
+	}
+	
+	@Override
+	public void toFloat(short[] source, float[] destination, int length, float scale) {
+		for(int i = 0; i < length; i++) {
+			destination[i] = source[i] * scale;
+		}
+	}
+	
+	@Override
+	public void toShort(float[] source, short[] destination, int length, float scale) {
+		for(int i = 0; i < length; i++) {
+			float sample = source[i] * scale;
+			if(sample >= Short.MAX_VALUE) {
+				destination[i] = Short.MAX_VALUE;
+			}else if(sample <= Short.MIN_VALUE) {
+				destination[i] = Short.MIN_VALUE;
+			}else {
+				destination[i] = (short)(sample + (sample < 0 ? -0.5f : 0.5f));
+			}
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream.audio;
+
+/**
+ * Speeds up speech without raising its pitch, by waveform similarity overlap-add. Frames of the input are taken further apart than they're laid down,
+ * and each is nudged within a small window to where it best lines up with the audio it overlaps, so voices don't warble.
+ * Everything is allocated up front for the largest block that will be given to it.
+ * @author Scott Maday
+ */
+public class TimeCompressor {
+	public final static float MAX_SPEED = 2f;
+	private final static int FRAME_MILLIS = 20;
+	
+	private final int mChannels;
+	private final int mFrame;
+	private final int mHop;
+	private final int mTolerance;
+	private final float mSpeed;
+	private final float[] mWindow;
+	private final float[] mInput;
+	private final float[] mOverlap;
+	private final short[] mOutput;
+	
+	private int mInputFrames;
+	private double mNominal;
+	private int mNatural = -1;
+	
+	/**
+	 * Creates a time compressor
+	 * @param sampleRate of the audio in hertz
+	 * @param channels interleaved in the audio
+	 * @param maxLength most samples given to {@link #process(short[], int)} at once, counting every channel
+	 * @param speed how much faster the audio plays, from 1 to {@link #MAX_SPEED}
+	 */
+	public TimeCompressor(int sampleRate, int channels, int maxLength, float speed) {
+		mChannels = channels;
+		mHop = Math.max(1, sampleRate * FRAME_MILLIS / 2000);
+		mFrame = mHop * 2;
+		mTolerance = mHop / 2;
+		mSpeed = Math.max(1f, Math.min(MAX_SPEED, speed));
+		mWindow = new float[mFrame];
+		for(int i = 0; i < mFrame; i++) {
+			mWindow[i] = (float)(0.5d - 0.5d * Math.cos(2d * Math.PI * i / mFrame));
+		}
+		int maxFrames = maxLength / channels;
+		mInput = new float[(maxFrames + mFrame * 4) * channels];
+		mOverlap = new float[mHop * channels];
+		mOutput = new short[(maxFrames + mFrame * 2) * channels];
+	}
+	
+	/**
+	 * @return how much faster the audio plays
+	 */
+	public float getSpeed() {
+		return mSpeed;
+	}
+	
+	/**
+	 * Compresses a block. Output lags the input by about a frame, which {@link #flush()} lets out
+	 * @param samples interleaved samples
+	 * @param length number of samples, counting every channel
+	 * @return number of samples in {@link #getOutput()}
+	 */
+	public int process(short[] samples, int length) {
+		int frames = length / mChannels;
+		int room = mInput.length / mChannels - mInputFrames;
+		if(frames > room) {
+			// More than was allocated for, so keep the newest
+			discard(frames - room);
+		}
+		int offset = mInputFrames * mChannels;
+		for(int i = 0; i < frames * mChannels; i++) {
+			mInput[offset + i] = samples[i];
+		}
+		mInputFrames += frames;
+		
+		int out = 0;
+		int hopSamples = mHop * mChannels;
+		while(true) {
+			int position;
+			if(mNatural < 0) {
+				if(mInputFrames < mFrame) {
+					break;
+				}
+				// The first frame is laid down as is
+				position = 0;
+				for(int i = 0; i < hopSamples; i++) {
+					mOutput[out + i] = toShort(mInput[i]);
+				}
+			}else {
+				int nominal = (int)Math.round(mNominal);
+				if(nominal + mTolerance + mFrame > mInputFrames || mNatural + mHop > mInputFrames) {
+					break;
+				}
+				position = align(Math.max(0, nominal - mTolerance), nominal + mTolerance);
+				for(int frame = 0; frame < mHop; frame++) {
+					float weight = mWindow[frame];
+					for(int channel = 0; channel < mChannels; channel++) {
+						int sample = frame * mChannels + channel;
+						mOutput[out + sample] = toShort(mOverlap[sample] + weight * mInput[position * mChannels + sample]);
+					}
+				}
+			}
+			for(int frame = 0; frame < mHop; frame++) {
+				float weight = mWindow[mHop + frame];
+				for(int channel = 0; channel < mChannels; channel++) {
+					int sample = frame * mChannels + channel;
+					mOverlap[sample] = weight * mInput[(position + mHop) * mChannels + sample];
+				}
+			}
+			out += hopSamples;
+			mNatural = position + mHop;
+			mNominal += mHop * mSpeed;
+			discard(Math.max(0, Math.min(mNatural, (int)mNominal - mTolerance)));
+		}
+		return out;
+	}
+	
+	/**
+	 * Lets out the end of the audio given so far and starts over, like between transmissions
+	 * @return number of samples in {@link #getOutput()}
+	 */
+	public int flush() {
+		int out = 0;
+		if(mNatural >= 0) {
+			out = mHop * mChannels;
+			for(int i = 0; i < out; i++) {
+				mOutput[i] = toShort(mOverlap[i]);
+			}
+		}
+		mInputFrames = 0;
+		mNominal = 0;
+		mNatural = -1;
+		return out;
+	}
+	
+	/**
+	 * @return the samples from the last call to {@link #process(short[], int)} or {@link #flush()}
+	 */
+	public short[] getOutput() {
+		return mOutput;
+	}
+	
+	/**
+	 * Finds where a frame lines up best with the audio that naturally followed the last one, by normalized cross correlation of the first channel
+	 */
+	private int align(int from, int to) {
+		int best = from;
+		double bestScore = Double.NEGATIVE_INFINITY;
+		int natural = mNatural * mChannels;
+		for(int candidate = from; candidate <= to; candidate++) {
+			int start = candidate * mChannels;
+			double correlation = 0;
+			double energy = 1e-9d;
+			for(int i = 0; i < mHop * mChannels; i += mChannels) {
+				float sample = mInput[start + i];
+				correlation += sample * mInput[natural + i];
+				energy += sample * sample;
+			}
+			double score = correlation / Math.sqrt(energy);
+			if(score > bestScore) {
+				bestScore = score;
+				best = candidate;
+			}
+		}
+		return best;
+	}
+	
+	private void discard(int frames) {
+		if(frames <= 0) {
+			return;
+		}
+		frames = Math.min(frames, mInputFrames);
+		System.arraycopy(mInput, frames * mChannels, mInput, 0, (mInputFrames - frames) * mChannels);
+		mInputFrames -= frames;
+		mNominal -= frames;
+		if(mNatural >= 0) {
+			mNatural = Math.max(0, mNatural - frames);
+		}
+	}
+	
+	private static short toShort(float sample) {
+		return (short)Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(sample)));
+	}
+}
@@ -0,0 +1,113 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream.audio.dsp;
+
+import center.scott.bluegui.stream.audio.PcmLevel;
+
+/**
+ * Brings speech to a steady level, so quiet and loud talkgroups come through about the same.
+ * The level is followed with a short rms window. Gain comes down quickly when audio is too loud and rises slowly, and it's held while the audio is under the gate so silence and noise aren't pumped up.
+ * @author Scott Maday
+ */
+public class AutomaticGainControl implements DspStage {
+	public final static double DEFAULT_TARGET_DBFS = -18d;
+	public final static double DEFAULT_MAX_GAIN_DB = 24d;
+	public final static double DEFAULT_GATE_DBFS = -55d;
+	private final static double MIN_GAIN_DB = -20d;
+	private final static double DETECTOR_MILLIS = 50d;
+	private final static double ATTACK_MILLIS = 30d;
+	private final static double RELEASE_MILLIS = 1500d;
+	
+	private final float mTarget;
+	private final float mMaxGain;
+	private final float mMinGain;
+	private final float mGate;
+	
+	private int mChannels = 1;
+	private float mDetector;
+	private float mAttack;
+	private float mRelease;
+	private float mPower;
+	private float mGain = 1f;
+	
+	/**
+	 * Creates an AGC with the default target, maximum gain and gate
+	 */
+	public AutomaticGainControl() {
+		this(DEFAULT_TARGET_DBFS, DEFAULT_MAX_GAIN_DB, DEFAULT_GATE_DBFS);
+	}
+	/**
+	 * Creates an AGC
+	 * @param targetDbfs rms level to bring speech to, in dBFS
+	 * @param maxGainDb most gain applied, in decibels
+	 * @param gateDbfs rms level under which the gain is held, in dBFS
+	 */
+	public AutomaticGainControl(double targetDbfs, double maxGainDb, double gateDbfs) {
+		mTarget = (float)PcmLevel.fromDbfs(targetDbfs);
+		mMaxGain = (float)PcmLevel.fromDbfs(maxGainDb);
+		mMinGain = (float)PcmLevel.fromDbfs(MIN_GAIN_DB);
+		mGate = (float)PcmLevel.fromDbfs(gateDbfs);
+	}
+	
+	/**
+	 * @return gain currently applied, in decibels
+	 */
+	public double getGain() {
+		return PcmLevel.toDbfs(mGain);
+	}
+	
+	@Override
+	public String getName() {
+		return "agc";
+	}
+	
+	@Override
+	public void formatChanged(int sampleRate, int channels) {
+		mChannels = channels;
+		mDetector = coefficient(DETECTOR_MILLIS, sampleRate);
+		mAttack = coefficient(ATTACK_MILLIS, sampleRate);
+		mRelease = coefficient(RELEASE_MILLIS, sampleRate);
+	}
+	
+	@Override
+	public void process(float[] samples, int length) {
+		int channels = mChannels;
+		float power = mPower;
+		float gain = mGain;
+		for(int i = 0; i + channels <= length; i += channels) {
+			float framePower = 0;
+			for(int j = i; j < i + channels; j++) {
+				framePower += samples[j] * samples[j];
+			}
+			power += mDetector * (framePower / channels - power);
+			float rms = (float)Math.sqrt(power);
+			if(rms > mGate) {
+				float desired = Math.max(mMinGain, Math.min(mMaxGain, mTarget / rms));
+				gain += (desired < gain ? mAttack : mRelease) * (desired - gain);
+			}
+			for(int j = i; j < i + channels; j++) {
+				samples[j] *= gain;
+			}
+		}
+		mPower = power < 1e-20f ? 0 : power;
+		mGain = gain;
+	}
+	
+	private static float coefficient(double millis, int sampleRate) {
+		return (float)(1d - Math.exp(-1000d / (millis * sampleRate)));
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream.audio.dsp;
+
+/**
+ * First order low-pass that undoes the pre-emphasis of analog FM voice, which otherwise sounds thin and hissy
+ * @author Scott Maday
+ */
+public class DeEmphasisFilter implements DspStage {
+	/**
+	 * Time constant used by land mobile radio, in microseconds
+	 */
+	public final static double DEFAULT_TIME_CONSTANT = 750d;
+	
+	private final double mTimeConstant;
+	
+	private int mChannels = 1;
+	private float mAlpha = 1f;
+	private float[] mState = new float[1];
+	
+	/**
+	 * Creates a filter with the {@link #DEFAULT_TIME_CONSTANT}
+	 */
+	public DeEmphasisFilter() {
+		this(DEFAULT_TIME_CONSTANT);
+	}
+	/**
+	 * Creates a filter
+	 * @param timeConstant in microseconds
+	 */
+	public DeEmphasisFilter(double timeConstant) {
+		mTimeConstant = timeConstant;
+	}
+	
+	@Override
+	public String getName() {
+		return "deemphasis";
+	}
+	
+	@Override
+	public void formatChanged(int sampleRate, int channels) {
+		mAlpha = (float)(1d - Math.exp(-1000000d / (sampleRate * mTimeConstant)));
+		mChannels = channels;
+		mState = new float[channels];
+	}
+	
+	@Override
+	public void process(float[] samples, int length) {
+		int channels = mChannels;
+		float alpha = mAlpha;
+		for(int channel = 0; channel < channels; channel++) {
+			float state = mState[channel];
+			for(int i = channel; i < length; i += channels) {
+				state += alpha * (samples[i] - state);
+				samples[i] = state;
+			}
+			mState[channel] = Math.abs(state) < 1e-20f ? 0 : state;
+		}
+	}
+}
@@ -0,0 +1,132 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream.audio.dsp;
+
+import center.scott.bluegui.stream.audio.PcmKernels;
+import center.scott.bluegui.stream.audio.PcmProcessor;
+
+/**
+ * Runs a fixed list of {@link DspStage}s over stream audio.
+ * Each block is converted to floats once into a work buffer that's reused, so steady state processing does not allocate.
+ * Time spent in each stage is counted so the chain can be checked against real time on slow boards.
+ * @author Scott Maday
+ */
+public class DspChain implements PcmProcessor {
+	private final static float FULL_SCALE = 32768f;
+	
+	private final PcmKernels mKernels = PcmKernels.get();
+	private final DspStage[] mStages;
+	private final long[] mStageNanos;
+	
+	private float[] mWork = new float[0];
+	private volatile int mSampleRate = 1;
+	private volatile int mChannels = 1;
+	private volatile long mSamples;
+	private volatile long mBlocks;
+	
+	/**
+	 * Creates a chain
+	 * @param stages to run, in order
+	 */
+	public DspChain(DspStage... stages) {
+		mStages = stages.clone();
+		mStageNanos = new long[stages.length];
+	}
+	
+	/**
+	 * @return number of stages
+	 */
+	public int getStageCount() {
+		return mStages.length;
+	}
+	
+	/**
+	 * @param index of the stage
+	 * @return the {@link DspStage}
+	 */
+	public DspStage getStage(int index) {
+		return mStages[index];
+	}
+	
+	/**
+	 * Gets the average time a stage takes per block. Counts are updated by the audio thread without locking, so they are approximate while it's running
+	 * @param index of the stage
+	 * @return average time in nanoseconds
+	 */
+	public long getStageCost(int index) {
+		long blocks = mBlocks;
+		return blocks == 0 ? 0 : mStageNanos[index] / blocks;
+	}
+	
+	/**
+	 * Gets how much of real time a stage takes, which must stay well under 1 for audio to keep up
+	 * @param index of the stage
+	 * @return time spent processing divided by the duration of the audio processed
+	 */
+	public double getStageLoad(int index) {
+		double audioNanos = getProcessedTime() * 1000000d;
+		return audioNanos <= 0 ? 0 : mStageNanos[index] / audioNanos;
+	}
+	
+	/**
+	 * @return duration of the audio processed, in miliseconds
+	 */
+	public long getProcessedTime() {
+		return mSamples * 1000L / ((long)mSampleRate * mChannels);
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		double load = 0;
+		for(int i = 0; i < mStages.length; i++) {
+			double stageLoad = getStageLoad(i);
+			load += stageLoad;
+			builder.append(String.format("%s %dns/block %.3f%%, ", mStages[i].getName(), getStageCost(i), stageLoad * 100d));
+		}
+		builder.append(String.format("%.3f%% of real time over %d blocks", load * 100d, mBlocks));
+		return builder.toString();
+	}
+	
+	@Override
+	public void formatChanged(int sampleRate, int channels) {
+		mSampleRate = sampleRate;
+		mChannels = channels;
+		for(DspStage stage : mStages) {
+			stage.formatChanged(sampleRate, channels);
+		}
+	}
+	
+	@Override
+	public int process(short[] samples, int length) {
+		if(mWork.length < length) {
+			// Only grows when a bigger block comes through than has before
+			mWork = new float[length];
+		}
+		float[] work = mWork;
+		mKernels.toFloat(samples, work, length, 1f / FULL_SCALE);
+		for(int i = 0; i < mStages.length; i++) {
+			long start = System.nanoTime();
+			mStages[i].process(work, length);
+			mStageNanos[i] += System.nanoTime() - start;
+		}
+		mKernels.toShort(work, samples, length, FULL_SCALE);
+		mSamples += length;
+		mBlocks++;
+		return length;
+	}
+}
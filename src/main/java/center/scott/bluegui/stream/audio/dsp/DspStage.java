@@ -0,0 +1,44 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream.audio.dsp;
+
+/**
+ * One stage of a {@link DspChain}. Samples are interleaved floats from -1 to 1.
+ * Stages are called on the audio thread for every block, so any state has to be allocated in {@link #formatChanged(int, int)} and processing must not allocate.
+ * @author Scott Maday
+ */
+public interface DspStage {
+	
+	/**
+	 * @return short name of the stage, used when reporting its cost
+	 */
+	public String getName();
+	
+	/**
+	 * Notification of the sample format, sent before any samples and whenever it changes. Filter state is reset
+	 * @param sampleRate in hertz
+	 * @param channels interleaved in each block
+	 */
+	public void formatChanged(int sampleRate, int channels);
+	
+	/**
+	 * Processes a block of samples in place
+	 * @param samples interleaved samples from -1 to 1
+	 * @param length number of valid samples in the array, counting every channel
+	 */
+	public void process(float[] samples, int length);
+}
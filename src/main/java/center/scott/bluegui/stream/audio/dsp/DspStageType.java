@@ -0,0 +1,73 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream.audio.dsp;
+
+/**
+ * The {@link DspStage}s that can be put in a {@link DspChain} by name
+ * @author Scott Maday
+ */
+public enum DspStageType {
+	/**
+	 * {@link HighPassFilter}
+	 */
+	HIGHPASS,
+	/**
+	 * {@link DeEmphasisFilter}
+	 */
+	DEEMPHASIS,
+	/**
+	 * {@link AutomaticGainControl}
+	 */
+	AGC,
+	/**
+	 * {@link Limiter}
+	 */
+	LIMITER;
+	
+	/**
+	 * Creates a stage of this type with its default settings
+	 * @return a new {@link DspStage}
+	 */
+	public DspStage create() {
+		switch(this) {
+			case HIGHPASS:
+				return new HighPassFilter();
+			case DEEMPHASIS:
+				return new DeEmphasisFilter();
+			case AGC:
+				return new AutomaticGainControl();
+			case LIMITER:
+			default:
+				return new Limiter();
+		}
+	}
+	
+	/**
+	 * Attempts to get the DspStageType from a string
+	 * @param type case insensitive string to get the DspStageType
+	 * @return {@link DspStageType} if the type is valid, null otherwise
+	 */
+	public static DspStageType fromString(String type) {
+		String typeUpper = type.trim().toUpperCase().replace("-", "").replace("_", "");
+		for(DspStageType value : DspStageType.values()) {
+			if(value.name().equals(typeUpper)) {
+				return value;
+			}
+		}
+		return null;
+	}
+}
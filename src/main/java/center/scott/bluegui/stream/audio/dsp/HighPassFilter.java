@@ -0,0 +1,112 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream.audio.dsp;
+
+/**
+ * Second order high-pass filter that takes out hum and rumble below the voice band
+ * @author Scott Maday
+ * @see <a href="https://www.w3.org/TR/audio-eq-cookbook/">Audio EQ Cookbook</a>
+ */
+public class HighPassFilter implements DspStage {
+	public final static double DEFAULT_CUTOFF = 150d;
+	public final static double DEFAULT_Q = Math.sqrt(0.5d);
+	
+	private final double mCutoff;
+	private final double mQ;
+	
+	private int mChannels = 1;
+	private double mB0;
+	private double mB1;
+	private double mB2;
+	private double mA1;
+	private double mA2;
+	private double[] mX1 = new double[1];
+	private double[] mX2 = new double[1];
+	private double[] mY1 = new double[1];
+	private double[] mY2 = new double[1];
+	
+	/**
+	 * Creates a filter at {@link #DEFAULT_CUTOFF} with a butterworth response
+	 */
+	public HighPassFilter() {
+		this(DEFAULT_CUTOFF, DEFAULT_Q);
+	}
+	/**
+	 * Creates a filter
+	 * @param cutoff frequency in hertz
+	 * @param q of the filter
+	 */
+	public HighPassFilter(double cutoff, double q) {
+		mCutoff = cutoff;
+		mQ = q;
+	}
+	
+	/**
+	 * @return cutoff frequency in hertz
+	 */
+	public double getCutoff() {
+		return mCutoff;
+	}
+	
+	@Override
+	public String getName() {
+		return "highpass";
+	}
+	
+	@Override
+	public void formatChanged(int sampleRate, int channels) {
+		double omega = 2d * Math.PI * Math.min(mCutoff, sampleRate * 0.45d) / sampleRate;
+		double alpha = Math.sin(omega) / (2d * mQ);
+		double cos = Math.cos(omega);
+		double a0 = 1d + alpha;
+		mB0 = (1d + cos) / 2d / a0;
+		mB1 = -(1d + cos) / a0;
+		mB2 = mB0;
+		mA1 = -2d * cos / a0;
+		mA2 = (1d - alpha) / a0;
+		mChannels = channels;
+		mX1 = new double[channels];
+		mX2 = new double[channels];
+		mY1 = new double[channels];
+		mY2 = new double[channels];
+	}
+	
+	@Override
+	public void process(float[] samples, int length) {
+		int channels = mChannels;
+		for(int channel = 0; channel < channels; channel++) {
+			double x1 = mX1[channel];
+			double x2 = mX2[channel];
+			double y1 = mY1[channel];
+			double y2 = mY2[channel];
+			for(int i = channel; i < length; i += channels) {
+				double x = samples[i];
+				double y = mB0 * x + mB1 * x1 + mB2 * x2 - mA1 * y1 - mA2 * y2;
+				x2 = x1;
+				x1 = x;
+				y2 = y1;
+				y1 = y;
+				samples[i] = (float)y;
+			}
+			// Keeps denormals from slowing the filter down once the input goes silent
+			mX1[channel] = x1;
+			mX2[channel] = x2;
+			mY1[channel] = Math.abs(y1) < 1e-20 ? 0 : y1;
+			mY2[channel] = Math.abs(y2) < 1e-20 ? 0 : y2;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream.audio.dsp;
+
+import center.scott.bluegui.stream.audio.PcmLevel;
+
+/**
+ * Peak limiter that keeps the output under a ceiling, catching what the AGC lets through before it can clip.
+ * Gain drops instantly on a peak over the ceiling and recovers smoothly, and every channel of a frame gets the same gain.
+ * @author Scott Maday
+ */
+public class Limiter implements DspStage {
+	public final static double DEFAULT_CEILING_DBFS = -1d;
+	private final static double RELEASE_MILLIS = 80d;
+	
+	private final float mCeiling;
+	
+	private int mChannels = 1;
+	private float mRelease;
+	private float mGain = 1f;
+	private volatile long mLimited;
+	
+	/**
+	 * Creates a limiter at the {@link #DEFAULT_CEILING_DBFS}
+	 */
+	public Limiter() {
+		this(DEFAULT_CEILING_DBFS);
+	}
+	/**
+	 * Creates a limiter
+	 * @param ceilingDbfs highest peak let out, in dBFS
+	 */
+	public Limiter(double ceilingDbfs) {
+		mCeiling = (float)PcmLevel.fromDbfs(ceilingDbfs);
+	}
+	
+	/**
+	 * @return number of frames that had to be turned down
+	 */
+	public long getLimitedCount() {
+		return mLimited;
+	}
+	
+	@Override
+	public String getName() {
+		return "limiter";
+	}
+	
+	@Override
+	public void formatChanged(int sampleRate, int channels) {
+		mChannels = channels;
+		mRelease = (float)(1d - Math.exp(-1000d / (RELEASE_MILLIS * sampleRate)));
+	}
+	
+	@Override
+	public void process(float[] samples, int length) {
+		int channels = mChannels;
+		float gain = mGain;
+		long limited = 0;
+		for(int i = 0; i + channels <= length; i += channels) {
+			float peak = 0;
+			for(int j = i; j < i + channels; j++) {
+				peak = Math.max(peak, Math.abs(samples[j]));
+			}
+			gain += mRelease * (1f - gain);
+			if(peak * gain > mCeiling) {
+				gain = mCeiling / peak;
+				limited++;
+			}
+			for(int j = i; j < i + channels; j++) {
+				samples[j] *= gain;
+			}
+		}
+		mGain = gain;
+		if(limited > 0) {
+			mLimited += limited;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream.op25;
+
+/**
+ * Talkgroup and radio of a call OP25 is following
+ * @author Scott Maday
+ */
+public class CallMetadata {
+	private final int mTalkgroup;
+	private final String mTalkgroupTag;
+	private final int mRadioId;
+	private final String mRadioTag;
+	private final long mTime;
+	
+	/**
+	 * Creates call metadata
+	 * @param talkgroup id of the talkgroup
+	 * @param talkgroupTag name of the talkgroup, or null if it's not known
+	 * @param radioId id of the transmitting radio, or 0 if it's not known
+	 * @param radioTag name of the transmitting radio, or null if it's not known
+	 * @param time it was fetched from {@link System#nanoTime()}
+	 */
+	public CallMetadata(int talkgroup, String talkgroupTag, int radioId, String radioTag, long time) {
+		mTalkgroup = talkgroup;
+		mTalkgroupTag = talkgroupTag;
+		mRadioId = radioId;
+		mRadioTag = radioTag;
+		mTime = time;
+	}
+	
+	/**
+	 * @return id of the talkgroup
+	 */
+	public int getTalkgroup() {
+		return mTalkgroup;
+	}
+	/**
+	 * @return name of the talkgroup, or null if it's not known
+	 */
+	public String getTalkgroupTag() {
+		return mTalkgroupTag;
+	}
+	/**
+	 * @return id of the transmitting radio, or 0 if it's not known
+	 */
+	public int getRadioId() {
+		return mRadioId;
+	}
+	/**
+	 * @return name of the transmitting radio, or null if it's not known
+	 */
+	public String getRadioTag() {
+		return mRadioTag;
+	}
+	/**
+	 * @return when this was fetched from {@link System#nanoTime()}
+	 */
+	public long getTime() {
+		return mTime;
+	}
+	
+	/**
+	 * @param other metadata to compare
+	 * @return <code>true</code> if both are the same talkgroup and radio
+	 */
+	public boolean isSameCall(CallMetadata other) {
+		return other != null && other.mTalkgroup == mTalkgroup && other.mRadioId == mRadioId;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("talkgroup ").append(mTalkgroup);
+		if(mTalkgroupTag != null) {
+			builder.append(" (").append(mTalkgroupTag).append(')');
+		}
+		if(mRadioId != 0) {
+			builder.append(" from radio ").append(mRadioId);
+			if(mRadioTag != null) {
+				builder.append(" (").append(mRadioTag).append(')');
+			}
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,30 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream.op25;
+
+/**
+ * Interface for anything that uses the talkgroup of the call on a stream
+ * @author Scott Maday
+ */
+public interface CallMetadataObserver {
+	
+	/**
+	 * Notification of the call on the stream. It's sent after the first poll once the stream activates, and whenever the call changes while it's active
+	 * @param metadata of the call, or null if OP25 couldn't be reached
+	 */
+	public void callUpdated(CallMetadata metadata);
+}
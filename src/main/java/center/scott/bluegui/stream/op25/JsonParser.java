@@ -0,0 +1,214 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream.op25;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough of a JSON parser for OP25's status replies. Objects become {@link Map}s, arrays {@link List}s, numbers {@link Double}s
+ * and <code>null</code> stays null.
+ * @author Scott Maday
+ */
+class JsonParser {
+	private final String mText;
+	private int mPosition;
+	
+	private JsonParser(String text) {
+		mText = text;
+	}
+	
+	/**
+	 * Parses a JSON document
+	 * @param text of the document
+	 * @return the value of the document
+	 * @throws IllegalArgumentException if the text isn't valid JSON
+	 */
+	public static Object parse(String text) {
+		JsonParser parser = new JsonParser(text);
+		Object value = parser.readValue();
+		parser.skipWhitespace();
+		if(parser.mPosition != text.length()) {
+			throw parser.error("Trailing characters");
+		}
+		return value;
+	}
+	
+	private Object readValue() {
+		skipWhitespace();
+		if(mPosition >= mText.length()) {
+			throw error("Unexpected end");
+		}
+		char c = mText.charAt(mPosition);
+		switch(c) {
+			case '{':
+				return readObject();
+			case '[':
+				return readArray();
+			case '"':
+				return readString();
+			case 't':
+				expect("true");
+				return Boolean.TRUE;
+			case 'f':
+				expect("false");
+				return Boolean.FALSE;
+			case 'n':
+				expect("null");
+				return null;
+			default:
+				return readNumber();
+		}
+	}
+	
+	private Map<String, Object> readObject() {
+		Map<String, Object> object = new LinkedHashMap<String, Object>();
+		mPosition++;
+		skipWhitespace();
+		if(peek() == '}') {
+			mPosition++;
+			return object;
+		}
+		while(true) {
+			skipWhitespace();
+			if(peek() != '"') {
+				throw error("Expected a key");
+			}
+			String key = readString();
+			skipWhitespace();
+			if(peek() != ':') {
+				throw error("Expected ':'");
+			}
+			mPosition++;
+			object.put(key, readValue());
+			skipWhitespace();
+			char c = peek();
+			mPosition++;
+			if(c == '}') {
+				return object;
+			}else if(c != ',') {
+				throw error("Expected ',' or '}'");
+			}
+		}
+	}
+	
+	private List<Object> readArray() {
+		List<Object> array = new ArrayList<Object>();
+		mPosition++;
+		skipWhitespace();
+		if(peek() == ']') {
+			mPosition++;
+			return array;
+		}
+		while(true) {
+			array.add(readValue());
+			skipWhitespace();
+			char c = peek();
+			mPosition++;
+			if(c == ']') {
+				return array;
+			}else if(c != ',') {
+				throw error("Expected ',' or ']'");
+			}
+		}
+	}
+	
+	private String readString() {
+		StringBuilder builder = new StringBuilder();
+		mPosition++;
+		while(true) {
+			char c = peek();
+			mPosition++;
+			if(c == '"') {
+				return builder.toString();
+			}else if(c != '\\') {
+				builder.append(c);
+				continue;
+			}
+			char escape = peek();
+			mPosition++;
+			switch(escape) {
+				case 'b':
+					builder.append('\b');
+					break;
+				case 'f':
+					builder.append('\f');
+					break;
+				case 'n':
+					builder.append('\n');
+					break;
+				case 'r':
+					builder.append('\r');
+					break;
+				case 't':
+					builder.append('\t');
+					break;
+				case 'u':
+					if(mPosition + 4 > mText.length()) {
+						throw error("Bad unicode escape");
+					}
+					try {
+						builder.append((char)Integer.parseInt(mText.substring(mPosition, mPosition + 4), 16));
+					} catch (NumberFormatException e) {
+						throw error("Bad unicode escape");
+					}
+					mPosition += 4;
+					break;
+				default:
+					builder.append(escape);
+			}
+		}
+	}
+	
+	private Double readNumber() {
+		int start = mPosition;
+		while(mPosition < mText.length() && "+-0123456789.eE".indexOf(mText.charAt(mPosition)) >= 0) {
+			mPosition++;
+		}
+		try {
+			return Double.valueOf(mText.substring(start, mPosition));
+		} catch (NumberFormatException e) {
+			throw error("Bad value");
+		}
+	}
+	
+	private void expect(String literal) {
+		if(!mText.startsWith(literal, mPosition)) {
+			throw error("Expected " + literal);
+		}
+		mPosition += literal.length();
+	}
+	
+	private char peek() {
+		if(mPosition >= mText.length()) {
+			throw error("Unexpected end");
+		}
+		return mText.charAt(mPosition);
+	}
+	
+	private void skipWhitespace() {
+		while(mPosition < mText.length() && Character.isWhitespace(mText.charAt(mPosition))) {
+			mPosition++;
+		}
+	}
+	
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at " + mPosition);
+	}
+}
@@ -0,0 +1,331 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream.op25;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import center.scott.bluegui.stream.StreamActivityObserver;
+
+/**
+ * Polls OP25's HTTP status interface for the talkgroup and radio of the call being followed, and labels each activation of the stream with it.
+ * Polling is fast while the stream is active and slow while it's idle, and the first poll of an activation is sent as soon as it activates.
+ * Talkgroup and radio names are cached, since OP25 doesn't send them with every update.
+ * Polls run on their own thread, so a slow reply never holds up the {@link center.scott.bluegui.stream.StreamScheduler}.
+ * @author Scott Maday
+ */
+public class Op25StatusPoller implements StreamActivityObserver {
+	private final static Logger LOGGER = LoggerFactory.getLogger(Op25StatusPoller.class);
+	public final static int DEFAULT_ACTIVE_INTERVAL = 500;
+	public final static int DEFAULT_IDLE_INTERVAL = 5000;
+	public final static int TIMEOUT = 1000;
+	
+	private final static String THREAD_NAME = "Op25StatusPoller";
+	private final static byte[] UPDATE_REQUEST = "[{\"command\": \"update\", \"arg1\": 0, \"arg2\": 0}]".getBytes(StandardCharsets.US_ASCII);
+	private final static int TAG_CACHE_SIZE = 256;
+	
+	private final URL mUrl;
+	private final ScheduledThreadPoolExecutor mExecutor;
+	private final List<CallMetadataObserver> mObservers = new CopyOnWriteArrayList<CallMetadataObserver>();
+	private final Map<Integer, String> mTalkgroupTags = new TagCache();
+	private final Map<Integer, String> mRadioTags = new TagCache();
+	private final ByteArrayOutputStream mReply = new ByteArrayOutputStream(4096);
+	private final byte[] mReadBuffer = new byte[4096];
+	private final Runnable mPollTask = new Runnable() {
+		@Override
+		public void run() {
+			poll();
+		}
+	};
+	
+	private volatile int mActiveInterval = DEFAULT_ACTIVE_INTERVAL;
+	private volatile int mIdleInterval = DEFAULT_IDLE_INTERVAL;
+	private volatile boolean mActive;
+	private volatile boolean mFirstPoll;
+	private volatile CallMetadata mCall;
+	private ScheduledFuture<?> mPending;
+	private boolean mReachable = true;
+	private long mPolls;
+	private long mFailures;
+	private long mLabelled;
+	
+	/**
+	 * Creates a poller. It doesn't poll until {@link #start()}
+	 * @param url of OP25's HTTP interface, like <code>http://127.0.0.1:8080/</code>
+	 */
+	public Op25StatusPoller(URL url) {
+		mUrl = url;
+		mExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, THREAD_NAME);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		mExecutor.setRemoveOnCancelPolicy(true);
+	}
+	
+	/**
+	 * Starts polling at the idle interval
+	 */
+	public void start() {
+		schedule(0);
+	}
+	
+	/**
+	 * Stops polling for good
+	 */
+	public synchronized void stop() {
+		mExecutor.shutdownNow();
+		mPending = null;
+	}
+	
+	/**
+	 * Sets how often OP25 is polled
+	 * @param activeInterval in miliseconds while the stream is active
+	 * @param idleInterval in miliseconds while the stream is idle
+	 */
+	public void setIntervals(int activeInterval, int idleInterval) {
+		mActiveInterval = activeInterval;
+		mIdleInterval = idleInterval;
+	}
+	
+	/**
+	 * @return the last call OP25 reported, or null if it hasn't reported one
+	 */
+	public CallMetadata getCall() {
+		return mCall;
+	}
+	
+	/**
+	 * Adds the observer that will be receiving calls
+	 * @param observer to be added
+	 * @see CallMetadataObserver
+	 */
+	public void addObserver(CallMetadataObserver observer) {
+		mObservers.add(observer);
+	}
+	
+	/**
+	 * Removes the observer from receiving calls
+	 * @param observer to be removed
+	 * @return <code>true</code> if the observer was removed successfully
+	 * @see CallMetadataObserver
+	 */
+	public boolean removeObserver(CallMetadataObserver observer) {
+		return mObservers.remove(observer);
+	}
+	
+	@Override
+	public void streamActivated() {
+		synchronized (this) {
+			mActive = true;
+			mFirstPoll = true;
+		}
+		schedule(0);
+	}
+	
+	@Override
+	public void streamInactivated() {
+		synchronized (this) {
+			mActive = false;
+			mFirstPoll = false;
+		}
+		schedule(mIdleInterval);
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return String.format("%d polls, %d failed, %d activations labelled, %d talkgroup names cached", mPolls, mFailures, mLabelled, mTalkgroupTags.size());
+	}
+	
+	private synchronized void schedule(long delay) {
+		if(mExecutor.isShutdown()) {
+			return;
+		}
+		if(mPending != null) {
+			mPending.cancel(false);
+		}
+		mPending = mExecutor.schedule(mPollTask, delay, TimeUnit.MILLISECONDS);
+	}
+	
+	private void poll() {
+		boolean first;
+		boolean active;
+		synchronized (this) {
+			// A stream activating while this poll is out sets this again, so the poll after this one is sent right away
+			first = mFirstPoll;
+			active = mActive;
+			mFirstPoll = false;
+		}
+		CallMetadata call = null;
+		boolean reached;
+		try {
+			call = parseCall(JsonParser.parse(request()));
+			reached = true;
+		} catch (IOException | IllegalArgumentException e) {
+			reached = false;
+		}
+		CallMetadata previous = mCall;
+		synchronized (this) {
+			mPolls++;
+			if(!reached) {
+				mFailures++;
+				if(mReachable) {
+					LOGGER.warn("Could not poll OP25 at {}", mUrl);
+				}
+			}else if(first && active && call != null) {
+				mLabelled++;
+			}
+			mReachable = reached;
+		}
+		if(reached) {
+			mCall = call;
+		}
+		if(active && mActive && (first || (call != null && !call.isSameCall(previous)))) {
+			if(call != null) {
+				LOGGER.info("Transmission on {}", call);
+			}
+			// Observers waiting on the first poll are told even when OP25 couldn't be reached, so they don't wait forever
+			for(CallMetadataObserver observer : mObservers) {
+				observer.callUpdated(call);
+			}
+		}
+		schedule(mFirstPoll ? 0 : mActive ? mActiveInterval : mIdleInterval);
+	}
+	
+	private String request() throws IOException {
+		HttpURLConnection connection = (HttpURLConnection)mUrl.openConnection();
+		connection.setConnectTimeout(TIMEOUT);
+		connection.setReadTimeout(TIMEOUT);
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		connection.setRequestProperty("Content-Type", "application/json");
+		connection.setFixedLengthStreamingMode(UPDATE_REQUEST.length);
+		OutputStream output = connection.getOutputStream();
+		try {
+			output.write(UPDATE_REQUEST);
+		} finally {
+			output.close();
+		}
+		if(connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+			connection.disconnect();
+			throw new IOException("HTTP " + connection.getResponseCode());
+		}
+		// The connection is kept alive for the next poll once the reply is read to the end
+		mReply.reset();
+		InputStream input = connection.getInputStream();
+		try {
+			int read;
+			while((read = input.read(mReadBuffer)) != -1) {
+				mReply.write(mReadBuffer, 0, read);
+			}
+		} finally {
+			input.close();
+		}
+		return new String(mReply.toByteArray(), StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * OP25 replies with a list of messages. Single channel versions send the call in a <code>change_freq</code> message,
+	 * and multi channel versions send it per channel in a <code>channel_update</code> message, of which the first channel is used.
+	 */
+	private CallMetadata parseCall(Object reply) {
+		if(!(reply instanceof List)) {
+			throw new IllegalArgumentException("Reply is not a list of messages");
+		}
+		CallMetadata call = null;
+		for(Object message : (List<?>)reply) {
+			if(!(message instanceof Map)) {
+				continue;
+			}
+			Map<?, ?> map = (Map<?, ?>)message;
+			Object type = map.get("json_type");
+			if("change_freq".equals(type)) {
+				call = parseChannel(map);
+			}else if("channel_update".equals(type) && map.get("channels") instanceof List && !((List<?>)map.get("channels")).isEmpty()) {
+				Object channel = map.get(toKey(((List<?>)map.get("channels")).get(0)));
+				if(channel instanceof Map) {
+					call = parseChannel((Map<?, ?>)channel);
+				}
+			}
+		}
+		return call;
+	}
+	
+	private CallMetadata parseChannel(Map<?, ?> channel) {
+		if(!(channel.get("tgid") instanceof Number)) {
+			return null;
+		}
+		int talkgroup = ((Number)channel.get("tgid")).intValue();
+		int radioId = channel.get("srcaddr") instanceof Number ? ((Number)channel.get("srcaddr")).intValue() : 0;
+		synchronized (this) {
+			return new CallMetadata(talkgroup, cacheTag(mTalkgroupTags, talkgroup, channel.get("tag")), radioId, radioId == 0 ? null : cacheTag(mRadioTags, radioId, channel.get("srctag")), System.nanoTime());
+		}
+	}
+	
+	/**
+	 * Channel ids are listed as numbers but keyed by name, and every number is parsed as a double, so whole numbers are written without a fraction
+	 */
+	private static String toKey(Object id) {
+		if(id instanceof Number) {
+			double value = ((Number)id).doubleValue();
+			if(value == Math.rint(value) && !Double.isInfinite(value)) {
+				return String.valueOf((long)value);
+			}
+		}
+		return String.valueOf(id);
+	}
+	
+	private static String cacheTag(Map<Integer, String> cache, int id, Object tag) {
+		if(tag instanceof String && !((String)tag).trim().isEmpty()) {
+			cache.put(id, ((String)tag).trim());
+		}
+		return cache.get(id);
+	}
+	
+	
+	private static class TagCache extends LinkedHashMap<Integer, String> {
+		private static final long serialVersionUID = 1L;
+		
+		public TagCache() {
+			super(16, 0.75f, true);
+		}
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+			return size() > TAG_CACHE_SIZE;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ * @author Scott Maday
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package center.scott.bluegui.stream.audio;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link PcmKernels} on the JDK Vector API. This is built separately with JDK 16 or newer and loaded by {@link PcmKernels#getVector()}.
+ * Samples are widened to floats with as many lanes as the preferred float shape holds, and tails are finished with scalar loops.
+ * @author Scott Maday
+ */
+public class VectorPcmKernels extends PcmKernels {
+	private final static VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+	/**
+	 * Half the width of {@link #FLOATS}, so it has as many lanes
+	 */
+	private final static VectorSpecies<Short> SHORTS = VectorSpecies.of(short.class, VectorShape.forBitSize(FLOATS.vectorBitSize() / 2));
+	private final static int LANES = FLOATS.length();
+	/**
+	 * Samples summed in float lanes before they're added to the double total, which keeps float rounding small
+	 */
+	private final static int SUM_CHUNK = 1024;
+	
+	private final PcmKernels mScalar = PcmKernels.getScalar();
+	
+	@Override
+	public String getName() {
+		return "vector " + FLOATS.vectorBitSize() + " bit";
+	}
+	
+	@Override
+	public double sumOfSquares(short[] samples, int offset, int length) {
+		double sum = 0;
+		int end = offset + length;
+		int i = offset;
+		int bound = offset + FLOATS.loopBound(length);
+		while(i < bound) {
+			int chunkEnd = Math.min(bound, i + SUM_CHUNK);
+			FloatVector chunk = FloatVector.zero(FLOATS);
+			for(; i < chunkEnd; i += LANES) {
+				FloatVector vector = (FloatVector)ShortVector.fromArray(SHORTS, samples, i).convertShape(VectorOperators.S2F, FLOATS, 0);
+				chunk = vector.fma(vector, chunk);
+			}
+			sum += chunk.reduceLanes(VectorOperators.ADD);
+		}
+		return sum + mScalar.sumOfSquares(samples, i, end - i);
+	}
+	
+	@Override
+	public int peak(short[] samples, int offset, int length) {
+		int end = offset + length;
+		int i = offset;
+		int bound = offset + SHORTS.loopBound(length);
+		ShortVector max = ShortVector.zero(SHORTS);
+		ShortVector min = ShortVector.zero(SHORTS);
+		for(; i < bound; i += SHORTS.length()) {
+			ShortVector vector = ShortVector.fromArray(SHORTS, samples, i);
+			max = max.max(vector);
+			min = min.min(vector);
+		}
+		// Negating -32768 doesn't fit in a short, so the ends are compared as ints
+		int peak = Math.max(max.reduceLanes(VectorOperators.MAX), -min.reduceLanes(VectorOperators.MIN));
+		return Math.max(peak, mScalar.peak(samples, i, end - i));
+	}
+	
+	@Override
+	public void toFloat(short[] source, float[] destination, int length, float scale) {
+		int i = 0;
+		int bound = FLOATS.loopBound(length);
+		for(; i < bound; i += LANES) {
+			FloatVector vector = (FloatVector)ShortVector.fromArray(SHORTS, source, i).convertShape(VectorOperators.S2F, FLOATS, 0);
+			vector.mul(scale).intoArray(destination, i);
+		}
+		for(; i < length; i++) {
+			destination[i] = source[i] * scale;
+		}
+	}
+	
+	@Override
+	public void toShort(float[] source, short[] destination, int length, float scale) {
+		// Narrowing conversions aren't intrinsified on JDK 17 and measured slower than the scalar loop, see KernelBenchmark
+		mScalar.toShort(source, destination, length, scale);
+	}
+}